@@ -0,0 +1,319 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches the configuration from a CONF_SERVER.
+ *
+ * The last response is stored together with its ETag and Last-Modified header. Further requests
+ * are conditional, so that the server only sends the configuration if it has changed. The stored
+ * configuration can be used immediately while it's revalidated in the background.
+ */
+public class ConfServerClient
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfServerClient.class);
+
+  /**
+   * Default timeout of a request.
+   */
+  public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+  private static final String CACHE_CONF = "confserver.conf";
+
+  private static final String CACHE_PROPERTIES = "confserver.properties";
+
+  private static final String PROP_SERVER = "server";
+
+  private static final String PROP_USER = "user";
+
+  private static final String PROP_ETAG = "etag";
+
+  private static final String PROP_LAST_MODIFIED = "lastModified";
+
+  /**
+   * One client for all requests, so that connections can be reused.
+   */
+  private static final HttpClient CLIENT = HttpClient.newBuilder().connectTimeout(DEFAULT_TIMEOUT)
+      .build();
+
+  private final File cacheDir;
+
+  private final String serverURI;
+
+  private final String user;
+
+  private final Duration timeout;
+
+  /**
+   * Creates a new client with {@link #DEFAULT_TIMEOUT}.
+   *
+   * @param cacheDir
+   *          The directory where the last response is stored.
+   * @param serverURI
+   *          The URI of the server.
+   * @param user
+   *          The user whose configuration is requested.
+   */
+  public ConfServerClient(File cacheDir, String serverURI, String user)
+  {
+    this(cacheDir, serverURI, user, DEFAULT_TIMEOUT);
+  }
+
+  /**
+   * Creates a new client.
+   *
+   * @param cacheDir
+   *          The directory where the last response is stored.
+   * @param serverURI
+   *          The URI of the server.
+   * @param user
+   *          The user whose configuration is requested.
+   * @param timeout
+   *          The timeout of a request.
+   */
+  public ConfServerClient(File cacheDir, String serverURI, String user, Duration timeout)
+  {
+    this.cacheDir = cacheDir;
+    this.serverURI = serverURI;
+    this.user = user;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Get the stored configuration of the last response.
+   *
+   * @return The configuration or null, if there is no stored response of this server for this
+   *         user.
+   */
+  public String getCachedConf()
+  {
+    Properties props = readProperties();
+    File conf = new File(cacheDir, CACHE_CONF);
+    if (props == null || !conf.isFile())
+    {
+      return null;
+    }
+    try
+    {
+      return Files.readString(conf.toPath(), StandardCharsets.UTF_8);
+    } catch (IOException e)
+    {
+      LOGGER.debug("", e);
+      return null;
+    }
+  }
+
+  /**
+   * Requests the configuration from the server. The request is conditional if there is a stored
+   * response.
+   *
+   * @return The current configuration. If the server reports that the configuration hasn't changed
+   *         the stored configuration is returned.
+   * @throws IOException
+   *           The request failed, timed out or the server responded with an error.
+   * @throws InterruptedException
+   *           The request was interrupted.
+   */
+  public String fetch() throws IOException, InterruptedException
+  {
+    HttpResponse<String> response = CLIENT.send(buildRequest(), BodyHandlers.ofString());
+    String conf = handleResponse(response);
+    if (conf == null)
+    {
+      conf = getCachedConf();
+      if (conf == null)
+      {
+        throw new IOException("Configuration not modified, but there is no stored configuration");
+      }
+    }
+    return conf;
+  }
+
+  /**
+   * Asks the server in the background whether the configuration has changed.
+   *
+   * @return A future which is completed with the new configuration or an empty optional if the
+   *         configuration hasn't changed or the request has failed.
+   */
+  public CompletableFuture<Optional<String>> revalidate()
+  {
+    return CLIENT.sendAsync(buildRequest(), BodyHandlers.ofString()).thenApply(response -> {
+      try
+      {
+        return Optional.ofNullable(handleResponse(response));
+      } catch (IOException e)
+      {
+        LOGGER.error("Revalidation of the configuration from {} failed", serverURI, e);
+        return Optional.<String> empty();
+      }
+    }).exceptionally(e -> {
+      LOGGER.error("Revalidation of the configuration from {} failed", serverURI, e);
+      return Optional.empty();
+    });
+  }
+
+  private HttpRequest buildRequest()
+  {
+    HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create(serverURI))
+        .header("Content-Type", "application/json")
+        .POST(BodyPublishers.ofString(("{ \"username\":\"" + user + "\"}"))).timeout(timeout);
+    Properties props = readProperties();
+    if (props != null && new File(cacheDir, CACHE_CONF).isFile())
+    {
+      String etag = props.getProperty(PROP_ETAG);
+      if (etag != null)
+      {
+        builder.header("If-None-Match", etag);
+      }
+      String lastModified = props.getProperty(PROP_LAST_MODIFIED);
+      if (lastModified != null)
+      {
+        builder.header("If-Modified-Since", lastModified);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Stores the configuration of a successful response.
+   *
+   * @return The configuration or null, if it hasn't changed.
+   * @throws IOException
+   *           The server responded with an error.
+   */
+  private String handleResponse(HttpResponse<String> response) throws IOException
+  {
+    if (response.statusCode() == 304)
+    {
+      LOGGER.debug("Configuration from {} hasn't changed", serverURI);
+      return null;
+    }
+    if (response.statusCode() / 100 != 2)
+    {
+      throw new IOException(
+          "Server " + serverURI + " responded with status " + response.statusCode());
+    }
+
+    try
+    {
+      store(response.body(), response.headers());
+    } catch (IOException e)
+    {
+      LOGGER.warn("The configuration from {} couldn't be stored", serverURI, e);
+    }
+    return response.body();
+  }
+
+  private synchronized void store(String conf, HttpHeaders headers) throws IOException
+  {
+    Properties props = new Properties();
+    props.setProperty(PROP_SERVER, serverURI);
+    props.setProperty(PROP_USER, user);
+    headers.firstValue("ETag").ifPresent(etag -> props.setProperty(PROP_ETAG, etag));
+    headers.firstValue("Last-Modified")
+        .ifPresent(lastModified -> props.setProperty(PROP_LAST_MODIFIED, lastModified));
+
+    Path tmpConf = Files.createTempFile(cacheDir.toPath(), CACHE_CONF, ".tmp");
+    Path tmpProps = Files.createTempFile(cacheDir.toPath(), CACHE_PROPERTIES, ".tmp");
+    try
+    {
+      Files.writeString(tmpConf, conf, StandardCharsets.UTF_8);
+      try (OutputStream out = Files.newOutputStream(tmpProps))
+      {
+        props.store(out, "Last response of the configuration server");
+      }
+      move(tmpConf, new File(cacheDir, CACHE_CONF).toPath());
+      move(tmpProps, new File(cacheDir, CACHE_PROPERTIES).toPath());
+    } finally
+    {
+      Files.deleteIfExists(tmpConf);
+      Files.deleteIfExists(tmpProps);
+    }
+  }
+
+  private static void move(Path source, Path target) throws IOException
+  {
+    try
+    {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e)
+    {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Reads the properties of the stored response.
+   *
+   * @return The properties or null, if there is no stored response of this server for this user.
+   */
+  private Properties readProperties()
+  {
+    File file = new File(cacheDir, CACHE_PROPERTIES);
+    if (!file.isFile())
+    {
+      return null;
+    }
+    Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(file.toPath()))
+    {
+      props.load(in);
+    } catch (IOException e)
+    {
+      LOGGER.debug("", e);
+      return null;
+    }
+    if (!Objects.equals(serverURI, props.getProperty(PROP_SERVER))
+        || !Objects.equals(user, props.getProperty(PROP_USER)))
+    {
+      return null;
+    }
+    return props;
+  }
+}
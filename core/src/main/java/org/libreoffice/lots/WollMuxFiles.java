@@ -34,22 +34,18 @@ import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URL;
 import java.net.UnknownHostException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
 import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Enumeration;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
@@ -82,8 +78,10 @@ import org.libreoffice.ext.unohelper.util.UnoComponent;
 import org.libreoffice.ext.unohelper.util.UnoConfiguration;
 import org.libreoffice.ext.unohelper.util.UnoProperty;
 import org.libreoffice.ext.unohelper.util.UnoService;
+import org.libreoffice.lots.config.ConfigSnapshot;
 import org.libreoffice.lots.config.ConfigThingy;
 import org.libreoffice.lots.config.NodeNotFoundException;
+import org.libreoffice.lots.db.Datasources;
 import org.libreoffice.lots.util.L;
 import org.libreoffice.lots.util.Utils;
 
@@ -99,6 +97,23 @@ public class WollMuxFiles
 
   private static final String WOLLMUX_CONF_PATH = "WOLLMUX_CONF_PATH";
 
+  /**
+   * Name of the binary snapshot of the configuration in {@link #getWollMuxDir()}.
+   */
+  private static final String CONF_SNAPSHOT = "lots.conf.snapshot";
+
+  /**
+   * Key of the setting in the local configuration, how many milliseconds the start waits for the
+   * revalidation of a stored CONF_SERVER configuration. See {@link #revalidate(ConfServerClient,
+   * String, long)}.
+   */
+  private static final String CONF_REVALIDATION_WAIT = "CONF_REVALIDATION_WAIT";
+
+  /**
+   * Default of {@link #CONF_REVALIDATION_WAIT}.
+   */
+  private static final long DEFAULT_CONF_REVALIDATION_WAIT = 1000;
+
   private static boolean debugMode = false;
 
   /**
@@ -122,7 +137,7 @@ public class WollMuxFiles
   /**
    * The configuration.
    */
-  private static ConfigThingy wollmuxConf;
+  private static volatile ConfigThingy wollmuxConf;
 
   /**
    * The .wollmux folder in user space.
@@ -176,29 +191,47 @@ public class WollMuxFiles
    */
   protected static ConfigThingy parseWollMuxConf(File wollMuxConfigFile)
   {
-    wollmuxConf = new ConfigThingy("");
+    return parseWollMuxConf(wollMuxConfigFile, getWollMuxDir());
+  }
+
+  /**
+   * Load a configuration.
+   *
+   * @param wollMuxConfigFile
+   *          The configuration file.
+   * @param cacheDir
+   *          The directory of the configuration snapshot and the stored CONF_SERVER
+   *          configuration.
+   * @return The configuraiton.
+   */
+  static ConfigThingy parseWollMuxConf(File wollMuxConfigFile, File cacheDir)
+  {
+    ConfigThingy conf = new ConfigThingy("");
 
     if (wollMuxConfigFile != null && wollMuxConfigFile.exists() && wollMuxConfigFile.isFile())
     {
       try
       {
-        wollmuxConf = new ConfigThingy("", wollMuxConfigFile.toURI().toURL());
-	String serverURI = wollmuxConf.getString("CONF_SERVER", null);
+        conf = ConfigSnapshot.parse("", wollMuxConfigFile.toURI().toURL(),
+            new File(cacheDir, CONF_SNAPSHOT));
+        String serverURI = conf.getString("CONF_SERVER", null);
         if (serverURI != null)
         {
-          String user = wollmuxConf.getString("USERNAME", System.getProperty("user.name"));
-          HttpClient client = HttpClient.newHttpClient();
-          HttpRequest request = HttpRequest.newBuilder().uri(URI.create(serverURI))
-              .header("Content-Type", "application/json")
-              .POST(BodyPublishers.ofString(("{ \"username\":\"" + user + "\"}")))
-              .timeout(Duration.ofSeconds(5)).build();
-
-          HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
-
-          wollmuxConf = new ConfigThingy("", response.body());
+          String user = conf.getString("USERNAME", System.getProperty("user.name"));
+          ConfServerClient client = new ConfServerClient(cacheDir, serverURI, user);
+          String cachedConf = client.getCachedConf();
+          if (cachedConf == null)
+          {
+            conf = new ConfigThingy("", client.fetch());
+          } else
+          {
+            conf = new ConfigThingy("",
+                revalidate(client, cachedConf, getRevalidationWait(conf)));
+          }
         }
       } catch (HttpTimeoutException ex) {
-        LOGGER.error("Serverrespond takes more than 5 seconds", ex);
+        LOGGER.error("CONF_SERVER didn't answer within {} seconds",
+            ConfServerClient.DEFAULT_TIMEOUT.getSeconds(), ex);
       } catch (Exception e)
       {
         LOGGER.error("", e);
@@ -208,7 +241,75 @@ public class WollMuxFiles
       LOGGER.info(WOLLMUX_NOCONF);
     }
 
-    return wollmuxConf;
+    conf.enableQueryIndex();
+    wollmuxConf = conf;
+    return conf;
+  }
+
+  /**
+   * Get the setting {@link #CONF_REVALIDATION_WAIT} of the local configuration.
+   *
+   * @param conf
+   *          The local configuration.
+   * @return The time in milliseconds, {@link #DEFAULT_CONF_REVALIDATION_WAIT} if it isn't set or
+   *         invalid.
+   */
+  private static long getRevalidationWait(ConfigThingy conf)
+  {
+    String wait = conf.getString(CONF_REVALIDATION_WAIT, null);
+    if (wait != null)
+    {
+      try
+      {
+        long millis = Long.parseLong(wait);
+        if (millis >= 0)
+        {
+          return millis;
+        }
+      } catch (NumberFormatException e)
+      {
+        LOGGER.trace("", e);
+      }
+      LOGGER.error("{} has to be a number of milliseconds: {}", CONF_REVALIDATION_WAIT, wait);
+    }
+    return DEFAULT_CONF_REVALIDATION_WAIT;
+  }
+
+  /**
+   * Asks the CONF_SERVER whether the stored configuration is still up to date. The start blocks
+   * until the server answers, but at most for the given time. Afterwards the stored configuration
+   * is used.
+   *
+   * The configuration is never replaced while the session is running, because the subsystems read
+   * it only once. A newer configuration received after the wait is stored by the client and used at
+   * the next start. So the setting CONF_REVALIDATION_WAIT of the local lots.conf trades the start
+   * time against using an outdated configuration for a session. With "0" the stored configuration
+   * is always used at once.
+   *
+   * @param client
+   *          The client of the CONF_SERVER.
+   * @param cachedConf
+   *          The stored configuration.
+   * @param wait
+   *          The time in milliseconds to wait for the answer.
+   * @return The configuration to use.
+   */
+  private static String revalidate(ConfServerClient client, String cachedConf, long wait)
+  {
+    try
+    {
+      return client.revalidate().get(wait, TimeUnit.MILLISECONDS).orElse(cachedConf);
+    } catch (TimeoutException e)
+    {
+      LOGGER.info("CONF_SERVER didn't answer in time, the stored configuration is used");
+    } catch (ExecutionException e)
+    {
+      LOGGER.error("", e);
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    return cachedConf;
   }
 
   /**
@@ -368,7 +469,7 @@ public class WollMuxFiles
   public static ConfigThingy getWollmuxConf()
   {
     if (wollmuxConf == null)
-      wollmuxConf = parseWollMuxConf(getWollMuxConfFile());
+      parseWollMuxConf(getWollMuxConfFile());
 
     return wollmuxConf;
   }
@@ -556,6 +657,10 @@ public class WollMuxFiles
       out.write(getWollmuxConf().stringRepresentation());
       out.write("===================== END lots.conf ==================\n");
 
+      out.write("===================== START datasource caches ==================\n");
+      Datasources.dumpCacheStatistics(out);
+      out.write("===================== END datasource caches ==================\n");
+
       out.write("===================== START losCacheFile ==================\n");
       out.flush();
       copyFile(getLosCacheFile(), outStream);
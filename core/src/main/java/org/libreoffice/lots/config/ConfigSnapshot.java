@@ -0,0 +1,460 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.config;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A binary snapshot of a parsed configuration including all its included files.
+ *
+ * The snapshot contains a description of every parsed file (URL, modification time, size and
+ * SHA-256 hash), a table of all distinct node names and the tree as two int arrays in pre-order:
+ * the index of the name of each node in the string table and the number of its children. The
+ * tree part is read from a memory mapped file.
+ *
+ * A snapshot is only used if none of its files has changed. Otherwise the configuration is parsed
+ * and a new snapshot is written. Modification time, size and hash of a file describe the content
+ * which was parsed. The hash of a file is only computed, if its modification time or size has
+ * changed. If only the modification time has changed, it's updated in the snapshot.
+ *
+ * Files which aren't accessed by a file URL (e.g. http) have no modification time. They are read
+ * and hashed on each check, so only the parsing is saved for them.
+ */
+public final class ConfigSnapshot
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigSnapshot.class);
+
+  /**
+   * "LOTS"
+   */
+  private static final int MAGIC = 0x4C4F5453;
+
+  /**
+   * Has to be increased if the format or the parser changes.
+   */
+  private static final int VERSION = 1;
+
+  private ConfigSnapshot()
+  {
+    // nothing to initialize
+  }
+
+  /**
+   * Returns the configuration from {@code url}. If {@code snapshotFile} is an up to date snapshot of
+   * this configuration, the configuration is loaded from the snapshot. Otherwise the configuration
+   * is parsed and the snapshot is written.
+   *
+   * @param name
+   *          The name of the root of the ConfigThingy tree.
+   * @param url
+   *          The URL of the configuration.
+   * @param snapshotFile
+   *          The file of the snapshot.
+   * @return The configuration.
+   * @throws IOException
+   *           if loading data from url (or an included URL) fails.
+   * @throws SyntaxErrorException
+   *           if a syntactic error is found when parsing the data from url.
+   */
+  public static ConfigThingy parse(String name, URL url, File snapshotFile)
+      throws IOException, SyntaxErrorException
+  {
+    ConfigThingy conf = load(name, url, snapshotFile);
+    if (conf != null)
+    {
+      return conf;
+    }
+
+    List<ConfigSource> sources = new ArrayList<>();
+    conf = new ConfigThingy(name);
+    conf.childrenFromSource(ConfigSource.read(url), sources);
+    try
+    {
+      write(snapshotFile, url, conf, sources);
+    } catch (IOException e)
+    {
+      LOGGER.warn("The configuration snapshot {} couldn't be written", snapshotFile, e);
+    }
+    return conf;
+  }
+
+  /**
+   * Loads the configuration from {@code snapshotFile}.
+   *
+   * @param name
+   *          The name of the root of the ConfigThingy tree.
+   * @param url
+   *          The URL of the configuration.
+   * @param snapshotFile
+   *          The file of the snapshot.
+   * @return The configuration or null, if there is no snapshot of the configuration at {@code url}
+   *         or a file of the configuration has changed.
+   */
+  public static ConfigThingy load(String name, URL url, File snapshotFile)
+  {
+    if (!snapshotFile.isFile())
+    {
+      return null;
+    }
+
+    ConfigThingy conf;
+    Map<Long, Long> touched = new HashMap<>();
+    try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ))
+    {
+      ByteBuffer start = ByteBuffer.allocate(3 * Integer.BYTES);
+      readFully(channel, start, 0);
+      if (start.getInt() != MAGIC || start.getInt() != VERSION)
+      {
+        LOGGER.debug("{} is no configuration snapshot of version {}", snapshotFile, VERSION);
+        return null;
+      }
+
+      int headerLength = start.getInt();
+      ByteBuffer header = ByteBuffer.allocate(headerLength);
+      readFully(channel, header, start.capacity());
+      if (!url.toString().equals(getString(header))
+          || !isUpToDate(header, start.capacity(), touched))
+      {
+        return null;
+      }
+
+      long treeStart = (long) start.capacity() + headerLength;
+      MappedByteBuffer tree = channel.map(FileChannel.MapMode.READ_ONLY, treeStart,
+          channel.size() - treeStart);
+      conf = readTree(name, tree);
+    } catch (IOException | RuntimeException e)
+    {
+      LOGGER.debug("The configuration snapshot {} can't be used", snapshotFile, e);
+      return null;
+    }
+
+    updateModificationTimes(snapshotFile, touched);
+    return conf;
+  }
+
+  /**
+   * Writes new modification times of files, whose content hasn't changed, into the snapshot.
+   *
+   * @param touched
+   *          Mapping from the position of a modification time in the snapshot to the new value.
+   */
+  private static void updateModificationTimes(File snapshotFile, Map<Long, Long> touched)
+  {
+    if (touched.isEmpty())
+    {
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.WRITE))
+    {
+      ByteBuffer value = ByteBuffer.allocate(Long.BYTES);
+      for (Map.Entry<Long, Long> entry : touched.entrySet())
+      {
+        value.clear();
+        value.putLong(entry.getValue()).flip();
+        while (value.hasRemaining())
+        {
+          channel.write(value, entry.getKey() + value.position());
+        }
+      }
+    } catch (IOException e)
+    {
+      LOGGER.debug("The configuration snapshot {} can't be updated", snapshotFile, e);
+    }
+  }
+
+  /**
+   * Writes a snapshot of {@code conf} to {@code snapshotFile}. The file is replaced atomically.
+   *
+   * @param url
+   *          The URL from which {@code conf} was parsed.
+   * @param sources
+   *          All files which were parsed.
+   * @throws IOException
+   *           The snapshot can't be written.
+   */
+  static void write(File snapshotFile, URL url, ConfigThingy conf,
+      Collection<ConfigSource> sources) throws IOException
+  {
+    ByteBuffer header = writeHeader(url, sources);
+
+    Map<String, Integer> stringIds = new HashMap<>();
+    List<String> strings = new ArrayList<>();
+    IntList names = new IntList();
+    IntList childCounts = new IntList();
+    flatten(conf, stringIds, strings, names, childCounts);
+
+    Path target = snapshotFile.toPath();
+    Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), snapshotFile.getName(),
+        ".tmp");
+    try
+    {
+      try (OutputStream os = Files.newOutputStream(tmp);
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os)))
+      {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(header.remaining());
+        out.write(header.array(), 0, header.remaining());
+
+        out.writeInt(strings.size());
+        for (String s : strings)
+        {
+          byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+        out.writeInt(names.size());
+        for (int i = 0; i < names.size(); ++i)
+        {
+          out.writeInt(names.get(i));
+        }
+        for (int i = 0; i < childCounts.size(); ++i)
+        {
+          out.writeInt(childCounts.get(i));
+        }
+      }
+
+      try
+      {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e)
+      {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally
+    {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static ByteBuffer writeHeader(URL url, Collection<ConfigSource> sources)
+  {
+    List<byte[]> strings = new ArrayList<>();
+    int length = Integer.BYTES;
+    byte[] urlBytes = url.toString().getBytes(StandardCharsets.UTF_8);
+    length += Integer.BYTES + urlBytes.length;
+    for (ConfigSource source : sources)
+    {
+      byte[] bytes = source.getUrl().toString().getBytes(StandardCharsets.UTF_8);
+      strings.add(bytes);
+      length += Integer.BYTES + bytes.length + 2 * Long.BYTES + Integer.BYTES
+          + source.getHash().length;
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(length);
+    header.putInt(urlBytes.length).put(urlBytes);
+    header.putInt(sources.size());
+    int i = 0;
+    for (ConfigSource source : sources)
+    {
+      byte[] bytes = strings.get(i++);
+      header.putInt(bytes.length).put(bytes);
+      header.putLong(source.getLastModified());
+      header.putLong(source.getLength());
+      header.putInt(source.getHash().length).put(source.getHash());
+    }
+    header.flip();
+    return header;
+  }
+
+  /**
+   * Checks whether the files described in {@code header} haven't changed. The hash of a file is only
+   * computed, if its modification time or size differ.
+   *
+   * @param offset
+   *          The position of the header in the snapshot.
+   * @param touched
+   *          Collects the positions and new values of the modification times of files, which have
+   *          been touched without changing their content.
+   */
+  private static boolean isUpToDate(ByteBuffer header, long offset, Map<Long, Long> touched)
+      throws IOException
+  {
+    int count = header.getInt();
+    for (int i = 0; i < count; ++i)
+    {
+      URL source = new URL(getString(header));
+      long position = offset + header.position();
+      long lastModified = header.getLong();
+      long length = header.getLong();
+      byte[] hash = new byte[header.getInt()];
+      header.get(hash);
+
+      File file = ConfigSource.toFile(source);
+      if (file != null)
+      {
+        if (!file.isFile())
+        {
+          LOGGER.debug("{} doesn't exist anymore", file);
+          return false;
+        }
+        if (file.lastModified() == lastModified && file.length() == length)
+        {
+          continue;
+        }
+      }
+      ConfigSource current = ConfigSource.read(source);
+      if (!MessageDigest.isEqual(hash, current.getHash()))
+      {
+        LOGGER.debug("{} has changed", source);
+        return false;
+      }
+      if (file != null)
+      {
+        touched.put(position, current.getLastModified());
+      }
+    }
+    return true;
+  }
+
+  private static ConfigThingy readTree(String name, ByteBuffer tree)
+  {
+    String[] strings = new String[tree.getInt()];
+    for (int i = 0; i < strings.length; ++i)
+    {
+      strings[i] = getString(tree);
+    }
+
+    int count = tree.getInt();
+    int namesStart = tree.position();
+    int childCountsStart = namesStart + count * Integer.BYTES;
+    if (count < 1 || tree.limit() != childCountsStart + count * Integer.BYTES)
+    {
+      throw new BufferUnderflowException();
+    }
+
+    ConfigThingy root = new ConfigThingy(name);
+    ConfigThingy[] parents = new ConfigThingy[count];
+    int[] remaining = new int[count];
+    int top = 0;
+    parents[0] = root;
+    remaining[0] = tree.getInt(childCountsStart);
+    for (int i = 1; i < count; ++i)
+    {
+      while (remaining[top] == 0)
+      {
+        --top;
+      }
+      ConfigThingy node = new ConfigThingy(strings[tree.getInt(namesStart + i * Integer.BYTES)]);
+      parents[top].addChild(node);
+      --remaining[top];
+      ++top;
+      parents[top] = node;
+      remaining[top] = tree.getInt(childCountsStart + i * Integer.BYTES);
+    }
+    return root;
+  }
+
+  private static void flatten(ConfigThingy conf, Map<String, Integer> stringIds,
+      List<String> strings, IntList names, IntList childCounts)
+  {
+    Integer id = stringIds.get(conf.getName());
+    if (id == null)
+    {
+      id = strings.size();
+      strings.add(conf.getName());
+      stringIds.put(conf.getName(), id);
+    }
+    names.add(id);
+    childCounts.add(conf.count());
+    for (ConfigThingy child : conf)
+    {
+      flatten(child, stringIds, strings, names, childCounts);
+    }
+  }
+
+  private static String getString(ByteBuffer buffer)
+  {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException
+  {
+    while (buffer.hasRemaining())
+    {
+      if (channel.read(buffer, position + buffer.position()) < 0)
+      {
+        throw new IOException("Unexpected end of configuration snapshot");
+      }
+    }
+    buffer.flip();
+  }
+
+  /**
+   * A growing list of primitive ints.
+   */
+  private static class IntList
+  {
+    private int[] values = new int[1024];
+    private int size = 0;
+
+    void add(int value)
+    {
+      if (size == values.length)
+      {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int get(int index)
+    {
+      return values[index];
+    }
+
+    int size()
+    {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A file of a configuration in the state in which it was read. Modification time and size are
+ * determined before the file is read and the hash is computed from the bytes which are parsed.
+ * So a change of the file while it's read is detected by the next check of the snapshot.
+ */
+final class ConfigSource
+{
+  private static final String HASH_ALGORITHM = "SHA-256";
+
+  private final URL url;
+
+  /**
+   * The modification time or -1 if {@link #url} isn't a file.
+   */
+  private final long lastModified;
+
+  /**
+   * The size or -1 if {@link #url} isn't a file.
+   */
+  private final long length;
+
+  private final byte[] hash;
+
+  /**
+   * The content until it's passed to the parser by {@link #openReader()}.
+   */
+  private byte[] content;
+
+  private ConfigSource(URL url, long lastModified, long length, byte[] content)
+  {
+    this.url = url;
+    this.lastModified = lastModified;
+    this.length = length;
+    this.content = content;
+    this.hash = newDigest().digest(content);
+  }
+
+  /**
+   * Reads the file at {@code url}.
+   *
+   * @throws IOException
+   *           The file can't be read.
+   */
+  static ConfigSource read(URL url) throws IOException
+  {
+    long lastModified = -1;
+    long length = -1;
+    File file = toFile(url);
+    if (file != null)
+    {
+      lastModified = file.lastModified();
+      length = file.length();
+    }
+    try (InputStream in = url.openStream())
+    {
+      return new ConfigSource(url, lastModified, length, in.readAllBytes());
+    }
+  }
+
+  /**
+   * Returns a reader of the content. The content is released afterwards, so this method can only
+   * be called once.
+   *
+   * @throws UnsupportedEncodingException
+   *           {@link ConfigThingy#CHARSET} isn't supported.
+   */
+  Reader openReader() throws UnsupportedEncodingException
+  {
+    if (content == null)
+    {
+      throw new IllegalStateException("The content of " + url + " has already been read");
+    }
+    Reader reader = new InputStreamReader(new ByteArrayInputStream(content), ConfigThingy.CHARSET);
+    content = null;
+    return reader;
+  }
+
+  URL getUrl()
+  {
+    return url;
+  }
+
+  long getLastModified()
+  {
+    return lastModified;
+  }
+
+  long getLength()
+  {
+    return length;
+  }
+
+  byte[] getHash()
+  {
+    return hash;
+  }
+
+  /**
+   * Returns the file of {@code url} or null, if it isn't a file URL.
+   */
+  static File toFile(URL url)
+  {
+    if ("file".equals(url.getProtocol()))
+    {
+      try
+      {
+        return new File(url.toURI());
+      } catch (URISyntaxException | IllegalArgumentException e)
+      {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  private static MessageDigest newDigest()
+  {
+    try
+    {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e)
+    {
+      // every Java platform has to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -22,23 +22,29 @@
  */
 package org.libreoffice.lots.config;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.CharBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -94,49 +100,85 @@ public class ConfigThingy implements Iterable<ConfigThingy>
 
   private static final int ST_OTHER = 2;
 
+  /**
+   * Files included deeper than this aren't loaded in advance, but when the parser reaches them.
+   * This stops loading cyclic includes in the background.
+   */
+  private static final int MAX_INCLUDE_PREFETCH_DEPTH = 16;
+
+  /**
+   * Loads and tokenizes included files in parallel. The threads terminate if there is nothing to
+   * load.
+   */
+  private static final ThreadPoolExecutor INCLUDE_LOADER = new ThreadPoolExecutor(8, 8, 10,
+      TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "ConfigThingy-include-loader");
+        t.setDaemon(true);
+        return t;
+      });
+
+  static
+  {
+    INCLUDE_LOADER.allowCoreThreadTimeOut(true);
+  }
+
   /** The child nodes. */
   private List<ConfigThingy> children;
 
   /** The name of the node. For leaves, this is the (string) value of the node. */
   private String name;
 
-  /** Fallback names (to support old German config items) */
-  Map<String, String> oldConfigItems = new HashMap<String, String>() {{
-      put("ColumnTransformation", "Spaltenumsetzung");
-      put("LibreOfficeSettings", "OOoEinstellungen");
-      put("Functions", "Funktionen");
-      put("PrintFunctions", "Druckfunktionen");
-      put("MailSettings", "EMailEinstellungen");
-      put("DataSources", "Datenquellen");
-      put("DataSource", "Datenquelle");
-      put("PersonalSenderListInit", "PersoenlicheAbsenderlisteInitialisierung");
-      put("SearchStrategy", "Suchstrategie");
-      put("TextBlocks", "Textbausteine");
-      put("Warnings", "Warnungen");
-      put("TextFragments", "Textfragmente");
-      put("KeyboardShortcuts", "Tastenkuerzel");
-      put("DefaultElements", "Standardelemente");
-      put("RecipientSelection", "Empfaengerauswahl");
-      put("InputFields", "Eingabefelder");
-      put("SenderDataColumnTransformation", "AbsenderdatenSpaltenumsetzung");
-      put("ExternalApplications", "ExterneAnwendungen");
-      put("ContentBasedDirectives", "SachleitendeVerfuegungen");
-      put("FunctionDialogs", "Funktionsdialoge");
-      put("Search", "Suche");
-      put("SearchResult", "Suchergebnis");
-      put("Preview", "Vorschau");
-      put("BottomArea", "Fussbereich");
-      put("Menubar", "Menueleiste");
-      put("Toolbars", "Symbolleisten");
-      put("LetterheadToolbar", "Briefkopfleiste");
-      put("Elemente", "Elements");
-      put("Data", "Daten");
-      put("DocumentActions", "Dokumentaktionen");
-      put("Columns", "Spalten");
-      put("DB_COLUMN", "DB_SPALTE");
-      put("COPY_NAME", "ABDRUCK_NAME");
-      put("OVERRIDE_FRAG_DB_COLUMN", "OVERRIDE_FRAG_DB_SPALTE");
-  }};
+  /** The name index of the tree this node belongs to, see {@link #enableQueryIndex()}. */
+  private QueryIndex queryIndex;
+
+  /** Pre-order position of this node in {@link #queryIndex}. */
+  private int indexStart;
+
+  /** Pre-order position behind the last descendant of this node in {@link #queryIndex}. */
+  private int indexEnd;
+
+  /** Depth of this node in {@link #queryIndex}. */
+  private int indexDepth;
+
+  /**
+   * Fallback names (to support old German config items). The map is shared by all nodes, so that
+   * parsing doesn't have to create it for every node.
+   */
+  private static final Map<String, String> OLD_CONFIG_ITEMS = Map.ofEntries(
+      Map.entry("ColumnTransformation", "Spaltenumsetzung"),
+      Map.entry("LibreOfficeSettings", "OOoEinstellungen"),
+      Map.entry("Functions", "Funktionen"),
+      Map.entry("PrintFunctions", "Druckfunktionen"),
+      Map.entry("MailSettings", "EMailEinstellungen"),
+      Map.entry("DataSources", "Datenquellen"),
+      Map.entry("DataSource", "Datenquelle"),
+      Map.entry("PersonalSenderListInit", "PersoenlicheAbsenderlisteInitialisierung"),
+      Map.entry("SearchStrategy", "Suchstrategie"),
+      Map.entry("TextBlocks", "Textbausteine"),
+      Map.entry("Warnings", "Warnungen"),
+      Map.entry("TextFragments", "Textfragmente"),
+      Map.entry("KeyboardShortcuts", "Tastenkuerzel"),
+      Map.entry("DefaultElements", "Standardelemente"),
+      Map.entry("RecipientSelection", "Empfaengerauswahl"),
+      Map.entry("InputFields", "Eingabefelder"),
+      Map.entry("SenderDataColumnTransformation", "AbsenderdatenSpaltenumsetzung"),
+      Map.entry("ExternalApplications", "ExterneAnwendungen"),
+      Map.entry("ContentBasedDirectives", "SachleitendeVerfuegungen"),
+      Map.entry("FunctionDialogs", "Funktionsdialoge"),
+      Map.entry("Search", "Suche"),
+      Map.entry("SearchResult", "Suchergebnis"),
+      Map.entry("Preview", "Vorschau"),
+      Map.entry("BottomArea", "Fussbereich"),
+      Map.entry("Menubar", "Menueleiste"),
+      Map.entry("Toolbars", "Symbolleisten"),
+      Map.entry("LetterheadToolbar", "Briefkopfleiste"),
+      Map.entry("Elemente", "Elements"),
+      Map.entry("Data", "Daten"),
+      Map.entry("DocumentActions", "Dokumentaktionen"),
+      Map.entry("Columns", "Spalten"),
+      Map.entry("DB_COLUMN", "DB_SPALTE"),
+      Map.entry("COPY_NAME", "ABDRUCK_NAME"),
+      Map.entry("OVERRIDE_FRAG_DB_COLUMN", "OVERRIDE_FRAG_DB_SPALTE"));
 
 
   /**
@@ -239,6 +281,9 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    * Parses the data from {@code read} in the context of {@code url}
    * and appends the corresponding nodes as children to {@code this}.
    *
+   * Included files are loaded and tokenized in parallel as soon as their %include has been read,
+   * but they are inserted in the order of the %includes.
+   *
    * @throws IOException
    *           if loading data from {@code url} (or an included URL) fails.
    * @throws SyntaxErrorException
@@ -247,12 +292,68 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   protected void childrenFromUrl(URL url, Reader read) throws IOException,
       SyntaxErrorException
   {
+    childrenFromUrl(url, null, read, null);
+  }
+
+  /**
+   * Like {@link #childrenFromUrl(URL, Reader)}, but {@code source} and all included files are
+   * added to {@code sources} in the order in which they are parsed.
+   *
+   * @param source
+   *          The file to parse.
+   * @param sources
+   *          Collection for the parsed files.
+   */
+  void childrenFromSource(ConfigSource source, Collection<ConfigSource> sources)
+      throws IOException, SyntaxErrorException
+  {
+    childrenFromUrl(source.getUrl(), source, source.openReader(), sources);
+  }
+
+  private void childrenFromUrl(URL url, ConfigSource source, Reader read,
+      Collection<ConfigSource> sources) throws IOException, SyntaxErrorException
+  {
+    List<StringContentToken> tokens;
+    try
+    {
+      tokens = tokenize(url, read);
+    }
+    finally
+    {
+      try
+      {
+        read.close();
+      }
+      catch (Exception x)
+      {
+        LOGGER.trace("", x);
+      }
+    }
+    childrenFromTokens(new TokenizedFile(url, source, tokens, loadIncludes(url, tokens, 0)),
+        sources);
+  }
+
+  /**
+   * Appends the nodes described by the tokens of {@code file} as children to {@code this}.
+   *
+   * @throws IOException
+   *           if loading an included URL fails.
+   * @throws SyntaxErrorException
+   *           if a syntactic error is found.
+   */
+  private void childrenFromTokens(TokenizedFile file, Collection<ConfigSource> sources)
+      throws IOException, SyntaxErrorException
+  {
+    if (sources != null)
+    {
+      sources.add(file.source);
+    }
+
     try
     {
       Deque<ConfigThingy> stack = new ArrayDeque<>();
       stack.push(this);
-      List<StringContentToken> tokens = tokenize(url, read);
-      Iterator<StringContentToken> liter = tokens.iterator();
+      Iterator<StringContentToken> liter = file.tokens.iterator();
       Token token1;
       Token token2;
       do
@@ -263,13 +364,12 @@ public class ConfigThingy implements Iterable<ConfigThingy>
         {
           case INCLUDE:
             token2 = liter.next();
-            if (token2.type() == TokenType.STRING && !token2.contentString().isEmpty())
+            if (isIncludeURL(token2))
             {
               try
               {
-                URL includeURL = new URL(url, urlEncode(token2.contentString()));
-                stack.peek().childrenFromUrl(includeURL,
-                  new InputStreamReader(includeURL.openStream(), CHARSET));
+                TokenizedFile included = file.nextInclude();
+                stack.peek().childrenFromTokens(included, sources);
               }
               catch (IOException iox)
               {
@@ -285,7 +385,6 @@ public class ConfigThingy implements Iterable<ConfigThingy>
                 + token2.line() + " at char " + token2.position());
             }
             break;
-
           case KEY:
             token2 = liter.next();
             switch (token2.type())
@@ -346,15 +445,54 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     }
     finally
     {
-      try
-      {
-        read.close();
-      }
-      catch (Exception x)
+      file.cancelIncludes();
+    }
+  }
+
+  /**
+   * Returns true if {@code token} is a valid argument of %include.
+   */
+  private static boolean isIncludeURL(Token token)
+  {
+    return token.type() == TokenType.STRING && !token.contentString().isEmpty();
+  }
+
+  /**
+   * Starts loading the files included by {@code tokens} in the order of the %includes.
+   *
+   * @param url
+   *          The URL of the file from which {@code tokens} were read.
+   * @param depth
+   *          The include depth of this file. Deeper files are only loaded when they are needed.
+   */
+  private static Deque<FutureTask<TokenizedFile>> loadIncludes(URL url,
+      List<StringContentToken> tokens, int depth)
+  {
+    Deque<FutureTask<TokenizedFile>> includes = new ArrayDeque<>();
+    for (int i = 0; i < tokens.size() - 1; ++i)
+    {
+      if (tokens.get(i).type() == TokenType.INCLUDE && isIncludeURL(tokens.get(i + 1)))
       {
-        LOGGER.trace("", x);
+        String include = tokens.get(i + 1).contentString();
+        FutureTask<TokenizedFile> task = new FutureTask<>(() -> {
+          URL includeURL = new URL(url, urlEncode(include));
+          ConfigSource source = ConfigSource.read(includeURL);
+          List<StringContentToken> includedTokens;
+          try (Reader read = source.openReader())
+          {
+            includedTokens = tokenize(includeURL, read);
+          }
+          return new TokenizedFile(includeURL, source, includedTokens,
+              loadIncludes(includeURL, includedTokens, depth + 1));
+        });
+        if (depth < MAX_INCLUDE_PREFETCH_DEPTH)
+        {
+          INCLUDE_LOADER.execute(task);
+        }
+        includes.add(task);
       }
     }
+    return includes;
   }
 
   /**
@@ -404,6 +542,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public void addChild(ConfigThingy child)
   {
     children.add(child);
+    modified();
   }
 
   /**
@@ -433,7 +572,109 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   @Override
   public Iterator<ConfigThingy> iterator()
   {
-    return children.iterator();
+    Iterator<ConfigThingy> iter = children.iterator();
+    if (queryIndex == null)
+    {
+      return iter;
+    }
+
+    return new Iterator<ConfigThingy>()
+    {
+      @Override
+      public boolean hasNext()
+      {
+        return iter.hasNext();
+      }
+
+      @Override
+      public ConfigThingy next()
+      {
+        return iter.next();
+      }
+
+      @Override
+      public void remove()
+      {
+        iter.remove();
+        modified();
+      }
+    };
+  }
+
+  /**
+   * Enables a name index for the tree with root {@code this}. The index is built on the next query
+   * and rebuilt after any modification of the tree. Queries on {@code this} and all its descendants
+   * are then answered by the index instead of searching the tree level by level. This should be
+   * used for big trees which are queried often and rarely modified, e.g. the main configuration.
+   */
+  public synchronized void enableQueryIndex()
+  {
+    if (queryIndex == null || queryIndex.getRoot() != this)
+    {
+      queryIndex = new QueryIndex(this);
+    }
+  }
+
+  /**
+   * Returns the index for queries on this node, which is rebuilt if it is outdated, or null.
+   */
+  private QueryIndex getValidQueryIndex()
+  {
+    QueryIndex idx = queryIndex;
+    if (idx != null && !idx.isValid())
+    {
+      ConfigThingy root = idx.getRoot();
+      synchronized (root)
+      {
+        QueryIndex rootIndex = root.queryIndex;
+        if (rootIndex != null && !rootIndex.isValid() && rootIndex.getRoot() == root)
+        {
+          new QueryIndex(root).build();
+        }
+      }
+      idx = queryIndex;
+    }
+    return idx;
+  }
+
+  QueryIndex getQueryIndex()
+  {
+    return queryIndex;
+  }
+
+  void setQueryIndex(QueryIndex queryIndex, int start, int end, int depth)
+  {
+    this.indexStart = start;
+    this.indexEnd = end;
+    this.indexDepth = depth;
+    this.queryIndex = queryIndex;
+  }
+
+  int getIndexStart()
+  {
+    return indexStart;
+  }
+
+  int getIndexEnd()
+  {
+    return indexEnd;
+  }
+
+  int getIndexDepth()
+  {
+    return indexDepth;
+  }
+
+  /**
+   * Invalidates the index of the tree, if this node is indexed.
+   */
+  private void modified()
+  {
+    QueryIndex idx = queryIndex;
+    if (idx != null)
+    {
+      idx.invalidate();
+    }
   }
 
   /**
@@ -505,6 +746,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public void setName(String newName)
   {
     name = newName;
+    modified();
   }
 
   /**
@@ -687,8 +929,8 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     ConfigThingy res = query(name, false, maxlevel, minlevel);
     if (res.count() == 0)
     {
-      if (oldConfigItems.containsKey(name))
-        res = get(oldConfigItems.get(name), maxlevel, minlevel);
+      if (OLD_CONFIG_ITEMS.containsKey(name))
+        res = get(OLD_CONFIG_ITEMS.get(name), maxlevel, minlevel);
       if (res.count() == 0)
         throw new NodeNotFoundException("Knoten " + getName() + " hat keinen Nachfahren '" + name + "'");
     }
@@ -849,20 +1091,30 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   protected ConfigThingy query(String name, boolean getParents, int maxlevel,
       int minlevel)
   {
-    List<ConfigThingy> found = new ArrayList<>();
-    boolean haveMore;
-    int searchlevel = minlevel;
-    do
+    List<ConfigThingy> found = null;
+    QueryIndex idx = getValidQueryIndex();
+    if (idx != null)
     {
-      if (searchlevel > maxlevel) {
-        break;
-      }
-      haveMore = rollcall(this, name, found, -1, searchlevel, getParents);
-      ++searchlevel;
-    } while (found.isEmpty() && haveMore);
+      found = idx.query(this, name, getParents, maxlevel, minlevel);
+    }
+
+    if (found == null)
+    {
+      found = new ArrayList<>();
+      boolean haveMore;
+      int searchlevel = minlevel;
+      do
+      {
+        if (searchlevel > maxlevel) {
+          break;
+        }
+        haveMore = rollcall(this, name, found, -1, searchlevel, getParents);
+        ++searchlevel;
+      } while (found.isEmpty() && haveMore);
+    }
 
-    if (found.isEmpty() && oldConfigItems.containsKey(name)) {
-      ConfigThingy res = query(oldConfigItems.get(name), getParents, maxlevel, minlevel);
+    if (found.isEmpty() && OLD_CONFIG_ITEMS.containsKey(name)) {
+      ConfigThingy res = query(OLD_CONFIG_ITEMS.get(name), getParents, maxlevel, minlevel);
       if (res.count() == 0)
         return new ConfigThingy("<query results>");
     }
@@ -1144,8 +1396,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     OPENPAREN,
     CLOSEPAREN,
     END,
-    INCLUDE,
-    LINECOMMENT;
+    INCLUDE;
   }
 
   /**
@@ -1236,91 +1487,92 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   private static class StringToken extends StringContentToken
   {
     /**
-     * Creates a new StringToken
+     * Creates a new StringToken from the characters {@code buf[start..end)}.
      *
-     * @param tokenData
-     *          a string for which {@link #atStartOf(String)} returns a value greater than 0.
+     * @param end
+     *          the end of the token as returned by {@link #atStartOf(char[], int, int)}, i.e. the
+     *          index behind the closing quote.
+     * @throws IllegalArgumentException
+     *           if the string contains an incomplete or invalid %u escape.
      */
-    public StringToken(String tokenData, URL url, int line, int position)
+    public StringToken(char[] buf, int start, int end, URL url, int line, int position)
     {
       super(url, line, position);
 
-      int len = atStartOf(tokenData);
-      if (len < 2) {
+      if (end - start < 2) {
         throw new IllegalArgumentException("String token expected!");
       }
 
-      char quote = tokenData.charAt(0);
+      char quote = buf[start];
+      int contentStart = start + 1;
+      int contentEnd = end - 1;
 
       /*
-       * Evaluate % escapes, as well as replace quotequote with quote
+       * Fast path: nothing to unescape, so the content can be copied in one go.
        */
-      StringBuilder buffy = new StringBuilder(tokenData.substring(1, len - 1));
-      String quoteStr = Character.toString(quote);
-      int startidx = 0;
-      int idx;
-      while (true)
+      int idx = contentStart;
+      while (idx < contentEnd && buf[idx] != '%' && buf[idx] != quote)
+        ++idx;
+      if (idx == contentEnd)
       {
-        idx = buffy.indexOf("%", startidx);
-        int idx2 = buffy.indexOf(quoteStr, startidx);
-
-        if (idx < 0 && idx2 < 0) {
-          break;
-        }
-
-        String repstr;
-        int replen;
+        content = new String(buf, contentStart, contentEnd - contentStart);
+        return;
+      }
 
-        if (idx < 0 || (idx2 >= 0 && idx2 < idx)) // quotequote
+      /*
+       * Evaluate % escapes, as well as replace quotequote with quote
+       */
+      StringBuilder buffy = new StringBuilder(contentEnd - contentStart);
+      buffy.append(buf, contentStart, idx - contentStart);
+      while (idx < contentEnd)
+      {
+        char ch = buf[idx];
+        if (ch == quote) // quotequote
         {
-          idx = idx2;
-          replen = 2;
-          repstr = quoteStr;
+          buffy.append(quote);
+          idx += 2;
         }
-        else // % escape
+        else if (ch == '%' && idx + 1 < contentEnd)
         {
-          if (idx + 1 >= buffy.length()) {
-            break;
-          }
-
-          // default: replace with the same character, i.e. %
-          repstr = Character.toString(buffy.charAt(idx));
-          replen = 1;
-
-          switch (buffy.charAt(idx + 1))
+          switch (buf[idx + 1])
           {
             case 'n':
-              repstr = "\n";
-              replen = 2;
+              buffy.append('\n');
+              idx += 2;
               break;
             case '%':
-              repstr = "%";
-              replen = 2;
+              buffy.append('%');
+              idx += 2;
               break;
             case 'u':
-              repstr = parseUnicode(buffy, idx + 2);
-              replen = 6;
+              buffy.append(parseUnicode(buf, idx + 2, contentEnd));
+              idx += 6;
               break;
             default:
+              // replace with the same character, i.e. %
+              buffy.append('%');
+              ++idx;
               break;
           }
         }
-        buffy.replace(idx, idx + replen, repstr);
-        startidx = idx + repstr.length();
+        else
+        {
+          buffy.append(ch);
+          ++idx;
+        }
       }
 
       content = buffy.toString();
     }
 
-    private String parseUnicode(StringBuilder str, int idx)
+    private static char parseUnicode(char[] buf, int idx, int end)
     {
-      if (idx + 4 > str.length())
+      if (idx + 4 > end)
         throw new IllegalArgumentException("Incomplete %u escape!");
-      String code = str.substring(idx, idx + 4);
+      String code = new String(buf, idx, 4);
       try
       {
-        char ch = (char) Integer.parseInt(code, 16);
-        return Character.toString(ch);
+        return (char) Integer.parseInt(code, 16);
       }
       catch (NumberFormatException x)
       {
@@ -1336,29 +1588,30 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     }
 
     /**
-     * Returns the length of the longest prefix of str which can be interpreted
+     * Returns the length of the longest prefix of {@code buf[pos..end)} which can be interpreted
      * as a token of this class.
      */
-    public static int atStartOf(String str)
+    public static int atStartOf(char[] buf, int pos, int end)
     {
-      if (str.length() < 2) {
+      if (end - pos < 2) {
         return 0;
       }
-      char quote = str.charAt(0);
+      char quote = buf[pos];
       if (quote != '"' && quote != '\'') {
         return 0;
       }
 
-      int idx = 1;
+      int idx = pos + 1;
       while (true)
       {
-        idx = str.indexOf(quote, idx);
-        if (idx < 0) {
+        while (idx < end && buf[idx] != quote)
+          ++idx;
+        if (idx >= end) {
           return 0;
         }
         ++idx;
-        if (idx >= str.length() || str.charAt(idx) != quote) {
-          return idx;
+        if (idx >= end || buf[idx] != quote) {
+          return idx - pos;
         }
         ++idx;
       }
@@ -1371,24 +1624,12 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   private static class KeyToken extends StringContentToken
   {
     /**
-     * Regex for the identification of valid keys.
-     */
-    private static Pattern p = Pattern.compile("^([a-zA-Z_][a-zA-Z_0-9]*)");
-
-    /**
-     * Creates a new KeyToken
-     *
-     * @param tokenData
-     *          a string for which {@link #atStartOf(String)} returns a value greater than 0.
+     * Creates a new KeyToken from the characters {@code buf[start..end)}.
      */
-    public KeyToken(String tokenData, URL url, int line, int position)
+    public KeyToken(char[] buf, int start, int end, URL url, int line, int position)
     {
       super(url, line, position);
-      Matcher m = p.matcher(tokenData);
-      if (!m.find()) {
-        throw new IllegalArgumentException("Key token expected!");
-      }
-      content = m.group(1);
+      content = new String(buf, start, end - start);
     }
 
     @Override
@@ -1398,16 +1639,23 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     }
 
     /**
-     * Returns the length of the longest prefix of str which can be interpreted
-     * as a token of this class.
+     * Returns the length of the longest prefix of {@code buf[pos..end)} which can be interpreted
+     * as a token of this class, i.e. which matches {@code [a-zA-Z_][a-zA-Z_0-9]*}.
      */
-    public static int atStartOf(String str)
+    public static int atStartOf(char[] buf, int pos, int end)
     {
-      Matcher m = p.matcher(str);
-      if (!m.find()) {
+      if (pos >= end || !isKeyStart(buf[pos])) {
         return 0;
       }
-      return m.end();
+      int idx = pos + 1;
+      while (idx < end && (isKeyStart(buf[idx]) || ('0' <= buf[idx] && buf[idx] <= '9')))
+        ++idx;
+      return idx - pos;
+    }
+
+    private static boolean isKeyStart(char ch)
+    {
+      return ('a' <= ch && ch <= 'z') || ('A' <= ch && ch <= 'Z') || ch == '_';
     }
   }
 
@@ -1429,11 +1677,11 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     }
 
     /**
-     * Returns 1 if {@code str} starts with '(', 0 otherwise.
+     * Returns 1 if {@code buf[pos]} is '(', 0 otherwise.
      */
-    public static int atStartOf(String str)
+    public static int atStartOf(char[] buf, int pos, int end)
     {
-      return str.startsWith("(") ? 1 : 0;
+      return pos < end && buf[pos] == '(' ? 1 : 0;
     }
   }
 
@@ -1455,11 +1703,11 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     }
 
     /**
-     * Returns 1 if {@code str} starts with ')', 0 otherwise.
+     * Returns 1 if {@code buf[pos]} is ')', 0 otherwise.
      */
-    public static int atStartOf(String str)
+    public static int atStartOf(char[] buf, int pos, int end)
     {
-      return str.startsWith(")") ? 1 : 0;
+      return pos < end && buf[pos] == ')' ? 1 : 0;
     }
   }
 
@@ -1483,48 +1731,43 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     }
 
     /**
-     * Returns the length of the longest prefix of str which can be interpreted
+     * Returns the length of the longest prefix of {@code buf[pos..end)} which can be interpreted
      * as a token of this class.
      */
-    public static int atStartOf(String str)
+    public static int atStartOf(char[] buf, int pos, int end)
     {
-      return str.startsWith(INC) ? INC.length() : 0;
+      if (end - pos < INC.length()) {
+        return 0;
+      }
+      for (int i = 0; i < INC.length(); ++i)
+      {
+        if (buf[pos + i] != INC.charAt(i)) {
+          return 0;
+        }
+      }
+      return INC.length();
     }
   }
 
   /**
    * Token for a comment according to WollMux config file syntax.
    * ATTENTION: Tokens of this class are currently not returned by
-   * {@link ConfigThingy#tokenize(URL)}, but discarded.
+   * {@link ConfigThingy#tokenize(URL, Reader)}, but discarded.
+   * Therefore only {@link #atStartOf(char[], int, int)} is used.
    */
-  private static class LineCommentToken extends StringContentToken
+  private static class LineCommentToken
   {
-
-    /**
-     * Creates a new LineCommentToken.
-     *
-     * @param tokenData
-     *          a string whose first character is '#'.
-     */
-    public LineCommentToken(String tokenData, URL url, int line, int position)
-    {
-      super(url, line, position);
-      content = tokenData.substring(1);
-    }
-
-    @Override
-    public TokenType type()
+    private LineCommentToken()
     {
-      return TokenType.LINECOMMENT;
     }
 
     /**
-     * Returns the length of the longest prefix of {@code str}
+     * Returns the length of the longest prefix of {@code buf[pos..end)}
      * which can be interpreted as a token of this class.
      */
-    public static int atStartOf(String str)
+    public static int atStartOf(char[] buf, int pos, int end)
     {
-      return str.startsWith("#") ? str.length() : 0;
+      return pos < end && buf[pos] == '#' ? end - pos : 0;
     }
   }
 
@@ -1546,10 +1789,92 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     }
   }
 
+  /**
+   * The tokens of a file and the files included by it.
+   */
+  private static class TokenizedFile
+  {
+    private final URL url;
+
+    /**
+     * The file as it was read or null if it wasn't read as {@link ConfigSource}.
+     */
+    private final ConfigSource source;
+
+    private final List<StringContentToken> tokens;
+
+    /**
+     * The included files in the order of their %include.
+     */
+    private final Deque<FutureTask<TokenizedFile>> includes;
+
+    public TokenizedFile(URL url, ConfigSource source, List<StringContentToken> tokens,
+        Deque<FutureTask<TokenizedFile>> includes)
+    {
+      this.url = url;
+      this.source = source;
+      this.tokens = tokens;
+      this.includes = includes;
+    }
+
+    /**
+     * Returns the next included file. If it hasn't been loaded yet, it's loaded by the calling
+     * thread.
+     *
+     * @throws IOException
+     *           if loading the file fails.
+     * @throws SyntaxErrorException
+     *           if the file can't be tokenized.
+     */
+    public TokenizedFile nextInclude() throws IOException, SyntaxErrorException
+    {
+      FutureTask<TokenizedFile> task = includes.remove();
+      // does nothing if the task has already been started by the loader
+      task.run();
+      try
+      {
+        return task.get();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Loading of included file interrupted");
+      }
+      catch (ExecutionException e)
+      {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException)
+          throw (IOException) cause;
+        if (cause instanceof SyntaxErrorException)
+          throw (SyntaxErrorException) cause;
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+
+    /**
+     * Cancels loading of the files, which haven't been requested by {@link #nextInclude()}.
+     */
+    public void cancelIncludes()
+    {
+      for (FutureTask<TokenizedFile> task : includes)
+      {
+        task.cancel(false);
+      }
+      includes.clear();
+    }
+  }
+
   /**
    * Splits the data from {@code read} into {@link Tokens}s.
    * As source URL {@code url} is entered in the tokens.
    *
+   * The data is read into a single buffer once and scanned with a cursor, so that neither the
+   * lines nor the remainders of the lines are copied for each token.
+   *
    * @return the list of identified tokens, terminated by at least 7 {@link EndToken}s.
    * @throws IOException
    *           in case something goes wrong when accessing the data from {@code url}.
@@ -1559,85 +1884,144 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   private static List<StringContentToken> tokenize(URL url, Reader read)
       throws IOException, SyntaxErrorException
   {
-    List<StringContentToken> tokens = new ArrayList<>();
-    BufferedReader in = new BufferedReader(read);
-    String line;
+    CharBuffer data = readFully(read);
+    char[] buf = data.array();
+    int len = data.limit();
 
+    List<StringContentToken> tokens = new ArrayList<>(len / 8 + 8);
     int lineNo = 0;
-    Pattern whitespace = Pattern.compile("^(\\p{Space}|\\u00A0|,|;|\\uFEFF)+");
-    while (null != (line = in.readLine()))
+    int lineStart = 0;
+    while (lineStart < len)
     {
       ++lineNo;
-      int pos = 0;
+      int lineEnd = lineStart;
+      while (lineEnd < len && buf[lineEnd] != '\n' && buf[lineEnd] != '\r')
+        ++lineEnd;
 
-      while (line.length() > 0)
+      tokenizeLine(url, buf, lineStart, lineEnd, lineNo, tokens);
+
+      lineStart = lineEnd + 1;
+      if (lineEnd + 1 < len && buf[lineEnd] == '\r' && buf[lineEnd + 1] == '\n') {
+        ++lineStart;
+      }
+    }
+
+    // add a couple EndTokens so that users don't have to worry about
+    // checking if there's enough input remaining
+    ++lineNo;
+    for (int i = 0; i < 7; ++i)
+      tokens.add(new EndToken(url, lineNo, 0));
+
+    return tokens;
+  }
+
+  /**
+   * Adds the tokens of the line {@code buf[lineStart..lineEnd)} to {@code tokens}.
+   *
+   * @throws SyntaxErrorException
+   *           if a string cannot be identified as a token.
+   */
+  private static void tokenizeLine(URL url, char[] buf, int lineStart, int lineEnd, int lineNo,
+      List<StringContentToken> tokens) throws SyntaxErrorException
+  {
+    int idx = lineStart;
+    while (idx < lineEnd)
+    {
+      while (idx < lineEnd && isWhitespace(buf[idx]))
+        ++idx;
+      if (idx == lineEnd) {
+        break;
+      }
+
+      int pos = idx - lineStart;
+      int tokenLength;
+      try
       {
-        Matcher wsm = whitespace.matcher(line);
-        if (wsm.find())
+        if (0 != (tokenLength = KeyToken.atStartOf(buf, idx, lineEnd)))
         {
-          pos += wsm.end();
-          line = line.substring(wsm.end());
-          if (line.length() == 0) {
-            continue;
-          }
+          tokens.add(new KeyToken(buf, idx, idx + tokenLength, url, lineNo, pos + 1));
         }
-
-        int tokenLength;
-        try
+        else if (0 != (tokenLength = StringToken.atStartOf(buf, idx, lineEnd)))
         {
-          if (0 != (tokenLength = KeyToken.atStartOf(line)))
-          {
-            tokens.add(new KeyToken(line, url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = StringToken.atStartOf(line)))
-          {
-            tokens.add(new StringToken(line, url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = OpenParenToken.atStartOf(line)))
-          {
-            tokens.add(new OpenParenToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = CloseParenToken.atStartOf(line)))
-          {
-            tokens.add(new CloseParenToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = IncludeToken.atStartOf(line)))
-          {
-            tokens.add(new IncludeToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = LineCommentToken.atStartOf(line)))
-          {
-            // LineCommentTokens werden nicht in tokens eingefügt, weil
-            // der Parser im Fall von 2er Paaren wie KEY STRING nicht in
-            // der Lage ist über Kommentare hinwegzulesen. Anstatt ihm das
-            // Einzubauen ist es einfacher, Kommentare einfach wegzuschmeissen.
-          }
-          else
-          {
-            throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
-              + " at char " + (pos + 1) + ", text in error location: \"" + line
-              + "\"");
-          }
+          tokens.add(new StringToken(buf, idx, idx + tokenLength, url, lineNo, pos + 1));
+        }
+        else if (0 != (tokenLength = OpenParenToken.atStartOf(buf, idx, lineEnd)))
+        {
+          tokens.add(new OpenParenToken(url, lineNo, pos + 1));
+        }
+        else if (0 != (tokenLength = CloseParenToken.atStartOf(buf, idx, lineEnd)))
+        {
+          tokens.add(new CloseParenToken(url, lineNo, pos + 1));
+        }
+        else if (0 != (tokenLength = IncludeToken.atStartOf(buf, idx, lineEnd)))
+        {
+          tokens.add(new IncludeToken(url, lineNo, pos + 1));
         }
-        catch (IllegalArgumentException x)
+        else if (0 != (tokenLength = LineCommentToken.atStartOf(buf, idx, lineEnd)))
+        {
+          // LineCommentTokens werden nicht in tokens eingefügt, weil
+          // der Parser im Fall von 2er Paaren wie KEY STRING nicht in
+          // der Lage ist über Kommentare hinwegzulesen. Anstatt ihm das
+          // Einzubauen ist es einfacher, Kommentare einfach wegzuschmeissen.
+        }
+        else
         {
           throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
-            + " at char " + (pos + 1) + ", text in error location: \"" + line
-            + "\"", x);
+            + " at char " + (pos + 1) + ", text in error location: \""
+            + new String(buf, idx, lineEnd - idx) + "\"");
         }
-
-        pos += tokenLength;
-        line = line.substring(tokenLength);
       }
+      catch (IllegalArgumentException x)
+      {
+        throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
+          + " at char " + (pos + 1) + ", text in error location: \""
+          + new String(buf, idx, lineEnd - idx) + "\"", x);
+      }
+
+      idx += tokenLength;
     }
+  }
 
-    // add a couple EndTokens so that users don't have to worry about
-    // checking if there's enough input remaining
-    ++lineNo;
-    for (int i = 0; i < 7; ++i)
-      tokens.add(new EndToken(url, lineNo, 0));
+  /**
+   * Returns true for the characters that separate tokens, i.e. {@code \p{Space}}, non-breaking
+   * space, byte order mark, ',' and ';'.
+   */
+  private static boolean isWhitespace(char ch)
+  {
+    switch (ch)
+    {
+      case ' ':
+      case '\t':
+      case '\n':
+      case '\u000B':
+      case '\f':
+      case '\r':
+      case '\u00A0':
+      case ',':
+      case ';':
+      case '\uFEFF':
+        return true;
+      default:
+        return false;
+    }
+  }
 
-    return tokens;
+  /**
+   * Reads all characters from {@code read} into a single buffer. The buffer's limit is the number
+   * of characters read.
+   */
+  private static CharBuffer readFully(Reader read) throws IOException
+  {
+    char[] buf = new char[8192];
+    int len = 0;
+    int n;
+    while ((n = read.read(buf, len, buf.length - len)) >= 0)
+    {
+      len += n;
+      if (len == buf.length)
+        buf = Arrays.copyOf(buf, buf.length * 2);
+    }
+    return CharBuffer.wrap(buf, 0, len);
   }
 
   /**
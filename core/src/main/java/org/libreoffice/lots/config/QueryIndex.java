@@ -0,0 +1,232 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A name index over a {@link ConfigThingy} tree. It maps each name to the nodes with this name,
+ * grouped by their depth and sorted in pre-order. Every node of the tree knows its pre-order
+ * position and the end of its subtree, so that a query on any node of the tree is answered by a
+ * binary search per level instead of walking the subtree.
+ *
+ * An index is immutable. If a node of the tree is modified, the index is invalidated and the root
+ * builds a new one on the next query.
+ */
+final class QueryIndex
+{
+  /**
+   * The root of the indexed tree.
+   */
+  private final ConfigThingy root;
+
+  /**
+   * Name to nodes with this name. The list index is the depth of the nodes relative to
+   * {@link #root}.
+   */
+  private final Map<String, List<Level>> names = new HashMap<>();
+
+  /**
+   * True if a node occurs more than once in the tree. The index can't answer queries in this case.
+   */
+  private boolean ambiguous = false;
+
+  private volatile boolean valid = false;
+
+  /**
+   * Creates an empty and invalid index for {@code root}.
+   */
+  QueryIndex(ConfigThingy root)
+  {
+    this.root = root;
+  }
+
+  ConfigThingy getRoot()
+  {
+    return root;
+  }
+
+  boolean isValid()
+  {
+    return valid;
+  }
+
+  /**
+   * Marks this index as outdated.
+   */
+  void invalidate()
+  {
+    valid = false;
+  }
+
+  /**
+   * Indexes the tree of {@link #root}. Must only be called once, before the index is used.
+   */
+  void build()
+  {
+    index(root, null, 0, 0);
+    valid = true;
+  }
+
+  private int index(ConfigThingy node, ConfigThingy parent, int depth, int pre)
+  {
+    QueryIndex other = node.getQueryIndex();
+    if (other == this)
+    {
+      ambiguous = true;
+    } else if (other != null && other.root != root)
+    {
+      // a node can only belong to one index.
+      other.invalidate();
+    }
+
+    List<Level> levels = names.computeIfAbsent(node.getName(), k -> new ArrayList<>(2));
+    while (levels.size() <= depth)
+    {
+      levels.add(null);
+    }
+    Level level = levels.get(depth);
+    if (level == null)
+    {
+      level = new Level();
+      levels.set(depth, level);
+    }
+    level.add(pre, node, parent);
+
+    int next = pre + 1;
+    for (ConfigThingy child : node)
+    {
+      next = index(child, node, depth + 1, next);
+    }
+    node.setQueryIndex(this, pre, next, depth);
+    return next;
+  }
+
+  /**
+   * Searches the subtree of {@code node} like {@link ConfigThingy#query(String, boolean, int, int)}.
+   *
+   * @return The found nodes (or their parents) or null if this index can't answer the query.
+   */
+  List<ConfigThingy> query(ConfigThingy node, String name, boolean getParents, int maxlevel,
+      int minlevel)
+  {
+    if (!valid || ambiguous || node.getQueryIndex() != this || minlevel < 0)
+    {
+      return null;
+    }
+
+    List<ConfigThingy> found = new ArrayList<>();
+    List<Level> levels = names.get(name);
+    if (levels == null)
+    {
+      return found;
+    }
+
+    int start = node.getIndexStart();
+    int end = node.getIndexEnd();
+    long depth = node.getIndexDepth();
+    for (long d = depth + minlevel; d < levels.size() && d - depth <= maxlevel; ++d)
+    {
+      Level level = levels.get((int) d);
+      if (level == null)
+      {
+        continue;
+      }
+      int from = level.lowerBound(start);
+      int to = level.lowerBound(end);
+      if (from == to)
+      {
+        continue;
+      }
+
+      for (int i = from; i < to; ++i)
+      {
+        if (!getParents)
+        {
+          found.add(level.nodes[i]);
+        } else
+        {
+          // matches with the same parent are neighbours on a level.
+          ConfigThingy parent = d == depth ? node : level.parents[i];
+          if (found.isEmpty() || found.get(found.size() - 1) != parent)
+          {
+            found.add(parent);
+          }
+        }
+      }
+      break;
+    }
+    return found;
+  }
+
+  /**
+   * The nodes with the same name on one depth in pre-order.
+   */
+  private static class Level
+  {
+    private int size = 0;
+    private int[] pre = new int[2];
+    private ConfigThingy[] nodes = new ConfigThingy[2];
+    private ConfigThingy[] parents = new ConfigThingy[2];
+
+    void add(int position, ConfigThingy node, ConfigThingy parent)
+    {
+      if (size == pre.length)
+      {
+        pre = Arrays.copyOf(pre, size * 2);
+        nodes = Arrays.copyOf(nodes, size * 2);
+        parents = Arrays.copyOf(parents, size * 2);
+      }
+      pre[size] = position;
+      nodes[size] = node;
+      parents[size] = parent;
+      ++size;
+    }
+
+    /**
+     * Returns the index of the first node whose pre-order position is greater than or equal to
+     * {@code position}.
+     */
+    int lowerBound(int position)
+    {
+      int low = 0;
+      int high = size;
+      while (low < high)
+      {
+        int mid = (low + high) >>> 1;
+        if (pre[mid] < position)
+        {
+          low = mid + 1;
+        } else
+        {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -257,27 +257,18 @@ public class AttachDatasource extends Datasource
 
   private QueryResults attachColumns(QueryResults results, Predicate<Dataset> filter)
   {
-    List<Dataset> resultsWithAttachments = new ArrayList<>(results.size());
+    List<Dataset> datasets = BatchJoin.toList(results);
+    List<List<Dataset>> appendices = BatchJoin.join(datasets, match1, source2, match2);
+    List<Dataset> resultsWithAttachments = new ArrayList<>(datasets.size());
 
-    for (Dataset ds : results)
+    for (int i = 0; i < datasets.size(); ++i)
     {
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match2[i], ds.get(match1[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults appendix = source2.find(query);
+      Dataset ds = datasets.get(i);
+      List<Dataset> appendix = appendices.get(i);
 
       Dataset newDataset;
 
-      if (appendix.size() == 0)
+      if (appendix.isEmpty())
       {
         newDataset = new ConcatDataset(ds, null);
         if (filter.test(newDataset))
@@ -303,30 +294,16 @@ public class AttachDatasource extends Datasource
 
   private QueryResults attachColumnsReversed(QueryResults results)
   {
-    List<ConcatDataset> resultsWithAttachments = new ArrayList<>(results.size());
+    List<Dataset> datasets = BatchJoin.toList(results);
+    List<List<Dataset>> prependices = BatchJoin.join(datasets, match2, source1, match1);
+    List<ConcatDataset> resultsWithAttachments = new ArrayList<>(datasets.size());
 
-    for (Dataset ds : results)
+    for (int i = 0; i < datasets.size(); ++i)
     {
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
+      Dataset ds = datasets.get(i);
+      for (Dataset ds1 : prependices.get(i))
       {
-        try
-        {
-          query.add(new QueryPart(match1[i], ds.get(match2[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults prependix = source1.find(query);
-
-      if (prependix.size() > 0)
-      {
-        for (Dataset ds1 : prependix)
-        {
-          resultsWithAttachments.add(new ConcatDataset(ds1, ds));
-        }
+        resultsWithAttachments.add(new ConcatDataset(ds1, ds));
       }
     }
 
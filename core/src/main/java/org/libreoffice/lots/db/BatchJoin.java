@@ -0,0 +1,206 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Joins datasets with the matching datasets of another data source. Instead of one search per
+ * dataset, the distinct values of the match columns are collected and searched with
+ * {@link Datasource#findAny(List)} in chunks of {@link #CHUNK_SIZE} queries. The results are
+ * assigned to the datasets by a hash of the case folded values of the match columns.
+ *
+ * Datasets with an empty match value or a match value containing a wildcard can't be joined by
+ * hash, because their search matches more than equal values. They are still searched one by one.
+ *
+ * A search without a result in the chunk has no match. If a chunk returns a dataset which can't be
+ * assigned by hash, the folding differs from the data source's comparison, e.g. the collation of a
+ * database. Only the searches of the chunk without a match are repeated one by one then. If the data
+ * source doesn't match by equality (see {@link Datasource#matchesByEquality()}), e.g. LDAP matching
+ * rules or multi-valued attributes, a search with a match may also miss datasets. All searches of
+ * the chunk are repeated one by one then.
+ */
+final class BatchJoin
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchJoin.class);
+
+  /**
+   * The maximum number of queries passed to one call of {@link Datasource#findAny(List)}.
+   */
+  static final int CHUNK_SIZE = 100;
+
+  private BatchJoin()
+  {
+  }
+
+  /**
+   * Searches the matching datasets of other for each dataset.
+   *
+   * @param datasets
+   *          The datasets to join.
+   * @param columns
+   *          The match columns of datasets.
+   * @param other
+   *          The data source to search.
+   * @param otherColumns
+   *          The match columns of other. otherColumns[i] is matched against columns[i].
+   * @return For each dataset a list of matching datasets of other in the same order as datasets.
+   */
+  static List<List<Dataset>> join(List<Dataset> datasets, String[] columns, Datasource other,
+      String[] otherColumns)
+  {
+    List<List<String>> keys = new ArrayList<>(datasets.size());
+    Map<List<String>, List<Dataset>> matches = new HashMap<>();
+    List<List<String>> queryKeys = new ArrayList<>();
+    List<List<QueryPart>> queries = new ArrayList<>();
+    for (Dataset ds : datasets)
+    {
+      List<String> key = joinKey(ds, columns);
+      keys.add(key);
+      if (key != null && !matches.containsKey(key))
+      {
+        matches.put(key, new ArrayList<>());
+        queryKeys.add(key);
+        queries.add(makeQuery(ds, columns, otherColumns));
+      }
+    }
+
+    for (int start = 0; start < queries.size(); start += CHUNK_SIZE)
+    {
+      int end = Math.min(start + CHUNK_SIZE, queries.size());
+      boolean unassigned = false;
+      for (Dataset found : other.findAny(queries.subList(start, end)))
+      {
+        List<Dataset> match = matches.get(joinKey(found, otherColumns));
+        if (match != null)
+        {
+          match.add(found);
+        } else
+        {
+          unassigned = true;
+        }
+      }
+      if (!unassigned)
+      {
+        continue;
+      }
+      boolean equality = other.matchesByEquality();
+      LOGGER.debug("Results can't be assigned by hash, searching {} one by one",
+          equality ? "searches without match" : "all searches");
+      for (int i = start; i < end; i++)
+      {
+        List<String> key = queryKeys.get(i);
+        if (!equality || matches.get(key).isEmpty())
+        {
+          matches.put(key, find(other, queries.get(i)));
+        }
+      }
+    }
+
+    List<List<Dataset>> joined = new ArrayList<>(datasets.size());
+    for (int i = 0; i < datasets.size(); i++)
+    {
+      List<String> key = keys.get(i);
+      if (key == null)
+      {
+        joined.add(find(other, makeQuery(datasets.get(i), columns, otherColumns)));
+      } else
+      {
+        joined.add(matches.get(key));
+      }
+    }
+    return joined;
+  }
+
+  private static List<Dataset> find(Datasource other, List<QueryPart> query)
+  {
+    return toList(other.find(query));
+  }
+
+  /**
+   * Copies the results into a list, so that they can be accessed by index.
+   */
+  static List<Dataset> toList(QueryResults results)
+  {
+    List<Dataset> datasets = new ArrayList<>(results.size());
+    for (Dataset ds : results)
+    {
+      datasets.add(ds);
+    }
+    return datasets;
+  }
+
+  /**
+   * Builds the search for the datasets of the other data source matching ds.
+   */
+  private static List<QueryPart> makeQuery(Dataset ds, String[] columns, String[] otherColumns)
+  {
+    List<QueryPart> query = new ArrayList<>(columns.length);
+    for (int i = 0; i < columns.length; ++i)
+    {
+      try
+      {
+        query.add(new QueryPart(otherColumns[i], ds.get(columns[i])));
+      } catch (ColumnNotFoundException x)
+      {
+        LOGGER.error("", x);
+      }
+    }
+    return query;
+  }
+
+  /**
+   * Computes the case folded values of the columns.
+   *
+   * @return The folded values or null if a value is missing, empty or contains a wildcard.
+   */
+  private static List<String> joinKey(Dataset ds, String[] columns)
+  {
+    String[] key = new String[columns.length];
+    for (int i = 0; i < columns.length; ++i)
+    {
+      String value;
+      try
+      {
+        value = ds.get(columns[i]);
+      } catch (ColumnNotFoundException x)
+      {
+        return null;
+      }
+      if (value == null || value.isEmpty() || value.indexOf('*') >= 0)
+      {
+        return null;
+      }
+      key[i] = ColumnarIndex.fold(value);
+    }
+    return Arrays.asList(key);
+  }
+}
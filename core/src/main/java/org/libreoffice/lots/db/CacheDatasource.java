@@ -0,0 +1,485 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.db;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.libreoffice.lots.WollMuxFiles;
+import org.libreoffice.lots.config.ConfigThingy;
+import org.libreoffice.lots.config.ConfigurationErrorException;
+import org.libreoffice.lots.util.L;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListeners;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * A data source which caches the results of another data source. The results of
+ * {@link #find(List)} are cached by their query, the results of {@link #getDatasetsByKey(Collection)}
+ * by the key of each dataset. Both caches hold at most SIZE entries for at most TTL milliseconds.
+ * If NEGATIVE_TTL is greater than 0, queries and keys without any result are remembered for that
+ * time, too. If SPILL is "true", results evicted because of the size limit are written encrypted
+ * to the directory "cache" of the WollMux configuration directory and read from there until their
+ * TTL is over or the data source is created again. The files are written in the background and
+ * need at most SPILL_SIZE bytes.
+ *
+ * The results of {@link #find(List)}, {@link #findAny(List)}, {@link #getContents()} and
+ * {@link #getDatasetsByKey(Collection)} are {@link SimpleDataset}s, no matter whether they come
+ * from the source, the memory or a spill file. So they can be compared by class and key and the
+ * cached results can't be changed by the source.
+ *
+ * <pre>
+ * DataSource(
+ *   NAME "cachedLdap"
+ *   TYPE "cache"
+ *   SOURCE "ldap"
+ *   SIZE "1000"
+ *   TTL "600000"
+ *   NEGATIVE_TTL "60000"
+ *   SPILL "true"
+ *   SPILL_SIZE "67108864"
+ * )
+ * </pre>
+ */
+public class CacheDatasource extends Datasource
+{
+
+  private static final long DEFAULT_SIZE = 1000;
+
+  private static final long DEFAULT_TTL = 600000;
+
+  private static final long DEFAULT_SPILL_SIZE = 64L * 1024 * 1024;
+
+  /**
+   * Writes the spill files of all caches.
+   */
+  private static final ExecutorService SPILL_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "Cache-spill");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private String name;
+
+  private Datasource source;
+
+  private Cache<String, CacheEntry> findCache;
+
+  private Cache<String, Boolean> negativeFindCache;
+
+  private Cache<String, CacheEntry> keyCache;
+
+  private Cache<String, Boolean> negativeKeyCache;
+
+  private DatasetSpill spill;
+
+  private final AtomicLong negativeHits = new AtomicLong();
+
+  private final AtomicLong spillHits = new AtomicLong();
+
+  /**
+   * Creates a new CacheDatasource.
+   *
+   * @param nameToDatasource
+   *          Contains all data sources that have already been fully instantiated up to the time of
+   *          defining this CacheDatasource.
+   * @param sourceDesc
+   *          the 'DataSource' node containing the description of this CacheDatasource.
+   * @param context
+   *          the context relative to which URLs should be resolved (currently not used).
+   */
+  public CacheDatasource(Map<String, Datasource> nameToDatasource, ConfigThingy sourceDesc,
+      URL context)
+  {
+    this(nameToDatasource, sourceDesc, new File(WollMuxFiles.getWollMuxDir(), "cache"),
+        SPILL_EXECUTOR);
+  }
+
+  /**
+   * Creates a new CacheDatasource which spills into the given directory.
+   *
+   * @param nameToDatasource
+   *          Contains all data sources that have already been fully instantiated up to the time of
+   *          defining this CacheDatasource.
+   * @param sourceDesc
+   *          the 'DataSource' node containing the description of this CacheDatasource.
+   * @param spillDir
+   *          The base directory of the spill files.
+   * @param spillExecutor
+   *          The executor which writes the spill files.
+   */
+  CacheDatasource(Map<String, Datasource> nameToDatasource, ConfigThingy sourceDesc, File spillDir,
+      Executor spillExecutor)
+  {
+    name = parseConfig(sourceDesc, "NAME", () -> L.m("NAME of data source is missing"));
+    String sourceName = parseConfig(sourceDesc, "SOURCE",
+        () -> L.m("SOURCE of data source \"{0}\" is missing", name));
+    source = nameToDatasource.get(sourceName);
+    if (source == null)
+    {
+      throw new ConfigurationErrorException(L.m(
+          "Error while initializing data source \"{0}\": Referenced data source \"{1}\" missing or defined incorrectly",
+          name, sourceName));
+    }
+
+    long size = parseNumber(sourceDesc, "SIZE", DEFAULT_SIZE, 0, Long.MAX_VALUE);
+    long ttl = parseNumber(sourceDesc, "TTL", DEFAULT_TTL, 1, Long.MAX_VALUE);
+    long negativeTtl = parseNumber(sourceDesc, "NEGATIVE_TTL", 0, 0, Long.MAX_VALUE);
+    long spillSize = parseNumber(sourceDesc, "SPILL_SIZE", DEFAULT_SPILL_SIZE, 0, Long.MAX_VALUE);
+    String spillConf = sourceDesc.getString("SPILL", "false");
+    if (!"true".equalsIgnoreCase(spillConf) && !"false".equalsIgnoreCase(spillConf))
+    {
+      throw new ConfigurationErrorException(
+          L.m("Data source \"{0}\": SPILL has to be \"true\" or \"false\": \"{1}\"", name, spillConf));
+    }
+    if (Boolean.parseBoolean(spillConf))
+    {
+      spill = new DatasetSpill(new File(spillDir, DatasetSpill.digest(name)), source.getSchema(),
+          ttl, spillSize);
+    }
+
+    findCache = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+        .removalListener(RemovalListeners.asynchronous(this::spill, spillExecutor)).recordStats()
+        .build();
+    keyCache = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+        .recordStats().build();
+    if (negativeTtl > 0)
+    {
+      negativeFindCache = CacheBuilder.newBuilder().maximumSize(size)
+          .expireAfterWrite(negativeTtl, TimeUnit.MILLISECONDS).build();
+      negativeKeyCache = CacheBuilder.newBuilder().maximumSize(size)
+          .expireAfterWrite(negativeTtl, TimeUnit.MILLISECONDS).build();
+    }
+  }
+
+  @Override
+  public List<String> getSchema()
+  {
+    return source.getSchema();
+  }
+
+  @Override
+  public QueryResults getDatasetsByKey(Collection<String> keys)
+  {
+    Map<String, List<Dataset>> found = new LinkedHashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String key : keys)
+    {
+      if (found.containsKey(key))
+      {
+        continue;
+      }
+      CacheEntry entry = keyCache.getIfPresent(key);
+      if (entry != null)
+      {
+        found.put(key, entry.datasets);
+      } else if (negativeKeyCache != null && negativeKeyCache.getIfPresent(key) != null)
+      {
+        negativeHits.incrementAndGet();
+        found.put(key, List.of());
+      } else
+      {
+        found.put(key, null);
+        missing.add(key);
+      }
+    }
+
+    if (!missing.isEmpty())
+    {
+      Map<String, List<Dataset>> fetched = new LinkedHashMap<>();
+      for (Dataset ds : copy(source.getDatasetsByKey(missing)))
+      {
+        fetched.computeIfAbsent(ds.getKey(), k -> new ArrayList<>()).add(ds);
+      }
+      long now = System.currentTimeMillis();
+      for (String key : missing)
+      {
+        List<Dataset> datasets = fetched.getOrDefault(key, List.of());
+        found.put(key, datasets);
+        if (!datasets.isEmpty())
+        {
+          keyCache.put(key, new CacheEntry(now, datasets));
+        } else if (negativeKeyCache != null)
+        {
+          negativeKeyCache.put(key, Boolean.TRUE);
+        }
+      }
+    }
+
+    List<Dataset> results = new ArrayList<>();
+    found.values().forEach(results::addAll);
+    return new QueryResultsList(results);
+  }
+
+  @Override
+  public QueryResults find(List<QueryPart> query)
+  {
+    if (query.isEmpty())
+    {
+      return new QueryResultsList(copy(source.find(query)));
+    }
+    List<Dataset> cached = lookup(query);
+    if (cached != null)
+    {
+      return new QueryResultsList(cached);
+    }
+
+    String key = normalize(query);
+    long now = System.currentTimeMillis();
+    List<Dataset> datasets = copy(source.find(query));
+    if (!datasets.isEmpty())
+    {
+      findCache.put(key, new CacheEntry(now, datasets));
+    } else if (negativeFindCache != null)
+    {
+      negativeFindCache.put(key, Boolean.TRUE);
+    }
+    return new QueryResultsList(datasets);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * Only the queries without cached results are forwarded to the source. Their results aren't
+   * cached, because they can't be assigned to a single query.
+   */
+  @Override
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    Map<String, Dataset> results = new LinkedHashMap<>();
+    List<List<QueryPart>> misses = new ArrayList<>();
+    for (List<QueryPart> query : queries)
+    {
+      List<Dataset> cached = query.isEmpty() ? null : lookup(query);
+      if (cached == null)
+      {
+        misses.add(query);
+      } else
+      {
+        cached.forEach(ds -> results.putIfAbsent(ds.getKey(), ds));
+      }
+    }
+    if (!misses.isEmpty())
+    {
+      copy(source.findAny(misses)).forEach(ds -> results.putIfAbsent(ds.getKey(), ds));
+    }
+    return new QueryResultsList(new ArrayList<>(results.values()));
+  }
+
+  @Override
+  public QueryResults getContents()
+  {
+    return new QueryResultsList(copy(source.getContents()));
+  }
+
+  @Override
+  public boolean matchesByEquality()
+  {
+    return source.matchesByEquality();
+  }
+
+  @Override
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Statistics of the cache of {@link #find(List)}.
+   *
+   * @return The statistics.
+   */
+  public CacheStats getFindCacheStats()
+  {
+    return findCache.stats();
+  }
+
+  /**
+   * Statistics of the cache of {@link #getDatasetsByKey(Collection)}.
+   *
+   * @return The statistics.
+   */
+  public CacheStats getKeyCacheStats()
+  {
+    return keyCache.stats();
+  }
+
+  /**
+   * Number of queries and keys answered by the negative cache.
+   *
+   * @return The number of negative hits.
+   */
+  public long getNegativeHits()
+  {
+    return negativeHits.get();
+  }
+
+  /**
+   * Number of queries answered by spill files.
+   *
+   * @return The number of spill hits.
+   */
+  public long getSpillHits()
+  {
+    return spillHits.get();
+  }
+
+  /**
+   * A human readable summary of the cache statistics.
+   *
+   * @return The statistics.
+   */
+  public String getStatistics()
+  {
+    CacheStats findStats = getFindCacheStats();
+    CacheStats keyStats = getKeyCacheStats();
+    return String.format(
+        "%s: find %d hits, %d misses, hit rate %.2f, %d entries; "
+            + "key %d hits, %d misses, hit rate %.2f, %d entries; "
+            + "%d negative hits; %d spill hits; %d evictions",
+        name, findStats.hitCount(), findStats.missCount(), findStats.hitRate(), findCache.size(),
+        keyStats.hitCount(), keyStats.missCount(), keyStats.hitRate(), keyCache.size(),
+        negativeHits.get(), spillHits.get(), findStats.evictionCount() + keyStats.evictionCount());
+  }
+
+  /**
+   * Looks for cached results of a query in memory, the negative cache and the spill files.
+   *
+   * @param query
+   *          The query.
+   * @return The results or null if there are none.
+   */
+  private List<Dataset> lookup(List<QueryPart> query)
+  {
+    String key = normalize(query);
+    CacheEntry entry = findCache.getIfPresent(key);
+    if (entry != null)
+    {
+      return entry.datasets;
+    }
+    if (negativeFindCache != null && negativeFindCache.getIfPresent(key) != null)
+    {
+      negativeHits.incrementAndGet();
+      return List.of();
+    }
+    if (spill != null)
+    {
+      DatasetSpill.SpilledDatasets spilled = spill.read(key);
+      if (spilled != null)
+      {
+        spillHits.incrementAndGet();
+        return spilled.datasets;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Copies datasets of the source to {@link SimpleDataset}s with the schema of the source. Unknown
+   * columns are null.
+   *
+   * @param results
+   *          The datasets of the source.
+   * @return The copies.
+   */
+  private List<Dataset> copy(QueryResults results)
+  {
+    List<String> schema = source.getSchema();
+    List<Dataset> datasets = new ArrayList<>(results.size());
+    for (Dataset ds : results)
+    {
+      Map<String, String> data = new HashMap<>();
+      for (String column : schema)
+      {
+        try
+        {
+          data.put(column, ds.get(column));
+        } catch (ColumnNotFoundException e)
+        {
+          data.put(column, null);
+        }
+      }
+      datasets.add(new SimpleDataset(ds.getKey(), data));
+    }
+    return datasets;
+  }
+
+  private void spill(RemovalNotification<String, CacheEntry> notification)
+  {
+    if (spill != null && notification.getCause() == RemovalCause.SIZE)
+    {
+      CacheEntry entry = notification.getValue();
+      spill.write(notification.getKey(), entry.created, entry.datasets);
+    }
+  }
+
+  /**
+   * Builds the cache key of a query. The key is independent of the order and duplicates of the
+   * query parts.
+   *
+   * @param query
+   *          The query.
+   * @return The key.
+   */
+  static String normalize(List<QueryPart> query)
+  {
+    TreeSet<String> parts = new TreeSet<>();
+    for (QueryPart part : query)
+    {
+      parts.add(part.getColumnName() + '\u0000' + part.getSearchString());
+    }
+    return String.join("\u0001", parts);
+  }
+
+  /**
+   * Cached results with the time they were fetched from the source.
+   */
+  private static class CacheEntry
+  {
+    final long created;
+
+    final List<Dataset> datasets;
+
+    CacheEntry(long created, List<Dataset> datasets)
+    {
+      this.created = created;
+      this.datasets = datasets;
+    }
+  }
+}
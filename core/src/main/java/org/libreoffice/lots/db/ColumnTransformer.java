@@ -137,9 +137,9 @@ public class ColumnTransformer
   }
 
   /**
-   * Liefert ein {@link Dataset}, das eine transformierte Sicht von ds darstellt. ACHTUNG! Die
-   * Berechnung der Spalten wird on-demand durchgeführt, d.h. spätere Aufrufe von
-   * {@link #addTrafos(Map)} wirken sich auf das zurückgelieferte {@link Dataset} aus.
+   * Liefert ein {@link Dataset}, das eine transformierte Sicht von ds darstellt. Die Berechnung
+   * der Pseudospalten wird on-demand beim ersten Zugriff durchgeführt, weitere Zugriffe liefern
+   * den gemerkten Wert.
    */
   public Dataset transform(Dataset ds)
   {
@@ -147,9 +147,8 @@ public class ColumnTransformer
   }
 
   /**
-   * Liefert {@link QueryResults}, die eine transformierte Sicht von qres darstellen. ACHTUNG! Die
-   * Berechnung der {@link Dataset}s wird on-demand durchgeführt, d.h. spätere Aufrufe von
-   * {@link #addTrafos(Map)} wirken sich auf die {@link Dataset}s der {@link QueryResults} aus.
+   * Liefert {@link QueryResults}, die eine transformierte Sicht von qres darstellen. Die
+   * Berechnung der {@link Dataset}s wird on-demand durchgeführt.
    */
   public QueryResults transform(QueryResults qres)
   {
@@ -274,10 +273,21 @@ public class ColumnTransformer
     }
   }
 
+  /**
+   * Transformierter Datensatz, der die berechneten Werte der Pseudospalten speichert, damit
+   * z.B. Sortierung, Anzeige und Export die Funktionen nicht mehrfach auswerten.
+   */
   private class TransformedDataset implements Dataset
   {
     private Dataset ds;
 
+    private Values values;
+
+    /**
+     * Bildet den Namen einer Pseudospalte auf ihren bereits berechneten Wert ab.
+     */
+    private Map<String, String> computed;
+
     public TransformedDataset(Dataset ds)
     {
       this.ds = ds;
@@ -286,7 +296,26 @@ public class ColumnTransformer
     @Override
     public String get(String columnName) throws ColumnNotFoundException
     {
-      return ColumnTransformer.this.get(columnName, ds);
+      Function func = columnTranslations.get(columnName);
+      if (func == null)
+      {
+        return ds.get(columnName);
+      }
+      synchronized (this)
+      {
+        if (computed == null)
+        {
+          computed = new HashMap<>();
+          values = new DatasetValues(ds);
+        }
+        if (computed.containsKey(columnName))
+        {
+          return computed.get(columnName);
+        }
+        String value = func.getResult(values);
+        computed.put(columnName, value);
+        return value;
+      }
     }
 
     @Override
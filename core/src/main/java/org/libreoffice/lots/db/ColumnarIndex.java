@@ -0,0 +1,440 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * A column oriented index over the datasets of a {@link RAMDatasource}.
+ *
+ * The values of each column are dictionary encoded. Each distinct value has a list of the rows
+ * containing it, is sorted by its case folded form for prefix searches and its trigrams are
+ * indexed for infix searches. Keys are hashed. Queries are answered by intersecting the rows of
+ * each {@link QueryPart}, so that no full scan of the datasets is needed.
+ *
+ * The index isn't updated, if the datasets change.
+ */
+final class ColumnarIndex
+{
+  /**
+   * Length of the n-grams in the infix index.
+   */
+  private static final int GRAM_LENGTH = 3;
+
+  private final int size;
+
+  private final Map<String, Column> columns = new HashMap<>();
+
+  /**
+   * Key to the rows with this key.
+   */
+  private final Map<String, int[]> keys = new HashMap<>();
+
+  /**
+   * Creates the index.
+   *
+   * @param schema
+   *          The columns to index.
+   * @param data
+   *          The datasets.
+   */
+  ColumnarIndex(List<String> schema, List<Dataset> data)
+  {
+    size = data.size();
+    for (String column : schema)
+    {
+      columns.put(column, new Column(column, data));
+    }
+
+    Map<String, IntList> keyRows = new HashMap<>();
+    for (int row = 0; row < size; row++)
+    {
+      keyRows.computeIfAbsent(data.get(row).getKey(), k -> new IntList()).add(row);
+    }
+    keyRows.forEach((key, rows) -> keys.put(key, rows.toArray()));
+  }
+
+  /**
+   * Get the rows with one of the keys.
+   *
+   * @param keys
+   *          The keys.
+   * @return The rows in ascending order.
+   */
+  BitSet getRowsByKey(Collection<String> keys)
+  {
+    BitSet result = new BitSet(size);
+    for (String key : keys)
+    {
+      int[] rows = this.keys.get(key);
+      if (rows != null)
+      {
+        for (int row : rows)
+        {
+          result.set(row);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the rows matching all query parts. The semantic is the same as of
+   * {@link DatasetPredicate#makePredicate(List)}.
+   *
+   * @param query
+   *          The query.
+   * @return The rows in ascending order.
+   */
+  BitSet find(List<QueryPart> query)
+  {
+    BitSet result = null;
+    List<Column> residualColumns = new ArrayList<>();
+    List<Predicate<String>> residualMatchers = new ArrayList<>();
+    for (QueryPart part : query)
+    {
+      Column column = columns.get(part.getColumnName());
+      if (column == null)
+      {
+        return new BitSet();
+      }
+      Predicate<String> matcher = DatasetPredicate.makeMatcher(part.getSearchString());
+      int[] candidates = column.getCandidates(part.getSearchString());
+      if (candidates == null)
+      {
+        residualColumns.add(column);
+        residualMatchers.add(matcher);
+        continue;
+      }
+
+      BitSet rows = new BitSet(size);
+      for (int id : candidates)
+      {
+        if (matcher.test(column.values[id]))
+        {
+          for (int row : column.rows[id])
+          {
+            rows.set(row);
+          }
+        }
+      }
+      if (result == null)
+      {
+        result = rows;
+      } else
+      {
+        result.and(rows);
+      }
+      if (result.isEmpty())
+      {
+        return result;
+      }
+    }
+
+    if (result == null)
+    {
+      result = new BitSet(size);
+      result.set(0, size);
+    }
+    for (int i = 0; i < residualColumns.size(); i++)
+    {
+      residualColumns.get(i).filter(result, residualMatchers.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Folds a string, so that two strings are equal, if they are equal ignoring case in the sense of
+   * {@link String#regionMatches(boolean, int, String, int, int)}.
+   */
+  static String fold(String str)
+  {
+    char[] chars = str.toCharArray();
+    for (int i = 0; i < chars.length; i++)
+    {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
+  private static long gram(String str, int pos)
+  {
+    long gram = 0;
+    for (int i = 0; i < GRAM_LENGTH; i++)
+    {
+      gram = (gram << Character.SIZE) | str.charAt(pos + i);
+    }
+    return gram;
+  }
+
+  /**
+   * The dictionary encoded values of a column with its indexes.
+   */
+  private static final class Column
+  {
+    /**
+     * The distinct values of the column. Rows without the column or a null value have the value "".
+     */
+    private final String[] values;
+
+    /**
+     * The case folded values.
+     */
+    private final String[] folded;
+
+    /**
+     * Value id of each row or -1 if the dataset hasn't got the column.
+     */
+    private final int[] codes;
+
+    /**
+     * The rows of each value in ascending order.
+     */
+    private final int[][] rows;
+
+    /**
+     * The value ids sorted by their folded value.
+     */
+    private final int[] sorted;
+
+    /**
+     * N-gram of the folded values to value ids in ascending order.
+     */
+    private final Map<Long, int[]> grams = new HashMap<>();
+
+    Column(String name, List<Dataset> data)
+    {
+      Map<String, Integer> dictionary = new HashMap<>();
+      List<String> valueList = new ArrayList<>();
+      List<IntList> rowList = new ArrayList<>();
+      codes = new int[data.size()];
+      for (int row = 0; row < codes.length; row++)
+      {
+        String value;
+        try
+        {
+          value = data.get(row).get(name);
+        } catch (ColumnNotFoundException ex)
+        {
+          codes[row] = -1;
+          continue;
+        }
+        if (value == null)
+        {
+          value = "";
+        }
+        Integer id = dictionary.get(value);
+        if (id == null)
+        {
+          id = valueList.size();
+          dictionary.put(value, id);
+          valueList.add(value);
+          rowList.add(new IntList());
+        }
+        codes[row] = id;
+        rowList.get(id).add(row);
+      }
+
+      values = valueList.toArray(new String[valueList.size()]);
+      rows = new int[values.length][];
+      folded = new String[values.length];
+      Map<Long, IntList> gramList = new HashMap<>();
+      for (int id = 0; id < values.length; id++)
+      {
+        rows[id] = rowList.get(id).toArray();
+        folded[id] = fold(values[id]);
+        for (int pos = 0; pos + GRAM_LENGTH <= folded[id].length(); pos++)
+        {
+          IntList ids = gramList.computeIfAbsent(gram(folded[id], pos), g -> new IntList());
+          if (ids.isEmpty() || ids.last() != id)
+          {
+            ids.add(id);
+          }
+        }
+      }
+      gramList.forEach((gram, ids) -> grams.put(gram, ids.toArray()));
+      sorted = IntStream.range(0, values.length).boxed()
+          .sorted(Comparator.comparing(id -> folded[id])).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Get the ids of values, which may match a search string.
+     *
+     * @return The value ids or null if the indexes can't be used for this search string.
+     */
+    int[] getCandidates(String searchString)
+    {
+      int star = searchString.indexOf('*');
+      String prefix = star < 0 ? searchString : searchString.substring(0, star);
+      if (!prefix.isEmpty())
+      {
+        return getPrefixCandidates(fold(prefix));
+      }
+
+      String longest = "";
+      for (String part : searchString.split("\\*"))
+      {
+        if (part.length() > longest.length())
+        {
+          longest = part;
+        }
+      }
+      if (longest.length() < GRAM_LENGTH)
+      {
+        return null;
+      }
+      return getInfixCandidates(fold(longest));
+    }
+
+    private int[] getPrefixCandidates(String prefix)
+    {
+      int low = 0;
+      int high = sorted.length;
+      while (low < high)
+      {
+        int mid = (low + high) >>> 1;
+        if (folded[sorted[mid]].compareTo(prefix) < 0)
+        {
+          low = mid + 1;
+        } else
+        {
+          high = mid;
+        }
+      }
+      int end = low;
+      while (end < sorted.length && folded[sorted[end]].startsWith(prefix))
+      {
+        end++;
+      }
+      return Arrays.copyOfRange(sorted, low, end);
+    }
+
+    private int[] getInfixCandidates(String infix)
+    {
+      int[] result = null;
+      for (int pos = 0; pos + GRAM_LENGTH <= infix.length(); pos++)
+      {
+        int[] ids = grams.get(gram(infix, pos));
+        if (ids == null)
+        {
+          return new int[0];
+        }
+        result = result == null ? ids : intersect(result, ids);
+      }
+      return result;
+    }
+
+    /**
+     * Removes all rows from the set, whose value doesn't match. Each distinct value is tested only
+     * once.
+     */
+    void filter(BitSet rowSet, Predicate<String> matcher)
+    {
+      byte[] matches = new byte[values.length];
+      for (int row = rowSet.nextSetBit(0); row >= 0; row = rowSet.nextSetBit(row + 1))
+      {
+        int id = codes[row];
+        if (id < 0)
+        {
+          rowSet.clear(row);
+          continue;
+        }
+        if (matches[id] == 0)
+        {
+          matches[id] = matcher.test(values[id]) ? (byte) 1 : (byte) 2;
+        }
+        if (matches[id] == 2)
+        {
+          rowSet.clear(row);
+        }
+      }
+    }
+
+    private static int[] intersect(int[] a, int[] b)
+    {
+      int[] result = new int[Math.min(a.length, b.length)];
+      int count = 0;
+      int i = 0;
+      int j = 0;
+      while (i < a.length && j < b.length)
+      {
+        if (a[i] < b[j])
+        {
+          i++;
+        } else if (a[i] > b[j])
+        {
+          j++;
+        } else
+        {
+          result[count++] = a[i];
+          i++;
+          j++;
+        }
+      }
+      return Arrays.copyOf(result, count);
+    }
+  }
+
+  /**
+   * A growable list of ints.
+   */
+  private static final class IntList
+  {
+    private int[] elements = new int[4];
+
+    private int count = 0;
+
+    void add(int element)
+    {
+      if (count == elements.length)
+      {
+        elements = Arrays.copyOf(elements, count * 2);
+      }
+      elements[count++] = element;
+    }
+
+    boolean isEmpty()
+    {
+      return count == 0;
+    }
+
+    int last()
+    {
+      return elements[count - 1];
+    }
+
+    int[] toArray()
+    {
+      return Arrays.copyOf(elements, count);
+    }
+  }
+}
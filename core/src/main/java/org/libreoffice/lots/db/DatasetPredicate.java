@@ -22,9 +22,9 @@
  */
 package org.libreoffice.lots.db;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
 
 /**
  *
@@ -40,8 +40,13 @@ public class DatasetPredicate
   }
 
   /**
-   * Matches a List of {@link QueryPart} against a given {@link Dataset}. Invalid * character in
-   * QueryPart's search string are filtered out.
+   * Matches a List of {@link QueryPart} against a given {@link Dataset}. The search strings are
+   * compared case insensitive and * is a wildcard for any number of characters, as it is in LDAP
+   * or SQL backends. So "Mei*" matches all values starting with "mei", "*mei*" all values
+   * containing "mei" and "Meier" only the value "meier". An empty search string matches all
+   * values.
+   *
+   * Each {@link QueryPart} is compiled once, so that the predicate can be used on lots of datasets.
    *
    * @param query
    *          List of {@link QueryPart}
@@ -50,13 +55,14 @@ public class DatasetPredicate
   public static Predicate<Dataset> makePredicate(List<QueryPart> query)
   {
     return query.stream().map(part -> {
+      String column = part.getColumnName();
+      Predicate<String> matcher = makeMatcher(part.getSearchString());
       @SuppressWarnings("squid:S1488")
       Predicate<Dataset> pred = (Dataset ds) -> {
         try
         {
-          return Pattern.compile(part.getSearchString().replace("*", "").toLowerCase())
-              .matcher(ds.get(part.getColumnName()).toLowerCase())
-              .find();
+          String value = ds.get(column);
+          return matcher.test(value == null ? "" : value);
         } catch (ColumnNotFoundException ex)
         {
           return false;
@@ -66,4 +72,118 @@ public class DatasetPredicate
       return pred;
     }).reduce(matchAll, Predicate::and);
   }
+
+  /**
+   * Compiles a search string with * wildcards into a case insensitive matcher for column values.
+   *
+   * @param searchString
+   *          The search string.
+   * @return A predicate, which tests whether a value matches the search string.
+   */
+  public static Predicate<String> makeMatcher(String searchString)
+  {
+    List<String> parts = new ArrayList<>();
+    int start = 0;
+    int star;
+    while ((star = searchString.indexOf('*', start)) >= 0)
+    {
+      if (star > start)
+      {
+        parts.add(searchString.substring(start, star));
+      }
+      start = star + 1;
+    }
+    if (start < searchString.length())
+    {
+      parts.add(searchString.substring(start));
+    }
+
+    if (parts.isEmpty())
+    {
+      return value -> true;
+    }
+
+    boolean anchoredStart = !searchString.startsWith("*");
+    boolean anchoredEnd = !searchString.endsWith("*");
+    if (parts.size() == 1)
+    {
+      String part = parts.get(0);
+      int length = part.length();
+      if (anchoredStart && anchoredEnd)
+      {
+        return value -> value.length() == length && value.regionMatches(true, 0, part, 0, length);
+      } else if (anchoredStart)
+      {
+        return value -> value.regionMatches(true, 0, part, 0, length);
+      } else if (anchoredEnd)
+      {
+        return value -> value.regionMatches(true, value.length() - length, part, 0, length);
+      } else
+      {
+        return value -> indexOfIgnoreCase(value, part, 0) >= 0;
+      }
+    }
+
+    String[] partArray = parts.toArray(new String[parts.size()]);
+    return value -> matchesWildcard(value, partArray, anchoredStart, anchoredEnd);
+  }
+
+  /**
+   * Tests whether the parts occur in the given order in value without overlapping.
+   *
+   * @param anchoredStart
+   *          If true, the first part has to be at the beginning of value.
+   * @param anchoredEnd
+   *          If true, the last part has to be at the end of value.
+   */
+  private static boolean matchesWildcard(String value, String[] parts, boolean anchoredStart,
+      boolean anchoredEnd)
+  {
+    int first = 0;
+    int last = parts.length;
+    int pos = 0;
+    int end = value.length();
+    if (anchoredStart)
+    {
+      if (!value.regionMatches(true, 0, parts[0], 0, parts[0].length()))
+      {
+        return false;
+      }
+      pos = parts[0].length();
+      first = 1;
+    }
+    if (anchoredEnd)
+    {
+      String part = parts[last - 1];
+      end -= part.length();
+      if (end < pos || !value.regionMatches(true, end, part, 0, part.length()))
+      {
+        return false;
+      }
+      last--;
+    }
+    for (int i = first; i < last; i++)
+    {
+      pos = indexOfIgnoreCase(value, parts[i], pos);
+      if (pos < 0)
+      {
+        return false;
+      }
+      pos += parts[i].length();
+    }
+    return pos <= end;
+  }
+
+  private static int indexOfIgnoreCase(String value, String part, int from)
+  {
+    int max = value.length() - part.length();
+    for (int i = from; i <= max; i++)
+    {
+      if (value.regionMatches(true, i, part, 0, part.length()))
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
 }
@@ -0,0 +1,521 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores lists of datasets, which don't fit into the memory of a {@link CacheDatasource}, in a
+ * directory. Each list is stored in its own file named by the HMAC of its key. A file contains the
+ * key, the time the list was fetched from the data source, the schema and the values of all
+ * datasets. Lists older than the time to live are ignored and deleted.
+ *
+ * The datasets contain personal data, so the files are only valid for the lifetime of the spill.
+ * They are encrypted with a key which is only held in memory, deleted when the JVM exits and all
+ * files of the directory are deleted when a new spill is created.
+ *
+ * The spill is bounded. Each write deletes the expired files and, if the files need more than the
+ * disk budget or there are more than {@link #MAX_FILES}, the oldest files. The methods are
+ * thread-safe.
+ */
+final class DatasetSpill
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(DatasetSpill.class);
+
+  /**
+   * "LOTC"
+   */
+  private static final int MAGIC = 0x4C4F5443;
+
+  /**
+   * Has to be increased if the format changes.
+   */
+  private static final int VERSION = 2;
+
+  private static final String SUFFIX = ".spill";
+
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private static final String CIPHER = "AES/GCM/NoPadding";
+
+  private static final int IV_LENGTH = 12;
+
+  private static final int TAG_LENGTH = 128;
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  /**
+   * Maximum number of files of a spill.
+   */
+  static final int MAX_FILES = 10000;
+
+  /**
+   * The directories of all spills. Their files are deleted when the JVM exits.
+   */
+  private static final Set<File> DIRS = ConcurrentHashMap.newKeySet();
+
+  static
+  {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> DIRS.forEach(DatasetSpill::deleteFiles),
+        "Spill-cleanup"));
+  }
+
+  private final File dir;
+
+  private final List<String> schema;
+
+  private final long ttl;
+
+  private final SecretKey secret;
+
+  private final long maxBytes;
+
+  /**
+   * The written files in the order they were written with their size. Guarded by itself.
+   */
+  private final LinkedHashMap<File, SpillFile> files = new LinkedHashMap<>();
+
+  /**
+   * The size of all {@link #files}. Guarded by {@link #files}.
+   */
+  private long bytes = 0;
+
+  /**
+   * Creates a spill in dir and deletes all files of former spills.
+   *
+   * @param dir
+   *          The directory of the files.
+   * @param schema
+   *          The schema of the datasets.
+   * @param ttl
+   *          The time to live of a list in milliseconds.
+   * @param maxBytes
+   *          The disk budget of the spill in bytes.
+   */
+  DatasetSpill(File dir, List<String> schema, long ttl, long maxBytes)
+  {
+    this.dir = dir;
+    this.schema = schema;
+    this.ttl = ttl;
+    this.maxBytes = maxBytes;
+    try
+    {
+      KeyGenerator generator = KeyGenerator.getInstance("AES");
+      generator.init(256);
+      secret = generator.generateKey();
+    } catch (NoSuchAlgorithmException e)
+    {
+      throw new IllegalStateException(e);
+    }
+    if (!dir.isDirectory() && !dir.mkdirs())
+    {
+      LOGGER.warn("Spill directory {} couldn't be created", dir);
+    }
+    deleteFiles(dir);
+    DIRS.add(dir);
+  }
+
+  /**
+   * The hex encoded SHA-256 hash of a string.
+   *
+   * @param str
+   *          The string.
+   * @return The hash.
+   */
+  static String digest(String str)
+  {
+    try
+    {
+      return hex(MessageDigest.getInstance("SHA-256").digest(str.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Writes the datasets. Errors are only logged.
+   *
+   * @param key
+   *          The key of the list.
+   * @param created
+   *          The time in milliseconds the datasets were fetched from the data source.
+   * @param datasets
+   *          The datasets.
+   */
+  void write(String key, long created, List<Dataset> datasets)
+  {
+    File file = getFile(key);
+    try
+    {
+      Path tmp = Files.createTempFile(dir.toPath(), "spill", TMP_SUFFIX);
+      try (OutputStream raw = Files.newOutputStream(tmp);
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(encrypt(raw))))
+      {
+        writeString(out, key);
+        out.writeLong(created);
+        out.writeInt(schema.size());
+        for (String column : schema)
+        {
+          writeString(out, column);
+        }
+        out.writeInt(datasets.size());
+        for (Dataset ds : datasets)
+        {
+          writeString(out, ds.getKey());
+          for (String column : schema)
+          {
+            String value;
+            try
+            {
+              value = ds.get(column);
+            } catch (ColumnNotFoundException e)
+            {
+              value = null;
+            }
+            writeString(out, value);
+          }
+        }
+      }
+      try
+      {
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e)
+      {
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      synchronized (files)
+      {
+        SpillFile spillFile = new SpillFile(System.currentTimeMillis(), file.length());
+        SpillFile former = files.remove(file);
+        if (former != null)
+        {
+          bytes -= former.size;
+        }
+        files.put(file, spillFile);
+        bytes += spillFile.size;
+        evict(spillFile.written);
+      }
+    } catch (IOException e)
+    {
+      LOGGER.warn("Spill file {} couldn't be written", file, e);
+    }
+  }
+
+  /**
+   * Deletes the expired files and the oldest files until the spill is within its budget. Has to be
+   * called while holding the lock of {@link #files}.
+   *
+   * @param now
+   *          The current time in milliseconds.
+   */
+  private void evict(long now)
+  {
+    Iterator<Map.Entry<File, SpillFile>> iter = files.entrySet().iterator();
+    while (iter.hasNext())
+    {
+      Map.Entry<File, SpillFile> entry = iter.next();
+      // a file is written after its datasets were fetched, so it expires after them
+      if (now - entry.getValue().written < ttl && bytes <= maxBytes && files.size() <= MAX_FILES)
+      {
+        break;
+      }
+      iter.remove();
+      bytes -= entry.getValue().size;
+      deleteFile(entry.getKey());
+    }
+  }
+
+  /**
+   * Deletes a file of the spill. Has to be called while holding the lock of {@link #files}.
+   *
+   * @param file
+   *          The file.
+   */
+  private void remove(File file)
+  {
+    SpillFile spillFile = files.remove(file);
+    if (spillFile != null)
+    {
+      bytes -= spillFile.size;
+    }
+    deleteFile(file);
+  }
+
+  /**
+   * Reads the datasets.
+   *
+   * @param key
+   *          The key of the list.
+   * @return The datasets or null, if there is no list with this key or it is expired.
+   */
+  SpilledDatasets read(String key)
+  {
+    File file = getFile(key);
+    if (!file.isFile())
+    {
+      return null;
+    }
+    try (InputStream raw = Files.newInputStream(file.toPath());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(decrypt(raw))))
+    {
+      if (!key.equals(readString(in)))
+      {
+        return null;
+      }
+      long created = in.readLong();
+      if (System.currentTimeMillis() - created >= ttl)
+      {
+        in.close();
+        synchronized (files)
+        {
+          remove(file);
+        }
+        return null;
+      }
+      int columns = in.readInt();
+      List<String> fileSchema = new ArrayList<>(columns);
+      for (int i = 0; i < columns; ++i)
+      {
+        fileSchema.add(readString(in));
+      }
+      if (!schema.equals(fileSchema))
+      {
+        return null;
+      }
+      int count = in.readInt();
+      List<Dataset> datasets = new ArrayList<>(count);
+      for (int i = 0; i < count; ++i)
+      {
+        String datasetKey = readString(in);
+        Map<String, String> data = new HashMap<>();
+        for (String column : schema)
+        {
+          data.put(column, readString(in));
+        }
+        datasets.add(new SimpleDataset(datasetKey, data));
+      }
+      return new SpilledDatasets(created, datasets);
+    } catch (IOException e)
+    {
+      LOGGER.warn("Spill file {} couldn't be read", file, e);
+      return null;
+    }
+  }
+
+  /**
+   * The file of a key. The name is keyed with the secret, so it doesn't reveal the query.
+   */
+  private File getFile(String key)
+  {
+    try
+    {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(secret);
+      return new File(dir, hex(mac.doFinal(key.getBytes(StandardCharsets.UTF_8))) + SUFFIX);
+    } catch (GeneralSecurityException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Writes the header and a random IV and returns a stream which encrypts everything written to
+   * it.
+   */
+  private OutputStream encrypt(OutputStream out) throws IOException
+  {
+    byte[] iv = new byte[IV_LENGTH];
+    RANDOM.nextBytes(iv);
+    DataOutputStream header = new DataOutputStream(out);
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION);
+    header.write(iv);
+    try
+    {
+      Cipher cipher = Cipher.getInstance(CIPHER);
+      cipher.init(Cipher.ENCRYPT_MODE, secret, new GCMParameterSpec(TAG_LENGTH, iv));
+      return new CipherOutputStream(out, cipher);
+    } catch (GeneralSecurityException e)
+    {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Reads the header and the IV and returns a stream which decrypts the rest of the input. The
+   * stream fails if the file was written by another spill or has been modified.
+   */
+  private InputStream decrypt(InputStream in) throws IOException
+  {
+    DataInputStream header = new DataInputStream(in);
+    if (header.readInt() != MAGIC || header.readInt() != VERSION)
+    {
+      throw new IOException("Unknown spill file format");
+    }
+    byte[] iv = new byte[IV_LENGTH];
+    header.readFully(iv);
+    try
+    {
+      Cipher cipher = Cipher.getInstance(CIPHER);
+      cipher.init(Cipher.DECRYPT_MODE, secret, new GCMParameterSpec(TAG_LENGTH, iv));
+      return new CipherInputStream(in, cipher);
+    } catch (GeneralSecurityException e)
+    {
+      throw new IOException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes)
+  {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes)
+    {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Deletes all spill files of a directory.
+   *
+   * @param dir
+   *          The directory.
+   */
+  private static void deleteFiles(File dir)
+  {
+    File[] spillFiles = dir
+        .listFiles((d, name) -> name.endsWith(SUFFIX) || name.endsWith(TMP_SUFFIX));
+    if (spillFiles != null)
+    {
+      for (File file : spillFiles)
+      {
+        deleteFile(file);
+      }
+    }
+  }
+
+  private static void deleteFile(File file)
+  {
+    try
+    {
+      Files.deleteIfExists(file.toPath());
+    } catch (IOException e)
+    {
+      LOGGER.debug("", e);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException
+  {
+    if (str == null)
+    {
+      out.writeInt(-1);
+    } else
+    {
+      byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException
+  {
+    int length = in.readInt();
+    if (length < 0)
+    {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The time a file was written and its size.
+   */
+  private static class SpillFile
+  {
+    final long written;
+
+    final long size;
+
+    SpillFile(long written, long size)
+    {
+      this.written = written;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Datasets read from a spill file.
+   */
+  static class SpilledDatasets
+  {
+    final long created;
+
+    final List<Dataset> datasets;
+
+    SpilledDatasets(long created, List<Dataset> datasets)
+    {
+      this.created = created;
+      this.datasets = datasets;
+    }
+  }
+}
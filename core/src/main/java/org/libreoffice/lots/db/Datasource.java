@@ -22,6 +22,7 @@
  */
 package org.libreoffice.lots.db;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Supplier;
@@ -30,6 +31,7 @@ import org.libreoffice.lots.WollMuxFiles;
 import org.libreoffice.lots.config.ConfigThingy;
 import org.libreoffice.lots.config.ConfigurationErrorException;
 import org.libreoffice.lots.config.NodeNotFoundException;
+import org.libreoffice.lots.util.L;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +51,10 @@ import org.slf4j.LoggerFactory;
  * In this context, it should be noted that connections should be explicitly
  * closed using close() (typically in a finally() block to ensure it's executed even in exceptional cases)
  * because Java's Garbage Collection may do this very late. <br>
+ * <br> The instances of {@link Datasources#getDatasources()} are shared by all callers, so the
+ * methods for accessing the records are called from several threads at the same time. They have
+ * to be thread-safe: the state should be immutable after the constructor, mutable state like
+ * connections and caches has to be synchronized or use concurrent data structures. <br>
  * <br> Arguments against the "override" data source type: - (correct) search implementation
  * would be difficult and inefficient - would likely result in poorer data maintenance in
  * LDAP because it's easier to introduce an override
@@ -87,6 +93,43 @@ public abstract class Datasource
    */
   public abstract QueryResults find(List<QueryPart> query);
 
+  /**
+   * Returns all records that satisfy at least one of the 'queries'. Each query is evaluated like
+   * {@link #find(List)}. A record which satisfies more than one query may be returned more than
+   * once. Data sources that can evaluate several queries with one request (e.g. an OR-filter)
+   * should override this method. The default implementation calls {@link #find(List)} for each
+   * query.
+   *
+   * @param queries
+   *          Queries to search against the datasource.
+   * @return Results as {@link QueryResults}
+   */
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    List<Dataset> results = new ArrayList<>();
+    for (List<QueryPart> query : queries)
+    {
+      for (Dataset ds : find(query))
+      {
+        results.add(ds);
+      }
+    }
+    return new QueryResultsList(results);
+  }
+
+  /**
+   * Does this data source match a search string without wildcards only against values which are
+   * equal to it ignoring case? Data sources with other semantics, e.g. matching rules or
+   * multi-valued attributes, have to return false. The results of {@link #findAny(List)} can't
+   * always be assigned to their queries by the values of the datasets then.
+   *
+   * @return True if a search matches equal values ignoring case.
+   */
+  public boolean matchesByEquality()
+  {
+    return true;
+  }
+
   /**
    * Returns an implementation-dependent subset of records from the data source.
    * Ideally, the data source should return all of its records here, or at least as many as possible.
@@ -99,6 +142,16 @@ public abstract class Datasource
    */
   public abstract String getName();
 
+  /**
+   * Releases the resources of this data source, e.g. connections. It's called by
+   * {@link Datasources} if the data source is replaced after the configuration has changed.
+   * Searches which are still running may fail afterwards.
+   */
+  public void close()
+  {
+    // nothing to release
+  }
+
   /**
    * Gets datasource value by given {@link ConfigThingy} and key.
    *
@@ -115,6 +168,53 @@ public abstract class Datasource
     return source.get(key, ConfigurationErrorException.class, errorMessage.get()).toString();
   }
 
+  /**
+   * Parses an optional number of a data source definition.
+   *
+   * @param source
+   *          {@link ConfigThingy} of the data source.
+   * @param key
+   *          The key of the number.
+   * @param defaultValue
+   *          The number if the key isn't present.
+   * @param min
+   *          The smallest valid number.
+   * @param max
+   *          The largest valid number.
+   * @return The number.
+   * @throws ConfigurationErrorException
+   *           The value isn't a number between min and max.
+   */
+  protected long parseNumber(ConfigThingy source, String key, long defaultValue, long min,
+      long max)
+  {
+    String value = source.getString(key, null);
+    if (value == null)
+    {
+      return defaultValue;
+    }
+    try
+    {
+      long number = Long.parseLong(value);
+      if (number >= min && number <= max)
+      {
+        return number;
+      }
+    } catch (NumberFormatException e)
+    {
+      LOGGER.trace("", e);
+    }
+    if (max == Long.MAX_VALUE)
+    {
+      throw new ConfigurationErrorException(
+          L.m("Data source \"{0}\": {1} has to be a number not less than {2}: \"{3}\"",
+              getName(), key, min, value));
+    }
+    throw new ConfigurationErrorException(
+        L.m("Data source \"{0}\": {1} has to be a number between {2} and {3}: \"{4}\"",
+            getName(), key, min, max, value));
+  }
+
   public static long getDatasourceTimeout()
   {
     if (datasourceTimeout == null)
@@ -22,9 +22,13 @@
  */
 package org.libreoffice.lots.db;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import org.libreoffice.lots.WollMuxFiles;
 import org.libreoffice.lots.config.ConfigThingy;
@@ -40,27 +44,36 @@ public class Datasources
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Datasources.class);
 
+  /**
+   * The data sources of {@link #datasourcesConf}. Guarded by the class lock.
+   */
   private static Map<String, Datasource> datasources = null;
 
+  /**
+   * The configuration from which {@link #datasources} were created.
+   */
+  private static ConfigThingy datasourcesConf = null;
+
   private Datasources()
   {
     // nothing to do
   }
 
   /**
-   * Parse the configuration for {@link Datasource} definitions.
+   * Parse the configuration for {@link Datasource} definitions. The data sources are shared
+   * by all callers and threads until the configuration changes, so they have to be thread-safe.
    *
    * @return Mapping from data source name to {@link Datasource}.
    */
-  public static Map<String, Datasource> getDatasources()
+  public static synchronized Map<String, Datasource> getDatasources()
   {
-    if (datasources != null)
+    ConfigThingy joinConf = WollMuxFiles.getWollmuxConf();
+    if (datasources != null && datasourcesConf == joinConf)
     {
       return datasources;
     }
 
     HashMap<String, Datasource> datasources = new HashMap<>();
-    ConfigThingy joinConf = WollMuxFiles.getWollmuxConf();
     URL context = WollMuxFiles.getDefaultContext();
 
     ConfigThingy datenquellen = joinConf.query("DataSources").query("DataSource");
@@ -103,6 +116,9 @@ public class Datasources
         case "ooo":
           ds = new OOoDatasource(datasources, sourceDesc);
           break;
+        case "cache":
+          ds = new CacheDatasource(datasources, sourceDesc, context);
+          break;
         case "funky":
           ds = new FunkyDatasource(datasources, sourceDesc);
           break;
@@ -128,6 +144,37 @@ public class Datasources
       datasources.put(name, ds);
     }
 
-    return datasources;
+    Map<String, Datasource> replaced = Datasources.datasources;
+    Datasources.datasources = Collections.unmodifiableMap(datasources);
+    datasourcesConf = joinConf;
+    if (replaced != null)
+    {
+      replaced.values().stream().filter(Objects::nonNull).forEach(Datasource::close);
+    }
+    return Datasources.datasources;
+  }
+
+  /**
+   * Writes the statistics of all data sources of type "cache". Nothing is written if the data
+   * sources haven't been initialized yet.
+   *
+   * @param out
+   *          The output.
+   * @throws IOException
+   *           Can't write to the output.
+   */
+  public static synchronized void dumpCacheStatistics(Writer out) throws IOException
+  {
+    if (datasources == null)
+    {
+      return;
+    }
+    for (Datasource ds : datasources.values())
+    {
+      if (ds instanceof CacheDatasource)
+      {
+        out.write(((CacheDatasource) ds).getStatistics() + "\n");
+      }
+    }
   }
 }
@@ -22,10 +22,12 @@
  */
 package org.libreoffice.lots.db;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import org.libreoffice.lots.config.ConfigThingy;
 import org.libreoffice.lots.config.ConfigurationErrorException;
@@ -37,8 +39,9 @@ import org.libreoffice.lots.util.L;
 
 /**
  * Data source that enables columns calculated with WollMux functions.
- * CAUTION! This data source does not behave in search queries according to the normal behavior of a data source,
- * as it always searches the original data but returns transformed records.
+ * Search conditions on columns of the original data are passed to the source, conditions on calculated
+ * columns are evaluated on the transformed records afterwards. If a query only contains conditions on
+ * calculated columns, the contents of the source are searched.
  *
  * @author Matthias Benkmann (D-III-ITD-D101)
  */
@@ -124,7 +127,35 @@ public class FunkyDatasource extends Datasource
   @Override
   public QueryResults find(List<QueryPart> query)
   {
-    return columnTransformer.transform(source.find(query));
+    List<QueryPart> pushable = new ArrayList<>();
+    List<QueryPart> residual = new ArrayList<>();
+    for (QueryPart part : query)
+    {
+      if (columnTransformer.hasPseudoColumn(part.getColumnName()))
+      {
+        residual.add(part);
+      } else
+      {
+        pushable.add(part);
+      }
+    }
+
+    if (residual.isEmpty())
+    {
+      return columnTransformer.transform(source.find(query));
+    }
+
+    QueryResults candidates = pushable.isEmpty() ? source.getContents() : source.find(pushable);
+    Predicate<Dataset> pred = DatasetPredicate.makePredicate(residual);
+    List<Dataset> results = new ArrayList<>();
+    for (Dataset ds : columnTransformer.transform(candidates))
+    {
+      if (pred.test(ds))
+      {
+        results.add(ds);
+      }
+    }
+    return new QueryResultsList(results);
   }
 
   @Override
@@ -0,0 +1,367 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.db;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.InitialLdapContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of connections to an LDAP server.
+ *
+ * Connections which haven't been used for some time are closed. A connection which has been idle
+ * for a while or which has had a communication error is checked before it's handed out again.
+ * The pool has to be closed with {@link #close()} if it isn't used anymore.
+ */
+final class LDAPConnectionPool
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(LDAPConnectionPool.class);
+
+  /**
+   * Closes idle connections of all pools.
+   */
+  private static final ScheduledThreadPoolExecutor EVICTOR = new ScheduledThreadPoolExecutor(1,
+      r -> {
+        Thread t = new Thread(r, "LDAP-connection-evictor");
+        t.setDaemon(true);
+        return t;
+      });
+
+  static
+  {
+    EVICTOR.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Connections which have been idle longer than this (in ms) are checked before they are used.
+   */
+  private static final long VALIDATION_INTERVAL = 5000;
+
+  private final Properties properties;
+
+  private final long idleTimeout;
+
+  private final long borrowTimeout;
+
+  /**
+   * One permit per connection which can be handed out.
+   */
+  private final Semaphore permits;
+
+  /**
+   * The idle connections, the most recently used first.
+   */
+  private final Deque<IdleContext> idle = new ArrayDeque<>();
+
+  /**
+   * Has the pool been closed? Guarded by {@link #idle}.
+   */
+  private boolean closed = false;
+
+  private final Eviction eviction;
+
+  /**
+   * Connections which had a communication error.
+   */
+  private final Set<DirContext> broken = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Creates a new pool.
+   *
+   * @param properties
+   *          The environment of the connections.
+   * @param maxSize
+   *          The maximum number of connections.
+   * @param idleTimeout
+   *          Idle connections are closed after this time in ms.
+   * @param borrowTimeout
+   *          Maximum time in ms to wait for a connection if all connections are in use.
+   */
+  LDAPConnectionPool(Properties properties, int maxSize, long idleTimeout, long borrowTimeout)
+  {
+    this.properties = properties;
+    this.idleTimeout = idleTimeout;
+    this.borrowTimeout = borrowTimeout;
+    this.permits = new Semaphore(maxSize, true);
+    eviction = new Eviction(this);
+    long period = Math.max(idleTimeout / 2, 1);
+    eviction.future = EVICTOR.scheduleWithFixedDelay(eviction, period, period,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Get a connection. It has to be returned with {@link #release(DirContext)}.
+   *
+   * @return A connection.
+   * @throws NamingException
+   *           No connection could be established or all connections are in use.
+   */
+  DirContext borrow() throws NamingException
+  {
+    try
+    {
+      if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS))
+      {
+        throw new ServiceUnavailableException("All LDAP connections are in use");
+      }
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Interrupted while waiting for an LDAP connection");
+    }
+
+    try
+    {
+      if (isClosed())
+      {
+        throw new ServiceUnavailableException("LDAP connection pool is closed");
+      }
+      IdleContext candidate;
+      while ((candidate = pollIdle()) != null)
+      {
+        long idleTime = System.currentTimeMillis() - candidate.since;
+        if (idleTime > idleTimeout)
+        {
+          close(candidate.ctx);
+        } else if ((broken.remove(candidate.ctx) | idleTime > VALIDATION_INTERVAL)
+            && !isValid(candidate.ctx))
+        {
+          close(candidate.ctx);
+        } else
+        {
+          return candidate.ctx;
+        }
+      }
+      return new InitialLdapContext(properties, null);
+    } catch (NamingException | RuntimeException e)
+    {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a connection to the pool.
+   *
+   * @param ctx
+   *          A connection of {@link #borrow()}. If null nothing happens.
+   */
+  void release(DirContext ctx)
+  {
+    if (ctx == null)
+    {
+      return;
+    }
+    boolean pooled;
+    synchronized (idle)
+    {
+      pooled = !closed;
+      if (pooled)
+      {
+        idle.addFirst(new IdleContext(ctx, System.currentTimeMillis()));
+      }
+    }
+    permits.release();
+    if (!pooled)
+    {
+      close(ctx);
+    }
+  }
+
+  /**
+   * Notes a failure of a connection. The connection is checked before it's used again, if the
+   * failure was a communication error.
+   *
+   * @param ctx
+   *          The connection.
+   * @param e
+   *          The failure.
+   */
+  void failed(DirContext ctx, NamingException e)
+  {
+    if (ctx != null
+        && (e instanceof CommunicationException || e instanceof ServiceUnavailableException))
+    {
+      broken.add(ctx);
+    }
+  }
+
+  /**
+   * Closes all connections which have been idle too long.
+   */
+  void evictIdle()
+  {
+    long now = System.currentTimeMillis();
+    List<DirContext> expired = new ArrayList<>();
+    synchronized (idle)
+    {
+      Iterator<IdleContext> iter = idle.descendingIterator();
+      while (iter.hasNext())
+      {
+        IdleContext candidate = iter.next();
+        if (now - candidate.since <= idleTimeout)
+        {
+          break;
+        }
+        iter.remove();
+        expired.add(candidate.ctx);
+      }
+    }
+    // closing can block, so it's done without holding the lock
+    expired.forEach(this::close);
+  }
+
+  /**
+   * Closes all idle connections and stops the eviction. Connections which are in use are closed
+   * when they are returned. No more connections can be borrowed afterwards.
+   */
+  void close()
+  {
+    List<DirContext> connections = new ArrayList<>();
+    synchronized (idle)
+    {
+      closed = true;
+      idle.forEach(candidate -> connections.add(candidate.ctx));
+      idle.clear();
+    }
+    if (eviction.future != null)
+    {
+      eviction.future.cancel(false);
+    }
+    connections.forEach(this::close);
+  }
+
+  private boolean isClosed()
+  {
+    synchronized (idle)
+    {
+      return closed;
+    }
+  }
+
+  /**
+   * Get the number of idle connections.
+   */
+  int getIdleCount()
+  {
+    synchronized (idle)
+    {
+      return idle.size();
+    }
+  }
+
+  private IdleContext pollIdle()
+  {
+    synchronized (idle)
+    {
+      return idle.pollFirst();
+    }
+  }
+
+  private boolean isValid(DirContext ctx)
+  {
+    try
+    {
+      // read the root DSE without any attributes
+      ctx.getAttributes("", new String[] { "1.1" });
+      return true;
+    } catch (NamingException e)
+    {
+      LOGGER.debug("LDAP connection is broken", e);
+      return false;
+    }
+  }
+
+  private void close(DirContext ctx)
+  {
+    broken.remove(ctx);
+    try
+    {
+      ctx.close();
+    } catch (NamingException e)
+    {
+      LOGGER.debug("", e);
+    }
+  }
+
+  /**
+   * Periodic eviction of idle connections. It only has a weak reference to the pool, so that
+   * unused pools can be collected.
+   */
+  private static class Eviction implements Runnable
+  {
+    private final WeakReference<LDAPConnectionPool> pool;
+
+    private volatile ScheduledFuture<?> future;
+
+    Eviction(LDAPConnectionPool pool)
+    {
+      this.pool = new WeakReference<>(pool);
+    }
+
+    @Override
+    public void run()
+    {
+      LDAPConnectionPool p = pool.get();
+      if (p != null)
+      {
+        p.evictIdle();
+      } else if (future != null)
+      {
+        future.cancel(false);
+      }
+    }
+  }
+
+  private static class IdleContext
+  {
+    private final DirContext ctx;
+
+    private final long since;
+
+    IdleContext(DirContext ctx, long since)
+    {
+      this.ctx = ctx;
+      this.since = since;
+    }
+  }
+}
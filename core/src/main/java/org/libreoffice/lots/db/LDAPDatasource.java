@@ -32,14 +32,16 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import javax.naming.Context;
+import javax.naming.InvalidNameException;
 import javax.naming.Name;
-import javax.naming.NameParser;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
@@ -47,7 +49,7 @@ import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
-import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapName;
 
 import org.libreoffice.lots.config.ConfigThingy;
 import org.libreoffice.lots.config.ConfigurationErrorException;
@@ -56,6 +58,10 @@ import org.libreoffice.lots.util.L;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
 /**
  * Data source for accessing an LDAP directory.
  *
@@ -74,11 +80,23 @@ public class LDAPDatasource extends Datasource
 
   private String baseDN;
 
+  /** The parsed {@link #baseDN}. */
+  private Name rootName;
+
   private String objectClass;
 
   /** Properties for the connection to the LDAP server. */
   private Properties properties = new Properties();
 
+  /** Default of the maximum number of connections to the LDAP server. */
+  private static final int DEFAULT_POOL_SIZE = 4;
+
+  /** Default time in ms after which unused connections are closed. */
+  private static final long DEFAULT_POOL_IDLE_TIMEOUT = 60000;
+
+  /** The connections to the LDAP server. */
+  private LDAPConnectionPool pool;
+
   /** Separator for generating keys from multiple key values. */
   private static final String SEPARATOR = "&:=&:%";
 
@@ -129,10 +147,16 @@ public class LDAPDatasource extends Datasource
   private static final Pattern KEY_RE = Pattern.compile("^(\\(&(\\([^()=]+[^()]*\\))+\\))?"
       + KEY_SEPARATOR_0_NON_0_RE + "([a-zA-Z_][a-zA-Z0-9_]*=.*" + SEPARATOR + ")?$");
 
+  /** Default of the maximum number of entries in {@link #attributeCache}. */
+  private static final long DEFAULT_ATTRIBUTE_CACHE_SIZE = 1000;
+
+  /** Default time in ms after which entries of {@link #attributeCache} expire. */
+  private static final long DEFAULT_ATTRIBUTE_CACHE_TTL = 600000;
+
   /**
-   * temporary cache for relative attributes (is created with every new search)
+   * Cache for the attributes of relative paths. It's shared by all searches on this data source.
    */
-  private Map<CacheKey, Attributes> attributeCache = new HashMap<>();
+  private Cache<CacheKey, Attributes> attributeCache;
 
   /**
    * Creates a new LDAP Datasource.
@@ -170,6 +194,13 @@ public class LDAPDatasource extends Datasource
     {
       throw new ConfigurationErrorException(L.m("BASE_DN-value is invalid: " + baseDN));
     }
+    try
+    {
+      rootName = new LdapName(baseDN);
+    } catch (InvalidNameException e)
+    {
+      throw new ConfigurationErrorException(L.m("BASE_DN-value is invalid: " + baseDN), e);
+    }
 
     objectClass = parseConfig(sourceDesc, "OBJECT_CLASS",
         () -> errorMessage() + L.m("No OBJECT_CLASS defined."));
@@ -200,6 +231,20 @@ public class LDAPDatasource extends Datasource
       properties.put(Context.SECURITY_CREDENTIALS, password);
     }
 
+    int poolSize = (int) parseNumber(sourceDesc, "POOL_SIZE", DEFAULT_POOL_SIZE, 1,
+        Integer.MAX_VALUE);
+    long poolIdleTimeout = parseNumber(sourceDesc, "POOL_IDLE_TIMEOUT",
+        DEFAULT_POOL_IDLE_TIMEOUT, 1, Long.MAX_VALUE);
+    pool = new LDAPConnectionPool(properties, poolSize, poolIdleTimeout,
+        Datasource.getDatasourceTimeout());
+
+    long attributeCacheSize = parseNumber(sourceDesc, "ATTRIBUTE_CACHE_SIZE",
+        DEFAULT_ATTRIBUTE_CACHE_SIZE, 0, Long.MAX_VALUE);
+    long attributeCacheTTL = parseNumber(sourceDesc, "ATTRIBUTE_CACHE_TTL",
+        DEFAULT_ATTRIBUTE_CACHE_TTL, 1, Long.MAX_VALUE);
+    attributeCache = CacheBuilder.newBuilder().maximumSize(attributeCacheSize)
+        .expireAfterWrite(attributeCacheTTL, TimeUnit.MILLISECONDS).recordStats().build();
+
     ConfigThingy spalten = sourceDesc.query("Columns");
 
     if (spalten.count() == 0)
@@ -429,33 +474,39 @@ public class LDAPDatasource extends Datasource
 
     List<Dataset> results = new ArrayList<>(keys.size());
 
+    DirContext ctx = null;
     try
     {
-      attributeCache.clear();
+      ctx = pool.borrow();
 
       if (keyStatus == ABSOLUTE_ONLY || keyStatus == ABSOLUTE_AND_RELATIVE)
       { // Absolute attributes present.
-        results.addAll(handleAbsoluteKeys(keys));
+        results.addAll(handleAbsoluteKeys(ctx, keys));
       } else
       { // Only relative attributes
         for (String currentKey : keys)
         {
           List<QueryPart> query = keyToFindQuery(currentKey);
 
-          QueryResults res = find(query);
+          QueryResults res = find(ctx, query);
           for (Dataset ds : res)
             results.add(ds);
         }
       }
 
+      return new QueryResultsList(results);
+    } catch (NamingException e)
+    {
+      LOGGER.error("Error in LDAP-Directory.", e);
       return new QueryResultsList(results);
     } finally
     {
-      attributeCache.clear();
+      pool.release(ctx);
+      logAttributeCacheStats();
     }
   }
 
-  private List<Dataset> handleAbsoluteKeys(Collection<String> keys)
+  private List<Dataset> handleAbsoluteKeys(DirContext ctx, Collection<String> keys)
   {
     List<Dataset> results = new ArrayList<>();
     // build searchFilter
@@ -478,7 +529,7 @@ public class LDAPDatasource extends Datasource
     searchFilter.append(")");
 
     // search LDAP
-    NamingEnumeration<SearchResult> currentResults = searchLDAP("", searchFilter.toString(),
+    NamingEnumeration<SearchResult> currentResults = searchLDAP(ctx, "", searchFilter.toString(),
         SearchControls.SUBTREE_SCOPE, true);
 
     while (currentResults != null && currentResults.hasMoreElements())
@@ -486,13 +537,14 @@ public class LDAPDatasource extends Datasource
       try
       {
         SearchResult currentResult = currentResults.next();
-        Dataset dataset = getDataset(currentResult);
+        Dataset dataset = getDataset(ctx, currentResult);
         if (keyStatus == ABSOLUTE_ONLY || keys.contains(dataset.getKey()))
         {
           results.add(dataset);
         }
       } catch (NamingException e)
       {
+        pool.failed(ctx, e);
         LOGGER.error("Error in LDAP-Directory.", e);
       }
     }
@@ -546,17 +598,14 @@ public class LDAPDatasource extends Datasource
    *
    * @author Max Meier (D-III-ITD 5.1)
    */
-  private RelativePaths getPaths(String filter, int pathLength)
+  private RelativePaths getPaths(DirContext ctx, String filter, int pathLength)
   {
 
     List<Name> paths = null;
-    DirContext ctx = null;
 
     try
     {
-      ctx = new InitialLdapContext(properties, null);
-      NameParser np = ctx.getNameParser("");
-      int rootSize = np.parse(baseDN).size();
+      int rootSize = rootName.size();
       SearchControls sc = new SearchControls();
       sc.setSearchScope(SearchControls.SUBTREE_SCOPE);
 
@@ -572,7 +621,7 @@ public class LDAPDatasource extends Datasource
       {
         SearchResult result = enumer.nextElement();
         String path = preparePath(result.getNameInNamespace());
-        Name pathName = np.parse(path);
+        Name pathName = new LdapName(path);
         /*
          * CAUTION: here, you CANNOT test (pathLength < 0 && (pathName.size()+rootLength > abs(pathLength)))
          * because negative conditions apply to descendants.
@@ -582,36 +631,188 @@ public class LDAPDatasource extends Datasource
           paths.add(pathName);
       }
 
-      ctx.close();
-
     } catch (NamingException e)
     {
+      pool.failed(ctx, e);
       LOGGER.error("Internal error in LDAP.", e);
+    }
+
+    return new RelativePaths(pathLength, paths);
+
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.libreoffice.lots.db.Datasource#find(java.util.List, long)
+   */
+  @Override
+  public QueryResults find(List<QueryPart> query)
+  {
+    DirContext ctx = null;
+    try
+    {
+      ctx = pool.borrow();
+      return find(ctx, query);
+    } catch (NamingException e)
+    {
+      LOGGER.error("Error in LDAP-Directory.", e);
+      return new QueryResultsList(new Vector<Dataset>(0));
     } finally
     {
-      if (ctx != null)
+      pool.release(ctx);
+      logAttributeCacheStats();
+    }
+  }
+
+  /**
+   * Combines the queries with an OR-filter into one search, if all columns of the queries are
+   * attributes of the node itself. Otherwise the queries are executed one after another on the
+   * same connection. Queries without a filter, i.e. with unknown columns or only empty search
+   * strings, are passed to {@link #find(List)}, so that they have the same results.
+   */
+  @Override
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    DirContext ctx = null;
+    try
+    {
+      ctx = pool.borrow();
+      StringBuilder searchFilter = new StringBuilder("(|");
+      List<List<QueryPart>> unfiltered = new ArrayList<>();
+      for (List<QueryPart> query : queries)
       {
-        try
+        String queryFilter = queryFilter(query);
+        if (queryFilter == null)
         {
-          ctx.close();
-        } catch (NamingException e)
+          return findEach(ctx, queries);
+        }
+        if (queryFilter.isEmpty())
+        {
+          unfiltered.add(query);
+        } else
         {
-          LOGGER.error("", e);
+          searchFilter.append(queryFilter);
         }
       }
+      searchFilter.append(')');
+
+      List<Dataset> results = new ArrayList<>();
+      for (Dataset ds : findEach(ctx, unfiltered))
+      {
+        results.add(ds);
+      }
+      if (searchFilter.length() > 3)
+      {
+        NamingEnumeration<SearchResult> currentResults = searchLDAP(ctx, "",
+            searchFilter.toString(), SearchControls.SUBTREE_SCOPE, true);
+        while (currentResults != null && currentResults.hasMoreElements())
+        {
+          SearchResult sr = currentResults.nextElement();
+          sr.setName(preparePath(sr.getNameInNamespace()));
+          results.add(getDataset(ctx, sr));
+        }
+      }
+      return new QueryResultsList(results);
+    } catch (NamingException e)
+    {
+      LOGGER.error("Error in LDAP-Directory.", e);
+      return new QueryResultsList(new Vector<Dataset>(0));
+    } finally
+    {
+      pool.release(ctx);
+      logAttributeCacheStats();
     }
+  }
 
-    return new RelativePaths(pathLength, paths);
+  /**
+   * LDAP matches by the matching rules of the attributes and against every value of multi-valued
+   * attributes.
+   */
+  @Override
+  public boolean matchesByEquality()
+  {
+    return false;
+  }
+
+  private QueryResults findEach(DirContext ctx, List<List<QueryPart>> queries)
+  {
+    List<Dataset> results = new ArrayList<>();
+    for (List<QueryPart> query : queries)
+    {
+      for (Dataset ds : find(ctx, query))
+      {
+        results.add(ds);
+      }
+    }
+    return new QueryResultsList(results);
+  }
 
+  /**
+   * Builds the filter of a query on the attributes of a node.
+   *
+   * @return The filter, an empty string if the query can't have any results or null if the query
+   *         contains a column with a relative path.
+   */
+  private String queryFilter(List<QueryPart> query)
+  {
+    StringBuilder filter = new StringBuilder();
+    for (QueryPart part : query)
+    {
+      ColumnDefinition colDef = columnDefinitions.get(part.getColumnName());
+      if (colDef == null)
+      {
+        return "";
+      }
+      if (colDef.relativePath != 0)
+      {
+        return null;
+      }
+      if (!part.getSearchString().isEmpty())
+      {
+        filter.append(attributeFilter(colDef, part.getSearchString()));
+      }
+    }
+    if (filter.length() == 0)
+    {
+      return "";
+    }
+    return "(&" + filter + ")";
   }
 
-  /*
-   * (non-Javadoc)
+  private String attributeFilter(ColumnDefinition colDef, String value)
+  {
+    String filter = "(" + ldapEscape(colDef.attributeName) + "=" + ldapEscape(value) + ")";
+    if (colDef.columnObjectClass != null)
+    {
+      filter = "(&" + filter + "(objectClass=" + ldapEscape(colDef.columnObjectClass) + "))";
+    }
+    return filter;
+  }
+
+  /**
+   * Get the hit and miss statistics of the cache for attributes of relative paths.
    *
-   * @see org.libreoffice.lots.db.Datasource#find(java.util.List, long)
+   * @return The statistics.
    */
-  @Override
-  public QueryResults find(List<QueryPart> query)
+  public CacheStats getAttributeCacheStats()
+  {
+    return attributeCache.stats();
+  }
+
+  private void logAttributeCacheStats()
+  {
+    if (LOGGER.isDebugEnabled())
+    {
+      LOGGER.debug("Attribute cache of {}: {} entries, {}", datasourceName, attributeCache.size(),
+          attributeCache.stats());
+    }
+  }
+
+  /**
+   * Executes a query with all its LDAP searches on one connection.
+   */
+  private QueryResults find(DirContext ctx, List<QueryPart> query)
   {
     StringBuilder searchFilter = new StringBuilder();
     List<RelativePaths> positiveSubtreePathLists = new ArrayList<>();
@@ -630,7 +831,6 @@ public class LDAPDatasource extends Datasource
         return new QueryResultsList(new Vector<Dataset>(0));
       }
 
-      String attributeName = colDef.attributeName;
       int relativePath = colDef.relativePath;
       String attributeValue = currentQuery.getSearchString();
 
@@ -639,14 +839,7 @@ public class LDAPDatasource extends Datasource
         continue;
       }
 
-      String columnObjectClass = colDef.columnObjectClass;
-      String currentSearchFilter = "(" + ldapEscape(attributeName) + "="
-          + ldapEscape(attributeValue) + ")";
-      if (columnObjectClass != null)
-      {
-        currentSearchFilter = "(&" + currentSearchFilter + "(objectClass="
-            + ldapEscape(columnObjectClass) + "))";
-      }
+      String currentSearchFilter = attributeFilter(colDef, attributeValue);
 
       if (relativePath == 0)
       { // edit filter
@@ -689,7 +882,7 @@ public class LDAPDatasource extends Datasource
 
       String pathFilter = ent.getValue();
 
-      RelativePaths paths = getPaths(pathFilter, relativePath);
+      RelativePaths paths = getPaths(ctx, pathFilter, relativePath);
 
       if (relativePath > 0)
       {
@@ -962,7 +1155,7 @@ public class LDAPDatasource extends Datasource
         {
           comma = "";
         }
-        NamingEnumeration<SearchResult> currentResults = searchLDAP(subTree + comma,
+        NamingEnumeration<SearchResult> currentResults = searchLDAP(ctx, subTree + comma,
             searchFilter.toString(), SearchControls.SUBTREE_SCOPE, true);
 
         while (currentResults != null && currentResults.hasMoreElements())
@@ -984,8 +1177,8 @@ public class LDAPDatasource extends Datasource
 
         Name currentName = currentRelativePath.name;
         String currentPath = currentName.toString();
-        List<SearchResult> currentSearch = searchLDAPLevel(currentPath, searchFilter.toString(),
-            depth);
+        List<SearchResult> currentSearch = searchLDAPLevel(ctx, currentPath,
+            searchFilter.toString(), depth);
 
         currentResultList.addAll(currentSearch);
       }
@@ -996,17 +1189,9 @@ public class LDAPDatasource extends Datasource
 
     // generate Datasets from SearchResults
 
-    attributeCache.clear();
-
-    try
+    for (SearchResult currentResult : currentResultList)
     {
-      for (SearchResult currentResult : currentResultList)
-      {
-        results.add(getDataset(currentResult));
-      }
-    } finally
-    {
-      attributeCache.clear();
+      results.add(getDataset(ctx, currentResult));
     }
 
     return new QueryResultsList(results);
@@ -1033,6 +1218,12 @@ public class LDAPDatasource extends Datasource
     return datasourceName;
   }
 
+  @Override
+  public void close()
+  {
+    pool.close();
+  }
+
   /**
    * Generates a key from an ordered vector of key values.
    *
@@ -1112,29 +1303,25 @@ public class LDAPDatasource extends Datasource
     return key.toString();
   }
 
+  /**
+   * Key of {@link LDAPDatasource#attributeCache}: an entry and the attributes read from it.
+   */
   private static class CacheKey
   {
-    private static final String CACHE_KEY_SEPARATOR = "/{%§";
+    private final Name attributePath;
 
-    private String hash;
+    private final List<String> searchAttributes;
 
     public CacheKey(Name attributePath, String[] searchAttributes)
     {
-      StringBuilder buf = new StringBuilder();
-      buf.append(searchAttributes.length);
-      buf.append(CACHE_KEY_SEPARATOR);
-      buf.append(attributePath.toString());
-      for (int n = 0; n < searchAttributes.length; ++n)
-      {
-        buf.append(searchAttributes[n]);
-      }
-      hash = buf.toString();
+      this.attributePath = attributePath;
+      this.searchAttributes = List.of(searchAttributes);
     }
 
     @Override
     public int hashCode()
     {
-      return hash.hashCode();
+      return Objects.hash(attributePath, searchAttributes);
     }
 
     @Override
@@ -1145,7 +1332,8 @@ public class LDAPDatasource extends Datasource
         return false;
       }
       CacheKey otherKey = (CacheKey) other;
-      return hash.equals(otherKey.hash);
+      return attributePath.equals(otherKey.attributePath)
+          && searchAttributes.equals(otherKey.searchAttributes);
     }
   }
 
@@ -1158,29 +1346,19 @@ public class LDAPDatasource extends Datasource
    * @author Max Meier (D-III-ITD 5.1)
    *
    */
-  private Dataset getDataset(SearchResult searchResult)
+  private Dataset getDataset(DirContext ctx, SearchResult searchResult)
   {
     Attributes attributes = searchResult.getAttributes();
 
     Map<String, String> relation = new HashMap<>();
 
     Name pathName = null;
-    Name rootName = null;
-    DirContext ctx = null;
 
     try
     {
       String tempPath = searchResult.getNameInNamespace();
       tempPath = preparePath(tempPath);
-
-      ctx = new InitialLdapContext(properties, null);
-      NameParser nameParser = ctx.getNameParser("");
-      pathName = nameParser.parse(tempPath);
-      rootName = nameParser.parse(baseDN); // TOD0: This is a constant, only
-      // calculated only once (except that this
-      // only with a functioning
-      // network connection is possible). Testing with the network cable unplugged
-
+      pathName = new LdapName(tempPath);
     } catch (NamingException e)
     {
       LOGGER.error("Fehler beim Zugriff auf das LDAP-Verzeichnis.", e);
@@ -1232,7 +1410,7 @@ public class LDAPDatasource extends Datasource
           Attributes foundAttributes;
 
           CacheKey key = new CacheKey(attributePath, searchAttributes);
-          foundAttributes = attributeCache.get(key);
+          foundAttributes = attributeCache.getIfPresent(key);
 
           if (foundAttributes == null)
           {
@@ -1247,7 +1425,12 @@ public class LDAPDatasource extends Datasource
             value = (String) foundAttribute.get();
           }
 
-        } catch (NamingException | NullPointerException | IndexOutOfBoundsException e)
+        } catch (NamingException e)
+        {
+          // do nothing (Attribute value is not present and remains 'null')
+          pool.failed(ctx, e);
+          LOGGER.trace("", e);
+        } catch (NullPointerException | IndexOutOfBoundsException e)
         {
           // do nothing (Attribute value is not present and remains 'null')
           LOGGER.trace("", e);
@@ -1287,8 +1470,8 @@ public class LDAPDatasource extends Datasource
    * @throws NamingException
    *
    */
-  private NamingEnumeration<SearchResult> searchLDAP(String path, String filter, int searchScope,
-      boolean onlyObjectClass)
+  private NamingEnumeration<SearchResult> searchLDAP(DirContext ctx, String path, String filter,
+      int searchScope, boolean onlyObjectClass)
   {
     LOGGER.debug("searchLDAP({}, {}, {}, {})", path, filter, searchScope, onlyObjectClass);
 
@@ -1307,13 +1490,10 @@ public class LDAPDatasource extends Datasource
     }
 
     Optional<NamingEnumeration<SearchResult>> result = Optional.empty();
-    DirContext ctx = null;
 
     try
     {
-      ctx = new InitialLdapContext(properties, null);
-      NameParser nameParser = ctx.getNameParser("");
-      Name name = nameParser.parse(path + baseDN);
+      Name name = new LdapName(path + baseDN);
 
       LOGGER.trace("ctx.search({}, {}, searchControls) mit Zeitlimit {}", name, filter,
           searchControls.getTimeLimit());
@@ -1321,19 +1501,8 @@ public class LDAPDatasource extends Datasource
       LOGGER.trace("ctx.search() abgeschlossen");
     } catch (NamingException e)
     {
+      pool.failed(ctx, e);
       LOGGER.error("", e);
-    } finally
-    {
-      if (ctx != null)
-      {
-        try
-        {
-          ctx.close();
-        } catch (NamingException e)
-        {
-          LOGGER.error("", e);
-        }
-      }
     }
 
     result.ifPresent(r -> LOGGER
@@ -1351,7 +1520,8 @@ public class LDAPDatasource extends Datasource
    * @author Max Meier (D-III-ITD 5.1)
    *
    */
-  private List<SearchResult> searchLDAPLevel(String path, String filter, int level)
+  private List<SearchResult> searchLDAPLevel(DirContext ctx, String path, String filter,
+      int level)
   {
     List<String> seeds = new ArrayList<>();
     seeds.add(path);
@@ -1370,7 +1540,7 @@ public class LDAPDatasource extends Datasource
           comma = "";
         }
 
-        NamingEnumeration<SearchResult> enumer = searchLDAP(searchPath + comma, "",
+        NamingEnumeration<SearchResult> enumer = searchLDAP(ctx, searchPath + comma, "",
             SearchControls.ONELEVEL_SCOPE, false);
 
         while (enumer != null && enumer.hasMoreElements())
@@ -1401,7 +1571,7 @@ public class LDAPDatasource extends Datasource
         comma = "";
       }
 
-      NamingEnumeration<SearchResult> enumer = searchLDAP(currentPath + comma, filter,
+      NamingEnumeration<SearchResult> enumer = searchLDAP(ctx, currentPath + comma, filter,
           level == 0 ? SearchControls.OBJECT_SCOPE : SearchControls.ONELEVEL_SCOPE, true);
 
       while (enumer != null && enumer.hasMoreElements())
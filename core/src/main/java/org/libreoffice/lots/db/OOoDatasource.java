@@ -24,12 +24,17 @@ package org.libreoffice.lots.db;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,11 +45,13 @@ import com.sun.star.sdbc.SQLException;
 import com.sun.star.sdbc.XColumnLocate;
 import com.sun.star.sdbc.XConnection;
 import com.sun.star.sdbc.XDataSource;
+import com.sun.star.sdbc.XParameters;
 import com.sun.star.sdbc.XResultSet;
 import com.sun.star.sdbc.XRow;
 import com.sun.star.sdbc.XRowSet;
 import com.sun.star.sdbcx.XColumnsSupplier;
 import com.sun.star.sdbcx.XKeysSupplier;
+import com.sun.star.uno.UnoRuntime;
 
 import org.libreoffice.ext.unohelper.common.UNO;
 import org.libreoffice.ext.unohelper.common.UnoDictionary;
@@ -104,12 +111,11 @@ public class OOoDatasource extends Datasource
    *
    * o**** Find records based on a given key list *********
    *
-   * SELECT * FROM "<id>" WHERE ("<colId>"='<colVal>' AND "<colId>"='<colVal>' AND ...) OR (...) OR
-   * ...;
+   * SELECT * FROM "<id>" WHERE ("<colId>"=? AND "<colId>"=? AND ...) OR (...) OR ...;
    *
    * In <id> and <colId> Doublequotes are replaced by <doublequote symbol>.
    *
-   * In <colVal> Quotes are replaced by <quote symbol>.
+   * The values of the columns are passed as parameters of the statement.
    *
    * o ***** Find records that meet certain criteria ********
    *
@@ -118,9 +124,17 @@ public class OOoDatasource extends Datasource
    * ESCAPE character itself must be escaped in the string expression behind
    * LIKE (by prepending the escape character). Other characters must not be escaped.
    *
-   * SELECT * FROM "<id>" WHERE (lower("<colId>") LIKE lower('<pattern>') ESCAPE '|') AND (...) AND
-   * ...; In <id> und <colId> Doublequotes are replaced by <doublequote symbol>. In <pattern>
-   * are "_", "%" and "|" replaced by "|_", "|%" und "||".
+   * SELECT * FROM "<id>" WHERE (lower("<colId>") LIKE lower(?) ESCAPE '|') AND (...) AND
+   * ...; In <id> und <colId> Doublequotes are replaced by <doublequote symbol>. The pattern is
+   * passed as parameter of the statement. In the pattern "_", "%" and "|" are replaced by "|_",
+   * "|%" und "||".
+   *
+   * o ***** Find records that meet at least one of several criteria ********
+   *
+   * SELECT * FROM "<id>" WHERE lower("<colId>") IN (lower(?), lower(?), ...); if
+   * all criteria compare the same column with a value without wildcards, otherwise
+   *
+   * SELECT * FROM "<id>" WHERE ((...) AND (...)) OR ((...) AND (...)) OR ...;
    *****
    * Read all records ******
    *
@@ -158,6 +172,62 @@ public class OOoDatasource extends Datasource
    */
   private String[] keyColumns;
 
+  /**
+   * Mapping of the column names to their position in the {@link #schema}.
+   */
+  private Map<String, Integer> columnIndex = new HashMap<>();
+
+  /**
+   * The maximum number of results of {@link #find(List)} and {@link #getContents()}. 0 means no
+   * limit.
+   */
+  private int maxRows;
+
+  /**
+   * The number of rows fetched from the database at once.
+   */
+  private int fetchSize;
+
+  /**
+   * The time in milliseconds after which an unused connection is closed.
+   */
+  private long connectionIdleTimeout;
+
+  /**
+   * The cached connection, null if there's none.
+   */
+  private XConnection connection;
+
+  /**
+   * The time of the last query with {@link #connection}.
+   */
+  private long lastUse;
+
+  /**
+   * The task which closes the idle connection.
+   */
+  private ScheduledFuture<?> closeTask;
+
+  /**
+   * The row sets of the last used queries. They are prepared with {@link #connection} and only
+   * need new parameters to be executed again.
+   */
+  private Map<String, XRowSet> rowSets = new LinkedHashMap<>(16, 0.75f, true)
+  {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, XRowSet> eldest)
+    {
+      if (size() > ROW_SET_CACHE_SIZE)
+      {
+        UNO.XComponent(eldest.getValue()).dispose();
+        return true;
+      }
+      return false;
+    }
+  };
+
   /**
    * Username for logging in to the database.
    */
@@ -165,6 +235,25 @@ public class OOoDatasource extends Datasource
 
   private static final String SQL_SELECT_COMMAND = "SELECT * FROM ";
 
+  private static final String MAX_ROWS = "MaxRows";
+
+  private static final String FETCH_SIZE = "FetchSize";
+
+  /**
+   * The maximum number of cached row sets.
+   */
+  private static final int ROW_SET_CACHE_SIZE = 16;
+
+  /**
+   * Closes idle connections of all data sources.
+   */
+  private static final ScheduledThreadPoolExecutor CONNECTION_CLOSER =
+    new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "OOo-connection-closer");
+      t.setDaemon(true);
+      return t;
+    });
+
   /**
    * Password for logging in to the database.
    */
@@ -210,6 +299,10 @@ public class OOoDatasource extends Datasource
 
     userName = sourceDesc.getString("USER", "");
     password = sourceDesc.getString("PASSWORD", "");
+    maxRows = (int) parseNumber(sourceDesc, "MAX_ROWS", 0, 0, Integer.MAX_VALUE);
+    fetchSize = (int) parseNumber(sourceDesc, "FETCH_SIZE", 100, 0, Integer.MAX_VALUE);
+    connectionIdleTimeout = parseNumber(sourceDesc, "CONNECTION_IDLE_TIMEOUT", 60000, 0,
+        Long.MAX_VALUE);
 
     String sqlSyntaxStr = sourceDesc.getString("SQL_SYNTAX", "");
 
@@ -354,6 +447,11 @@ public class OOoDatasource extends Datasource
         throw new ConfigurationErrorException(L.m(
           "Data source \"{0}\": No Key column defined", datasourceName));
     }
+
+    for (int i = schema.size() - 1; i >= 0; --i)
+    {
+      columnIndex.put(schema.get(i), i);
+    }
   }
 
   /**
@@ -399,6 +497,7 @@ public class OOoDatasource extends Datasource
 
     StringBuilder buffy =
         new StringBuilder(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + " WHERE ");
+    List<String> parameters = new ArrayList<>();
 
     Iterator<String> iter = keys.iterator();
     boolean first = true;
@@ -417,15 +516,15 @@ public class OOoDatasource extends Datasource
           buffy.append(" AND ");
         }
         buffy.append(sqlIdentifier(decode(parts[i - 1])));
-        buffy.append('=');
-        buffy.append(sqlLiteral(decode(parts[i])));
+        buffy.append("=?");
+        parameters.add(decode(parts[i]));
       }
       buffy.append(')');
     }
 
     buffy.append(';');
 
-    return sqlQuery(buffy.toString());
+    return sqlQuery(buffy.toString(), parameters, false);
   }
 
   @Override
@@ -437,7 +536,95 @@ public class OOoDatasource extends Datasource
 
     StringBuilder buffy =
         new StringBuilder(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + " WHERE ");
+    List<String> parameters = new ArrayList<>();
+    appendConditions(buffy, parameters, query);
+    buffy.append(';');
+    return sqlQuery(buffy.toString(), parameters, true);
+  }
 
+  /**
+   * Combines the queries into one SQL statement. If all queries compare the same column with a
+   * value without wildcards, an IN-list is used, otherwise the conditions of each query are
+   * combined with OR.
+   */
+  @Override
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    List<List<QueryPart>> nonEmptyQueries = new ArrayList<>(queries.size());
+    for (List<QueryPart> query : queries)
+    {
+      if (!query.isEmpty()) {
+        nonEmptyQueries.add(query);
+      }
+    }
+    if (nonEmptyQueries.isEmpty()) {
+      return new QueryResultsList(new Vector<Dataset>(0));
+    }
+
+    StringBuilder buffy =
+        new StringBuilder(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + " WHERE ");
+    List<String> parameters = new ArrayList<>();
+
+    String inColumn = getInListColumn(nonEmptyQueries);
+    if (inColumn != null)
+    {
+      buffy.append(sqlLower());
+      buffy.append('(');
+      buffy.append(sqlIdentifier(inColumn));
+      buffy.append(") IN (");
+      boolean first = true;
+      for (List<QueryPart> query : nonEmptyQueries)
+      {
+        if (!first) {
+          buffy.append(", ");
+        }
+        first = false;
+        appendLowerParameter(buffy, parameters, query.get(0).getSearchString());
+      }
+      buffy.append(')');
+    } else
+    {
+      boolean first = true;
+      for (List<QueryPart> query : nonEmptyQueries)
+      {
+        if (!first) {
+          buffy.append(" OR ");
+        }
+        first = false;
+        buffy.append('(');
+        appendConditions(buffy, parameters, query);
+        buffy.append(')');
+      }
+    }
+
+    buffy.append(';');
+    return sqlQuery(buffy.toString(), parameters, false);
+  }
+
+  /**
+   * Returns the column if all queries consist of one exact comparison with the same column,
+   * otherwise null.
+   */
+  private String getInListColumn(List<List<QueryPart>> queries)
+  {
+    String column = queries.get(0).get(0).getColumnName();
+    for (List<QueryPart> query : queries)
+    {
+      if (query.size() != 1 || !column.equals(query.get(0).getColumnName())
+          || query.get(0).getSearchString().indexOf('*') >= 0) {
+        return null;
+      }
+    }
+    return column;
+  }
+
+  /**
+   * Appends the conditions of the query combined with AND. The search patterns are added to
+   * parameters.
+   */
+  private void appendConditions(StringBuilder buffy, List<String> parameters,
+      List<QueryPart> query)
+  {
     Iterator<QueryPart> iter = query.iterator();
     boolean first = true;
     while (iter.hasNext())
@@ -459,121 +646,239 @@ public class OOoDatasource extends Datasource
           // Therefore, the search string is converted to lowercase using the Java method toLowerCase.
           // The contents of the column to be searched can in turn be treated with lcase/lower.
           // This ensures that the searching and the search string both contain only lowercase letters.
-          buffy.append(sqlLiteral(sqlSearchPattern(part.getSearchString())).toLowerCase());
+          buffy.append('?');
+          parameters.add(sqlSearchPattern(part.getSearchString()).toLowerCase());
       } else {
         buffy.append(sqlLower());
-        buffy.append('(');
-        buffy.append(sqlLiteral(sqlSearchPattern(part.getSearchString())));
-        buffy.append(") ESCAPE '|'");
+        buffy.append("(?) ESCAPE '|'");
+        parameters.add(sqlSearchPattern(part.getSearchString()));
       }
 
       buffy.append(')');
     }
+  }
 
-    buffy.append(';');
-    return sqlQuery(buffy.toString());
+  /**
+   * Appends a parameter, which is compared in lower case.
+   */
+  private void appendLowerParameter(StringBuilder buffy, List<String> parameters, String value)
+  {
+    if (SQL_SYNTAX_PERVASIVESQL == sqlSyntax) {
+      buffy.append('?');
+      parameters.add(value.toLowerCase());
+    } else {
+      buffy.append(sqlLower());
+      buffy.append("(?)");
+      parameters.add(value);
+    }
   }
 
   @Override
   public QueryResults getContents()
   {
-    return sqlQuery(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + ";");
+    return sqlQuery(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + ";",
+        Collections.emptyList(), true);
   }
 
   /**
-   * Executes the SQL query query against the database and returns the results.
+   * Executes the SQL query against the database and returns the results. The connection and a
+   * row set for each query are kept, so that a query with the same SQL only needs new parameters.
+   *
+   * @param query
+   *          The SQL query with a ? for each parameter.
+   * @param parameters
+   *          The values of the parameters.
+   * @param limited
+   *          If true, at most {@link #maxRows} results are read.
    */
-  private QueryResults sqlQuery(String query)
+  private synchronized QueryResults sqlQuery(String query, List<String> parameters,
+      boolean limited)
   {
-    LOGGER.debug("sqlQuery(\"{}\")", query);
+    LOGGER.debug("sqlQuery(\"{}\", {})", query, parameters);
 
     List<OOoDataset> datasets = new ArrayList<>();
 
-    XRowSet results = null;
-    XConnection conn = null;
     try
     {
-
-      try
+      XRowSet results = getRowSet(query, limited);
+      XParameters params = UnoRuntime.queryInterface(XParameters.class, results);
+      params.clearParameters();
+      for (int i = 0; i < parameters.size(); ++i)
       {
-        XDataSource ds =
-          UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName));
-
-        ds.setLoginTimeout((int) Datasource.getDatasourceTimeout());
-        conn = ds.getConnection(userName, password);
+        params.setString(i + 1, parameters.get(i));
       }
-      catch (SQLException x)
-      {
-        LOGGER.error("Kann keine Verbindung zur Datenquelle herstellen", x);
-      }
-
-      results = UNO.XRowSet(UnoComponent.createComponentWithContext(UnoComponent.CSS_SDB_ROW_SET));
-
-      if (results == null)
-        throw new NullPointerException(L.m("Could not create RowSet"));
-
-      UnoProperty.setProperty(results, UnoProperty.ACTIVE_CONNECTION, conn);
-
-      /*
-       * EscapeProcessing == false means that OOo should not manipulate the query
-       * itself but should pass it directly to the database. When this is used,
-       * the result (currently) is always read-only, as OOo cannot perform updates on
-       * statements it has not parsed. See comment at http://qa.openoffice.org/issues/show_bug.cgi?id=78522.
-       * Equivalent to the button 'Execute SQL Command Directly' in the Base Query Design.
-       */
-      UnoProperty.setProperty(results, UnoProperty.ESCAPE_PROCESSING, Boolean.FALSE);
-
-      UnoProperty.setProperty(results, UnoProperty.COMMAND_TYPE, CommandType.COMMAND);
-      UnoProperty.setProperty(results, UnoProperty.COMMAND, query);
 
       results.execute();
 
-      Map<String, Integer> mapColumnNameToIndex = getColumnMapping(results);
+      int[] columnIndices = getColumnIndices(results);
       XRow row = UNO.XRow(results);
 
-      while (results.next())
+      int rowLimit = limited && maxRows > 0 ? maxRows : Integer.MAX_VALUE;
+      while (datasets.size() < rowLimit && results.next())
       {
-        Map<String, String> data = new HashMap<>();
-        Iterator<Map.Entry<String, Integer>> iter =
-          mapColumnNameToIndex.entrySet().iterator();
-        while (iter.hasNext())
+        String[] data = new String[columnIndices.length];
+        for (int i = 0; i < columnIndices.length; ++i)
         {
-          Map.Entry<String, Integer> entry = iter.next();
-          String column = entry.getKey();
-          int idx = entry.getValue().intValue();
-          String value = null;
-          if (idx > 0) {
-            value = row.getString(idx);
+          if (columnIndices[i] > 0) {
+            data[i] = row.getString(columnIndices[i]);
           }
-          data.put(column, value);
         }
         datasets.add(new OOoDataset(data));
       }
-
     }
     catch (Exception x)
     {
       LOGGER.error("Fehler beim Absetzen der Anfrage", x);
+      closeConnection();
     }
     finally
     {
-      if (results != null) {
-        UNO.XComponent(results).dispose();
-      }
-      if (conn != null) {
-        try
-        {
-          conn.close();
-        }
-        catch (Exception e)
-        {
-          LOGGER.trace("", e);
+      lastUse = System.currentTimeMillis();
+      scheduleClose();
+    }
+
+    return new QueryResultsList(datasets);
+  }
+
+  /**
+   * Returns the cached row set for the query or creates a new one. The row limit is set on
+   * every call, because the same query may be executed with and without limit.
+   */
+  private XRowSet getRowSet(String query, boolean limited) throws Exception
+  {
+    XRowSet results = rowSets.get(query);
+    if (results == null)
+    {
+      results = createRowSet(query);
+      rowSets.put(query, results);
+    }
+    UnoProperty.setProperty(results, MAX_ROWS, limited ? maxRows : 0);
+    return results;
+  }
+
+  /**
+   * Creates a new row set for the query.
+   */
+  private XRowSet createRowSet(String query) throws Exception
+  {
+    XRowSet results = UNO.XRowSet(UnoComponent.createComponentWithContext(UnoComponent.CSS_SDB_ROW_SET));
+
+    if (results == null)
+      throw new NullPointerException(L.m("Could not create RowSet"));
+
+    UnoProperty.setProperty(results, UnoProperty.ACTIVE_CONNECTION, getConnection());
+
+    /*
+     * EscapeProcessing == false means that OOo should not manipulate the query
+     * itself but should pass it directly to the database. When this is used,
+     * the result (currently) is always read-only, as OOo cannot perform updates on
+     * statements it has not parsed. See comment at http://qa.openoffice.org/issues/show_bug.cgi?id=78522.
+     * Equivalent to the button 'Execute SQL Command Directly' in the Base Query Design.
+     */
+    UnoProperty.setProperty(results, UnoProperty.ESCAPE_PROCESSING, Boolean.FALSE);
+
+    UnoProperty.setProperty(results, UnoProperty.COMMAND_TYPE, CommandType.COMMAND);
+    UnoProperty.setProperty(results, UnoProperty.COMMAND, query);
+    UnoProperty.setProperty(results, FETCH_SIZE, fetchSize);
+    return results;
+  }
+
+  /**
+   * Returns the cached connection or opens a new one.
+   */
+  private XConnection getConnection() throws Exception
+  {
+    if (connection != null)
+    {
+      try
+      {
+        if (!connection.isClosed()) {
+          return connection;
         }
       }
+      catch (SQLException x)
+      {
+        LOGGER.trace("", x);
+      }
+      closeConnection();
     }
 
-    return new QueryResultsList(datasets);
+    try
+    {
+      XDataSource ds =
+        UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName));
+
+      ds.setLoginTimeout((int) Datasource.getDatasourceTimeout());
+      connection = ds.getConnection(userName, password);
+    }
+    catch (SQLException x)
+    {
+      LOGGER.error("Kann keine Verbindung zur Datenquelle herstellen", x);
+      throw x;
+    }
+    return connection;
+  }
+
+  /**
+   * Disposes all row sets and closes the cached connection.
+   */
+  private synchronized void closeConnection()
+  {
+    rowSets.values().forEach(results -> UNO.XComponent(results).dispose());
+    rowSets.clear();
+    if (connection != null) {
+      try
+      {
+        connection.close();
+      }
+      catch (Exception e)
+      {
+        LOGGER.trace("", e);
+      }
+      connection = null;
+    }
+  }
+
+  /**
+   * Schedules closing of the connection, if it isn't already scheduled.
+   */
+  private void scheduleClose()
+  {
+    if (connection != null && (closeTask == null || closeTask.isDone())) {
+      closeTask = CONNECTION_CLOSER.schedule(this::closeIdleConnection, connectionIdleTimeout,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Closes the connection if it hasn't been used for {@link #connectionIdleTimeout} milliseconds.
+   * Otherwise closing is scheduled again.
+   */
+  private synchronized void closeIdleConnection()
+  {
+    long idle = System.currentTimeMillis() - lastUse;
+    if (idle >= connectionIdleTimeout) {
+      LOGGER.debug("Closing idle connection of data source {}", datasourceName);
+      closeConnection();
+    } else if (connection != null) {
+      closeTask = CONNECTION_CLOSER.schedule(this::closeIdleConnection,
+          connectionIdleTimeout - idle, TimeUnit.MILLISECONDS);
+    }
+  }
 
+  /**
+   * Returns for each column of the schema the column number for XRow(results)::getString(). If a
+   * column does not exist, its index is &lt;= 0.
+   */
+  private int[] getColumnIndices(XResultSet results)
+  {
+    Map<String, Integer> mapColumnNameToIndex = getColumnMapping(results);
+    int[] columnIndices = new int[schema.size()];
+    for (int i = 0; i < columnIndices.length; ++i)
+    {
+      columnIndices[i] = mapColumnNameToIndex.get(schema.get(i)).intValue();
+    }
+    return columnIndices;
   }
 
   /**
@@ -615,17 +920,6 @@ public class OOoDatasource extends Datasource
     }
   }
 
-  /**
-   * Returns str as a string literal prepared for insertion into SQL statements.
-   *
-   * @param str
-   *          The string literal returned by prepareForSqlInsert always begins and ends with a single apostrophe (').
-   */
-  private static String sqlLiteral(String str)
-  {
-    return "'" + str.replaceAll("'", "''") + "'";
-  }
-
   /**
    * Returns str as an identifier name prepared for insertion into SQL statements.
    *
@@ -659,11 +953,14 @@ public class OOoDatasource extends Datasource
 
   private class OOoDataset implements Dataset
   {
-    private Map<String, String> data;
+    /**
+     * The values in the order of the {@link #schema}.
+     */
+    private String[] data;
 
     private String key;
 
-    public OOoDataset(Map<String, String> data)
+    public OOoDataset(String[] data)
     {
       this.data = data;
       initKey(keyColumns);
@@ -680,7 +977,8 @@ public class OOoDatasource extends Datasource
       StringBuilder buffy = new StringBuilder();
       for (int i = 0; i < keyCols.length; ++i)
       {
-        String str = data.get(keyCols[i]);
+        Integer idx = columnIndex.get(keyCols[i]);
+        String str = idx == null ? null : data[idx];
         if (str != null)
         {
           buffy.append(encode(keyCols[i]));
@@ -696,10 +994,11 @@ public class OOoDatasource extends Datasource
     @Override
     public String get(String columnName) throws ColumnNotFoundException
     {
-      if (!schema.contains(columnName))
+      Integer idx = columnIndex.get(columnName);
+      if (idx == null)
         throw new ColumnNotFoundException(L.m("Column {0} does not exist!",
           columnName));
-      return data.get(columnName);
+      return data[idx];
     }
 
     @Override
@@ -417,30 +417,18 @@ public class OverlayDatasource extends Datasource
 
   private QueryResults overlayColumns(QueryResults results, Predicate<Dataset> filter)
   {
-    List<Dataset> resultsWithOverlayments = new ArrayList<>(results.size());
+    List<Dataset> datasets = BatchJoin.toList(results);
+    List<List<Dataset>> appendices = BatchJoin.join(datasets, match1, source2, match2);
+    List<Dataset> resultsWithOverlayments = new ArrayList<>(datasets.size());
 
-    Iterator<Dataset> iter = results.iterator();
-    while (iter.hasNext())
+    for (int i = 0; i < datasets.size(); ++i)
     {
-      Dataset ds = iter.next();
-
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match2[i], ds.get(match1[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults appendix = source2.find(query);
+      Dataset ds = datasets.get(i);
+      List<Dataset> appendix = appendices.get(i);
 
       Dataset newDataset;
 
-      if (appendix.size() == 0)
+      if (appendix.isEmpty())
       {
         newDataset = new ConcatDataset(ds, null);
         if (filter.test(newDataset))
@@ -449,10 +437,9 @@ public class OverlayDatasource extends Datasource
         }
       } else
       {
-        Iterator<Dataset> appendixIter = appendix.iterator();
-        while (appendixIter.hasNext())
+        for (Dataset append : appendix)
         {
-          newDataset = new ConcatDataset(ds, appendixIter.next());
+          newDataset = new ConcatDataset(ds, append);
           if (filter.test(newDataset))
           {
             resultsWithOverlayments.add(newDataset);
@@ -467,25 +454,14 @@ public class OverlayDatasource extends Datasource
 
   private QueryResults overlayColumnsReversed(QueryResults results, Predicate<Dataset> filter)
   {
-    List<ConcatDataset> resultsWithOverlayments = new ArrayList<>(results.size());
+    List<Dataset> datasets = BatchJoin.toList(results);
+    List<List<Dataset>> prependices = BatchJoin.join(datasets, match2, source1, match1);
+    List<ConcatDataset> resultsWithOverlayments = new ArrayList<>(datasets.size());
 
-    for (Dataset ds : results)
+    for (int i = 0; i < datasets.size(); ++i)
     {
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match1[i], ds.get(match2[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults prependix = source1.find(query);
-
-      for (Dataset prepend : prependix)
+      Dataset ds = datasets.get(i);
+      for (Dataset prepend : prependices.get(i))
       {
         ConcatDataset newDataset = new ConcatDataset(prepend, ds);
         if (filter.test(newDataset))
@@ -23,9 +23,13 @@
 package org.libreoffice.lots.db;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.Vector;
 import java.util.function.Predicate;
 
@@ -49,6 +53,11 @@ public class RAMDatasource extends Datasource
    */
   private String name;
 
+  /**
+   * Optional column oriented index over {@link #data}.
+   */
+  private ColumnarIndex index;
+
   /**
    * Creates a new RAMDatasource with the name 'name'. 'data' and 'schema' are included as references, not copied.
    *
@@ -64,6 +73,24 @@ public class RAMDatasource extends Datasource
     init(name, schema, data);
   }
 
+  /**
+   * Creates a new RAMDatasource with the name 'name'. 'data' and 'schema' are included as references, not copied.
+   *
+   * @param name
+   *          the name of the data source
+   * @param schema
+   *          the schema of the data source
+   * @param data
+   *          the data source records
+   * @param columnarIndex
+   *          if true, a column oriented index is built, so that queries don't have to scan all
+   *          records. 'data' must not be modified afterwards.
+   */
+  public RAMDatasource(String name, List<String> schema, List<Dataset> data, boolean columnarIndex)
+  {
+    init(name, schema, data, columnarIndex);
+  }
+
   /**
    * Creates an uninitialized RAMDatasource. A derived class that uses this constructor should call 'init()'
    * to perform the necessary initializations.
@@ -77,10 +104,20 @@ public class RAMDatasource extends Datasource
    * This method should be used by derived classes when they use the constructor without arguments.
    */
   protected void init(String name, List<String> schema, List<Dataset> data)
+  {
+    init(name, schema, data, false);
+  }
+
+  /**
+   * Performs the initialization actions of the constructor with the same parameters.
+   * This method should be used by derived classes when they use the constructor without arguments.
+   */
+  protected void init(String name, List<String> schema, List<Dataset> data, boolean columnarIndex)
   {
     this.schema = schema;
-    this.data = data;
+    this.data = columnarIndex && !(data instanceof RandomAccess) ? new ArrayList<>(data) : data;
     this.name = name;
+    this.index = columnarIndex ? new ColumnarIndex(schema, this.data) : null;
   }
 
   @Override
@@ -92,12 +129,18 @@ public class RAMDatasource extends Datasource
   @Override
   public QueryResults getDatasetsByKey(Collection<String> keys)
   {
+    if (index != null)
+    {
+      return toResults(index.getRowsByKey(keys));
+    }
+
+    Collection<String> keySet = keys instanceof Set ? keys : new HashSet<>(keys);
     List<Dataset> res = new ArrayList<>();
     Iterator<Dataset> iter = data.iterator();
     while (iter.hasNext())
     {
       Dataset ds = iter.next();
-      if (keys.contains(ds.getKey()))
+      if (keySet.contains(ds.getKey()))
       {
         res.add(ds);
       }
@@ -119,6 +162,11 @@ public class RAMDatasource extends Datasource
       return new QueryResultsList(new Vector<Dataset>(0));
     }
 
+    if (index != null)
+    {
+      return toResults(index.find(query));
+    }
+
     Predicate<Dataset> pred = DatasetPredicate.makePredicate(query);
 
     List<Dataset> results = new ArrayList<>();
@@ -133,6 +181,13 @@ public class RAMDatasource extends Datasource
     return new QueryResultsList(results);
   }
 
+  private QueryResults toResults(BitSet rows)
+  {
+    List<Dataset> results = new ArrayList<>(rows.cardinality());
+    rows.stream().forEach(row -> results.add(data.get(row)));
+    return new QueryResultsList(results);
+  }
+
   @Override
   public QueryResults getContents()
   {
@@ -202,6 +202,36 @@ public class SchemaDatasource extends Datasource
 
   @Override
   public QueryResults find(List<QueryPart> query)
+  {
+    List<QueryPart> translatedQuery = translateQuery(query);
+    if (translatedQuery == null)
+      return new QueryResultsList(new Vector<RenameDataset>(0));
+
+    return wrapDatasets(source.find(translatedQuery));
+  }
+
+  @Override
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    List<List<QueryPart>> translatedQueries = new ArrayList<>(queries.size());
+    for (List<QueryPart> query : queries)
+    {
+      List<QueryPart> translatedQuery = translateQuery(query);
+      if (translatedQuery != null)
+        translatedQueries.add(translatedQuery);
+    }
+    if (translatedQueries.isEmpty())
+      return new QueryResultsList(new Vector<RenameDataset>(0));
+
+    return wrapDatasets(source.findAny(translatedQueries));
+  }
+
+  /**
+   * Translates the column names of query to the column names of the source.
+   *
+   * @return The translated query or null if the query can't have any results.
+   */
+  private List<QueryPart> translateQuery(List<QueryPart> query)
   {
     List<QueryPart> translatedQuery = new ArrayList<>(query.size());
     Iterator<QueryPart> iter = query.iterator();
@@ -211,19 +241,25 @@ public class SchemaDatasource extends Datasource
       String spalte = p.getColumnName();
 
       if (!schema.contains(spalte)) // dieser Test ist nicht redundant wegen DROPs
-        return new QueryResultsList(new Vector<RenameDataset>(0));
+        return null;
 
       String alteSpalte = mapNewToOld.get(spalte);
 
       if (alteSpalte == /* nicht equals()!!!! */EMPTY_COLUMN)
-        return new QueryResultsList(new Vector<RenameDataset>(0));
+        return null;
 
       if (alteSpalte != null)
         translatedQuery.add(new QueryPart(alteSpalte, p.getSearchString()));
       else
         translatedQuery.add(p);
     }
-    return wrapDatasets(source.find(translatedQuery));
+    return translatedQuery;
+  }
+
+  @Override
+  public boolean matchesByEquality()
+  {
+    return source.matchesByEquality();
   }
 
   @Override
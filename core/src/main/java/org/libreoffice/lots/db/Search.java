@@ -24,12 +24,25 @@ package org.libreoffice.lots.db;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.libreoffice.lots.config.ConfigThingy;
+import org.libreoffice.lots.util.L;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Diese Klasse stellt Methoden zur Verfügung um in Datenquellen Suchen durchzuführen.
@@ -37,6 +50,17 @@ import org.libreoffice.lots.config.ConfigThingy;
 public class Search
 {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(Search.class);
+
+  /**
+   * Executes the queries of the search strategies.
+   */
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "Search");
+    t.setDaemon(true);
+    return t;
+  });
+
   private Search()
   {
     // hide implicit public constructor
@@ -60,6 +84,31 @@ public class Search
    */
   public static QueryResults search(String queryString, SearchStrategy searchStrategy,
       Map<String, Datasource> datasources)
+  {
+    return search(queryString, searchStrategy, datasources, partialResults -> {
+    });
+  }
+
+  /**
+   * Like {@link #search(String, SearchStrategy, Map)}, but the queries of the search strategy are
+   * executed concurrently. Each time a data source has answered, the results found so far are
+   * passed to partialResults. Data sources which haven't answered within
+   * {@link Datasource#getDatasourceTimeout()} milliseconds are ignored.
+   *
+   * @param queryString
+   *          die Suchanfrage
+   * @param searchStrategy
+   *          die zu verwendende Suchstrategie
+   * @param datasources
+   *          Data source to use.
+   * @param partialResults
+   *          Consumer of the results found so far. It's called in the thread of the caller.
+   * @throws IllegalArgumentException
+   *           falls eine Datenquelle, in der gesucht werden soll, nicht existiert
+   * @return Results as an Iterable of Dataset as {@link QueryResults}
+   */
+  public static QueryResults search(String queryString, SearchStrategy searchStrategy,
+      Map<String, Datasource> datasources, Consumer<QueryResults> partialResults)
   {
     if (queryString == null || searchStrategy == null || datasources == null)
     {
@@ -67,51 +116,120 @@ public class Search
     }
 
     List<Query> queries = parseQuery(searchStrategy, queryString);
-
-    QueryResults results = null;
-    List<QueryResults> listOfQueryResultsList = new ArrayList<>();
-
+    List<Datasource> sources = new ArrayList<>(queries.size());
     for (Query query : queries)
     {
-      if (query.numberOfQueryParts() == 0)
+      Datasource source = datasources.get(query.getDatasourceName());
+      if (source == null)
       {
-        results = datasources.get(query.getDatasourceName()).getContents();
-      } else
+        throw new IllegalArgumentException(
+            L.m("Data source \"{0}\" does not exist", query.getDatasourceName()));
+      }
+      sources.add(source);
+    }
+
+    QueryResults[] listOfQueryResults = new QueryResults[queries.size()];
+    CompletionService<QueryResults> completionService = new ExecutorCompletionService<>(EXECUTOR);
+    Map<Future<QueryResults>, Integer> futures = new HashMap<>();
+    for (int i = 0; i < queries.size(); ++i)
+    {
+      Query query = queries.get(i);
+      Datasource source = sources.get(i);
+      futures.put(completionService.submit(() -> executeQuery(query, source)), i);
+    }
+
+    Map<List<Object>, Dataset> merged = new LinkedHashMap<>();
+    long deadline = System.currentTimeMillis() + Datasource.getDatasourceTimeout();
+    try
+    {
+      for (int answered = 0; answered < queries.size(); ++answered)
       {
-        results = datasources.get(query.getDatasourceName()).find(query.getQueryParts());
+        Future<QueryResults> future = completionService
+            .poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        if (future == null)
+        {
+          LOGGER.warn("Search for \"{}\" timed out. Only {} of {} queries answered.", queryString,
+              answered, queries.size());
+          break;
+        }
+        QueryResults results = getResults(future);
+        listOfQueryResults[futures.get(future)] = results;
+        if (queries.size() == 1)
+        {
+          partialResults.accept(results);
+        } else
+        {
+          addAll(merged, results);
+          partialResults.accept(new QueryResultsList(new ArrayList<>(merged.values())));
+        }
       }
-      listOfQueryResultsList.add(results);
+    } catch (InterruptedException e)
+    {
+      LOGGER.debug("", e);
+      Thread.currentThread().interrupt();
+    } finally
+    {
+      futures.keySet().forEach(future -> future.cancel(true));
+    }
+
+    return mergeListOfQueryResults(listOfQueryResults);
+  }
+
+  private static QueryResults executeQuery(Query query, Datasource source)
+  {
+    if (query.numberOfQueryParts() == 0)
+    {
+      return source.getContents();
+    } else
+    {
+      return source.find(query.getQueryParts());
+    }
+  }
+
+  private static QueryResults getResults(Future<QueryResults> future) throws InterruptedException
+  {
+    try
+    {
+      return future.get();
+    } catch (ExecutionException e)
+    {
+      LOGGER.error("", e.getCause());
+      return new QueryResultsList(new ArrayList<Dataset>(0));
     }
-    return mergeListOfQueryResultsList(listOfQueryResultsList);
   }
 
   /**
-   * Führt die Ergenismengen zusammen. Dabei werden mehrfache Ergebnisse ausgefiltert.
+   * Führt die Ergenismengen in der Reihenfolge der Suchstrategie zusammen. Dabei werden mehrfache
+   * Ergebnisse ausgefiltert. Datensätze sind gleich, wenn sie von derselben Klasse sind und den
+   * gleichen Schlüssel haben. Ergebnisse, die nicht rechtzeitig geliefert wurden (null), werden
+   * ignoriert.
    *
    * @return bereinigte Ergebnisliste.
    */
-  private static QueryResults mergeListOfQueryResultsList(List<QueryResults> listOfQueryResultsList)
+  private static QueryResults mergeListOfQueryResults(QueryResults[] listOfQueryResults)
   {
-    QueryResultsSet results = new QueryResultsSet((o1, o2) -> {
-      if (o1.getClass() == o2.getClass() && o1.getKey() == o2.getKey())
-      {
-        return 0;
-      }
-      return 1;
-    });
-
-    if (listOfQueryResultsList.size() == 1)
+    if (listOfQueryResults.length == 1 && listOfQueryResults[0] != null)
     {
-      return listOfQueryResultsList.get(0);
-    } else
+      return listOfQueryResults[0];
+    }
+
+    Map<List<Object>, Dataset> merged = new LinkedHashMap<>();
+    for (QueryResults queryResults : listOfQueryResults)
     {
-      for (QueryResults queryResults : listOfQueryResultsList)
+      if (queryResults != null)
       {
-        results.addAll(queryResults);
+        addAll(merged, queryResults);
       }
     }
+    return new QueryResultsList(new ArrayList<>(merged.values()));
+  }
 
-    return results;
+  private static void addAll(Map<List<Object>, Dataset> merged, QueryResults queryResults)
+  {
+    for (Dataset ds : queryResults)
+    {
+      merged.putIfAbsent(Arrays.asList(ds.getClass(), ds.getKey()), ds);
+    }
   }
 
   /**
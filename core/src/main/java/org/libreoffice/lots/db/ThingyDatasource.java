@@ -47,6 +47,16 @@ public class ThingyDatasource extends RAMDatasource
 
   private static final Pattern SPALTENNAME = Pattern.compile("^[a-zA-Z_][a-zA-Z_0-9]*$");
 
+  /**
+   * Value of the optional INDEX setting for a column oriented index.
+   */
+  private static final String INDEX_COLUMNAR = "columnar";
+
+  /**
+   * Value of the optional INDEX setting without an index.
+   */
+  private static final String INDEX_NONE = "none";
+
   /**
    * Erzeugt eine neue ThingyDatasource.
    *
@@ -64,6 +74,12 @@ public class ThingyDatasource extends RAMDatasource
   {
     String name = parseConfig(sourceDesc, "NAME", () -> L.m("NAME of data source is missing"));
     String urlStr = parseConfig(sourceDesc, "URL", () -> L.m("URL of data source \"{0}\" is missing", name));
+    String indexStr = sourceDesc.getString("INDEX", INDEX_NONE);
+    if (!INDEX_COLUMNAR.equals(indexStr) && !INDEX_NONE.equals(indexStr))
+    {
+      throw new ConfigurationErrorException(
+          L.m("Error in definition of data source {0}: Unknown INDEX \"{1}\"", name, indexStr));
+    }
 
     try
     {
@@ -98,7 +114,7 @@ public class ThingyDatasource extends RAMDatasource
       List<Dataset> data = parseData(conf, name, schema, schemaOrdered,
           keyCols);
 
-      init(name, schema, data);
+      init(name, schema, data, INDEX_COLUMNAR.equals(indexStr));
     }
     catch (NodeNotFoundException x)
     {
@@ -156,6 +156,20 @@ public class UnionDatasource extends Datasource
     return new QueryResultsList(result.iterator(), 0);
   }
 
+  @Override
+  public QueryResults findAny(List<List<QueryPart>> queries)
+  {
+    Collection<Dataset> result = CollectionUtils.union(source1.findAny(queries),
+        source2.findAny(queries));
+    return new QueryResultsList(result.iterator(), 0);
+  }
+
+  @Override
+  public boolean matchesByEquality()
+  {
+    return source1.matchesByEquality() && source2.matchesByEquality();
+  }
+
   @Override
   public String getName()
   {
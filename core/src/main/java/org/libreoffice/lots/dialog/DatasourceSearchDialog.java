@@ -33,7 +33,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -155,6 +154,17 @@ public class DatasourceSearchDialog implements Dialog
    */
   private XDialog dialog;
 
+  /**
+   * Time in milliseconds a search is delayed, so that quickly repeated triggers only start one
+   * search.
+   */
+  private static final long SEARCH_DELAY = 200;
+
+  /**
+   * Schedules the searches of all tabs.
+   */
+  private SearchScheduler searchScheduler = new SearchScheduler(SEARCH_DELAY);
+
   /**
    * A new data source search dialog.
    *
@@ -704,11 +714,11 @@ public class DatasourceSearchDialog implements Dialog
         return;
       }
 
-      CompletableFuture.supplyAsync(() -> {
-        QueryResults r = null;
+      String queryString = query.getText();
+      searchScheduler.<QueryResults> schedule(partialResults -> {
         try
         {
-          r = Search.search(query.getText(), searchStrategy, datasources);
+          return Search.search(queryString, searchStrategy, datasources, partialResults);
         } catch (IllegalArgumentException x)
         {
           LOGGER.error("", x);
@@ -718,8 +728,8 @@ public class DatasourceSearchDialog implements Dialog
                   + "search term matching too many results.\n"
                   + "Please try another, more precise search query."));
         }
-        return r;
-      }).thenAcceptAsync(r -> {
+        return null;
+      }, r -> {
         if (r != null && resultsList != null)
         {
           setListElements(columnTransformer.transform(r));
@@ -814,6 +824,7 @@ public class DatasourceSearchDialog implements Dialog
    */
   private void dialogEnd(String actionCommand)
   {
+    searchScheduler.cancel();
     if (dialog != null)
     {
       dialog.endExecute();
@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.dialog;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the searches of a dialog. A search is started after a short delay, so that several
+ * triggers in quick succession only start the last search. Scheduling a new search cancels the
+ * previous one by interrupting it. Each search gets a sequence number and its results are only
+ * delivered as long as no newer search has been scheduled.
+ */
+public class SearchScheduler
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(SearchScheduler.class);
+
+  /**
+   * Executes the searches of all dialogs.
+   */
+  private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(2,
+      r -> {
+        Thread t = new Thread(r, "Dialog-search");
+        t.setDaemon(true);
+        return t;
+      });
+
+  static
+  {
+    EXECUTOR.setRemoveOnCancelPolicy(true);
+  }
+
+  private final long delay;
+
+  /**
+   * The sequence number of the newest search.
+   */
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * Makes sure, that results are delivered one after another, so that results of an older search
+   * can't overwrite the results of a newer one.
+   */
+  private final Object deliveryLock = new Object();
+
+  private Future<?> pending;
+
+  /**
+   * A new scheduler.
+   *
+   * @param delay
+   *          The time in milliseconds a search is delayed.
+   */
+  public SearchScheduler(long delay)
+  {
+    this.delay = delay;
+  }
+
+  /**
+   * Schedules a search and cancels the previous one.
+   *
+   * @param search
+   *          The search. It gets a consumer for partial results and returns the final results.
+   * @param resultConsumer
+   *          Gets the partial and final results of the search as long as it's the newest one.
+   */
+  public synchronized <T> void schedule(Function<Consumer<T>, T> search,
+      Consumer<T> resultConsumer)
+  {
+    long seq = sequence.incrementAndGet();
+    if (pending != null)
+    {
+      pending.cancel(true);
+    }
+
+    Consumer<T> consumer = results -> {
+      synchronized (deliveryLock)
+      {
+        if (sequence.get() == seq)
+        {
+          resultConsumer.accept(results);
+        } else
+        {
+          LOGGER.debug("Results of superseded search {} dropped", seq);
+        }
+      }
+    };
+    pending = EXECUTOR.schedule(() -> {
+      try
+      {
+        consumer.accept(search.apply(consumer));
+      } catch (Exception e)
+      {
+        LOGGER.error("", e);
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Cancels the current search. Its results aren't delivered anymore.
+   */
+  public synchronized void cancel()
+  {
+    sequence.incrementAndGet();
+    if (pending != null)
+    {
+      pending.cancel(true);
+      pending = null;
+    }
+  }
+}
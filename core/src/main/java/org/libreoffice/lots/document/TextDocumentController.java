@@ -28,12 +28,16 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,6 +70,7 @@ import org.libreoffice.lots.dialog.DialogLibrary;
 import org.libreoffice.lots.document.FormFieldFactory.FormField;
 import org.libreoffice.lots.document.PersistentDataContainer.DataID;
 import org.libreoffice.lots.document.commands.DocumentCommand;
+import org.libreoffice.lots.event.handlers.OnFlushFormValues;
 import org.libreoffice.lots.event.handlers.OnFormValueChanged;
 import org.libreoffice.lots.event.handlers.OnSetVisibleState;
 import org.libreoffice.lots.form.config.FormConfig;
@@ -94,6 +99,29 @@ public class TextDocumentController
 
   private static final String FENSTER = "Fenster";
 
+  /**
+   * The time in milliseconds without changes of form values, after which the form values are
+   * written to the persistent data.
+   */
+  private static final long FORM_VALUES_FLUSH_DELAY = 1000;
+
+  /**
+   * Requests the write of the form values of all documents after
+   * {@link #FORM_VALUES_FLUSH_DELAY}. The write itself is done by an {@link OnFlushFormValues}
+   * event.
+   */
+  private static final ScheduledThreadPoolExecutor FORM_VALUES_TIMER =
+      new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "Form-values-timer");
+        t.setDaemon(true);
+        return t;
+      });
+
+  static
+  {
+    FORM_VALUES_TIMER.setRemoveOnCancelPolicy(true);
+  }
+
   private TextDocumentModel model;
 
   private HashMap<Object, Object> functionContext;
@@ -127,6 +155,16 @@ public class TextDocumentController
 
   private FormModel formModel;
 
+  /**
+   * True if the form values have changed since they were written to the persistent data.
+   */
+  private boolean formFieldValuesDirty = false;
+
+  /**
+   * The scheduled write of the form values or null.
+   */
+  private Future<?> formFieldValuesFlush;
+
   /**
    * New controller.
    *
@@ -438,8 +476,20 @@ public class TextDocumentController
    */
   public synchronized void addFormFieldValue(String id, String value)
   {
-    setFormFieldValue(id, value);
-    updateDocumentFormFields(id);
+    addFormFieldValues(Collections.singletonMap(id, value));
+  }
+
+  /**
+   * Set several form values of the form model and document. The persistent data is written only
+   * once.
+   *
+   * @param values
+   *          Mapping from the name of the form element to its value.
+   */
+  public synchronized void addFormFieldValues(Map<String, String> values)
+  {
+    setFormFieldValues(values);
+    values.keySet().forEach(this::updateDocumentFormFields);
   }
 
   /**
@@ -860,6 +910,8 @@ public class TextDocumentController
       }
     }
 
+    cancelFormFieldValuesFlush();
+    formFieldValuesDirty = false;
     model.getPersistentData().removeData(DataID.FORMULARBESCHREIBUNG);
     model.getPersistentData().removeData(DataID.FORMULARWERTE);
   }
@@ -930,9 +982,49 @@ public class TextDocumentController
    */
   public synchronized void flushPersistentData()
   {
+    flushFormFieldValues();
     model.getPersistentData().flush();
   }
 
+  /**
+   * Write the form values to the persistent data, if they have changed since the last write.
+   * Should be called before the document is stored or copied.
+   */
+  public synchronized void flushFormFieldValues()
+  {
+    cancelFormFieldValuesFlush();
+    if (formFieldValuesDirty)
+    {
+      formFieldValuesDirty = false;
+      model.getPersistentData().setData(DataID.FORMULARWERTE, getFormFieldValuesString());
+    }
+  }
+
+  /**
+   * Cancel the scheduled write of the form values. Changed form values are written by the next call
+   * of {@link #flushFormFieldValues()}.
+   */
+  public synchronized void cancelFormFieldValuesFlush()
+  {
+    if (formFieldValuesFlush != null)
+    {
+      formFieldValuesFlush.cancel(false);
+      formFieldValuesFlush = null;
+    }
+  }
+
+  /**
+   * Mark the form values as changed and schedule their write. Every change delays the write, so
+   * that it happens as soon as there are no more changes.
+   */
+  private void scheduleFormFieldValuesFlush()
+  {
+    formFieldValuesDirty = true;
+    cancelFormFieldValuesFlush();
+    formFieldValuesFlush = FORM_VALUES_TIMER.schedule(() -> new OnFlushFormValues(this).emit(),
+        FORM_VALUES_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+  }
+
   /**
    * Calls {@link #insertMailMergeField(String, XTextRange)} with the current cursor position.
    *
@@ -1090,6 +1182,18 @@ public class TextDocumentController
    *          If true shows the elements, otherwise hides the elements.
    */
   public void setVisibleState(String groupId, boolean visible)
+  {
+    setVisibleStates(Collections.singletonMap(groupId, visible));
+  }
+
+  /**
+   * Show or hide all visibility elements within several groups. Each visibility element is
+   * updated only once.
+   *
+   * @param visibilities
+   *          Mapping from group id to the new state of the group.
+   */
+  public void setVisibleStates(Map<String, Boolean> visibilities)
   {
     try
     {
@@ -1102,7 +1206,7 @@ public class TextDocumentController
         groupState = model.getMapGroupIdToVisibilityState();
       }
 
-      groupState.put(groupId, visible);
+      groupState.putAll(visibilities);
 
       VisibilityElement firstChangedElement = null;
 
@@ -1110,7 +1214,7 @@ public class TextDocumentController
       for (VisibilityElement visibleElement : model.getDocumentCommands().getSetGroups())
       {
         Set<String> groups = visibleElement.getGroups();
-        if (!groups.contains(groupId))
+        if (groups.stream().noneMatch(visibilities::containsKey))
         {
           continue;
         }
@@ -1430,23 +1534,38 @@ public class TextDocumentController
    * @param value
    *          The new value of the field. If null the field is deleted from the persistend data.
    */
-  public void setFormFieldValue(String fieldId, String value)
+  public synchronized void setFormFieldValue(String fieldId, String value)
+  {
+    setFormFieldValues(Collections.singletonMap(fieldId, value));
+  }
+
+  /**
+   * Like {@link #setFormFieldValue(String, String)} for several fields. The persistent data isn't
+   * written immediately but as soon as there are no more changes, see
+   * {@link #flushFormFieldValues()}.
+   *
+   * @param values
+   *          Mapping from the id of the field to its new value.
+   */
+  public synchronized void setFormFieldValues(Map<String, String> values)
   {
     if (simulationResult == null)
     {
       model.updateLastTouchedByVersionInfo();
-      if (value == null)
-      {
-        model.getFormFieldValues().remove(fieldId);
-      }
-      else
-      {
-        model.getFormFieldValues().put(fieldId, value);
-      }
-      model.getPersistentData().setData(DataID.FORMULARWERTE, getFormFieldValuesString());
+      values.forEach((fieldId, value) -> {
+        if (value == null)
+        {
+          model.getFormFieldValues().remove(fieldId);
+        }
+        else
+        {
+          model.getFormFieldValues().put(fieldId, value);
+        }
+      });
+      scheduleFormFieldValuesFlush();
     } else
     {
-      simulationResult.setFormFieldValue(fieldId, value);
+      values.forEach(simulationResult::setFormFieldValue);
     }
   }
 
@@ -1933,6 +2052,24 @@ public class TextDocumentController
       new OnFormValueChanged(this, id, value).emit();
     }
   }
+
+  /**
+   * Like {@link #setValueChanged(String, String)} for several form fields. All fields are updated
+   * by one event.
+   *
+   * @param values
+   *          Mapping from the id of the form field to its new value.
+   */
+  public void setValuesChanged(Map<String, String> values)
+  {
+    Map<String, String> changed = new LinkedHashMap<>(values);
+    changed.remove("");
+    if (!changed.isEmpty())
+    {
+      new OnFormValueChanged(this, changed).emit();
+    }
+  }
+
   /**
    * Set the visibility of a group.
    *
@@ -1946,4 +2083,19 @@ public class TextDocumentController
     new OnSetVisibleState(this, groupId, visible, null).emit();
   }
 
+  /**
+   * Like {@link #setVisibilityChanged(String, boolean)} for several groups. All groups are updated
+   * by one event.
+   *
+   * @param visibilities
+   *          Mapping from group id to the new state of the group.
+   */
+  public void setVisibilitiesChanged(Map<String, Boolean> visibilities)
+  {
+    if (!visibilities.isEmpty())
+    {
+      new OnSetVisibleState(this, new LinkedHashMap<>(visibilities), null).emit();
+    }
+  }
+
 }
@@ -55,7 +55,7 @@ public class WollMuxEventHandler
   /**
    * Does this event handler accept new events?
    */
-  private boolean acceptEvents = false;
+  private volatile boolean acceptEvents = false;
 
   /**
    * Accept or reject new events.
@@ -72,6 +72,16 @@ public class WollMuxEventHandler
       LOGGER.debug("EventProcessor: blockiere Entgegennahme von Events!");
   }
 
+  /**
+   * Are new events accepted?
+   *
+   * @return True if new events are accepted, false if they are ignored.
+   */
+  public boolean isAcceptingEvents()
+  {
+    return acceptEvents;
+  }
+
   /**
    * Create a new WollMux event bus and register all listeners implementing
    * {@link WollMuxEventListener}.
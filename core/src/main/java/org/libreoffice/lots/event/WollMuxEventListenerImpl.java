@@ -30,6 +30,7 @@ import org.libreoffice.lots.event.handlers.OnCloseTextDocument;
 import org.libreoffice.lots.event.handlers.OnCollectNonWollMuxFormFieldsViaPrintModel;
 import org.libreoffice.lots.event.handlers.OnDumpInfo;
 import org.libreoffice.lots.event.handlers.OnExecutePrintFunction;
+import org.libreoffice.lots.event.handlers.OnFlushFormValues;
 import org.libreoffice.lots.event.handlers.OnFormValueChanged;
 import org.libreoffice.lots.event.handlers.OnFormularMax4000Show;
 import org.libreoffice.lots.event.handlers.OnFunctionDialog;
@@ -38,6 +39,7 @@ import org.libreoffice.lots.event.handlers.OnJumpToPlaceholder;
 import org.libreoffice.lots.event.handlers.OnKill;
 import org.libreoffice.lots.event.handlers.OnManagePrintFunction;
 import org.libreoffice.lots.event.handlers.OnNotifyDocumentEventListener;
+import org.libreoffice.lots.event.handlers.OnNotifyPALChangeListener;
 import org.libreoffice.lots.event.handlers.OnOpenDocument;
 import org.libreoffice.lots.event.handlers.OnPrint;
 import org.libreoffice.lots.event.handlers.OnPrintPage;
@@ -340,6 +342,18 @@ public class WollMuxEventListenerImpl implements WollMuxEventListener
     event.process();
   }
 
+  /**
+   * Execute the event
+   *
+   * @param event
+   *          The event.
+   */
+  @Subscribe
+  public void onFlushFormValues(OnFlushFormValues event)
+  {
+    event.process();
+  }
+
   /**
    * Execute the event
    *
@@ -364,6 +378,18 @@ public class WollMuxEventListenerImpl implements WollMuxEventListener
     event.process();
   }
 
+  /**
+   * Execute the event
+   *
+   * @param event
+   *          The event.
+   */
+  @Subscribe
+  public void onNotifyPALChangeListener(OnNotifyPALChangeListener event)
+  {
+    event.process();
+  }
+
   /**
    * Execute the event
    *
@@ -62,6 +62,7 @@ public class OnCloseAndOpenExt extends WollMuxEvent
   {
     try
     {
+      documentController.flushFormFieldValues();
       OpenExt openExt = new OpenExt(ext, WollMuxFiles.getWollmuxConf());
       openExt.setSource(UNO.XStorable(documentController.getModel().doc));
       openExt.storeIfNecessary();
@@ -45,6 +45,7 @@ public class OnCloseTextDocument extends WollMuxEvent
   @Override
   protected void doit()
   {
+    documentController.flushFormFieldValues();
     documentController.getModel().close();
   }
 
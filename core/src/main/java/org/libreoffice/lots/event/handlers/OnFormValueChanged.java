@@ -22,6 +22,9 @@
  */
 package org.libreoffice.lots.event.handlers;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.libreoffice.lots.document.TextDocumentController;
 
 /**
@@ -31,9 +34,7 @@ import org.libreoffice.lots.document.TextDocumentController;
  */
 public class OnFormValueChanged extends WollMuxEvent
 {
-  private String fieldId;
-
-  private String newValue;
+  private Map<String, String> values;
 
   private TextDocumentController documentController;
 
@@ -51,21 +52,33 @@ public class OnFormValueChanged extends WollMuxEvent
       String fieldId,
       String newValue)
   {
-    this.fieldId = fieldId;
-    this.newValue = newValue;
+    this(documentController, Collections.singletonMap(fieldId, newValue));
+  }
+
+  /**
+   * Create this event for several form fields.
+   *
+   * @param documentController
+   *          The document containing the fields.
+   * @param values
+   *          Mapping from the id of the form fields to their new value.
+   */
+  public OnFormValueChanged(TextDocumentController documentController,
+      Map<String, String> values)
+  {
+    this.values = values;
     this.documentController = documentController;
   }
 
   @Override
   protected void doit()
   {
-    documentController.addFormFieldValue(fieldId, newValue);
+    documentController.addFormFieldValues(values);
   }
 
   @Override
   public String toString()
   {
-    return this.getClass().getSimpleName() + "(" + fieldId + "', '" + newValue
-        + "')";
+    return this.getClass().getSimpleName() + "(" + values + ")";
   }
 }
@@ -0,0 +1,51 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.event.handlers;
+
+import org.libreoffice.lots.sender.SenderService;
+
+/**
+ * Event for notifying the listeners of the sender list after it has been updated in the
+ * background.
+ */
+public class OnNotifyPALChangeListener extends WollMuxEvent
+{
+  private SenderService senderService;
+
+  /**
+   * Create this event.
+   *
+   * @param senderService
+   *          The service whose listeners are notified.
+   */
+  public OnNotifyPALChangeListener(SenderService senderService)
+  {
+    this.senderService = senderService;
+  }
+
+  @Override
+  protected void doit()
+  {
+    senderService.notifyListener();
+  }
+}
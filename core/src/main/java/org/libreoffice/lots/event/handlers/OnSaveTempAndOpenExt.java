@@ -61,6 +61,7 @@ public class OnSaveTempAndOpenExt extends WollMuxEvent
   {
     try
     {
+      documentController.flushFormFieldValues();
       OpenExt openExt = new OpenExt(ext, WollMuxFiles.getWollmuxConf());
       openExt.setSource(UNO.XStorable(documentController.getModel().doc));
       openExt.storeIfNecessary();
@@ -23,6 +23,8 @@
 package org.libreoffice.lots.event.handlers;
 
 import java.awt.event.ActionListener;
+import java.util.Collections;
+import java.util.Map;
 
 import org.libreoffice.lots.document.TextDocumentController;
 
@@ -31,9 +33,7 @@ import org.libreoffice.lots.document.TextDocumentController;
  */
 public class OnSetVisibleState extends WollMuxEvent
 {
-  private String groupId;
-
-  private boolean visible;
+  private Map<String, Boolean> visibilities;
 
   private ActionListener listener;
 
@@ -54,10 +54,25 @@ public class OnSetVisibleState extends WollMuxEvent
   public OnSetVisibleState(TextDocumentController documentController,
       String groupId,
       boolean visible, ActionListener listener)
+  {
+    this(documentController, Collections.singletonMap(groupId, visible), listener);
+  }
+
+  /**
+   * Create this event for several visibility groups.
+   *
+   * @param documentController
+   *          The document.
+   * @param visibilities
+   *          Mapping from the ID of the visibility groups to their new state.
+   * @param listener
+   *          The listener to notify after completion.
+   */
+  public OnSetVisibleState(TextDocumentController documentController,
+      Map<String, Boolean> visibilities, ActionListener listener)
   {
     this.documentController = documentController;
-    this.groupId = groupId;
-    this.visible = visible;
+    this.visibilities = visibilities;
     this.listener = listener;
   }
 
@@ -69,7 +84,7 @@ public class OnSetVisibleState extends WollMuxEvent
   @Override
   protected void doit()
   {
-    documentController.setVisibleState(groupId, visible);
+    documentController.setVisibleStates(visibilities);
     if (listener != null)
       listener.actionPerformed(null);
   }
@@ -77,7 +92,6 @@ public class OnSetVisibleState extends WollMuxEvent
   @Override
   public String toString()
   {
-    return this.getClass().getSimpleName() + "('" + groupId + "', " + visible
-        + ")";
+    return this.getClass().getSimpleName() + "(" + visibilities + ")";
   }
 }
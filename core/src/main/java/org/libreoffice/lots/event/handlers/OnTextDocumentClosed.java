@@ -55,6 +55,7 @@ public class OnTextDocumentClosed extends WollMuxEvent
      */
     if (docInfo.hasTextDocumentModel())
     {
+      docInfo.getTextDocumentController().cancelFormFieldValuesFlush();
       DocumentManager.getDocumentManager()
           .dispose(docInfo.getTextDocumentController().getModel().doc);
     }
@@ -30,10 +30,10 @@ import java.util.Optional;
 import org.libreoffice.lots.config.ConfigurationErrorException;
 import org.libreoffice.lots.dialog.DialogLibrary;
 import org.libreoffice.lots.func.Function;
+import org.libreoffice.lots.func.FunctionCompiler;
 import org.libreoffice.lots.func.FunctionFactory;
 import org.libreoffice.lots.func.FunctionLibrary;
 import org.libreoffice.lots.func.Values;
-import org.libreoffice.lots.func.Values.SimpleMap;
 import org.libreoffice.lots.ui.UIElementConfig;
 import org.libreoffice.lots.ui.UIElementType;
 
@@ -116,7 +116,8 @@ public class Control
     type = conf.getType();
     try
     {
-      plausi = FunctionFactory.parseGrandchildren(conf.getPlausi(), funcLib, dialogLib, functionContext);
+      plausi = FunctionCompiler.compile(
+          FunctionFactory.parseGrandchildren(conf.getPlausi(), funcLib, dialogLib, functionContext));
       if (plausi == null)
       {
         plausi = FunctionFactory.alwaysTrueFunction();
@@ -127,8 +128,8 @@ public class Control
     }
     try
     {
-      autofill = Optional
-          .ofNullable(FunctionFactory.parseGrandchildren(conf.getAutofill(), funcLib, dialogLib, functionContext));
+      autofill = Optional.ofNullable(FunctionCompiler.compile(
+          FunctionFactory.parseGrandchildren(conf.getAutofill(), funcLib, dialogLib, functionContext)));
     } catch (ConfigurationErrorException e)
     {
       autofill = Optional.empty();
@@ -242,32 +243,14 @@ public class Control
     dependingPlausiFormFields.add(control);
   }
 
-  /**
-   * Compute the value of all dependent fields. The value is only computed once for each control.
-   *
-   * @param value
-   *          The new value of this control.
-   * @param values
-   *          The values of all fields.
-   * @param modified
-   *          Already computed fields.
-   */
-  public void computeNewValues(String value, SimpleMap values, SimpleMap modified)
+  public List<Control> getDependingAutoFillFormFields()
   {
-    modified.put(id, value);
-    SimpleMap newValues = new SimpleMap(values);
-    newValues.putAll(modified);
-    for (Control control : dependingAutoFillFormFields)
-    {
-      if (!modified.hasValue(control.id))
-      {
-        String v = control.computeValue(newValues);
-        if (v != null)
-        {
-          control.computeNewValues(v, newValues, modified);
-        }
-      }
-    }
+    return dependingAutoFillFormFields;
+  }
+
+  public List<Control> getDependingPlausiFormFields()
+  {
+    return dependingPlausiFormFields;
   }
 
   /**
@@ -279,7 +262,7 @@ public class Control
    * @return The result of the AUTOFILL function if there's one. Otherwise the first option if it's
    *         a {@link UIElementType#COMBOBOX} or the empty string.
    */
-  public String computeValue(SimpleMap values)
+  public String computeValue(Values values)
   {
     if (autofill.isPresent())
       return autofill.get().getResult(values);
@@ -22,11 +22,16 @@
  */
 package org.libreoffice.lots.form.model;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,7 +45,6 @@ import org.libreoffice.lots.form.config.VisibilityGroupConfig;
 import org.libreoffice.lots.form.sidebar.FormSidebarController;
 import org.libreoffice.lots.func.FunctionLibrary;
 import org.libreoffice.lots.func.Values;
-import org.libreoffice.lots.func.Values.SimpleMap;
 import org.libreoffice.lots.ui.UIElementConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,6 +87,32 @@ public class FormModel
    */
   private Map<String, List<Control>> mapDialogNameToListOfControlsWithDependingAutofill = new HashMap<>();
 
+  /**
+   * The controls sorted topologically by the dependencies of their AUTOFILL functions.
+   */
+  private final List<Control> sortedControls = new ArrayList<>();
+
+  /**
+   * Mapping from controls to their index in {@link #sortedControls}.
+   */
+  private final Map<Control, Integer> topologicalIndex = new HashMap<>();
+
+  /**
+   * The current values of all controls. Functions are evaluated on this view.
+   */
+  private final Values formValues = new ControlValues();
+
+  /**
+   * Mapping from visibility group IDs to the controls which belong to the group.
+   */
+  private final Map<String, List<Control>> groupToControls = new HashMap<>();
+
+  /**
+   * The changes of the current edit, which haven't been passed to the listeners. Null if there's
+   * no edit in progress.
+   */
+  private FormUpdate pendingUpdate;
+
   /**
    * Instance of TextDocumentController.
    */
@@ -143,7 +173,12 @@ public class FormModel
     for (Control control : formControls.values())
     {
       storeDepsForFormField(control);
+      for (VisibilityGroup group : control.getGroups())
+      {
+        groupToControls.computeIfAbsent(group.getGroupId(), k -> new ArrayList<>()).add(control);
+      }
     }
+    sortControls();
 
     this.initControls(presetValues);
   }
@@ -156,8 +191,7 @@ public class FormModel
   private void initControls(Map<String, String> presetValues)
   {
     // Initialize controls with preset values or AUTOFILL function
-    SimpleMap values = idToValue();
-    for (Control control : formControls.values())
+    for (Control control : sortedControls)
     {
       String value = "";
       if (presetValues.containsKey(control.getId()))
@@ -165,19 +199,18 @@ public class FormModel
         value = presetValues.get(control.getId());
       } else
       {
-        value = control.computeValue(values);
+        value = control.computeValue(formValues);
       }
       if (!value.equals(control.getValue()))
       {
         txtDocController.setValueChanged(control.getId(), value);
         control.setValue(value);
-        values.put(control.getId(), value);
       }
     }
 
     for (Control control : formControls.values())
     {
-      control.setOkay(values);
+      control.setOkay(formValues);
     }
     for (VisibilityGroup group : visiblities.values())
     {
@@ -244,19 +277,15 @@ public class FormModel
    */
   public void updateFormControlsVisibility()
   {
-    for (Map.Entry<String, Control> entry : this.getFormControls().entrySet())
-    {
-      for (VisibilityGroup vs: entry.getValue().getGroups())
-      {
-        //notifiy form gui ui
-        formSidebarController.visibilityChanged(vs.getGroupId());
-      }
-    }
+    //notifiy form gui ui
+    formSidebarController.visibilityChanged(groupToControls.keySet());
   }
 
   /**
-   * Set the value of a control and notify the listeners. All depending controls are updated. For
-   * all changed controls the state is computed.
+   * Set the value of a control and notify the listeners. All depending controls are updated in
+   * topological order, each at most once. Only controls whose value has changed propagate the
+   * change. For all changed controls and all controls whose PLAUSI depends on them the state is
+   * computed. All changes are passed to the listeners at once.
    *
    * @param id
    *          The ID of the control.
@@ -265,39 +294,113 @@ public class FormModel
    */
   public void setValue(final String id, final String value)
   {
-    if (formControls.containsKey(id) && !formControls.get(id).getValue().equals(value))
-    {
-      Control field = formControls.get(id);
-      SimpleMap modified = new SimpleMap();
+    runUpdate(() -> computeValues(id, value));
+  }
 
-      // compute dependent controls
-      field.computeNewValues(value, idToValue(), modified);
-      SimpleMap newValues = idToValue();
-      newValues.putAll(modified);
-      List<VisibilityGroup> modifiedGroups = new ArrayList<>();
+  /**
+   * Set the value of a control and compute all depending controls. The changes are collected in
+   * {@link #pendingUpdate}.
+   *
+   * @param id
+   *          The ID of the control.
+   * @param value
+   *          The value of the control.
+   */
+  private void computeValues(final String id, final String value)
+  {
+    Control field = formControls.get(id);
+    if (field == null || field.getValue().equals(value))
+    {
+      return;
+    }
 
-      // update values and notify listener
-      for (Map.Entry<String, String> changedEntries : modified)
+    // compute dependent controls
+    List<Control> modified = new ArrayList<>();
+    BitSet dirty = new BitSet(sortedControls.size());
+    BitSet done = new BitSet(sortedControls.size());
+    field.setValue(value);
+    modified.add(field);
+    done.set(topologicalIndex.get(field));
+    markDependingAutofills(field, dirty);
+    for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(0))
+    {
+      dirty.clear(i);
+      if (done.get(i))
       {
-        Control control = formControls.get(changedEntries.getKey());
-        control.setValue(changedEntries.getValue());
-        control.setOkay(newValues);
-        formSidebarController.setFormUiValue(control.getId(), control.getValue());
-        formSidebarController.setControlBackground(control.getId(), control.isOkay(), false);
-        txtDocController.setValueChanged(control.getId(), control.getValue());
-        modifiedGroups.addAll(control.getDependingGroups());
+        continue;
       }
-      modifiedGroups.forEach(g -> g.computeVisibility(newValues));
+      done.set(i);
+      Control control = sortedControls.get(i);
+      String newValue = control.computeValue(formValues);
+      if (newValue != null && !newValue.equals(control.getValue()))
+      {
+        control.setValue(newValue);
+        modified.add(control);
+        markDependingAutofills(control, dirty);
+      }
+    }
 
-        for (VisibilityGroup g : modifiedGroups)
-        {
-          if (txtDocController != null && formSidebarController != null) {
-            //update vis. in doc
-            txtDocController.setVisibilityChanged(g.getGroupId(), g.isVisible());
-            //update vis in form-ui
-            formSidebarController.visibilityChanged(g.getGroupId());
-          }
-        }
+    // collect changes
+    Set<Control> modifiedPlausis = new LinkedHashSet<>();
+    Set<VisibilityGroup> modifiedGroups = new LinkedHashSet<>();
+    for (Control control : modified)
+    {
+      pendingUpdate.values.put(control.getId(), control.getValue());
+      modifiedPlausis.addAll(control.getDependingPlausiFormFields());
+      modifiedGroups.addAll(control.getDependingGroups());
+    }
+    for (Control control : modifiedPlausis)
+    {
+      control.setOkay(formValues);
+      pendingUpdate.states.put(control.getId(), control.isOkay());
+    }
+    for (VisibilityGroup g : modifiedGroups)
+    {
+      g.computeVisibility(formValues);
+      pendingUpdate.visibilities.put(g.getGroupId(), g.isVisible());
+    }
+  }
+
+  /**
+   * Run an edit of the model. All changes of the edit are passed to the listeners at once after the
+   * edit has finished. Edits started by another edit are part of the outer edit.
+   *
+   * @param edit
+   *          The edit.
+   */
+  private void runUpdate(Runnable edit)
+  {
+    if (pendingUpdate != null)
+    {
+      edit.run();
+      return;
+    }
+
+    pendingUpdate = new FormUpdate();
+    try
+    {
+      edit.run();
+    } finally
+    {
+      FormUpdate update = pendingUpdate;
+      pendingUpdate = null;
+      update.apply();
+    }
+  }
+
+  /**
+   * Mark all controls whose AUTOFILL depends on the control as dirty.
+   *
+   * @param control
+   *          The changed control.
+   * @param dirty
+   *          The dirty controls by their topological index.
+   */
+  private void markDependingAutofills(Control control, BitSet dirty)
+  {
+    for (Control depending : control.getDependingAutoFillFormFields())
+    {
+      dirty.set(topologicalIndex.get(depending));
     }
   }
 
@@ -328,20 +431,7 @@ public class FormModel
    */
   public Collection<Control> getControlsByGroupId(String groupId)
   {
-    List<Control> controls = new ArrayList<>();
-
-    for (Map.Entry<String, Control> entry : formControls.entrySet())
-    {
-      for (VisibilityGroup vs : entry.getValue().getGroups())
-      {
-        if (vs.getGroupId().equals(groupId))
-        {
-          controls.add(entry.getValue());
-        }
-      }
-    }
-
-    return controls;
+    return Collections.unmodifiableList(groupToControls.getOrDefault(groupId, List.of()));
   }
 
   /**
@@ -370,11 +460,13 @@ public class FormModel
    */
   public void setDialogAutofills(String dialogName)
   {
-    for (Control c : mapDialogNameToListOfControlsWithDependingAutofill.get(dialogName))
-    {
-      c.getAutofill()
-          .ifPresent(autofill -> setValue(c.getId(), autofill.getResult(idToValue())));
-    }
+    runUpdate(() -> {
+      for (Control c : mapDialogNameToListOfControlsWithDependingAutofill.get(dialogName))
+      {
+        c.getAutofill()
+            .ifPresent(autofill -> computeValues(c.getId(), autofill.getResult(formValues)));
+      }
+    });
   }
 
   /**
@@ -389,21 +481,6 @@ public class FormModel
     return formControls.containsKey(fieldId);
   }
 
-  /**
-   * Create a mapping from control ID to control value.
-   *
-   * @return A mapping which can be used as function parameter.
-   */
-  private SimpleMap idToValue()
-  {
-    SimpleMap values = new Values.SimpleMap();
-    for (Map.Entry<String, Control> entry : formControls.entrySet())
-    {
-      values.put(entry.getKey(), entry.getValue().getValue());
-    }
-    return values;
-  }
-
   /**
    * Add a dependencies for all function dialogs which are referenced by the AUTOFILL function.
    *
@@ -473,7 +550,54 @@ public class FormModel
       }
     }
 
-    group.computeVisibility(idToValue());
+    group.computeVisibility(formValues);
+  }
+
+  /**
+   * Sort the controls topologically by the dependencies of their AUTOFILL functions, so that a
+   * control comes after all controls its AUTOFILL depends on. Controls which are part of a cycle
+   * are appended in the order of the form description.
+   */
+  private void sortControls()
+  {
+    Map<Control, Integer> inDegree = new HashMap<>();
+    for (Control control : formControls.values())
+    {
+      inDegree.putIfAbsent(control, 0);
+      for (Control depending : control.getDependingAutoFillFormFields())
+      {
+        if (depending != control)
+        {
+          inDegree.merge(depending, 1, Integer::sum);
+        }
+      }
+    }
+
+    Deque<Control> ready = new ArrayDeque<>();
+    formControls.values().stream().filter(c -> inDegree.get(c) == 0).forEach(ready::add);
+    while (!ready.isEmpty())
+    {
+      Control control = ready.poll();
+      topologicalIndex.put(control, sortedControls.size());
+      sortedControls.add(control);
+      for (Control depending : control.getDependingAutoFillFormFields())
+      {
+        if (depending != control && inDegree.merge(depending, -1, Integer::sum) == 0)
+        {
+          ready.add(depending);
+        }
+      }
+    }
+
+    for (Control control : formControls.values())
+    {
+      if (!topologicalIndex.containsKey(control))
+      {
+        LOGGER.warn("AUTOFILL von {} hat zyklische Abhängigkeiten", control.getId());
+        topologicalIndex.put(control, sortedControls.size());
+        sortedControls.add(control);
+      }
+    }
   }
 
   /**
@@ -536,4 +660,66 @@ public class FormModel
   {
     visiblities.values().forEach(g -> l.visibilityChanged(g.getGroupId(), g.isVisible()));
   }
+
+  /**
+   * A view on the current values of all controls.
+   */
+  private class ControlValues implements Values
+  {
+    @Override
+    public boolean hasValue(String id)
+    {
+      return formControls.containsKey(id);
+    }
+
+    @Override
+    public String getString(String id)
+    {
+      Control control = formControls.get(id);
+      return control == null ? "" : control.getValue();
+    }
+
+    @Override
+    public boolean getBoolean(String id)
+    {
+      return "true".equalsIgnoreCase(getString(id));
+    }
+  }
+
+  /**
+   * The changes of one edit of the model.
+   */
+  private class FormUpdate
+  {
+    /**
+     * The new values by control ID.
+     */
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    /**
+     * The new plausi states by control ID.
+     */
+    private final Map<String, Boolean> states = new LinkedHashMap<>();
+
+    /**
+     * The new visibilities by group ID.
+     */
+    private final Map<String, Boolean> visibilities = new LinkedHashMap<>();
+
+    /**
+     * Pass the changes to the form ui and the document.
+     */
+    private void apply()
+    {
+      if (formSidebarController != null)
+      {
+        formSidebarController.applyFormUpdate(values, states, visibilities.keySet());
+      }
+      if (txtDocController != null)
+      {
+        txtDocController.setValuesChanged(values);
+        txtDocController.setVisibilitiesChanged(visibilities);
+      }
+    }
+  }
 }
@@ -28,6 +28,7 @@ import org.libreoffice.lots.config.ConfigurationErrorException;
 import org.libreoffice.lots.dialog.DialogLibrary;
 import org.libreoffice.lots.form.config.VisibilityGroupConfig;
 import org.libreoffice.lots.func.Function;
+import org.libreoffice.lots.func.FunctionCompiler;
 import org.libreoffice.lots.func.FunctionFactory;
 import org.libreoffice.lots.func.FunctionLibrary;
 import org.libreoffice.lots.func.Values;
@@ -70,7 +71,8 @@ public class VisibilityGroup
     groupId = conf.getGroupId();
     try
     {
-      condition = FunctionFactory.parseChildren(conf.getCondition(), funcLib, dialogLib, functionContext);
+      condition = FunctionCompiler.compile(
+          FunctionFactory.parseChildren(conf.getCondition(), funcLib, dialogLib, functionContext));
       if (condition == null)
       {
         condition = FunctionFactory.alwaysTrueFunction();
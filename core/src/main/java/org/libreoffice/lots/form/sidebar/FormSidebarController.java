@@ -25,9 +25,11 @@ package org.libreoffice.lots.form.sidebar;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
@@ -549,7 +551,23 @@ public class FormSidebarController
    */
   public void visibilityChanged(String groupId)
   {
-    Collection<Control> controls = formModel.getControlsByGroupId(groupId);
+    visibilityChanged(List.of(groupId));
+  }
+
+  /**
+   * Hide / Show form controls of several groups. Each control is updated only once and the panel is
+   * painted only once.
+   *
+   * @param groupIds
+   *        The group Ids which visibility should be changed.
+   */
+  public void visibilityChanged(Collection<String> groupIds)
+  {
+    Set<Control> controls = new LinkedHashSet<>();
+    for (String groupId : groupIds)
+    {
+      controls.addAll(formModel.getControlsByGroupId(groupId));
+    }
 
     if (controls.isEmpty())
     {
@@ -565,6 +583,27 @@ public class FormSidebarController
     formSidebarPanel.paint();
   }
 
+  /**
+   * Apply all changes of one edit to the form ui.
+   *
+   * @param values
+   *        The new values of the controls by their id.
+   * @param states
+   *        The new plausi states of the controls by their id.
+   * @param groupIds
+   *        The groups which visibility has changed.
+   */
+  public void applyFormUpdate(Map<String, String> values, Map<String, Boolean> states,
+      Collection<String> groupIds)
+  {
+    values.forEach(this::setFormUiValue);
+    states.forEach((id, okay) -> setControlBackground(id, okay, false));
+    if (!groupIds.isEmpty())
+    {
+      visibilityChanged(groupIds);
+    }
+  }
+
   /**
    * Sets preset Values (Formularwerte) in form ui.
    */
@@ -40,7 +40,13 @@ public class AndFunction extends MultiFunction
   public AndFunction(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
-    super(conf, funcLib, dialogLib, context);
+    this(conf, funcLib, dialogLib, context, null);
+  }
+
+  AndFunction(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
+  {
+    super(conf, funcLib, dialogLib, context, shared);
   }
 
   @Override
@@ -48,6 +48,12 @@ public class BindFunction implements Function
 
   public BindFunction(Function func, ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
+  {
+    this(func, conf, funcLib, dialogLib, context, null);
+  }
+
+  BindFunction(Function func, ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     this.func = func;
 
@@ -66,7 +72,7 @@ public class BindFunction implements Function
       try
       {
         String name = set.getFirstChild().toString();
-        Function setFunc = FunctionFactory.parse(set.getLastChild(), funcLib, dialogLib, context);
+        Function setFunc = FunctionFactory.parse(set.getLastChild(), funcLib, dialogLib, context, shared);
 
         if (mapParamNameToSetFunction.containsKey(name))
           throw new ConfigurationErrorException(
@@ -128,12 +134,18 @@ public class BindFunction implements Function
     return res;
   }
 
+  /**
+   * The values of the bound parameters. Each SET function is evaluated at most once per
+   * evaluation of the BIND function, no matter how often the parameter is read.
+   */
   private class TranslatedValues implements Values
   {
     private Values values;
 
     private boolean hasError;
 
+    private Map<String, String> results;
+
     public TranslatedValues(Values values)
     {
       this.values = values;
@@ -165,7 +177,7 @@ public class BindFunction implements Function
       Function setFunc = mapParamNameToSetFunction.get(id);
       if (setFunc != null)
       {
-        String res = setFunc.getResult(values);
+        String res = evaluate(id, setFunc);
         if (res == FunctionLibrary.ERROR)
         {
           hasError = true;
@@ -182,7 +194,7 @@ public class BindFunction implements Function
       Function setFunc = mapParamNameToSetFunction.get(id);
       if (setFunc != null)
       {
-        String res = setFunc.getResult(values);
+        String res = evaluate(id, setFunc);
         if (res == FunctionLibrary.ERROR)
         {
           hasError = true;
@@ -192,5 +204,14 @@ public class BindFunction implements Function
       }
       return values.getBoolean(id);
     }
+
+    private String evaluate(String id, Function setFunc)
+    {
+      if (results == null)
+      {
+        results = new HashMap<>();
+      }
+      return results.computeIfAbsent(id, k -> setFunc.getResult(values));
+    }
   }
 }
@@ -39,7 +39,13 @@ public class CatFunction extends MultiFunction
   public CatFunction(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
-    super(conf, funcLib, dialogLib, context);
+    this(conf, funcLib, dialogLib, context, null);
+  }
+
+  CatFunction(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
+  {
+    super(conf, funcLib, dialogLib, context, shared);
   }
 
   @Override
@@ -37,7 +37,13 @@ public class DiffFunction extends NumberFunction
   public DiffFunction(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
-    super(conf, funcLib, dialogLib, context);
+    this(conf, funcLib, dialogLib, context, null);
+  }
+
+  DiffFunction(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
+  {
+    super(conf, funcLib, dialogLib, context, shared);
   }
 
   @Override
@@ -33,13 +33,13 @@ import java.util.Set;
 
 public class DivideFunction implements Function
 {
-  private Function dividendFunction;
+  Function dividendFunction;
 
-  private Function divisorFunction = null;
+  Function divisorFunction = null;
 
-  private int minScale;
+  int minScale;
 
-  private int maxScale;
+  int maxScale;
 
   private String[] params;
 
@@ -0,0 +1,768 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.func;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * A node of a compiled {@link Function}. Compiled nodes hold no state of their own. Everything
+ * belonging to a single evaluation lives in the {@link Frame}, so a compiled function can be
+ * evaluated concurrently.
+ *
+ * Every node returns exactly the same strings as the function it was compiled from. Numbers are
+ * passed between arithmetic nodes as {@link BigDecimal} if both sides use the same decimal
+ * point. This doesn't change any result because all arithmetic functions only depend on the
+ * value of a number, never on its scale.
+ */
+abstract class Evaluator
+{
+
+  private static volatile DecimalPoint decimalPoint = new DecimalPoint(null, '.');
+
+  /**
+   * The string result, see {@link Function#getResult(Values)}.
+   */
+  abstract String string(Frame frame);
+
+  /**
+   * The boolean result, see {@link Function#getBoolean(Values)}.
+   */
+  boolean bool(Frame frame)
+  {
+    return string(frame).equalsIgnoreCase("true");
+  }
+
+  /**
+   * The result as a number as parsed by {@link NumberFunction} with the decimal point dp.
+   *
+   * @return null if the result is {@link FunctionLibrary#ERROR} or not a number.
+   */
+  BigDecimal number(Frame frame, char dp)
+  {
+    return parse(string(frame), dp);
+  }
+
+  /**
+   * Can the result be computed once at compile time? Only true if the node and all its
+   * children neither depend on values nor on anything else outside the node.
+   */
+  boolean isConstant()
+  {
+    return false;
+  }
+
+  static BigDecimal parse(String str, char dp)
+  {
+    if (str.equals(FunctionLibrary.ERROR))
+    {
+      return null;
+    }
+    // same as NumberFunction.makeBigDecimal()
+    if (dp != '.')
+    {
+      str = str.replace('.', 'ß');
+    }
+    try
+    {
+      return new BigDecimal(str.replace(dp, '.'));
+    } catch (NumberFormatException x)
+    {
+      return null;
+    }
+  }
+
+  static String format(BigDecimal num, char dp)
+  {
+    // same as NumberFunction.formatBigDecimal()
+    if (num.compareTo(BigDecimal.ZERO) == 0)
+    {
+      return "0";
+    }
+    return num.stripTrailingZeros().toPlainString().replace('.', dp);
+  }
+
+  /**
+   * The decimal point of the current locale like {@link DivideFunction} determines it, but
+   * without creating a new NumberFormat on each call.
+   */
+  static char currentDecimalPoint()
+  {
+    Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+    DecimalPoint dp = decimalPoint;
+    if (!locale.equals(dp.locale))
+    {
+      char c;
+      try
+      {
+        c = ((DecimalFormat) NumberFormat.getInstance(locale)).getDecimalFormatSymbols()
+            .getDecimalSeparator();
+      } catch (Exception x)
+      {
+        c = '.';
+      }
+      dp = new DecimalPoint(locale, c);
+      decimalPoint = dp;
+    }
+    return dp.separator;
+  }
+
+  private static class DecimalPoint
+  {
+    private final Locale locale;
+    private final char separator;
+
+    private DecimalPoint(Locale locale, char separator)
+    {
+      this.locale = locale;
+      this.separator = separator;
+    }
+  }
+
+  /**
+   * The state of one evaluation. The values of the parameters are looked up only once.
+   */
+  static class Frame
+  {
+    final Values values;
+
+    private final String[] slots;
+
+    Frame(Values values, int slotCount)
+    {
+      this.values = values;
+      this.slots = new String[slotCount];
+    }
+
+    String value(int slot, String id)
+    {
+      String value = slots[slot];
+      if (value == null)
+      {
+        value = values.hasValue(id) ? values.getString(id) : FunctionLibrary.ERROR;
+        slots[slot] = value;
+      }
+      return value;
+    }
+  }
+
+  /**
+   * A string literal or a folded constant subtree.
+   */
+  static class Constant extends Evaluator
+  {
+    private final String string;
+    private final boolean bool;
+    private final char dp;
+    private final BigDecimal number;
+
+    Constant(String string, boolean bool, char dp)
+    {
+      this.string = string;
+      this.bool = bool;
+      this.dp = dp;
+      this.number = parse(string, dp);
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      return string;
+    }
+
+    @Override
+    boolean bool(Frame frame)
+    {
+      return bool;
+    }
+
+    @Override
+    BigDecimal number(Frame frame, char dp)
+    {
+      return dp == this.dp ? number : parse(string, dp);
+    }
+
+    @Override
+    boolean isConstant()
+    {
+      return true;
+    }
+  }
+
+  /**
+   * A {@link ValueFunction}.
+   */
+  static class Value extends Evaluator
+  {
+    private final int slot;
+    private final String id;
+
+    Value(int slot, String id)
+    {
+      this.slot = slot;
+      this.id = id;
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      return frame.value(slot, id);
+    }
+  }
+
+  /**
+   * A function without compiled form. It's evaluated by the interpreter.
+   */
+  static class Interpreted extends Evaluator
+  {
+    private final Function function;
+
+    Interpreted(Function function)
+    {
+      this.function = function;
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      return function.getResult(frame.values);
+    }
+
+    @Override
+    boolean bool(Frame frame)
+    {
+      return function.getBoolean(frame.values);
+    }
+  }
+
+  /**
+   * Base of all nodes with children.
+   */
+  abstract static class Composite extends Evaluator
+  {
+    final Evaluator[] args;
+
+    Composite(Evaluator... args)
+    {
+      this.args = args;
+    }
+
+    @Override
+    boolean isConstant()
+    {
+      for (Evaluator arg : args)
+      {
+        if (arg != null && !arg.isConstant())
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * {@link SumFunction}, {@link MinusFunction}, {@link AbsFunction}, {@link SignFunction},
+   * {@link DiffFunction} and {@link ProductFunction}.
+   */
+  static class Arithmetic extends Composite
+  {
+    enum Op
+    {
+      SUM,
+      MINUS,
+      ABS,
+      SIGN,
+      DIFF,
+      PRODUCT;
+    }
+
+    private final Op op;
+    private final char dp;
+
+    Arithmetic(Op op, char dp, Evaluator... args)
+    {
+      super(args);
+      this.op = op;
+      this.dp = dp;
+    }
+
+    /**
+     * @return the result or null if one of the arguments isn't a number.
+     */
+    private BigDecimal compute(Frame frame)
+    {
+      BigDecimal result = op == Op.PRODUCT ? BigDecimal.ONE : BigDecimal.ZERO;
+      for (int i = 0; i < args.length; i++)
+      {
+        BigDecimal num = args[i].number(frame, dp);
+        if (num == null)
+        {
+          return null;
+        }
+        if (op == Op.PRODUCT)
+        {
+          result = result.multiply(num);
+        } else if (op == Op.DIFF && i > 0)
+        {
+          result = result.subtract(num);
+        } else
+        {
+          result = result.add(num);
+        }
+      }
+      switch (op)
+      {
+      case MINUS:
+        return result.negate();
+      case ABS:
+        return result.abs();
+      case SIGN:
+        return BigDecimal.valueOf(result.signum());
+      default:
+        return result;
+      }
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      BigDecimal result = compute(frame);
+      if (result == null)
+      {
+        return FunctionLibrary.ERROR;
+      }
+      if (op == Op.SIGN)
+      {
+        return "" + result.intValue();
+      }
+      return format(result, dp);
+    }
+
+    @Override
+    BigDecimal number(Frame frame, char dp)
+    {
+      if (dp != this.dp)
+      {
+        return super.number(frame, dp);
+      }
+      return compute(frame);
+    }
+  }
+
+  /**
+   * {@link NumberCompareFunction}.
+   */
+  static class NumberCompare extends Composite
+  {
+    private final Evaluator margin;
+    private final int cmp1;
+    private final int cmp2;
+    private final String result;
+    private final char dp;
+
+    NumberCompare(Evaluator margin, int cmp1, int cmp2, String result, char dp,
+        Evaluator... args)
+    {
+      super(args);
+      this.margin = margin;
+      this.cmp1 = cmp1;
+      this.cmp2 = cmp2;
+      this.result = result;
+      this.dp = dp;
+    }
+
+    @Override
+    boolean isConstant()
+    {
+      return (margin == null || margin.isConstant()) && super.isConstant();
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      BigDecimal delta = BigDecimal.ZERO;
+      if (margin != null)
+      {
+        String str = margin.string(frame);
+        if (str == FunctionLibrary.ERROR)
+        {
+          return FunctionLibrary.ERROR;
+        }
+        delta = parse(str, dp);
+        if (delta == null)
+        {
+          return FunctionLibrary.ERROR;
+        }
+        delta = delta.abs();
+      }
+
+      BigDecimal compare = args[0].number(frame, dp);
+      if (compare == null)
+      {
+        return FunctionLibrary.ERROR;
+      }
+      BigDecimal lowBound = compare.subtract(delta);
+      BigDecimal highBound = compare.add(delta);
+      int prevCompare = 0;
+      for (int i = 1; i < args.length; i++)
+      {
+        BigDecimal num = args[i].number(frame, dp);
+        if (num == null)
+        {
+          return FunctionLibrary.ERROR;
+        }
+        int res;
+        if (lowBound.compareTo(num) <= 0 && num.compareTo(highBound) <= 0)
+        {
+          res = 0;
+        } else
+        {
+          res = compare.compareTo(num);
+        }
+        if (res == cmp1 || res == cmp2)
+        {
+          return "false";
+        }
+        if (res * prevCompare < 0)
+        {
+          return "0";
+        }
+        prevCompare += res;
+      }
+
+      if (result != null)
+      {
+        return result;
+      }
+      switch (Integer.signum(prevCompare))
+      {
+      case 1:
+        return "1";
+      case -1:
+        return "-1";
+      default:
+        return "true";
+      }
+    }
+  }
+
+  /**
+   * {@link DivideFunction}. The decimal point is determined on each evaluation, so it's never
+   * constant.
+   */
+  static class Divide extends Composite
+  {
+    private final int minScale;
+    private final int maxScale;
+
+    Divide(int minScale, int maxScale, Evaluator dividend, Evaluator divisor)
+    {
+      super(dividend, divisor);
+      this.minScale = minScale;
+      this.maxScale = maxScale;
+    }
+
+    @Override
+    boolean isConstant()
+    {
+      return false;
+    }
+
+    private BigDecimal compute(Frame frame, char dp)
+    {
+      BigDecimal dividend = args[0].number(frame, dp);
+      if (dividend == null)
+      {
+        return null;
+      }
+      BigDecimal divisor = BigDecimal.ONE;
+      if (args[1] != null)
+      {
+        divisor = args[1].number(frame, dp);
+        if (divisor == null || divisor.signum() == 0)
+        {
+          return null;
+        }
+      }
+      return dividend.divide(divisor, maxScale, RoundingMode.HALF_UP);
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      char dp = currentDecimalPoint();
+      BigDecimal bigResult = compute(frame, dp);
+      if (bigResult == null)
+      {
+        return FunctionLibrary.ERROR;
+      }
+
+      // same as DivideFunction.getResult()
+      String result;
+      if (bigResult.compareTo(BigDecimal.ZERO) == 0)
+      {
+        result = "0";
+      } else
+      {
+        result = bigResult.stripTrailingZeros().toPlainString();
+      }
+      StringBuilder buffy = new StringBuilder(result);
+      int idx = result.indexOf('.');
+      if (idx == 0)
+      {
+        buffy.insert(0, "0");
+        idx = 1;
+      }
+      if (idx < 0 && minScale > 0)
+      {
+        buffy.append(".0");
+        idx = buffy.length() - 2;
+      }
+      int decimalDigits = (idx < 0) ? 0 : buffy.length() - idx - 1;
+      for (int i = decimalDigits; i < minScale; ++i)
+      {
+        buffy.append('0');
+      }
+      return buffy.toString().replace('.', dp);
+    }
+
+    @Override
+    boolean bool(Frame frame)
+    {
+      return false;
+    }
+
+    @Override
+    BigDecimal number(Frame frame, char dp)
+    {
+      if (dp != currentDecimalPoint())
+      {
+        return super.number(frame, dp);
+      }
+      return compute(frame, dp);
+    }
+  }
+
+  /**
+   * {@link IfFunction}.
+   */
+  static class If extends Composite
+  {
+    If(Evaluator condition, Evaluator thenBranch, Evaluator elseBranch)
+    {
+      super(condition, thenBranch, elseBranch);
+    }
+
+    /**
+     * @return the branch to evaluate or null if the condition is an error.
+     */
+    private Evaluator branch(Frame frame)
+    {
+      String condition = args[0].string(frame);
+      if (condition == FunctionLibrary.ERROR)
+      {
+        return null;
+      }
+      return condition.equalsIgnoreCase("true") ? args[1] : args[2];
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      Evaluator branch = branch(frame);
+      return branch == null ? FunctionLibrary.ERROR : branch.string(frame);
+    }
+
+    @Override
+    boolean bool(Frame frame)
+    {
+      Evaluator branch = branch(frame);
+      return branch != null && branch.bool(frame);
+    }
+
+    @Override
+    BigDecimal number(Frame frame, char dp)
+    {
+      Evaluator branch = branch(frame);
+      return branch == null ? null : branch.number(frame, dp);
+    }
+  }
+
+  /**
+   * {@link CatFunction} and {@link LengthFunction}.
+   */
+  static class Cat extends Composite
+  {
+    private final boolean length;
+
+    Cat(boolean length, Evaluator... args)
+    {
+      super(args);
+      this.length = length;
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      StringBuilder res = new StringBuilder();
+      for (Evaluator arg : args)
+      {
+        String str = arg.string(frame);
+        if (str == FunctionLibrary.ERROR)
+        {
+          return FunctionLibrary.ERROR;
+        }
+        res.append(str);
+      }
+      return length ? "" + res.length() : res.toString();
+    }
+
+    @Override
+    boolean bool(Frame frame)
+    {
+      return !length && super.bool(frame);
+    }
+  }
+
+  /**
+   * {@link AndFunction}, {@link OrFunction} and {@link NotFunction}.
+   */
+  static class Logic extends Composite
+  {
+    enum Op
+    {
+      AND,
+      OR,
+      NOT;
+    }
+
+    private final Op op;
+
+    Logic(Op op, Evaluator... args)
+    {
+      super(args);
+      this.op = op;
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      for (Evaluator arg : args)
+      {
+        String str = arg.string(frame);
+        if (str == FunctionLibrary.ERROR)
+        {
+          return FunctionLibrary.ERROR;
+        }
+        boolean isTrue = str.equalsIgnoreCase("true");
+        if (op == Op.AND && !isTrue)
+        {
+          return "false";
+        } else if (op == Op.OR && isTrue)
+        {
+          return "true";
+        } else if (op == Op.NOT && !isTrue)
+        {
+          return "true";
+        }
+      }
+      return op == Op.AND ? "true" : "false";
+    }
+  }
+
+  /**
+   * {@link StrCmpFunction}.
+   */
+  static class StrCmp extends Composite
+  {
+    StrCmp(Evaluator... args)
+    {
+      super(args);
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      String compare = args[0].string(frame);
+      if (compare == FunctionLibrary.ERROR)
+      {
+        return FunctionLibrary.ERROR;
+      }
+      int prevCompare = 0;
+      for (int i = 1; i < args.length; i++)
+      {
+        String str = args[i].string(frame);
+        if (str == FunctionLibrary.ERROR)
+        {
+          return FunctionLibrary.ERROR;
+        }
+        int res = Integer.signum(compare.compareTo(str));
+        if (res * prevCompare < 0)
+        {
+          return "0";
+        }
+        prevCompare += res;
+      }
+      switch (Integer.signum(prevCompare))
+      {
+      case -1:
+        return "-1";
+      case 1:
+        return "1";
+      default:
+        return "true";
+      }
+    }
+  }
+
+  /**
+   * {@link IsErrorFunction}.
+   */
+  static class IsError extends Composite
+  {
+    private final boolean objectCompare;
+
+    IsError(boolean objectCompare, Evaluator arg)
+    {
+      super(arg);
+      this.objectCompare = objectCompare;
+    }
+
+    @Override
+    String string(Frame frame)
+    {
+      return bool(frame) ? "true" : "false";
+    }
+
+    @Override
+    boolean bool(Frame frame)
+    {
+      String str = args[0].string(frame);
+      return objectCompare ? FunctionLibrary.ERROR == str : FunctionLibrary.ERROR.equals(str);
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.func;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.libreoffice.lots.func.Evaluator.Frame;
+
+/**
+ * Compiles a tree of functions into a tree of {@link Evaluator}s.
+ *
+ * The compiled function returns the same results as the original function, but
+ * <ul>
+ * <li>subtrees which don't depend on any value are computed once at compile time,</li>
+ * <li>numbers are passed between arithmetic functions without formatting and parsing them
+ * again,</li>
+ * <li>each parameter is looked up only once per evaluation,</li>
+ * <li>it can be evaluated concurrently.</li>
+ * </ul>
+ * Functions which have no compiled form (e.g. MATCH, EXTERNAL or DIALOG) are evaluated by the
+ * interpreter as part of the compiled function.
+ */
+public class FunctionCompiler
+{
+
+  private final Map<String, Integer> slots = new HashMap<>();
+
+  private final char decimalPoint = Evaluator.currentDecimalPoint();
+
+  private FunctionCompiler()
+  {
+    // use compile()
+  }
+
+  /**
+   * Compiles a function.
+   *
+   * @param function
+   *          The function. May be null.
+   * @return The compiled function or null if function is null.
+   */
+  public static Function compile(Function function)
+  {
+    if (function == null || function instanceof CompiledFunction)
+    {
+      return function;
+    }
+    FunctionCompiler compiler = new FunctionCompiler();
+    Evaluator root = compiler.compileNode(function);
+    return new CompiledFunction(function, root, compiler.slots.size());
+  }
+
+  private Evaluator compileNode(Function function)
+  {
+    Evaluator node = createNode(function);
+    if (node.isConstant() && !(node instanceof Evaluator.Constant))
+    {
+      Frame frame = new Frame(new Values.None(), 0);
+      node = new Evaluator.Constant(node.string(frame), node.bool(frame), decimalPoint);
+    }
+    return node;
+  }
+
+  private Evaluator createNode(Function function)
+  {
+    Class<?> type = function.getClass();
+    if (type == StringLiteralFunction.class || type == AlwaysTrueFunction.class)
+    {
+      return new Evaluator.Constant(function.getResult(null), function.getBoolean(null),
+          decimalPoint);
+    }
+    if (type == ValueFunction.class)
+    {
+      String id = ((ValueFunction) function).params[0];
+      return new Evaluator.Value(slots.computeIfAbsent(id, k -> slots.size()), id);
+    }
+    if (type == SumFunction.class)
+    {
+      return arithmetic(Evaluator.Arithmetic.Op.SUM, (NumberFunction) function);
+    }
+    if (type == MinusFunction.class)
+    {
+      return arithmetic(Evaluator.Arithmetic.Op.MINUS, (NumberFunction) function);
+    }
+    if (type == AbsFunction.class)
+    {
+      return arithmetic(Evaluator.Arithmetic.Op.ABS, (NumberFunction) function);
+    }
+    if (type == SignFunction.class)
+    {
+      return arithmetic(Evaluator.Arithmetic.Op.SIGN, (NumberFunction) function);
+    }
+    if (type == DiffFunction.class)
+    {
+      return arithmetic(Evaluator.Arithmetic.Op.DIFF, (NumberFunction) function);
+    }
+    if (type == ProductFunction.class)
+    {
+      return arithmetic(Evaluator.Arithmetic.Op.PRODUCT, (NumberFunction) function);
+    }
+    if (type == NumberCompareFunction.class)
+    {
+      NumberCompareFunction cmp = (NumberCompareFunction) function;
+      Evaluator margin = cmp.marginFun == null ? null : compileNode(cmp.marginFun);
+      return new Evaluator.NumberCompare(margin, cmp.cmp1, cmp.cmp2, cmp.result, cmp.decimalPoint,
+          compileAll(cmp.subFunction));
+    }
+    if (type == DivideFunction.class)
+    {
+      DivideFunction div = (DivideFunction) function;
+      Evaluator divisor = div.divisorFunction == null ? null : compileNode(div.divisorFunction);
+      return new Evaluator.Divide(div.minScale, div.maxScale, compileNode(div.dividendFunction),
+          divisor);
+    }
+    if (type == IfFunction.class)
+    {
+      IfFunction ifFun = (IfFunction) function;
+      return new Evaluator.If(compileNode(ifFun.ifFunction), compileNode(ifFun.thenFunction),
+          compileNode(ifFun.elseFunction));
+    }
+    if (type == CatFunction.class || type == LengthFunction.class)
+    {
+      return new Evaluator.Cat(type == LengthFunction.class,
+          compileAll(((MultiFunction) function).subFunction));
+    }
+    if (type == AndFunction.class)
+    {
+      return new Evaluator.Logic(Evaluator.Logic.Op.AND,
+          compileAll(((MultiFunction) function).subFunction));
+    }
+    if (type == OrFunction.class)
+    {
+      return new Evaluator.Logic(Evaluator.Logic.Op.OR,
+          compileAll(((MultiFunction) function).subFunction));
+    }
+    if (type == NotFunction.class)
+    {
+      return new Evaluator.Logic(Evaluator.Logic.Op.NOT,
+          compileAll(((MultiFunction) function).subFunction));
+    }
+    if (type == StrCmpFunction.class)
+    {
+      return new Evaluator.StrCmp(compileAll(((MultiFunction) function).subFunction));
+    }
+    if (type == IsErrorFunction.class)
+    {
+      IsErrorFunction isError = (IsErrorFunction) function;
+      return new Evaluator.IsError(isError.objectCompare, compileNode(isError.func));
+    }
+    return new Evaluator.Interpreted(function);
+  }
+
+  private Evaluator arithmetic(Evaluator.Arithmetic.Op op, NumberFunction function)
+  {
+    return new Evaluator.Arithmetic(op, function.decimalPoint, compileAll(function.subFunction));
+  }
+
+  private Evaluator[] compileAll(Collection<Function> functions)
+  {
+    Evaluator[] nodes = new Evaluator[functions.size()];
+    int i = 0;
+    for (Function function : functions)
+    {
+      nodes[i++] = compileNode(function);
+    }
+    return nodes;
+  }
+
+  /**
+   * A compiled function. Parameters and dialog references are those of the original function.
+   */
+  private static class CompiledFunction implements Function
+  {
+    private final Function function;
+    private final Evaluator root;
+    private final int slotCount;
+
+    private CompiledFunction(Function function, Evaluator root, int slotCount)
+    {
+      this.function = function;
+      this.root = root;
+      this.slotCount = slotCount;
+    }
+
+    @Override
+    public String[] parameters()
+    {
+      return function.parameters();
+    }
+
+    @Override
+    public void getFunctionDialogReferences(Collection<String> set)
+    {
+      function.getFunctionDialogReferences(set);
+    }
+
+    @Override
+    public String getResult(Values parameters)
+    {
+      return root.string(new Frame(parameters, slotCount));
+    }
+
+    @Override
+    public boolean getBoolean(Values parameters)
+    {
+      return root.bool(new Frame(parameters, slotCount));
+    }
+  }
+}
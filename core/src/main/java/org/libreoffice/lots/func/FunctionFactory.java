@@ -141,11 +141,25 @@ public class FunctionFactory
    */
   public static Function parseChildren(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
+  {
+    return parseChildren(conf, funcLib, dialogLib, context, null);
+  }
+
+  /**
+   * Like {@link #parseChildren(ConfigThingy, FunctionLibrary, DialogLibrary, Map)}, but identical
+   * subtrees are shared.
+   *
+   * @param shared
+   *          The repeated subtrees of the configuration which is parsed. If null, nothing is
+   *          shared.
+   */
+  static Function parseChildren(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     List<Function> andFunction = new ArrayList<>();
     for (ConfigThingy func : conf)
     {
-      Function cons = parse(func, funcLib, dialogLib, context);
+      Function cons = parse(func, funcLib, dialogLib, context, shared);
       andFunction.add(cons);
     }
 
@@ -183,6 +197,30 @@ public class FunctionFactory
    */
   public static Function parse(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
+  {
+    return parse(conf, funcLib, dialogLib, context, null);
+  }
+
+  /**
+   * Like {@link #parse(ConfigThingy, FunctionLibrary, DialogLibrary, Map)}, but identical subtrees
+   * are shared.
+   *
+   * @param shared
+   *          The repeated subtrees of the configuration which is parsed. If null, nothing is
+   *          shared.
+   */
+  static Function parse(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
+  {
+    if (shared == null)
+    {
+      return parseFunction(conf, funcLib, dialogLib, context, null);
+    }
+    return shared.parse(conf, () -> parseFunction(conf, funcLib, dialogLib, context, shared));
+  }
+
+  private static Function parseFunction(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     String name = conf.getName();
 
@@ -190,35 +228,35 @@ public class FunctionFactory
 
     if (name.equals("AND"))
     {
-      return new AndFunction(conf, funcLib, dialogLib, context);
+      return new AndFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("NOT"))
     {
-      return new NotFunction(conf, funcLib, dialogLib, context);
+      return new NotFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("OR"))
     {
-      return new OrFunction(conf, funcLib, dialogLib, context);
+      return new OrFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("VALUE"))
     {
-      return parseVALUE(conf, funcLib, dialogLib, context);
+      return parseVALUE(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("MATCH"))
     {
-      return parseMATCH(conf, funcLib, dialogLib, context);
+      return parseMATCH(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("REPLACE"))
     {
-      return parseREPLACE(conf, funcLib, dialogLib, context);
+      return parseREPLACE(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("SPLIT"))
     {
-      return parseSPLIT(conf, funcLib, dialogLib, context);
+      return parseSPLIT(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("IF"))
     {
-      return parseIF(conf, funcLib, dialogLib, context);
+      return parseIF(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("EXTERN"))
     {
@@ -230,84 +268,84 @@ public class FunctionFactory
     }
     else if (name.equals("BIND"))
     {
-      return parseBIND(conf, funcLib, dialogLib, context);
+      return parseBIND(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("SELECT"))
     {
-      return new SelectFunction(conf, funcLib, dialogLib, context);
+      return new SelectFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("CAT") || name.equals("THEN") || name.equals("ELSE"))
     {
-      return new CatFunction(conf, funcLib, dialogLib, context);
+      return new CatFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("LENGTH"))
     {
-      return new LengthFunction(conf, funcLib, dialogLib, context);
+      return new LengthFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("FORMAT") || name.equals("DIVIDE"))
     {
-      return parseDIVIDE(conf, funcLib, dialogLib, context);
+      return parseDIVIDE(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("MINUS"))
     {
-      return new MinusFunction(conf, funcLib, dialogLib, context);
+      return new MinusFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("SUM"))
     {
-      return new SumFunction(conf, funcLib, dialogLib, context);
+      return new SumFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("DIFF"))
     {
-      return new DiffFunction(conf, funcLib, dialogLib, context);
+      return new DiffFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("PRODUCT"))
     {
-      return new ProductFunction(conf, funcLib, dialogLib, context);
+      return new ProductFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("ABS"))
     {
-      return new AbsFunction(conf, funcLib, dialogLib, context);
+      return new AbsFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("SIGN"))
     {
-      return new SignFunction(conf, funcLib, dialogLib, context);
+      return new SignFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("LT"))
     {
       return new NumberCompareFunction(0, 1, "true", conf, funcLib, dialogLib,
-        context);
+        context, shared);
     }
     else if (name.equals("LE"))
     {
       return new NumberCompareFunction(1, 1, "true", conf, funcLib, dialogLib,
-        context);
+        context, shared);
     }
     else if (name.equals("GT"))
     {
       return new NumberCompareFunction(0, -1, "true", conf, funcLib, dialogLib,
-        context);
+        context, shared);
     }
     else if (name.equals("GE"))
     {
       return new NumberCompareFunction(-1, -1, "true", conf, funcLib, dialogLib,
-        context);
+        context, shared);
     }
     else if (name.equals("NUMCMP"))
     {
       return new NumberCompareFunction(Integer.MAX_VALUE, Integer.MAX_VALUE, null,
-        conf, funcLib, dialogLib, context);
+        conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("STRCMP"))
     {
-      return new StrCmpFunction(conf, funcLib, dialogLib, context);
+      return new StrCmpFunction(conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("ISERROR"))
     {
-      return new IsErrorFunction(true, conf, funcLib, dialogLib, context);
+      return new IsErrorFunction(true, conf, funcLib, dialogLib, context, shared);
     }
     else if (name.equals("ISERRORSTRING"))
     {
-      return new IsErrorFunction(false, conf, funcLib, dialogLib, context);
+      return new IsErrorFunction(false, conf, funcLib, dialogLib, context, shared);
     }
 
     if (name.length() == 0)
@@ -337,7 +375,7 @@ public class FunctionFactory
   }
 
   private static Function parseBIND(ConfigThingy conf, FunctionLibrary funcLib,
-      DialogLibrary dialogLib, Map<Object, Object> context)
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     ConfigThingy funcConf = conf.query("FUNCTION"); // funcConf = <query results> -
     // FUNCTION - ...
@@ -367,10 +405,10 @@ public class FunctionFactory
     }
     else // i.e. an entire function was specified
     {
-      func = parse(funcConf, funcLib, dialogLib, context);
+      func = parse(funcConf, funcLib, dialogLib, context, shared);
     }
 
-    return new BindFunction(func, conf, funcLib, dialogLib, context);
+    return new BindFunction(func, conf, funcLib, dialogLib, context, shared);
   }
 
   private static Function parseDIALOG(ConfigThingy conf, DialogLibrary dialogLib,
@@ -410,7 +448,7 @@ public class FunctionFactory
   }
 
   private static Function parseIF(ConfigThingy conf, FunctionLibrary funcLib,
-      DialogLibrary dialogLib, Map<Object, Object> context)
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     ConfigThingy thenConf = conf.query("THEN");
     ConfigThingy elseConf = conf.query("ELSE");
@@ -443,15 +481,15 @@ public class FunctionFactory
     } while (condition.getName().equals("THEN")
       || condition.getName().equals("ELSE"));
 
-    Function ifFun = parse(condition, funcLib, dialogLib, context);
-    Function thenFun = parseChildren(thenConf, funcLib, dialogLib, context);
-    Function elseFun = parseChildren(elseConf, funcLib, dialogLib, context);
+    Function ifFun = parse(condition, funcLib, dialogLib, context, shared);
+    Function thenFun = parseChildren(thenConf, funcLib, dialogLib, context, shared);
+    Function elseFun = parseChildren(elseConf, funcLib, dialogLib, context, shared);
 
     return new IfFunction(ifFun, thenFun, elseFun);
   }
 
   private static Function parseREPLACE(ConfigThingy conf, FunctionLibrary funcLib,
-      DialogLibrary dialogLib, Map<Object, Object> context)
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     if (conf.count() != 3)
       throw new ConfigurationErrorException(L.m(
@@ -463,9 +501,9 @@ public class FunctionFactory
     Function repFun;
 
     Iterator<ConfigThingy> iter = conf.iterator();
-    strFun = parse(iter.next(), funcLib, dialogLib, context);
-    reFun = parse(iter.next(), funcLib, dialogLib, context);
-    repFun = parse(iter.next(), funcLib, dialogLib, context);
+    strFun = parse(iter.next(), funcLib, dialogLib, context, shared);
+    reFun = parse(iter.next(), funcLib, dialogLib, context, shared);
+    repFun = parse(iter.next(), funcLib, dialogLib, context, shared);
 
     String regex = reFun.getResult(new Values.None());
     Pattern p;
@@ -481,7 +519,7 @@ public class FunctionFactory
   }
 
   private static Function parseSPLIT(ConfigThingy conf, FunctionLibrary funcLib,
-      DialogLibrary dialogLib, Map<Object, Object> context)
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     if (conf.count() != 3)
       throw new ConfigurationErrorException(L.m(
@@ -493,8 +531,8 @@ public class FunctionFactory
     int idx;
 
     Iterator<ConfigThingy> iter = conf.iterator();
-    strFun = parse(iter.next(), funcLib, dialogLib, context);
-    reFun = parse(iter.next(), funcLib, dialogLib, context);
+    strFun = parse(iter.next(), funcLib, dialogLib, context, shared);
+    reFun = parse(iter.next(), funcLib, dialogLib, context, shared);
 
     idx = -1;
     try
@@ -528,7 +566,7 @@ public class FunctionFactory
   }
 
   private static Function parseMATCH(ConfigThingy conf, FunctionLibrary funcLib,
-      DialogLibrary dialogLib, Map<Object, Object> context)
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     Function strFun;
     Function reFun;
@@ -536,8 +574,8 @@ public class FunctionFactory
     // TODO doesn't work as described. Exception isn't thrown by 1 or more than 2 parameters.
     try
     {
-      strFun = parse(conf.getFirstChild(), funcLib, dialogLib, context);
-      reFun = parse(conf.getLastChild(), funcLib, dialogLib, context);
+      strFun = parse(conf.getFirstChild(), funcLib, dialogLib, context, shared);
+      reFun = parse(conf.getLastChild(), funcLib, dialogLib, context, shared);
     }
     catch (NodeNotFoundException x)
     {
@@ -559,13 +597,13 @@ public class FunctionFactory
   }
 
   private static Function parseVALUE(ConfigThingy conf, FunctionLibrary funcLib,
-      DialogLibrary dialogLib, Map<Object, Object> context)
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     Function valueNameFun;
     // TODO doesn't work as described. Exception isn't thrown by 0 or more than 1 parameters.
     try
     {
-      valueNameFun = parse(conf.getFirstChild(), funcLib, dialogLib, context);
+      valueNameFun = parse(conf.getFirstChild(), funcLib, dialogLib, context, shared);
     }
     catch (NodeNotFoundException e)
     {
@@ -578,7 +616,7 @@ public class FunctionFactory
   }
 
   private static Function parseDIVIDE(ConfigThingy conf, FunctionLibrary funcLib,
-      DialogLibrary dialogLib, Map<Object, Object> context)
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     Function dividendFun = null;
     Function byFun = null;
@@ -603,7 +641,7 @@ public class FunctionFactory
             "{0}-Function may only have one BY-specification", conf.getName()));
         }
 
-        byFun = parseChildren(funConf, funcLib, dialogLib, context);
+        byFun = parseChildren(funConf, funcLib, dialogLib, context, shared);
       }
       else if (name.equals("MIN"))
       {
@@ -663,7 +701,7 @@ public class FunctionFactory
                   + "Note that the divisor must be enclosed with BY(...).",
               conf.getName()));
         }
-        dividendFun = parse(funConf, funcLib, dialogLib, context);
+        dividendFun = parse(funConf, funcLib, dialogLib, context, shared);
       }
     }
 
@@ -736,6 +774,7 @@ public class FunctionFactory
       Map<Object, Object> context)
   {
     conf = conf.query(section);
+    SharedSubtrees shared = new SharedSubtrees(conf);
     Iterator<ConfigThingy> parentIter = conf.iterator();
     while (parentIter.hasNext())
     {
@@ -747,7 +786,7 @@ public class FunctionFactory
         try
         {
           Function func =
-            parseChildren(funcConf, funcs, dialogLib, context);
+            parseChildren(funcConf, funcs, dialogLib, context, shared);
           funcs.add(name, func);
         }
         catch (ConfigurationErrorException e)
@@ -764,17 +803,16 @@ public class FunctionFactory
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
     Map<String, Function> trafos = new HashMap<>();
-    Iterator<ConfigThingy> suIter = trafoConf.query(nodeName, 1).iterator();
-    while (suIter.hasNext())
+    ConfigThingy sections = trafoConf.query(nodeName, 1);
+    SharedSubtrees shared = new SharedSubtrees(sections);
+    for (ConfigThingy spaltenumsetzung : sections)
     {
-      ConfigThingy spaltenumsetzung = suIter.next();
-
       for (ConfigThingy transConf : spaltenumsetzung)
       {
         String name = transConf.getName();
         try
         {
-          Function func = FunctionFactory.parseChildren(transConf, funcLib, dialogLib, context);
+          Function func = FunctionFactory.parseChildren(transConf, funcLib, dialogLib, context, shared);
           if (func == null)
             throw new ConfigurationErrorException(
                 L.m("Empty functions definition is not allowed. Instead use the empty string \"\""));
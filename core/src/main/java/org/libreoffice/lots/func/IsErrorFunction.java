@@ -32,9 +32,9 @@ import org.libreoffice.lots.util.L;
 
 public class IsErrorFunction implements Function
 {
-  private Function func;
+  Function func;
 
-  private boolean objectCompare;
+  boolean objectCompare;
 
   /**
    * Falls objectCompare == true, wird == Function,ERROR getestet, ansonsten
@@ -42,13 +42,19 @@ public class IsErrorFunction implements Function
    */
   public IsErrorFunction(boolean objectCompare, ConfigThingy conf,
       FunctionLibrary funcLib, DialogLibrary dialogLib, Map<Object, Object> context)
+  {
+    this(objectCompare, conf, funcLib, dialogLib, context, null);
+  }
+
+  IsErrorFunction(boolean objectCompare, ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
     if (conf.count() != 1)
       throw new ConfigurationErrorException(L.m(
         "Function {0} must have exactly one parameter", conf.getName()));
 
     this.objectCompare = objectCompare;
-    func = FunctionFactory.parseChildren(conf, funcLib, dialogLib, context);
+    func = FunctionFactory.parseChildren(conf, funcLib, dialogLib, context, shared);
   }
 
   @Override
@@ -32,7 +32,13 @@ public class LengthFunction extends CatFunction
   public LengthFunction(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
-    super(conf, funcLib, dialogLib, context);
+    this(conf, funcLib, dialogLib, context, null);
+  }
+
+  LengthFunction(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
+  {
+    super(conf, funcLib, dialogLib, context, shared);
   }
 
   @Override
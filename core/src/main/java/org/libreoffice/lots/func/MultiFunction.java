@@ -40,18 +40,32 @@ public abstract class MultiFunction implements Function
 
   private String[] params;
 
+  /**
+   * The shared subtrees of the configuration. Only set while the parameters are parsed, so that
+   * {@link #handleParam(ConfigThingy, FunctionLibrary, DialogLibrary, Map)} can use them.
+   */
+  SharedSubtrees shared;
+
   public MultiFunction(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
+    this(conf, funcLib, dialogLib, context, null);
+  }
+
+  MultiFunction(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
+  {
+    this.shared = shared;
     List<Function> subFunc = new ArrayList<>(conf.count());
     Iterator<ConfigThingy> iter = conf.iterator();
     while (iter.hasNext())
     {
       ConfigThingy subFunConf = iter.next();
       if (handleParam(subFunConf, funcLib, dialogLib, context)) continue;
-      Function fun = FunctionFactory.parse(subFunConf, funcLib, dialogLib, context);
+      Function fun = FunctionFactory.parse(subFunConf, funcLib, dialogLib, context, shared);
       subFunc.add(fun);
     }
+    this.shared = null;
 
     if (subFunc.isEmpty())
       throw new ConfigurationErrorException(L.m(
@@ -40,13 +40,13 @@ public class NumberCompareFunction extends NumberFunction
 
   private BigDecimal highBound;
 
-  private int cmp1;
+  int cmp1;
 
-  private int cmp2;
+  int cmp2;
 
   private int prevCompare;
 
-  private String result;
+  String result;
 
   private BigDecimal margin;
 
@@ -76,7 +76,14 @@ public class NumberCompareFunction extends NumberFunction
       ConfigThingy conf, FunctionLibrary funcLib, DialogLibrary dialogLib,
       Map<Object, Object> context)
   {
-    super(conf, funcLib, dialogLib, context);
+    this(cmp1, cmp2, result, conf, funcLib, dialogLib, context, null);
+  }
+
+  NumberCompareFunction(int cmp1, int cmp2, String result,
+      ConfigThingy conf, FunctionLibrary funcLib, DialogLibrary dialogLib,
+      Map<Object, Object> context, SharedSubtrees shared)
+  {
+    super(conf, funcLib, dialogLib, context, shared);
     if (subFunction.size() < 2)
       throw new ConfigurationErrorException(L.m(
         "Function {0} requires at least 2 parameters", conf.getName()));
@@ -94,7 +101,7 @@ public class NumberCompareFunction extends NumberFunction
       if (conf.count() != 1)
         throw new ConfigurationErrorException(
           L.m("MARGIN must contain exactly one function"));
-      marginFun = FunctionFactory.parseChildren(conf, funcLib, dialogLib, context);
+      marginFun = FunctionFactory.parseChildren(conf, funcLib, dialogLib, context, shared);
       return true;
     }
     else
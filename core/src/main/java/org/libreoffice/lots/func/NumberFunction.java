@@ -35,10 +35,10 @@ abstract class NumberFunction extends MultiFunction
 {
   protected char decimalPoint = '.';
 
-  protected NumberFunction(ConfigThingy conf, FunctionLibrary funcLib,
-      DialogLibrary dialogLib, Map<Object, Object> context)
+  NumberFunction(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
   {
-    super(conf, funcLib, dialogLib, context);
+    super(conf, funcLib, dialogLib, context, shared);
     try
     {
       decimalPoint = ((DecimalFormat) NumberFormat.getInstance()).getDecimalFormatSymbols()
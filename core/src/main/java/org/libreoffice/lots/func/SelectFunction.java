@@ -42,7 +42,13 @@ public class SelectFunction extends MultiFunction
   public SelectFunction(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
-    super(conf, funcLib, dialogLib, context);
+    this(conf, funcLib, dialogLib, context, null);
+  }
+
+  SelectFunction(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
+  {
+    super(conf, funcLib, dialogLib, context, shared);
   }
 
   @Override
@@ -51,7 +57,7 @@ public class SelectFunction extends MultiFunction
   {
     if (conf.getName().equals("ONERROR"))
     {
-      onErrorFunction = new CatFunction(conf, funcLib, dialogLib, context);
+      onErrorFunction = new CatFunction(conf, funcLib, dialogLib, context, shared);
       return true;
     }
     return false;
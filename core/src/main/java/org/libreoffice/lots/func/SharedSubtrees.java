@@ -0,0 +1,285 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.func;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.libreoffice.lots.config.ConfigThingy;
+
+/**
+ * Shares structurally identical subtrees while the functions of a function library or the TRAFOs
+ * of a section are parsed. Every subtree which occurs more than once is parsed once and all
+ * occurrences get the same instance. This instance remembers its last result together with the
+ * values of its parameters, so it's only evaluated again if one of them has changed.
+ *
+ * Subtrees containing EXTERN or DIALOG functions or referencing a library function by name in
+ * BIND are never shared, because their result doesn't only depend on their parameters or the
+ * referenced function may be redefined later on.
+ */
+class SharedSubtrees
+{
+  /**
+   * The canonical subtree of every shareable node with children.
+   */
+  private final Map<ConfigThingy, Subtree> subtrees = new IdentityHashMap<>();
+
+  /**
+   * All distinct subtrees.
+   */
+  private final Map<Subtree, Subtree> canonical = new HashMap<>();
+
+  /**
+   * Collect the repeated subtrees of conf.
+   *
+   * @param conf
+   *          The configuration containing all functions which are parsed.
+   */
+  SharedSubtrees(ConfigThingy conf)
+  {
+    count(conf);
+  }
+
+  /**
+   * Parse a function or return the shared function of an identical subtree.
+   *
+   * @param conf
+   *          The function description.
+   * @param parser
+   *          Parses the function if necessary.
+   * @return The function.
+   */
+  Function parse(ConfigThingy conf, Supplier<Function> parser)
+  {
+    Subtree subtree = subtrees.get(conf);
+    if (subtree == null || subtree.occurrences < 2)
+    {
+      return parser.get();
+    }
+    if (subtree.function == null)
+    {
+      subtree.function = new SharedFunction(parser.get());
+    }
+    return subtree.function;
+  }
+
+  /**
+   * Collect all subtrees bottom-up. Identical subtrees are mapped to the same canonical subtree, so
+   * every node is only visited once.
+   *
+   * @return The canonical subtree of conf or null if conf can't be shared.
+   */
+  private Subtree count(ConfigThingy conf)
+  {
+    Subtree[] children = new Subtree[conf.count()];
+    boolean shareable = true;
+    int i = 0;
+    for (ConfigThingy child : conf)
+    {
+      children[i] = count(child);
+      shareable &= children[i] != null;
+      i++;
+    }
+    if (!shareable || (children.length > 0 && !isShareable(conf)))
+    {
+      return null;
+    }
+    Subtree subtree = canonical.computeIfAbsent(new Subtree(conf.getName(), children), k -> k);
+    subtree.occurrences++;
+    if (children.length > 0)
+    {
+      subtrees.put(conf, subtree);
+    }
+    return subtree;
+  }
+
+  private static boolean isShareable(ConfigThingy conf)
+  {
+    String name = conf.getName();
+    if (name.equals("EXTERN") || name.equals("DIALOG"))
+    {
+      return false;
+    }
+    if (name.equals("BIND"))
+    {
+      for (ConfigThingy funcConf : conf)
+      {
+        if (funcConf.getName().equals("FUNCTION") && funcConf.count() == 1
+            && funcConf.iterator().next().count() == 0)
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A function with more than one occurrence. The last result is remembered.
+   */
+  static class SharedFunction implements Function
+  {
+    private final Function function;
+
+    private final String[] params;
+
+    private volatile Result lastResult;
+
+    private volatile Result lastBoolean;
+
+    SharedFunction(Function function)
+    {
+      this.function = function;
+      this.params = function.parameters();
+    }
+
+    @Override
+    public String[] parameters()
+    {
+      return function.parameters();
+    }
+
+    @Override
+    public void getFunctionDialogReferences(Collection<String> set)
+    {
+      function.getFunctionDialogReferences(set);
+    }
+
+    @Override
+    public String getResult(Values parameters)
+    {
+      String[] key = key(parameters);
+      Result last = lastResult;
+      if (last != null && Arrays.equals(last.key, key))
+      {
+        return last.result;
+      }
+      String result = function.getResult(parameters);
+      lastResult = new Result(key, result, false);
+      return result;
+    }
+
+    @Override
+    public boolean getBoolean(Values parameters)
+    {
+      String[] key = key(parameters);
+      Result last = lastBoolean;
+      if (last != null && Arrays.equals(last.key, key))
+      {
+        return last.bool;
+      }
+      boolean bool = function.getBoolean(parameters);
+      lastBoolean = new Result(key, null, bool);
+      return bool;
+    }
+
+    /**
+     * The values of all parameters. null if a value isn't available.
+     */
+    private String[] key(Values parameters)
+    {
+      String[] key = new String[params.length];
+      for (int i = 0; i < params.length; i++)
+      {
+        if (parameters.hasValue(params[i]))
+        {
+          key[i] = parameters.getString(params[i]);
+        }
+      }
+      return key;
+    }
+  }
+
+  /**
+   * A node name together with the canonical subtrees of its children. As children are canonical,
+   * they are compared by identity.
+   */
+  private static class Subtree
+  {
+    private final String name;
+    private final Subtree[] children;
+    private final int hash;
+
+    private int occurrences;
+
+    private Function function;
+
+    private Subtree(String name, Subtree[] children)
+    {
+      this.name = name;
+      this.children = children;
+      int h = name.hashCode();
+      for (Subtree child : children)
+      {
+        h = 31 * h + System.identityHashCode(child);
+      }
+      this.hash = h;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (!(obj instanceof Subtree))
+      {
+        return false;
+      }
+      Subtree other = (Subtree) obj;
+      if (hash != other.hash || !name.equals(other.name) || children.length != other.children.length)
+      {
+        return false;
+      }
+      for (int i = 0; i < children.length; i++)
+      {
+        if (children[i] != other.children[i])
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static class Result
+  {
+    private final String[] key;
+    private final String result;
+    private final boolean bool;
+
+    private Result(String[] key, String result, boolean bool)
+    {
+      this.key = key;
+      this.result = result;
+      this.bool = bool;
+    }
+  }
+}
@@ -35,7 +35,13 @@ public class StrCmpFunction extends MultiFunction
   public StrCmpFunction(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
-    super(conf, funcLib, dialogLib, context);
+    this(conf, funcLib, dialogLib, context, null);
+  }
+
+  StrCmpFunction(ConfigThingy conf, FunctionLibrary funcLib,
+      DialogLibrary dialogLib, Map<Object, Object> context, SharedSubtrees shared)
+  {
+    super(conf, funcLib, dialogLib, context, shared);
     if (subFunction.size() < 2)
       throw new ConfigurationErrorException(L.m(
         "Function {0} requires at least 2 parameters", conf.getName()));
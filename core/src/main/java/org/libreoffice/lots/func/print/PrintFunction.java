@@ -151,6 +151,17 @@ public abstract class PrintFunction implements Comparable<PrintFunction>
    */
   public abstract void print(XPrintModel printModel) throws PrintException;
 
+  /**
+   * Can this print function print several records at the same time, each on its own copy of the
+   * document, and in any order? Only such print functions are used by a parallel mail merge.
+   *
+   * @return True if the print function can be used by a parallel mail merge.
+   */
+  public boolean isParallelSafe()
+  {
+    return false;
+  }
+
   /**
    * Add print functions defined as service of type {@link PrintFunction}.
    *
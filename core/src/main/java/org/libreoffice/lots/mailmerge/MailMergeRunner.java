@@ -22,6 +22,7 @@
  */
 package org.libreoffice.lots.mailmerge;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -30,6 +31,7 @@ import java.util.stream.IntStream;
 import javax.mail.MessagingException;
 
 import de.muenchen.allg.itd51.wollmux.interfaces.XPrintModel;
+import org.libreoffice.lots.GlobalFunctions;
 import org.libreoffice.lots.dialog.InfoDialog;
 import org.libreoffice.lots.document.TextDocumentController;
 import org.libreoffice.lots.func.print.PrintFunction;
@@ -58,11 +60,21 @@ public class MailMergeRunner implements Runnable
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(MailMergeRunner.class);
 
+  /**
+   * Maximum number of hidden document copies used by a parallel mail merge.
+   */
+  private static final int MAX_PARALLEL_WORKERS = 4;
+
   /**
    * The print model of the mail merge.
    */
   final XPrintModel pmod;
 
+  /**
+   * The names of the print functions of the mail merge.
+   */
+  private final List<String> printFunctions = new ArrayList<>();
+
   /**
    * Setup a mail merge.
    *
@@ -95,7 +107,14 @@ public class MailMergeRunner implements Runnable
     }
 
     long startTime = System.currentTimeMillis();
-    pmod.printWithProps();
+    try
+    {
+      pmod.printWithProps();
+    } finally
+    {
+      // also closes the mail workers and connections if the mail merge failed
+      PrintToEmail.awaitMails(pmod);
+    }
     long duration = (System.currentTimeMillis() - startTime) / 1000;
     LOGGER.debug("MailMerge finished after {} seconds", duration);
 
@@ -220,32 +239,34 @@ public class MailMergeRunner implements Runnable
     try
     {
       boolean ignoreDocPrintFuncs = true;
+      boolean parallel = false;
       switch (settings.getAction())
       {
       case SINGLE_DOCUMENT_ODT:
         ignoreDocPrintFuncs = false;
-        pmod.usePrintFunction("OOoMailMergeToOdtFile");
-        pmod.usePrintFunction("OOoMailMergeToShowOdtFile");
+        usePrintFunction("OOoMailMergeToOdtFile");
+        usePrintFunction("OOoMailMergeToShowOdtFile");
         break;
       case SINGLE_DOCUMENT_PDF:
         ignoreDocPrintFuncs = false;
-        pmod.usePrintFunction("OOoMailMergeToOdtFile");
-        pmod.usePrintFunction("OOoMailMergeToPdfFile");
-        pmod.usePrintFunction("ShowDocument");
+        usePrintFunction("OOoMailMergeToOdtFile");
+        usePrintFunction("OOoMailMergeToPdfFile");
+        usePrintFunction("ShowDocument");
         break;
       case DIRECT:
         ignoreDocPrintFuncs = false;
-        pmod.usePrintFunction("OOoMailMergeToPrinter");
+        usePrintFunction("OOoMailMergeToPrinter");
         break;
       case MAIL:
-        pmod.usePrintFunction("MailMergeNewSetFormValue");
+        usePrintFunction("MailMergeNewSetFormValue");
+        parallel = true;
         switch (settings.getFormat())
         {
         case ODT:
-          pmod.usePrintFunction("MailMergeNewToODTEMail");
+          usePrintFunction("MailMergeNewToODTEMail");
           break;
         case PDF:
-          pmod.usePrintFunction("MailMergeNewToPDFEMail");
+          usePrintFunction("MailMergeNewToPDFEMail");
           break;
         default:
           pmod.cancel();
@@ -253,14 +274,15 @@ public class MailMergeRunner implements Runnable
         }
         break;
       case MULTIPLE_DOCUMENTS:
-        pmod.usePrintFunction("MailMergeNewSetFormValue");
+        usePrintFunction("MailMergeNewSetFormValue");
+        parallel = true;
         switch (settings.getFormat())
         {
         case ODT:
-          pmod.usePrintFunction("MailMergeNewToSingleODT");
+          usePrintFunction("MailMergeNewToSingleODT");
           break;
         case PDF:
-          pmod.usePrintFunction("MailMergeNewToSinglePDF");
+          usePrintFunction("MailMergeNewToSinglePDF");
           break;
         default:
           pmod.cancel();
@@ -274,7 +296,12 @@ public class MailMergeRunner implements Runnable
       if (!ignoreDocPrintFuncs)
       {
         for (String printFunctionName : docPrintFunctions)
-          pmod.usePrintFunction(printFunctionName);
+          usePrintFunction(printFunctionName);
+      }
+      if (parallel && isParallelSafe())
+      {
+        setPropertyValue(SetFormValue.PROP_PARALLEL_WORKERS,
+            Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARALLEL_WORKERS));
       }
     } catch (NoSuchMethodException e)
     {
@@ -286,6 +313,40 @@ public class MailMergeRunner implements Runnable
     }
   }
 
+  /**
+   * Add a print function to {@link #pmod} and remember it in {@link #printFunctions}.
+   *
+   * @param name
+   *          The name of the print function.
+   * @throws NoSuchMethodException
+   *           There's no print function with this name.
+   */
+  private void usePrintFunction(String name) throws NoSuchMethodException
+  {
+    pmod.usePrintFunction(name);
+    printFunctions.add(name);
+  }
+
+  /**
+   * Can all print functions of the mail merge be used by a parallel mail merge? Print functions of
+   * the configuration may replace the internal ones, so the functions are looked up by name.
+   *
+   * @return True if all print functions are parallel safe.
+   */
+  private boolean isParallelSafe()
+  {
+    for (String name : printFunctions)
+    {
+      PrintFunction function = GlobalFunctions.getInstance().getGlobalPrintFunctions().get(name);
+      if (function == null || !function.isParallelSafe())
+      {
+        LOGGER.debug("Print function {} can't be used in parallel", name);
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Set a property on {@link #pmod}. If this fails {@link #pmod} is canceled.
    *
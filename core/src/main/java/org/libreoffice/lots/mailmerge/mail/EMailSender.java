@@ -24,6 +24,8 @@ package org.libreoffice.lots.mailmerge.mail;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -34,6 +36,7 @@ import javax.mail.Multipart;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
+import javax.mail.internet.InternetHeaders;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
@@ -115,6 +118,51 @@ public class EMailSender
     ((Multipart) email.getContent()).addBodyPart(messageBodyPart);
   }
 
+  /**
+   * Add an attachment to the mail. The content is kept in memory, so the mail can be sent several
+   * times without reading a file again.
+   *
+   * @param fileName
+   *          The file name of the attachment.
+   * @param content
+   *          The content of the attachment.
+   * @param mimeType
+   *          The MIME type of the content.
+   * @throws MessagingException
+   *           Problems with the mail message.
+   * @throws IOException
+   *           The content of the mail can't be accessed.
+   */
+  public void addAttachment(String fileName, byte[] content, String mimeType)
+      throws MessagingException, IOException
+  {
+    InternetHeaders headers = new InternetHeaders();
+    headers.setHeader("Content-Type", mimeType);
+    headers.setHeader("Content-Transfer-Encoding", "base64");
+    MimeBodyPart messageBodyPart = new MimeBodyPart(headers,
+        Base64.getMimeEncoder().encodeToString(content).getBytes(StandardCharsets.US_ASCII));
+    messageBodyPart.setFileName(fileName);
+    ((Multipart) email.getContent()).addBodyPart(messageBodyPart);
+  }
+
+  /**
+   * Add the message to a queue. The message is sent asynchronously and mustn't be modified
+   * afterwards.
+   *
+   * @param queue
+   *          The queue which sends the message.
+   * @return The delivery of the message.
+   * @throws MessagingException
+   *           The message can't be prepared for sending.
+   * @throws InterruptedException
+   *           Interrupted while waiting for space in the queue.
+   */
+  public MailQueue.Delivery sendMessage(MailQueue queue) throws MessagingException, InterruptedException
+  {
+    email.saveChanges();
+    return queue.submit(email.getAllRecipients()[0].toString(), email);
+  }
+
   /**
    * Send a message.
    *
@@ -0,0 +1,296 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.mailmerge.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded queue of mails which are sent by worker threads. The mail merge can render the next
+ * document while the previous ones are sent. If the queue is full, {@link #submit(String, Message)}
+ * blocks until a mail has been sent.
+ *
+ * Failed mails are retried with an exponential backoff. Rejected recipients and failed
+ * authentication aren't retried.
+ */
+public class MailQueue implements AutoCloseable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(MailQueue.class);
+
+  private static final int DEFAULT_THREADS = 2;
+
+  private static final int DEFAULT_CAPACITY = 8;
+
+  private static final int DEFAULT_ATTEMPTS = 3;
+
+  private static final long DEFAULT_BACKOFF = 1000;
+
+  /**
+   * Sends a single message.
+   */
+  @FunctionalInterface
+  interface MessageTransport
+  {
+    void send(Message message) throws MessagingException;
+  }
+
+  /**
+   * The state of a mail.
+   */
+  public enum Status
+  {
+    PENDING,
+    SENT,
+    FAILED;
+  }
+
+  /**
+   * The delivery of a mail to a recipient.
+   */
+  public static class Delivery
+  {
+    private final String recipient;
+
+    private volatile Status status = Status.PENDING;
+
+    private volatile String error;
+
+    private volatile int attempts = 0;
+
+    Delivery(String recipient)
+    {
+      this.recipient = recipient;
+    }
+
+    public String getRecipient()
+    {
+      return recipient;
+    }
+
+    public Status getStatus()
+    {
+      return status;
+    }
+
+    /**
+     * @return The message of the last error, or null if there wasn't any.
+     */
+    public String getError()
+    {
+      return error;
+    }
+
+    public int getAttempts()
+    {
+      return attempts;
+    }
+  }
+
+  private final MessageTransport transport;
+
+  private final ExecutorService executor;
+
+  private final Semaphore capacity;
+
+  private final int maxAttempts;
+
+  private final long backoff;
+
+  private final List<Delivery> deliveries = new ArrayList<>();
+
+  /**
+   * Create a new queue, which sends mails over a pool of SMTP connections.
+   *
+   * @param settings
+   *          The mail server to use.
+   */
+  public MailQueue(MailServerSettings settings)
+  {
+    this(new SmtpTransportPool(settings), DEFAULT_THREADS, DEFAULT_CAPACITY, DEFAULT_ATTEMPTS,
+        DEFAULT_BACKOFF);
+  }
+
+  /**
+   * Create a new queue.
+   *
+   * @param transport
+   *          The transport for sending a message.
+   * @param threads
+   *          The number of worker threads.
+   * @param capacity
+   *          The number of mails which can wait to be sent.
+   * @param maxAttempts
+   *          The number of tries to send a mail.
+   * @param backoff
+   *          The time in milliseconds to wait before the first retry. It is doubled for each
+   *          further retry.
+   */
+  MailQueue(MessageTransport transport, int threads, int capacity, int maxAttempts, long backoff)
+  {
+    this.transport = transport;
+    this.capacity = new Semaphore(threads + capacity);
+    this.maxAttempts = maxAttempts;
+    this.backoff = backoff;
+    AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "Mail-sender-" + count.incrementAndGet());
+      t.setDaemon(true);
+      // Necessary for mapping MIME types to Java classes.
+      t.setContextClassLoader(MailQueue.class.getClassLoader());
+      return t;
+    });
+  }
+
+  /**
+   * Add a mail to the queue. Blocks if the queue is full.
+   *
+   * @param recipient
+   *          The recipient for the delivery report.
+   * @param message
+   *          The mail. It mustn't be modified afterwards.
+   * @return The delivery of the mail.
+   * @throws InterruptedException
+   *           Interrupted while waiting for space in the queue.
+   */
+  public Delivery submit(String recipient, Message message) throws InterruptedException
+  {
+    Delivery delivery = new Delivery(recipient);
+    capacity.acquire();
+    synchronized (deliveries)
+    {
+      deliveries.add(delivery);
+    }
+    try
+    {
+      executor.execute(() -> {
+        try
+        {
+          deliver(delivery, message);
+        } finally
+        {
+          capacity.release();
+        }
+      });
+    } catch (RuntimeException e)
+    {
+      capacity.release();
+      delivery.error = e.getMessage();
+      delivery.status = Status.FAILED;
+      throw e;
+    }
+    return delivery;
+  }
+
+  private void deliver(Delivery delivery, Message message)
+  {
+    while (true)
+    {
+      delivery.attempts++;
+      try
+      {
+        transport.send(message);
+        delivery.status = Status.SENT;
+        return;
+      } catch (MessagingException e)
+      {
+        LOGGER.error("Sending mail to {} failed (attempt {})", delivery.recipient, delivery.attempts, e);
+        delivery.error = e.getMessage();
+        if (delivery.attempts >= maxAttempts || e instanceof SendFailedException
+            || e instanceof AuthenticationFailedException)
+        {
+          delivery.status = Status.FAILED;
+          return;
+        }
+      }
+
+      try
+      {
+        Thread.sleep(backoff << (delivery.attempts - 1));
+      } catch (InterruptedException e)
+      {
+        delivery.status = Status.FAILED;
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Wait until all mails of the queue have been sent or failed. No more mails can be submitted
+   * afterwards.
+   *
+   * @return The deliveries in the order of submission.
+   * @throws InterruptedException
+   *           Interrupted while waiting.
+   */
+  public List<Delivery> awaitDeliveries() throws InterruptedException
+  {
+    executor.shutdown();
+    while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+    {
+      LOGGER.debug("Waiting for mails to be sent");
+    }
+    synchronized (deliveries)
+    {
+      return new ArrayList<>(deliveries);
+    }
+  }
+
+  /**
+   * Drop all mails which haven't been sent yet. Their deliveries stay {@link Status#PENDING}. The
+   * mails which are sent at the moment are finished. No more mails can be submitted afterwards.
+   */
+  public void cancel()
+  {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public void close()
+  {
+    executor.shutdownNow();
+    if (transport instanceof AutoCloseable)
+    {
+      try
+      {
+        ((AutoCloseable) transport).close();
+      } catch (Exception e)
+      {
+        LOGGER.trace("Couldn't close mail transport", e);
+      }
+    }
+  }
+}
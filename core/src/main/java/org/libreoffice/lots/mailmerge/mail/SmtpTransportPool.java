@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.mailmerge.mail;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of connected SMTP transports. A transport is reused for all messages sent by a mail
+ * merge, so that connect and AUTH are only done once per connection and not once per record.
+ */
+class SmtpTransportPool implements MailQueue.MessageTransport, AutoCloseable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+  private final Session session;
+
+  private final MailServerSettings settings;
+
+  /**
+   * Connected transports which are currently not used.
+   */
+  private final BlockingDeque<Transport> idle = new LinkedBlockingDeque<>();
+
+  private volatile boolean closed = false;
+
+  /**
+   * Create a new pool. Connections are opened on demand.
+   *
+   * @param settings
+   *          The mail server to connect to.
+   */
+  SmtpTransportPool(MailServerSettings settings)
+  {
+    this.settings = settings;
+    this.session = Session.getInstance(new Properties());
+  }
+
+  @Override
+  public void send(Message message) throws MessagingException
+  {
+    Transport transport = acquire();
+    try
+    {
+      transport.sendMessage(message, message.getAllRecipients());
+    } catch (MessagingException e)
+    {
+      // The connection may be broken, don't give it back to the pool.
+      closeQuietly(transport);
+      throw e;
+    }
+    release(transport);
+  }
+
+  /**
+   * Get an idle transport or open a new one. Transports which have been closed by the server are
+   * reconnected.
+   *
+   * @return A connected transport.
+   * @throws MessagingException
+   *           Couldn't connect to the mail server.
+   */
+  private Transport acquire() throws MessagingException
+  {
+    Transport transport = idle.pollFirst();
+    if (transport == null)
+    {
+      transport = session.getTransport("smtp");
+    }
+    if (!transport.isConnected())
+    {
+      // Empty String activates AUTH so use null if no authentication is required.
+      transport.connect(settings.getMailserver(), settings.getMailserverport(), settings.getUsername(),
+          settings.getPassword());
+    }
+    return transport;
+  }
+
+  private void release(Transport transport)
+  {
+    idle.offerFirst(transport);
+    if (closed)
+    {
+      close();
+    }
+  }
+
+  private static void closeQuietly(Transport transport)
+  {
+    try
+    {
+      transport.close();
+    } catch (MessagingException e)
+    {
+      LOGGER.trace("Couldn't close SMTP connection", e);
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    closed = true;
+    Transport transport;
+    while ((transport = idle.pollFirst()) != null)
+    {
+      closeQuietly(transport);
+    }
+  }
+}
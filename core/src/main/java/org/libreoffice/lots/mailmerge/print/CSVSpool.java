@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.mailmerge.print;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records with different columns to a CSV file without keeping them in memory. The
+ * records are spooled to a temporary file first, because the header is only known after the last
+ * record. The CSV file is written from the spool in a second pass. Only the names of the columns
+ * are kept in memory.
+ */
+class CSVSpool implements AutoCloseable
+{
+  private final File csvFile;
+
+  private final File spoolFile;
+
+  private DataOutputStream spool;
+
+  /**
+   * Maps the column names to their index in the spool file.
+   */
+  private final Map<String, Integer> columns = new HashMap<>();
+
+  private int size = 0;
+
+  /**
+   * Creates a new spool.
+   *
+   * @param csvFile
+   *          The CSV file to write. The spool file is created next to it.
+   */
+  CSVSpool(File csvFile)
+  {
+    this.csvFile = csvFile;
+    this.spoolFile = new File(csvFile.getPath() + ".spool");
+  }
+
+  /**
+   * Get the number of records.
+   *
+   * @return Number of records.
+   */
+  int getSize()
+  {
+    return size;
+  }
+
+  /**
+   * Appends a record to the spool.
+   *
+   * @param record
+   *          Mapping from column name to value.
+   * @throws IOException
+   *           The spool can't be written.
+   */
+  void addRecord(Map<String, String> record) throws IOException
+  {
+    if (spool == null)
+    {
+      spool = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(spoolFile.toPath())));
+    }
+    spool.writeInt(record.size());
+    for (Map.Entry<String, String> entry : record.entrySet())
+    {
+      spool.writeInt(columns.computeIfAbsent(entry.getKey(), k -> columns.size()));
+      writeString(spool, entry.getValue() == null ? "" : entry.getValue());
+    }
+    size++;
+  }
+
+  /**
+   * Writes the CSV file with the sorted column names as header and deletes the spool.
+   *
+   * @throws IOException
+   *           The CSV file can't be written.
+   */
+  void writeCSV() throws IOException
+  {
+    close();
+    List<String> headers = new ArrayList<>(columns.keySet());
+    Collections.sort(headers);
+    int[] position = new int[headers.size()];
+    for (int i = 0; i < headers.size(); i++)
+    {
+      position[columns.get(headers.get(i))] = i;
+    }
+
+    try (Writer out = new BufferedWriter(
+        new OutputStreamWriter(Files.newOutputStream(csvFile.toPath()), StandardCharsets.UTF_8)))
+    {
+      writeLine(out, headers.toArray(new String[headers.size()]));
+      if (size > 0)
+      {
+        String[] line = new String[headers.size()];
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(spoolFile.toPath()))))
+        {
+          for (int i = 0; i < size; i++)
+          {
+            Arrays.fill(line, "");
+            int entries = in.readInt();
+            for (int j = 0; j < entries; j++)
+            {
+              int column = in.readInt();
+              line[position[column]] = readString(in);
+            }
+            writeLine(out, line);
+          }
+        }
+      }
+    } finally
+    {
+      Files.deleteIfExists(spoolFile.toPath());
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    if (spool != null)
+    {
+      spool.close();
+      spool = null;
+    }
+  }
+
+  /**
+   * Writes a line terminated by '\n'. All values are quoted.
+   */
+  private static void writeLine(Writer out, String[] values) throws IOException
+  {
+    for (int i = 0; i < values.length; i++)
+    {
+      if (i != 0)
+      {
+        out.write(',');
+      }
+      out.write('"');
+      out.write(values[i].replace("\"", "\"\""));
+      out.write('"');
+    }
+    out.write('\n');
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException
+  {
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException
+  {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
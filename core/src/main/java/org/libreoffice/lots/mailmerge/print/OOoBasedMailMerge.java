@@ -23,14 +23,9 @@
 package org.libreoffice.lots.mailmerge.print;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -868,19 +863,14 @@ public class OOoBasedMailMerge implements AutoCloseable
     private static final char OPENSYMBOL_UNCHECKED = 0xE470;
 
     /**
-     * The CSV-file.
+     * The records, spooled to disk until the CSV-file is written.
      */
-    File csvFile = new File(tmpDir, TABLE_NAME + ".csv");
+    CSVSpool spool = new CSVSpool(new File(tmpDir, TABLE_NAME + ".csv"));
 
     /**
-     * Collection of all records.
+     * The first error while spooling a record.
      */
-    ArrayList<Map<String, String>> records = new ArrayList<>();
-
-    /**
-     * Collection of all columns contained in {@link #records}.
-     */
-    HashSet<String> columns = new HashSet<>();
+    java.io.IOException spoolError;
 
     /**
      * Get the number of available records.
@@ -889,7 +879,7 @@ public class OOoBasedMailMerge implements AutoCloseable
      */
     public int getSize()
     {
-      return records.size();
+      return spool.getSize();
     }
 
     /**
@@ -897,11 +887,12 @@ public class OOoBasedMailMerge implements AutoCloseable
      *
      * @param ds
      *          Key/Value pair defining a record.
+     * @throws java.io.IOException
+     *           The record can't be spooled.
      */
-    public void addRecord(Map<String, String> ds)
+    public void addRecord(Map<String, String> ds) throws java.io.IOException
     {
-      records.add(ds);
-      columns.addAll(ds.keySet());
+      spool.addRecord(ds);
     }
 
     /**
@@ -913,25 +904,12 @@ public class OOoBasedMailMerge implements AutoCloseable
      */
     public void flushAndClose() throws java.io.IOException
     {
-      try (FileOutputStream fos = new FileOutputStream(csvFile);
-          PrintStream p = new PrintStream(fos, true, StandardCharsets.UTF_8))
+      if (spoolError != null)
       {
-        List<String> headers = new ArrayList<>(columns);
-        Collections.sort(headers);
-        p.print(line(headers));
-        for (Map<String, String> record : records)
-        {
-          ArrayList<String> entries = new ArrayList<>();
-          for (String key : headers)
-          {
-            String val = record.get(key);
-            if (val == null)
-              val = "";
-            entries.add(val);
-          }
-          p.print(line(entries));
-        }
+        spool.close();
+        throw spoolError;
       }
+      spool.writeCSV();
     }
 
     @Override
@@ -970,9 +948,13 @@ public class OOoBasedMailMerge implements AutoCloseable
       try
       {
         addRecord(data);
-      } catch (Exception e)
+      } catch (java.io.IOException e)
       {
         OOoBasedMailMerge.LOGGER.error("", e);
+        if (spoolError == null)
+        {
+          spoolError = e;
+        }
       }
     }
 
@@ -1033,38 +1015,5 @@ public class OOoBasedMailMerge implements AutoCloseable
       }
       return dataSource;
     }
-
-    /**
-     * Create a line from a record.
-     *
-     * @param list
-     *          The record
-     * @return String representing one line terminated by '\n'.
-     */
-    private String line(List<String> list)
-    {
-      StringBuilder buf = new StringBuilder();
-      for (String el : list)
-      {
-        if (buf.length() != 0)
-          buf.append(",");
-        buf.append(escape(el));
-      }
-      buf.append("\n");
-      return buf.toString();
-    }
-
-    /**
-     * Escape Strings so that they can be used in a CSV-file.
-     *
-     * @param value
-     *          String to be escaped
-     * @return Escaped String
-     */
-    private String escape(String value)
-    {
-      String esc = value.replaceAll("\"", "\"\"");
-      return "\"" + esc + "\"";
-    }
   }
 }
@@ -0,0 +1,288 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.mailmerge.print;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.libreoffice.ext.unohelper.common.UNO;
+import org.libreoffice.ext.unohelper.common.UnoHelperException;
+import org.libreoffice.lots.document.ByteBufferInputStream;
+import org.libreoffice.lots.document.DocumentManager;
+import org.libreoffice.lots.document.TextDocumentController;
+import org.libreoffice.lots.func.print.PrintException;
+import org.libreoffice.lots.print.PrintModels;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Table;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sun.star.beans.PropertyState;
+import com.sun.star.beans.PropertyValue;
+import com.sun.star.text.XTextDocument;
+import com.sun.star.util.CloseVetoException;
+
+import de.muenchen.allg.itd51.wollmux.interfaces.XPrintModel;
+
+/**
+ * Runs the records of a mail merge in parallel. Each worker has its own hidden copy of the
+ * document and its own chain of print functions. The copies are loaded from an image of the
+ * document, which is stored only once. The workers take the next record from a shared counter, so
+ * the mail merge number of a record is the same as in a sequential mail merge.
+ */
+class ParallelMailMerge
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ParallelMailMerge.class);
+
+  /**
+   * Directory and suffix of the image, so that the copies are ignored by the document event
+   * listener.
+   */
+  private static final String IMAGE_DIR = ".tmp";
+
+  private static final String IMAGE_NAME = "template.tmp";
+
+  private final XPrintModel pmod;
+
+  private final Table<Integer, String, String> data;
+
+  private final List<Integer> selection;
+
+  private final int workers;
+
+  private final AtomicInteger next = new AtomicInteger();
+
+  private final AtomicInteger progress = new AtomicInteger();
+
+  /**
+   * Create a new parallel mail merge.
+   *
+   * @param pmod
+   *          The print model of {@link SetFormValue}.
+   * @param data
+   *          The records.
+   * @param selection
+   *          The id of the records to print.
+   * @param workers
+   *          The number of workers.
+   */
+  ParallelMailMerge(XPrintModel pmod, Table<Integer, String, String> data, List<Integer> selection,
+      int workers)
+  {
+    this.pmod = pmod;
+    this.data = data;
+    this.selection = selection;
+    this.workers = Math.min(workers, selection.size());
+  }
+
+  /**
+   * Print all records. Returns after all workers have finished, even if the mail merge fails or is
+   * canceled. The copies of the document are only closed afterwards.
+   *
+   * @throws PrintException
+   *           The copies of the document couldn't be created.
+   */
+  void run() throws PrintException
+  {
+    File tmpDir;
+    try
+    {
+      tmpDir = Files.createTempDirectory("MailMerge").toFile();
+    } catch (IOException e)
+    {
+      throw new PrintException("Temporäres Verzeichnis konnte nicht angelegt werden", e);
+    }
+
+    List<XTextDocument> copies = new ArrayList<>();
+    AtomicInteger count = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+      Thread t = new Thread(r, "MailMerge-worker-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    try
+    {
+      File image = new File(new File(tmpDir, IMAGE_DIR), IMAGE_NAME);
+      ByteBuffer buffer = storeImage(image);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < workers; i++)
+      {
+        XTextDocument copy = loadCopy(image, buffer);
+        copies.add(copy);
+        XPrintModel worker = createWorker(copy);
+        futures.add(executor.submit(() -> work(worker)));
+      }
+      for (Future<?> future : futures)
+      {
+        future.get();
+      }
+    } catch (ExecutionException e)
+    {
+      pmod.cancel();
+      throw new PrintException("Fehler beim parallelen Seriendruck", e.getCause());
+    } catch (InterruptedException e)
+    {
+      pmod.cancel();
+      Thread.currentThread().interrupt();
+    } catch (PrintException | RuntimeException e)
+    {
+      pmod.cancel();
+      throw e;
+    } finally
+    {
+      // the workers have to stop using the copies before they can be closed
+      executor.shutdown();
+      Uninterruptibles.awaitTerminationUninterruptibly(executor);
+      for (XTextDocument copy : copies)
+      {
+        close(copy);
+      }
+      FileUtils.deleteQuietly(tmpDir);
+    }
+  }
+
+  /**
+   * Store the document and read the stored file.
+   *
+   * @param image
+   *          The file to store the document to.
+   * @return The content of the stored document.
+   * @throws PrintException
+   *           The document can't be stored.
+   */
+  private ByteBuffer storeImage(File image) throws PrintException
+  {
+    try
+    {
+      Files.createDirectories(image.getParentFile().toPath());
+      String url = UNO.getParsedUNOUrl(image.toURI().toString()).Complete;
+      UNO.XStorable(pmod.getTextDocument()).storeToURL(url,
+          new PropertyValue[] { new PropertyValue("FilterName", -1, "writer8", PropertyState.DIRECT_VALUE) });
+      return ByteBuffer.wrap(Files.readAllBytes(image.toPath()));
+    } catch (IOException | com.sun.star.io.IOException e)
+    {
+      throw new PrintException("Temporäres Dokument konnte nicht angelegt werden", e);
+    }
+  }
+
+  /**
+   * Load a hidden copy of the document from the image.
+   *
+   * @param image
+   *          The file of the image. It's only used as URL of the copy.
+   * @param buffer
+   *          The content of the image.
+   * @return The copy.
+   * @throws PrintException
+   *           The copy can't be loaded.
+   */
+  private XTextDocument loadCopy(File image, ByteBuffer buffer) throws PrintException
+  {
+    try
+    {
+      String url = UNO.getParsedUNOUrl(image.toURI().toString()).Complete;
+      XTextDocument copy = UNO.XTextDocument(UNO.loadComponentFromURL(url, false, false,
+          new PropertyValue("InputStream", -1, new ByteBufferInputStream(buffer.duplicate()),
+              PropertyState.DIRECT_VALUE),
+          new PropertyValue("FilterName", -1, "writer8", PropertyState.DIRECT_VALUE),
+          new PropertyValue("Hidden", -1, Boolean.TRUE, PropertyState.DIRECT_VALUE)));
+      if (copy == null)
+      {
+        throw new PrintException("Probleme mit dem temporären Dokument", null);
+      }
+      return copy;
+    } catch (UnoHelperException e)
+    {
+      throw new PrintException("Probleme mit dem temporären Dokument", e);
+    }
+  }
+
+  private XPrintModel createWorker(XTextDocument copy) throws PrintException
+  {
+    if (!DocumentManager.hasTextDocumentController(copy))
+    {
+      DocumentManager.getDocumentManager().addTextDocument(copy);
+    }
+    Map<String, Object> localProps = new HashMap<>();
+    localProps.put(SetFormValue.PROP_DATASET_EXPORT, new HashMap<String, String>());
+    XPrintModel worker = PrintModels.createWorkerPrintModel(pmod,
+        DocumentManager.getTextDocumentController(copy), localProps);
+    if (worker == null)
+    {
+      throw new PrintException("Paralleler Seriendruck wird nicht unterstützt", null);
+    }
+    return worker;
+  }
+
+  /**
+   * Print records until there are no more records or the print is canceled.
+   *
+   * @param worker
+   *          The print model of the worker.
+   */
+  private void work(XPrintModel worker)
+  {
+    TextDocumentController documentController = DocumentManager
+        .getTextDocumentController(worker.getTextDocument());
+    @SuppressWarnings("unchecked")
+    Map<String, String> dataSetExport = (Map<String, String>) worker
+        .getProp(SetFormValue.PROP_DATASET_EXPORT, null);
+    documentController.setFormFieldsPreviewMode(true);
+
+    int idx;
+    while (!worker.isCanceled() && (idx = next.getAndIncrement()) < selection.size())
+    {
+      int sel = selection.get(idx);
+      SetFormValue.setRecord(worker, data.row(sel), sel, idx + 1, dataSetExport);
+      worker.printWithProps();
+
+      synchronized (progress)
+      {
+        pmod.setPrintProgressValue((short) progress.incrementAndGet());
+      }
+    }
+  }
+
+  private static void close(XTextDocument copy)
+  {
+    try
+    {
+      UNO.XCloseable(copy).close(true);
+    } catch (CloseVetoException e)
+    {
+      LOGGER.debug("Couldn't close copy of mail merge document", e);
+    }
+  }
+}
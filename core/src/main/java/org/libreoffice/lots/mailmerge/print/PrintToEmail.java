@@ -34,12 +34,14 @@ import javax.mail.MessagingException;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 
+import org.apache.commons.io.FileUtils;
 import org.libreoffice.lots.config.ConfigurationErrorException;
 import org.libreoffice.lots.dialog.InfoDialog;
 import org.libreoffice.lots.func.print.PrintException;
 import de.muenchen.allg.itd51.wollmux.interfaces.XPrintModel;
 import org.libreoffice.lots.mailmerge.mail.AuthenticationDialog;
 import org.libreoffice.lots.mailmerge.mail.EMailSender;
+import org.libreoffice.lots.mailmerge.mail.MailQueue;
 import org.libreoffice.lots.mailmerge.mail.MailServerSettings;
 import org.libreoffice.lots.print.PrintModels;
 import org.libreoffice.lots.util.L;
@@ -109,6 +111,14 @@ public abstract class PrintToEmail extends MailMergePrintFunction
    */
   public static final String PROP_EMAIL_MAIL_SERVER_SETTINGS = "MailMergeNew_MailServerSettings";
 
+  /**
+   * Key for saving the queue of the mails, which haven't been sent yet, as a property of a
+   * {@link XPrintModel}.
+   *
+   * The property type is a {@link MailQueue}.
+   */
+  public static final String PROP_EMAIL_MAIL_QUEUE = "MailMergeNew_MailQueue";
+
   /**
    * Title for dialogs indicating an error.
    */
@@ -170,39 +180,31 @@ public abstract class PrintToEmail extends MailMergePrintFunction
       EMailSender mail = new EMailSender();
       mail.createNewMultipartMail(from, to, replaceMergeFieldInText(ds, subject), replaceMergeFieldInText(ds, message));
 
-      MailServerSettings smtpSettings = getMailServerSettings(pmod, mail);
-
-      if (pmod.getProp(PROP_TARGETDIR, null) == null)
+      MailQueue queue;
+      // The records may be sent by several workers of a parallel mail merge.
+      synchronized (PrintToEmail.class)
       {
-        pmod.setPropertyValue(PROP_TARGETDIR, Files.createTempDirectory("MailMerge").toString());
-      }
-      File document = saveOutputFile(createTempDocument(pmod, isODT), pmod.getTextDocument());
-
-      sendMail(mail, smtpSettings, document);
+        MailServerSettings smtpSettings = getMailServerSettings(pmod, mail);
 
-      // Initialize properties if not already set.
-      if (!pmod.getPropertySetInfo().hasPropertyByName(PROP_EMAIL_REPORT_RECIPIENT_LIST))
-      {
-        pmod.setPropertyValue(PROP_EMAIL_REPORT_RECIPIENT_LIST, new ArrayList<String>());
+        if (pmod.getProp(PROP_TARGETDIR, null) == null)
+        {
+          pmod.setPropertyValue(PROP_TARGETDIR, Files.createTempDirectory("MailMerge").toString());
+        }
+        queue = getMailQueue(pmod, smtpSettings);
       }
 
-      if (!pmod.getPropertySetInfo().hasPropertyByName(PROP_EMAIL_REPORT_EMAILS_SENT_COUNT))
+      // Each mail gets its own directory, so that parallel workers don't overwrite their documents.
+      File document = createTempDocument(pmod, isODT);
+      Files.createDirectories(document.getParentFile().toPath());
+      File recordDir = Files.createTempDirectory(document.getParentFile().toPath(), "mail").toFile();
+      try
       {
-        pmod.setPropertyValue(PROP_EMAIL_REPORT_EMAILS_SENT_COUNT, 0);
+        document = saveOutputFile(new File(recordDir, document.getName()), pmod.getTextDocument());
+        sendMail(mail, queue, document, isODT);
+      } finally
+      {
+        FileUtils.deleteQuietly(recordDir);
       }
-
-      @SuppressWarnings("unchecked")
-      List<String> reportRecipientList = (List<String>) pmod.getPropertyValue(PROP_EMAIL_REPORT_RECIPIENT_LIST);
-      int mailsSentCount = (int) pmod.getPropertyValue(PROP_EMAIL_REPORT_EMAILS_SENT_COUNT);
-
-      if (reportRecipientList == null)
-        reportRecipientList = new ArrayList<>();
-
-      reportRecipientList.add(to);
-      mailsSentCount++;
-
-      pmod.setPropertyValue(PROP_EMAIL_REPORT_RECIPIENT_LIST, reportRecipientList);
-      pmod.setPropertyValue(PROP_EMAIL_REPORT_EMAILS_SENT_COUNT, mailsSentCount);
     } catch (ConfigurationErrorException e)
     {
       LOGGER.error("Kein Mailserver", e);
@@ -214,6 +216,11 @@ public abstract class PrintToEmail extends MailMergePrintFunction
       LOGGER.error("Send email failed", e);
       InfoDialog.showInfoModal(MAIL_ERROR_MESSAGE_TITLE, L.m("Send email failed."));
       pmod.cancel();
+    } catch (InterruptedException e)
+    {
+      LOGGER.error("", e);
+      pmod.cancel();
+      Thread.currentThread().interrupt();
     } catch (Exception e)
     {
       LOGGER.error("", e);
@@ -301,16 +308,104 @@ public abstract class PrintToEmail extends MailMergePrintFunction
   }
 
   /**
-   * Send a document by mail.
+   * Get the queue of the mail merge. The queue is created by the first mail, so that all mails share
+   * the connections to the mail server.
    *
-   * @param mail
-   *          The email, to which the document is attached, and than send.
+   * @param pmod
+   *          The {@link XPrintModel}
    * @param smtpSettings
    *          The settings of the mail server.
+   * @return The queue.
+   * @throws PrintException
+   *           Could not set the queue.
+   */
+  private MailQueue getMailQueue(XPrintModel pmod, MailServerSettings smtpSettings) throws PrintException
+  {
+    MailQueue queue = (MailQueue) pmod.getProp(PROP_EMAIL_MAIL_QUEUE, null);
+    if (queue == null)
+    {
+      queue = new MailQueue(smtpSettings);
+      try
+      {
+        pmod.setPropertyValue(PROP_EMAIL_MAIL_QUEUE, queue);
+      } catch (IllegalArgumentException | UnknownPropertyException | PropertyVetoException
+          | WrappedTargetException e)
+      {
+        queue.close();
+        throw new PrintException("Could not set mail queue", e);
+      }
+    }
+    return queue;
+  }
+
+  /**
+   * Wait until all mails of the mail merge have been sent and write the report properties
+   * {@link #PROP_EMAIL_REPORT_RECIPIENT_LIST} and {@link #PROP_EMAIL_REPORT_EMAILS_SENT_COUNT}. The
+   * recipient list contains an entry for every mail, failed mails are marked with the error. If the
+   * mail merge has been canceled, the mails which haven't been sent yet are dropped and marked as
+   * canceled. The mail queue is closed afterwards.
+   *
+   * @param pmod
+   *          The {@link XPrintModel}.
+   */
+  public static void awaitMails(XPrintModel pmod)
+  {
+    MailQueue queue = (MailQueue) pmod.getProp(PROP_EMAIL_MAIL_QUEUE, null);
+    if (queue == null)
+    {
+      return;
+    }
+
+    try (queue)
+    {
+      if (pmod.isCanceled())
+      {
+        queue.cancel();
+      }
+      List<String> reportRecipientList = new ArrayList<>();
+      int mailsSentCount = 0;
+      for (MailQueue.Delivery delivery : queue.awaitDeliveries())
+      {
+        if (delivery.getStatus() == MailQueue.Status.SENT)
+        {
+          reportRecipientList.add(delivery.getRecipient());
+          mailsSentCount++;
+        } else
+        {
+          reportRecipientList.add(L.m("{0} (not sent: {1})", delivery.getRecipient(),
+              delivery.getError() == null ? L.m("canceled") : delivery.getError()));
+        }
+      }
+      pmod.setPropertyValue(PROP_EMAIL_REPORT_RECIPIENT_LIST, reportRecipientList);
+      pmod.setPropertyValue(PROP_EMAIL_REPORT_EMAILS_SENT_COUNT, mailsSentCount);
+    } catch (InterruptedException e)
+    {
+      LOGGER.error("", e);
+      Thread.currentThread().interrupt();
+    } catch (IllegalArgumentException | UnknownPropertyException | PropertyVetoException
+        | WrappedTargetException e)
+    {
+      LOGGER.error("Could not set mail report", e);
+    }
+  }
+
+  /**
+   * Send a document by mail. The document is attached from memory and deleted before the mail is
+   * added to the queue.
+   *
+   * @param mail
+   *          The email, to which the document is attached, and than send.
+   * @param queue
+   *          The queue which sends the mail.
    * @param document
    *          The document to send.
+   * @param isODT
+   *          If true, the document is an odt file, otherwise a pdf file.
+   * @throws InterruptedException
+   *           Interrupted while waiting for space in the queue.
    */
-  private void sendMail(EMailSender mail, MailServerSettings smtpSettings, File document)
+  private void sendMail(EMailSender mail, MailQueue queue, File document, boolean isODT)
+      throws InterruptedException
   {
     try
     {
@@ -322,11 +417,13 @@ public abstract class PrintToEmail extends MailMergePrintFunction
         // fix path for unix systems
         path = path.replaceFirst("file:", "");
       }
-      mail.addAttachment(new File(path));
-      mail.sendMessage(smtpSettings);
-    } catch (ConfigurationErrorException | MessagingException | IOException e)
+      File attachment = new File(path);
+      mail.addAttachment(attachment.getName(), Files.readAllBytes(attachment.toPath()),
+          isODT ? "application/vnd.oasis.opendocument.text" : "application/pdf");
+    } catch (MessagingException | IOException e)
     {
       LOGGER.error("", e);
+      return;
     } finally
     {
       try
@@ -337,5 +434,13 @@ public abstract class PrintToEmail extends MailMergePrintFunction
         LOGGER.trace("Couldn't delete temporary document", e);
       }
     }
+
+    try
+    {
+      mail.sendMessage(queue);
+    } catch (MessagingException e)
+    {
+      LOGGER.error("", e);
+    }
   }
 }
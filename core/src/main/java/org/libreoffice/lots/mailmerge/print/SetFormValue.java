@@ -84,6 +84,16 @@ public class SetFormValue extends PrintFunction
    */
   public static final String PROP_QUERYRESULTS = "MailMergeNew_QueryResults";
 
+  /**
+   * Key for saving the number of workers of a parallel mail merge as a property of a
+   * {@link XPrintModel}. If there's more than one worker, each worker prints its records on its
+   * own copy of the document. The following print functions must not depend on the order of the
+   * records.
+   *
+   * The property type is an {@link Integer}.
+   */
+  public static final String PROP_PARALLEL_WORKERS = "MailMergeNew_ParallelWorkers";
+
   /**
    * A {@link PrintFunction} with name "MailMergeNewSetFormValue" and order 75.
    */
@@ -92,6 +102,12 @@ public class SetFormValue extends PrintFunction
     super("MailMergeNewSetFormValue", 75);
   }
 
+  @Override
+  public boolean isParallelSafe()
+  {
+    return true;
+  }
+
   @Override
   public void print(XPrintModel printModel) throws PrintException
   {
@@ -109,6 +125,8 @@ public class SetFormValue extends PrintFunction
    *
    * If there is a {@link SimulationResultsProcessor}, modification is only simulated and its
    * handler is called after each record instead of calling the next {@link PrintFunction}.
+   * Otherwise the records are printed in parallel if {@link #PROP_PARALLEL_WORKERS} is greater than
+   * 1.
    *
    * @param pmod
    *          The {@link XPrintModel}.
@@ -133,6 +151,20 @@ public class SetFormValue extends PrintFunction
 
     pmod.setPrintProgressMaxValue((short) selection.size());
 
+    int workers = (int) pmod.getProp(PROP_PARALLEL_WORKERS, 1);
+    if (simProc == null && workers > 1 && selection.size() > 1)
+    {
+      try
+      {
+        new ParallelMailMerge(pmod, data, selection, workers).run();
+      } catch (PrintException e)
+      {
+        LOGGER.error("Parallel mail merge failed", e);
+        pmod.cancel();
+      }
+      return;
+    }
+
     HashMap<String, String> dataSetExport = new HashMap<>();
     try
     {
@@ -158,16 +190,7 @@ public class SetFormValue extends PrintFunction
         documentController.startSimulation();
       }
 
-      Map<String, String> record = data.row(sel);
-      for (Map.Entry<String, String> entry : record.entrySet())
-      {
-        pmod.setFormValue(entry.getKey(), entry.getValue());
-        dataSetExport.put(entry.getKey(), entry.getValue());
-      }
-      pmod.setFormValue(TAG_RECORD_ID, "" + sel);
-      dataSetExport.put(TAG_RECORD_ID, "" + sel);
-      pmod.setFormValue(TAG_MAILMERGE_ID, "" + mailMergeNumber);
-      dataSetExport.put(TAG_MAILMERGE_ID, "" + mailMergeNumber);
+      setRecord(pmod, data.row(sel), sel, mailMergeNumber, dataSetExport);
 
       // Pass to next print function, if there is no simProc. Otherwise
       // processing is done by simProc.
@@ -185,4 +208,32 @@ public class SetFormValue extends PrintFunction
 
     documentController.setFormFieldsPreviewMode(false);
   }
+
+  /**
+   * Set the mail merge fields to the values of a record.
+   *
+   * @param pmod
+   *          The {@link XPrintModel}.
+   * @param record
+   *          The values of the record.
+   * @param sel
+   *          The id of the record.
+   * @param mailMergeNumber
+   *          The position of the record in the mail merge.
+   * @param dataSetExport
+   *          The map of {@link #PROP_DATASET_EXPORT}, which is updated as well.
+   */
+  static void setRecord(XPrintModel pmod, Map<String, String> record, int sel, int mailMergeNumber,
+      Map<String, String> dataSetExport)
+  {
+    for (Map.Entry<String, String> entry : record.entrySet())
+    {
+      pmod.setFormValue(entry.getKey(), entry.getValue());
+      dataSetExport.put(entry.getKey(), entry.getValue());
+    }
+    pmod.setFormValue(TAG_RECORD_ID, "" + sel);
+    dataSetExport.put(TAG_RECORD_ID, "" + sel);
+    pmod.setFormValue(TAG_MAILMERGE_ID, "" + mailMergeNumber);
+    dataSetExport.put(TAG_MAILMERGE_ID, "" + mailMergeNumber);
+  }
 }
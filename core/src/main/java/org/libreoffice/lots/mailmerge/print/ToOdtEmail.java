@@ -38,6 +38,12 @@ public class ToOdtEmail extends PrintToEmail
     super("MailMergeNewToODTEMail", 200);
   }
 
+  @Override
+  public boolean isParallelSafe()
+  {
+    return true;
+  }
+
   @Override
   public void print(XPrintModel printModel)
   {
@@ -38,6 +38,12 @@ public class ToPdfEmail extends PrintToEmail
     super("MailMergeNewToPDFEMail", 200);
   }
 
+  @Override
+  public boolean isParallelSafe()
+  {
+    return true;
+  }
+
   @Override
   public void print(XPrintModel printModel)
   {
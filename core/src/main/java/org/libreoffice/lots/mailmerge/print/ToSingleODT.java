@@ -38,6 +38,12 @@ public class ToSingleODT extends MailMergePrintFunction
     super("MailMergeNewToSingleODT", 200);
   }
 
+  @Override
+  public boolean isParallelSafe()
+  {
+    return true;
+  }
+
   @Override
   public void print(XPrintModel printModel)
   {
@@ -38,6 +38,12 @@ public class ToSinglePDF extends MailMergePrintFunction
     super("MailMergeNewToSinglePDF", 200);
   }
 
+  @Override
+  public boolean isParallelSafe()
+  {
+    return true;
+  }
+
   @Override
   public void print(XPrintModel printModel)
   {
@@ -24,6 +24,8 @@ package org.libreoffice.lots.print;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -116,6 +118,12 @@ class PrimaryPrintModel implements XPrintModel
 
   private TextDocumentController documentController;
 
+  /**
+   * The print model, which shares its properties, print functions and cancel state with this
+   * model. Null if this is the root of a print.
+   */
+  private final PrimaryPrintModel parent;
+
   /**
    * Create a primary print model for the document. The call hierarchy is empty. Use
    * {@link #usePrintFunction(String)} to add print functions to the call hierarchy.
@@ -128,20 +136,64 @@ class PrimaryPrintModel implements XPrintModel
     this.documentController = documentController;
     this.props = new HashMap<>();
     this.functions = new TreeSet<>();
+    this.parent = null;
+  }
+
+  /**
+   * Create a print model for a worker of a parallel print. The worker prints another document
+   * with the print functions of the parent. Properties are shared with the parent except for the
+   * local properties, which are only visible to this worker. Progress of the print functions of
+   * the worker isn't shown.
+   *
+   * @param documentController
+   *          The controller of the document printed by the worker.
+   * @param parent
+   *          The print model of the whole print.
+   * @param localProps
+   *          The properties only visible to this worker.
+   */
+  PrimaryPrintModel(TextDocumentController documentController, PrimaryPrintModel parent,
+      Map<String, Object> localProps)
+  {
+    this.documentController = documentController;
+    this.props = new HashMap<>(localProps);
+    this.functions = parent.functions;
+    this.parent = parent;
   }
 
   @Override
   public void usePrintFunction(String functionName) throws NoSuchMethodException
   {
+    if (parent != null)
+    {
+      parent.usePrintFunction(functionName);
+      return;
+    }
     PrintFunction newFunc = GlobalFunctions.getInstance().getGlobalPrintFunctions().get(functionName);
     if (newFunc != null)
     {
-      functions.add(newFunc);
+      addPrintFunction(newFunc);
     }
     else
       throw new NoSuchMethodException(L.m("Print function \"{0}\" is not defined.", functionName));
   }
 
+  /**
+   * Add a print function to the call hierarchy.
+   *
+   * @param function
+   *          The print function.
+   */
+  void addPrintFunction(PrintFunction function)
+  {
+    if (parent != null)
+    {
+      parent.addPrintFunction(function);
+      return;
+    }
+    functions.add(function);
+  }
+
   /**
    * Get a print function of the call hierarchy.
    *
@@ -179,6 +231,7 @@ class PrimaryPrintModel implements XPrintModel
     if (isCanceled())
       return;
 
+    flushFormValues();
     PrintFunction f = getPrintFunction(0);
     if (f != null)
     {
@@ -205,6 +258,19 @@ class PrimaryPrintModel implements XPrintModel
     }
   }
 
+  /**
+   * Write the form values of the document to its persistent data. Print functions may store or copy
+   * the document, so the values of the current record must be written before the next print
+   * function is called.
+   */
+  void flushFormValues()
+  {
+    if (documentController != null)
+    {
+      documentController.flushFormFieldValues();
+    }
+  }
+
   /**
    * Show the final print dialog when called first time. Store the settings from the dialog and
    * reuse them for later calls.
@@ -300,12 +366,21 @@ class PrimaryPrintModel implements XPrintModel
   {
     synchronized (props)
     {
-      props.put(prop, o);
+      if (parent == null || props.containsKey(prop))
+      {
+        props.put(prop, o);
+        return;
+      }
     }
+    parent.setPropertySynchronized(prop, o);
   }
 
   public void setStage(String stage)
   {
+    if (parent != null)
+    {
+      parent.setStage(stage);
+    }
     currentStage = stage;
   }
 
@@ -313,8 +388,22 @@ class PrimaryPrintModel implements XPrintModel
   {
     synchronized (props)
     {
-      return props.get(prop);
+      if (parent == null || props.containsKey(prop))
+      {
+        return props.get(prop);
+      }
     }
+    return parent.getProperty(prop);
+  }
+
+  private Set<String> getPropertyNames()
+  {
+    Set<String> names = parent == null ? new HashSet<>() : parent.getPropertyNames();
+    synchronized (props)
+    {
+      names.addAll(props.keySet());
+    }
+    return names;
   }
 
   @Override
@@ -348,11 +437,7 @@ class PrimaryPrintModel implements XPrintModel
   @Override
   public XPropertySetInfo getPropertySetInfo()
   {
-    final HashSet<String> propsKeySet;
-    synchronized (props)
-    {
-      propsKeySet = new HashSet<>(props.keySet());
-    }
+    final Set<String> propsKeySet = getPropertyNames();
 
     return new XPropertySetInfo()
     {
@@ -467,6 +552,10 @@ class PrimaryPrintModel implements XPrintModel
   @Override
   public boolean isCanceled()
   {
+    if (parent != null)
+    {
+      return parent.isCanceled();
+    }
     synchronized (isCanceled)
     {
       return isCanceled[0];
@@ -476,6 +565,11 @@ class PrimaryPrintModel implements XPrintModel
   @Override
   public void cancel()
   {
+    if (parent != null)
+    {
+      parent.cancel();
+      return;
+    }
     synchronized (isCanceled)
     {
       isCanceled[0] = true;
@@ -505,6 +599,10 @@ class PrimaryPrintModel implements XPrintModel
    */
   void setPrintProgressMaxValue(Object key, short maxValue)
   {
+    if (parent != null)
+    {
+      return;
+    }
     if (printProgressBar == null && maxValue > 0)
     {
       printProgressBar = new PrintProgressBar(currentStage, e -> cancel());
@@ -524,6 +622,10 @@ class PrimaryPrintModel implements XPrintModel
    */
   void setPrintProgressValue(Object key, short value)
   {
+    if (parent != null)
+    {
+      return;
+    }
     if (printProgressBar != null)
       printProgressBar.setValue(key, value);
   }
@@ -531,6 +633,11 @@ class PrimaryPrintModel implements XPrintModel
   @Override
   public void setPrintMessage(String value)
   {
+    if (parent != null)
+    {
+      parent.setPrintMessage(value);
+      return;
+    }
     if (printProgressBar != null)
     {
       printProgressBar.setMessage(value);
@@ -22,6 +22,8 @@
  */
 package org.libreoffice.lots.print;
 
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,7 +63,10 @@ public class PrintModels
    */
   public static XPrintModel createPrintModel(TextDocumentController documentController)
   {
-    return new PrimaryPrintModel(documentController);
+    // print functions may work on copies of the document
+    PrimaryPrintModel pmod = new PrimaryPrintModel(documentController);
+    pmod.flushFormValues();
+    return pmod;
   }
 
   /**
@@ -94,6 +99,30 @@ public class PrintModels
     return pmod;
   }
 
+  /**
+   * Create a print model for a worker of a parallel print. The worker prints another document with
+   * the print functions following the print function of pmod. Properties are shared with pmod
+   * except for the local properties. The progress of the worker has to be reported by the print
+   * function of pmod.
+   *
+   * @param pmod
+   *          The print model of the print function which starts the workers.
+   * @param documentController
+   *          The controller of the document printed by the worker.
+   * @param localProps
+   *          The properties only visible to the worker.
+   * @return The print model of the worker or null if pmod isn't the model of a print function.
+   */
+  public static XPrintModel createWorkerPrintModel(XPrintModel pmod,
+      TextDocumentController documentController, Map<String, Object> localProps)
+  {
+    if (pmod instanceof SecondaryPrintModel)
+    {
+      return ((SecondaryPrintModel) pmod).createWorker(documentController, localProps);
+    }
+    return null;
+  }
+
   /**
    * Update the stage description of the print model.
    *
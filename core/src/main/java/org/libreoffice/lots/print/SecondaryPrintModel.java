@@ -22,7 +22,10 @@
  */
 package org.libreoffice.lots.print;
 
+import java.util.Map;
+
 import org.libreoffice.lots.GlobalFunctions;
+import org.libreoffice.lots.document.TextDocumentController;
 import org.libreoffice.lots.func.print.PrintFunction;
 import org.libreoffice.lots.util.L;
 
@@ -67,6 +70,21 @@ class SecondaryPrintModel extends WeakBase implements XPrintModel
     this.idx = idx;
   }
 
+  /**
+   * Create a print model for a worker of a parallel print. Calling {@link #printWithProps()} on
+   * the worker calls the same print functions as this model, but for the document of the worker.
+   *
+   * @param documentController
+   *          The controller of the document printed by the worker.
+   * @param localProps
+   *          The properties only visible to the worker.
+   * @return The print model of the worker.
+   */
+  SecondaryPrintModel createWorker(TextDocumentController documentController, Map<String, Object> localProps)
+  {
+    return new SecondaryPrintModel(new PrimaryPrintModel(documentController, primary, localProps), idx);
+  }
+
   @Override
   public XTextDocument getTextDocument()
   {
@@ -91,6 +109,7 @@ class SecondaryPrintModel extends WeakBase implements XPrintModel
     if (isCanceled())
       return;
 
+    primary.flushFormValues();
     PrintFunction f = primary.getPrintFunction(idx + 1);
     if (f != null)
     {
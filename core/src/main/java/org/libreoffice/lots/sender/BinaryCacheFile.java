@@ -0,0 +1,630 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.sender;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Binary persistence of a sender cache. It consists of a snapshot and a journal of the changes
+ * since the snapshot. Every journal record is protected by a checksum, so that a record which was
+ * written only partially is ignored. The snapshot is always replaced atomically and starts a new
+ * journal.
+ */
+class BinaryCacheFile
+{
+  /**
+   * "LOSC"
+   */
+  private static final int MAGIC = 0x4C4F5343;
+
+  /**
+   * Has to be increased if the format changes.
+   */
+  private static final int VERSION = 1;
+
+  private static final byte RECORD_SENDER = 1;
+
+  private static final byte RECORD_SELECT = 3;
+
+  private static final byte RECORD_INSERT = 4;
+
+  private static final byte RECORD_REMOVE = 5;
+
+  private static final Random RANDOM = new Random();
+
+  private final File snapshotFile;
+
+  private final File journalFile;
+
+  /**
+   * Identifies the snapshot the journal belongs to.
+   */
+  private long generation;
+
+  private int journalRecords;
+
+  private boolean journalValid;
+
+  /**
+   * Creates a new binary cache.
+   *
+   * @param snapshotFile
+   *          The file of the snapshot.
+   * @param journalFile
+   *          The file of the journal.
+   */
+  BinaryCacheFile(File snapshotFile, File journalFile)
+  {
+    this.snapshotFile = snapshotFile;
+    this.journalFile = journalFile;
+  }
+
+  File getSnapshotFile()
+  {
+    return snapshotFile;
+  }
+
+  /**
+   * The number of records in the journal.
+   *
+   * @return The number of records, or {@link Integer#MAX_VALUE} if the journal can't be
+   *         appended anymore and a new snapshot has to be written.
+   */
+  int getJournalRecords()
+  {
+    return journalValid ? journalRecords : Integer.MAX_VALUE;
+  }
+
+  /**
+   * Reads the snapshot and applies the journal.
+   *
+   * @return The cached state.
+   * @throws IOException
+   *           The snapshot doesn't exist or is corrupt.
+   */
+  CacheState read() throws IOException
+  {
+    CacheState state;
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(snapshotFile.toPath()))))
+    {
+      checkHeader(in);
+      generation = in.readLong();
+      List<String> schema = readStrings(in);
+      int size = in.readInt();
+      List<SenderConf> data = new ArrayList<>(size);
+      for (int i = 0; i < size; i++)
+      {
+        data.add(readSender(in, schema));
+      }
+      state = readSelected(in, new CacheState(schema, data, null, -1));
+    }
+    journalRecords = 0;
+    journalValid = false;
+    if (!journalFile.isFile())
+    {
+      journalValid = true;
+      return state;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(journalFile.toPath()))))
+    {
+      checkHeader(in);
+      if (in.readLong() != generation)
+      {
+        return state;
+      }
+      byte[] record;
+      while ((record = readRecord(in)) != null)
+      {
+        state = apply(state, record);
+        journalRecords++;
+      }
+      journalValid = in.read() == -1;
+    } catch (IOException e)
+    {
+      // Unreadable parts of the journal are ignored, the next write creates a new snapshot.
+    }
+    return state;
+  }
+
+  /**
+   * Replaces the snapshot and discards the journal.
+   *
+   * @param state
+   *          The new state.
+   * @throws IOException
+   *           Can't write the snapshot.
+   */
+  void writeSnapshot(CacheState state) throws IOException
+  {
+    long newGeneration = RANDOM.nextLong();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes))
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(newGeneration);
+      writeStrings(out, state.getSchema());
+      out.writeInt(state.getData().size());
+      for (SenderConf sender : state.getData())
+      {
+        writeSender(out, state.getSchema(), sender);
+      }
+      writeSelected(out, state);
+    }
+    writeAtomically(snapshotFile, bytes.toByteArray());
+    generation = newGeneration;
+    Files.deleteIfExists(journalFile.toPath());
+    journalRecords = 0;
+    journalValid = true;
+  }
+
+  /**
+   * Appends the differences between two states to the journal. Both states must have the same
+   * schema.
+   *
+   * @param old
+   *          The state of the snapshot and the journal.
+   * @param state
+   *          The new state.
+   * @param maxRecords
+   *          The maximum number of records in the journal.
+   * @return False if the journal would get more than maxRecords records. Nothing is written in
+   *         this case.
+   * @throws IOException
+   *           Can't write the journal.
+   */
+  boolean append(CacheState old, CacheState state, int maxRecords) throws IOException
+  {
+    List<byte[]> records = diff(old, state);
+    if (records.isEmpty())
+    {
+      return true;
+    }
+    if (getJournalRecords() > maxRecords - records.size())
+    {
+      return false;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes))
+    {
+      if (!journalFile.isFile())
+      {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(generation);
+      }
+      for (byte[] record : records)
+      {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeLong(crc.getValue());
+      }
+    }
+    // a partially written record would hide all following records
+    journalValid = false;
+    try (OutputStream out = Files.newOutputStream(journalFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND))
+    {
+      out.write(bytes.toByteArray());
+    }
+    journalValid = true;
+    journalRecords += records.size();
+    return true;
+  }
+
+  /**
+   * Creates the records which change the old state into the new one. Senders are matched by their
+   * key and their position among the senders with the same key. The matched senders in the longest
+   * common subsequence stay in place, all other senders are removed or inserted. So inserting or
+   * removing a sender creates one record, no matter where it is in the list.
+   */
+  private List<byte[]> diff(CacheState old, CacheState state) throws IOException
+  {
+    List<byte[]> records = new ArrayList<>();
+    List<SenderConf> oldData = old.getData();
+    List<SenderConf> newData = state.getData();
+    int[] match = match(identities(oldData), identities(newData));
+    boolean[] kept = new boolean[oldData.size()];
+    for (int oldIndex : match)
+    {
+      if (oldIndex >= 0)
+      {
+        kept[oldIndex] = true;
+      }
+    }
+    for (int i = oldData.size() - 1; i >= 0; i--)
+    {
+      if (!kept[i])
+      {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+          out.writeByte(RECORD_REMOVE);
+          out.writeInt(i);
+        }
+        records.add(bytes.toByteArray());
+      }
+    }
+    for (int i = 0; i < newData.size(); i++)
+    {
+      if (match[i] < 0 || !oldData.get(match[i]).equals(newData.get(i)))
+      {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+          out.writeByte(match[i] < 0 ? RECORD_INSERT : RECORD_SENDER);
+          out.writeInt(i);
+          writeSender(out, state.getSchema(), newData.get(i));
+        }
+        records.add(bytes.toByteArray());
+      }
+    }
+    if (!Objects.equals(old.getSelectedKey(), state.getSelectedKey())
+        || old.getSelectedSameKeyIndex() != state.getSelectedSameKeyIndex())
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(bytes))
+      {
+        out.writeByte(RECORD_SELECT);
+        writeSelected(out, state);
+      }
+      records.add(bytes.toByteArray());
+    }
+    return records;
+  }
+
+  /**
+   * Identifies each sender by its key and the number of senders with the same key before it.
+   */
+  private static List<String> identities(List<SenderConf> data)
+  {
+    Map<String, Integer> counts = new HashMap<>();
+    List<String> identities = new ArrayList<>(data.size());
+    for (SenderConf sender : data)
+    {
+      int count = counts.merge(sender.getKey(), 1, Integer::sum);
+      identities.add(sender.getKey() + '\u0000' + count);
+    }
+    return identities;
+  }
+
+  /**
+   * Computes the longest common subsequence of two lists. The common prefix and suffix are
+   * matched directly, so the usual changes of a single sender are cheap.
+   *
+   * @return For each element of newIds the index of the matched element in oldIds or -1.
+   */
+  private static int[] match(List<String> oldIds, List<String> newIds)
+  {
+    int[] match = new int[newIds.size()];
+    Arrays.fill(match, -1);
+    int start = 0;
+    while (start < oldIds.size() && start < newIds.size()
+        && oldIds.get(start).equals(newIds.get(start)))
+    {
+      match[start] = start;
+      start++;
+    }
+    int oldEnd = oldIds.size();
+    int newEnd = newIds.size();
+    while (oldEnd > start && newEnd > start && oldIds.get(oldEnd - 1).equals(newIds.get(newEnd - 1)))
+    {
+      match[--newEnd] = --oldEnd;
+    }
+
+    int[][] lengths = new int[oldEnd - start + 1][newEnd - start + 1];
+    for (int i = oldEnd - 1; i >= start; i--)
+    {
+      for (int j = newEnd - 1; j >= start; j--)
+      {
+        lengths[i - start][j - start] = oldIds.get(i).equals(newIds.get(j))
+            ? lengths[i - start + 1][j - start + 1] + 1
+            : Math.max(lengths[i - start + 1][j - start], lengths[i - start][j - start + 1]);
+      }
+    }
+    int i = start;
+    int j = start;
+    while (i < oldEnd && j < newEnd)
+    {
+      if (oldIds.get(i).equals(newIds.get(j)))
+      {
+        match[j++] = i++;
+      } else if (lengths[i - start + 1][j - start] >= lengths[i - start][j - start + 1])
+      {
+        i++;
+      } else
+      {
+        j++;
+      }
+    }
+    return match;
+  }
+
+  private static CacheState apply(CacheState state, byte[] record) throws IOException
+  {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    byte type = in.readByte();
+    List<SenderConf> data = new ArrayList<>(state.getData());
+    switch (type)
+    {
+    case RECORD_SENDER:
+      int index = in.readInt();
+      SenderConf sender = readSender(in, state.getSchema());
+      if (index == data.size())
+      {
+        data.add(sender);
+      } else if (index >= 0 && index < data.size())
+      {
+        data.set(index, sender);
+      } else
+      {
+        throw new IOException("Invalid sender index " + index);
+      }
+      return new CacheState(state.getSchema(), data, state.getSelectedKey(),
+          state.getSelectedSameKeyIndex());
+    case RECORD_INSERT:
+      int insertIndex = in.readInt();
+      if (insertIndex < 0 || insertIndex > data.size())
+      {
+        throw new IOException("Invalid sender index " + insertIndex);
+      }
+      data.add(insertIndex, readSender(in, state.getSchema()));
+      return new CacheState(state.getSchema(), data, state.getSelectedKey(),
+          state.getSelectedSameKeyIndex());
+    case RECORD_REMOVE:
+      int removeIndex = in.readInt();
+      if (removeIndex < 0 || removeIndex >= data.size())
+      {
+        throw new IOException("Invalid sender index " + removeIndex);
+      }
+      data.remove(removeIndex);
+      return new CacheState(state.getSchema(), data, state.getSelectedKey(),
+          state.getSelectedSameKeyIndex());
+    case RECORD_SELECT:
+      return readSelected(in, state);
+    default:
+      throw new IOException("Unknown record type " + type);
+    }
+  }
+
+  private static byte[] readRecord(DataInputStream in) throws IOException
+  {
+    int length;
+    try
+    {
+      length = in.readInt();
+    } catch (EOFException e)
+    {
+      return null;
+    }
+    if (length <= 0 || length > in.available())
+    {
+      throw new IOException("Invalid record length " + length);
+    }
+    byte[] record = new byte[length];
+    in.readFully(record);
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    if (in.readLong() != crc.getValue())
+    {
+      throw new IOException("Invalid checksum");
+    }
+    return record;
+  }
+
+  private static void checkHeader(DataInputStream in) throws IOException
+  {
+    if (in.readInt() != MAGIC)
+    {
+      throw new IOException("Not a sender cache");
+    }
+    int version = in.readInt();
+    if (version != VERSION)
+    {
+      throw new IOException("Unsupported version " + version);
+    }
+  }
+
+  private static void writeSender(DataOutputStream out, List<String> schema, SenderConf sender)
+      throws IOException
+  {
+    out.writeUTF(sender.getKey());
+    writeValues(out, schema, sender.getCachedValues());
+    writeValues(out, schema, sender.getOverriddenValues());
+  }
+
+  private static SenderConf readSender(DataInputStream in, List<String> schema) throws IOException
+  {
+    String key = in.readUTF();
+    Map<String, String> cached = readValues(in, schema);
+    Map<String, String> overridden = readValues(in, schema);
+    return new SenderConf(key, cached, overridden);
+  }
+
+  /**
+   * Writes the values in the order of the schema. Columns are stored by their index in the
+   * schema, values of columns not in the schema are dropped.
+   */
+  private static void writeValues(DataOutputStream out, List<String> schema,
+      Map<String, String> values) throws IOException
+  {
+    List<Integer> columns = new ArrayList<>();
+    for (int i = 0; i < schema.size(); i++)
+    {
+      if (values.get(schema.get(i)) != null)
+      {
+        columns.add(i);
+      }
+    }
+    out.writeInt(columns.size());
+    for (int column : columns)
+    {
+      out.writeInt(column);
+      writeString(out, values.get(schema.get(column)));
+    }
+  }
+
+  private static Map<String, String> readValues(DataInputStream in, List<String> schema)
+      throws IOException
+  {
+    int size = in.readInt();
+    Map<String, String> values = new HashMap<>();
+    for (int i = 0; i < size; i++)
+    {
+      int column = in.readInt();
+      if (column < 0 || column >= schema.size())
+      {
+        throw new IOException("Invalid column " + column);
+      }
+      values.put(schema.get(column), readString(in));
+    }
+    return values;
+  }
+
+  private static void writeSelected(DataOutputStream out, CacheState state) throws IOException
+  {
+    out.writeBoolean(state.getSelectedKey() != null);
+    if (state.getSelectedKey() != null)
+    {
+      out.writeUTF(state.getSelectedKey());
+      out.writeInt(state.getSelectedSameKeyIndex());
+    }
+  }
+
+  private static CacheState readSelected(DataInputStream in, CacheState state) throws IOException
+  {
+    String key = null;
+    int index = -1;
+    if (in.readBoolean())
+    {
+      key = in.readUTF();
+      index = in.readInt();
+    }
+    return new CacheState(state.getSchema(), state.getData(), key, index);
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException
+  {
+    out.writeInt(strings.size());
+    for (String str : strings)
+    {
+      out.writeUTF(str);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException
+  {
+    int size = in.readInt();
+    List<String> strings = new ArrayList<>(size);
+    for (int i = 0; i < size; i++)
+    {
+      strings.add(in.readUTF());
+    }
+    return Collections.unmodifiableList(strings);
+  }
+
+  /**
+   * Writes strings of any length, {@link DataOutputStream#writeUTF(String)} is limited to 64KB.
+   */
+  private static void writeString(DataOutputStream out, String str) throws IOException
+  {
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException
+  {
+    int length = in.readInt();
+    if (length < 0)
+    {
+      throw new IOException("Invalid string length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the content to a temporary file and renames it to file.
+   *
+   * @param file
+   *          The file.
+   * @param content
+   *          The content of the file.
+   * @throws IOException
+   *           Can't write the file.
+   */
+  static void writeAtomically(File file, byte[] content) throws IOException
+  {
+    Path target = file.toPath();
+    Path dir = target.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, file.getName(), ".tmp");
+    try
+    {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp)))
+      {
+        out.write(content);
+      }
+      try
+      {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e)
+      {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally
+    {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
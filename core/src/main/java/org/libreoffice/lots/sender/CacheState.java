@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.sender;
+
+import java.util.List;
+
+/**
+ * The content of a sender cache.
+ */
+class CacheState
+{
+  private final List<String> schema;
+
+  private final List<SenderConf> data;
+
+  private final String selectedKey;
+
+  private final int selectedSameKeyIndex;
+
+  /**
+   * New content of a sender cache.
+   *
+   * @param schema
+   *          The schema.
+   * @param data
+   *          The senders.
+   * @param selectedKey
+   *          The key of the selected sender or null.
+   * @param selectedSameKeyIndex
+   *          The index of the selected sender among the senders with the same key.
+   */
+  CacheState(List<String> schema, List<SenderConf> data, String selectedKey,
+      int selectedSameKeyIndex)
+  {
+    this.schema = schema;
+    this.data = List.copyOf(data);
+    this.selectedKey = selectedKey;
+    this.selectedSameKeyIndex = selectedSameKeyIndex;
+  }
+
+  List<String> getSchema()
+  {
+    return schema;
+  }
+
+  List<SenderConf> getData()
+  {
+    return data;
+  }
+
+  String getSelectedKey()
+  {
+    return selectedKey;
+  }
+
+  int getSelectedSameKeyIndex()
+  {
+    return selectedSameKeyIndex;
+  }
+}
@@ -24,24 +24,28 @@ package org.libreoffice.lots.sender;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.libreoffice.lots.config.ConfigThingy;
 import org.libreoffice.lots.config.NodeNotFoundException;
 import org.libreoffice.lots.config.SyntaxErrorException;
-import org.libreoffice.lots.db.ColumnNotFoundException;
 import org.libreoffice.lots.util.L;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,15 +53,52 @@ import org.slf4j.LoggerFactory;
 import com.sun.star.lang.EventObject;
 
 /**
- * A sender cache using a file as persistence. The file is in ConfigThingy format.
+ * A sender cache using files as persistence. The cache is stored in a binary snapshot with a
+ * journal of the changes since then (see {@link BinaryCacheFile}). The snapshot and the journal
+ * are stored next to the cache file with the suffixes ".bin" and ".journal". The cache file
+ * itself is in ConfigThingy format. It is read if there is no snapshot or if it is newer than
+ * the snapshot and it is written each time a new snapshot is created.
+ *
+ * All files are written in a background thread. Pending writes are finished before the JVM
+ * exits, writes after that are done synchronously.
  */
 public class FileCache implements SenderCache
 {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(FileCache.class);
 
+  /**
+   * Maximum number of records in the journal. If there are more changes a new snapshot is
+   * written.
+   */
+  static final int MAX_JOURNAL_RECORDS = 100;
+
+  private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "Sender-cache-writer");
+    t.setDaemon(true);
+    return t;
+  });
+
+  /**
+   * Maximum time in milliseconds to wait for pending writes when the JVM exits.
+   */
+  private static final long SHUTDOWN_TIMEOUT = 5000;
+
+  static
+  {
+    Runtime.getRuntime().addShutdownHook(new Thread(FileCache::shutdown, "Sender-cache-shutdown"));
+  }
+
   private File cacheFile;
 
+  private BinaryCacheFile binaryFile;
+
+  /**
+   * The state of the snapshot and the journal. Null if there is no valid snapshot. Only used by
+   * {@link #persist(CacheState)}.
+   */
+  private CacheState persisted;
+
   private List<String> schema;
 
   private String selectedKey;
@@ -76,24 +117,40 @@ public class FileCache implements SenderCache
   public FileCache(File cacheFile, URL context)
   {
     this.cacheFile = cacheFile;
-    try
+    CacheState state = null;
+    if (cacheFile != null)
     {
-      ConfigThingy cacheData = readFromFile(cacheFile, context);
-      List<String> newSchema = readSchema(cacheData);
-      List<SenderConf> newData = readData(cacheData, newSchema);
-      Pair<String, Integer> newSelected = readSelected(cacheData);
-      schema = newSchema;
-      data = newData;
-      selectedKey = newSelected.getKey();
-      selectedSameKeyIndex = newSelected.getValue();
-    } catch (Exception e)
+      binaryFile = new BinaryCacheFile(new File(cacheFile.getPath() + ".bin"),
+          new File(cacheFile.getPath() + ".journal"));
+      File snapshot = binaryFile.getSnapshotFile();
+      if (snapshot.isFile() && snapshot.lastModified() >= cacheFile.lastModified())
+      {
+        try
+        {
+          state = binaryFile.read();
+          persisted = state;
+        } catch (IOException e)
+        {
+          LOGGER.info("Cache {} could not be read, using {}", snapshot, cacheFile);
+          LOGGER.debug("", e);
+        }
+      }
+    }
+    if (state == null)
     {
-      // If cache is corrupt, discard all data.
-      schema = new ArrayList<>();
-      data = Collections.emptyList();
-      selectedKey = null;
-      selectedSameKeyIndex = -1;
+      try
+      {
+        state = importFromFile(cacheFile, context);
+      } catch (Exception e)
+      {
+        // If cache is corrupt, discard all data.
+        state = new CacheState(new ArrayList<>(), Collections.emptyList(), null, -1);
+      }
     }
+    schema = state.getSchema();
+    data = state.getData();
+    selectedKey = state.getSelectedKey();
+    selectedSameKeyIndex = state.getSelectedSameKeyIndex();
   }
 
   @Override
@@ -120,6 +177,26 @@ public class FileCache implements SenderCache
     return data;
   }
 
+  /**
+   * Read a cache in ConfigThingy format.
+   *
+   * @param file
+   *          The file.
+   * @param context
+   *          The context for includes in the file.
+   * @return The content of the cache.
+   * @throws SenderException
+   *           The file can't be read or is corrupt.
+   */
+  CacheState importFromFile(File file, URL context) throws SenderException
+  {
+    ConfigThingy cacheData = readFromFile(file, context);
+    List<String> newSchema = readSchema(cacheData);
+    List<SenderConf> newData = readData(cacheData, newSchema);
+    Pair<String, Integer> newSelected = readSelected(cacheData);
+    return new CacheState(newSchema, newData, newSelected.getKey(), newSelected.getValue());
+  }
+
   private ConfigThingy readFromFile(File cacheFile, URL context) throws SenderException
   {
     try (Reader reader = new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8))
@@ -150,13 +227,14 @@ public class FileCache implements SenderCache
   private List<SenderConf> readData(ConfigThingy cacheData, List<String> newSchema) throws SenderException
   {
     List<SenderConf> newData = new ArrayList<>();
+    Set<String> columns = new HashSet<>(newSchema);
     try
     {
       for (ConfigThingy dsconf : cacheData.get("Data"))
       {
         String key = dsconf.get("Key").toString();
-        Map<String, String> cached = readCachedValues(dsconf, newSchema);
-        Map<String, String> override = readOverriddenValues(dsconf, newSchema);
+        Map<String, String> cached = readCachedValues(dsconf, columns);
+        Map<String, String> override = readOverriddenValues(dsconf, columns);
         SenderConf senderConf = new SenderConf(key, cached, override);
         newData.add(senderConf);
       }
@@ -167,7 +245,7 @@ public class FileCache implements SenderCache
     return newData;
   }
 
-  private Map<String, String> readCachedValues(ConfigThingy dsconf, List<String> schema)
+  private Map<String, String> readCachedValues(ConfigThingy dsconf, Set<String> schema)
       throws SenderException
   {
     Map<String, String> cached = new HashMap<>();
@@ -192,7 +270,7 @@ public class FileCache implements SenderCache
     return cached;
   }
 
-  private Map<String, String> readOverriddenValues(ConfigThingy dsconf, List<String> schema) throws SenderException
+  private Map<String, String> readOverriddenValues(ConfigThingy dsconf, Set<String> schema) throws SenderException
   {
     Map<String, String> dsoverride = new HashMap<>();
     try
@@ -228,27 +306,60 @@ public class FileCache implements SenderCache
   }
 
   ConfigThingy createCacheData(List<String> mainSchema, Sender selected, List<Sender> pal) throws SenderException
+  {
+    return createCacheData(createCacheState(mainSchema, selected, pal));
+  }
+
+  /**
+   * Collects the content of the cache from the senders.
+   *
+   * @param mainSchema
+   *          The schema of the senders.
+   * @param selected
+   *          The selected sender.
+   * @param pal
+   *          The senders.
+   * @return The content of the cache.
+   * @throws SenderException
+   *           There is no schema.
+   */
+  CacheState createCacheState(List<String> mainSchema, Sender selected, List<Sender> pal)
+      throws SenderException
   {
     if (mainSchema == null)
     {
       throw new SenderException("Kann Cache nicht speichern, weil nicht initialisiert.");
     }
 
-    ConfigThingy conf = new ConfigThingy(cacheFile.getPath());
-
-    ConfigThingy schemaConf = conf.add("Schema");
-    for (String column : mainSchema)
+    List<SenderConf> senderConfs = new ArrayList<>(pal.size());
+    for (Sender ds : pal)
     {
-      schemaConf.add(column);
+      Map<String, String> cached = new HashMap<>();
+      Map<String, String> override = new HashMap<>();
+      for (String spalte : mainSchema)
+      {
+        if (ds.isFromDatabase())
+        {
+          String wert = ds.getFromDatabase(spalte);
+          if (wert != null)
+          {
+            cached.put(spalte, wert);
+          }
+        }
+        String wert = ds.getOverridenValues().get(spalte);
+        if (wert != null)
+        {
+          override.put(spalte, wert);
+        }
+      }
+      senderConfs.add(new SenderConf(ds.getKey(), cached, override));
     }
 
-    ConfigThingy datenConf = dumpData(pal, mainSchema);
-    conf.addChild(datenConf);
-
-    ConfigThingy ausgewaehlt = conf.add("Ausgewaehlt");
+    String key = null;
+    int index = -1;
     if (selected != null)
     {
-      int index = 0;
+      index = 0;
       for (Sender s : pal)
       {
         if (selected.equals(s))
@@ -260,58 +371,50 @@ public class FileCache implements SenderCache
           index++;
         }
       }
-      ausgewaehlt.add(selected.getKey());
-      ausgewaehlt.add(Integer.toString(index));
+      key = selected.getKey();
     }
-    return conf;
+    return new CacheState(List.copyOf(mainSchema), senderConfs, key, index);
   }
 
-  private ConfigThingy dumpData(List<Sender> senderList, List<String> mainSchema) throws SenderException
+  private ConfigThingy createCacheData(CacheState state)
   {
-    ConfigThingy conf = new ConfigThingy("Data");
-    for (Sender ds : senderList)
+    ConfigThingy conf = new ConfigThingy(cacheFile.getPath());
+
+    ConfigThingy schemaConf = conf.add("Schema");
+    for (String column : state.getSchema())
     {
-      ConfigThingy dsConf = conf.add("");
-      dsConf.add("Key").add(ds.getKey());
+      schemaConf.add(column);
+    }
 
-      if (ds.isFromDatabase())
+    ConfigThingy datenConf = conf.add("Data");
+    for (SenderConf senderConf : state.getData())
+    {
+      ConfigThingy dsConf = datenConf.add("");
+      dsConf.add("Key").add(senderConf.getKey());
+      if (!senderConf.getCachedValues().isEmpty())
       {
-        dumpCachedValues(mainSchema, ds, dsConf);
+        dumpValues(state.getSchema(), senderConf.getCachedValues(), dsConf.add("Cache"));
       }
-      dumpOverriddenValues(mainSchema, ds, dsConf);
+      dumpValues(state.getSchema(), senderConf.getOverriddenValues(), dsConf.add("Override"));
     }
 
-    return conf;
-  }
-
-  private void dumpCachedValues(List<String> mainSchema, Sender ds, ConfigThingy dsConf) throws SenderException
-  {
-    ConfigThingy cacheConf = dsConf.add("Cache");
-    for (String spalte : mainSchema)
+    ConfigThingy ausgewaehlt = conf.add("Ausgewaehlt");
+    if (state.getSelectedKey() != null)
     {
-      try
-      {
-        String wert = ds.getDataset().get(spalte);
-        if (wert != null)
-        {
-          cacheConf.add(spalte).add(wert);
-        }
-      } catch (ColumnNotFoundException e)
-      {
-        throw new SenderException("Unbekannte Spalte soll gespeichert werden", e);
-      }
+      ausgewaehlt.add(state.getSelectedKey());
+      ausgewaehlt.add(Integer.toString(state.getSelectedSameKeyIndex()));
     }
+    return conf;
   }
 
-  private void dumpOverriddenValues(List<String> mainSchema, Sender ds, ConfigThingy dsConf)
+  private void dumpValues(List<String> mainSchema, Map<String, String> values, ConfigThingy conf)
   {
-    ConfigThingy overrideConf = dsConf.add("Override");
     for (String spalte : mainSchema)
     {
-      String wert = ds.getOverridenValues().get(spalte);
+      String wert = values.get(spalte);
       if (wert != null)
       {
-        overrideConf.add(spalte).add(wert);
+        conf.add(spalte).add(wert);
       }
     }
   }
@@ -323,17 +426,17 @@ public class FileCache implements SenderCache
    *          The file to write into.
    * @param conf
    *          The configuration to write.
-   * @throws IOException
+   * @throws SenderException
    *           Can't write the file.
    */
-  private void writeConfToFile(ConfigThingy conf) throws SenderException
+  private void writeConfToFile(File file, ConfigThingy conf) throws SenderException
   {
-    if (cacheFile != null)
+    if (file != null)
     {
-      try (OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(cacheFile), StandardCharsets.UTF_8))
+      try
       {
-        out.write("\uFEFF");
-        out.write(conf.stringRepresentation(true, '"'));
+        BinaryCacheFile.writeAtomically(file,
+            ("\uFEFF" + conf.stringRepresentation(true, '"')).getBytes(StandardCharsets.UTF_8));
       } catch (IOException e)
       {
         throw new SenderException("Konnte Cache nicht speichern", e);
@@ -343,16 +446,106 @@ public class FileCache implements SenderCache
     }
   }
 
+  /**
+   * Persists the state. Only the changes are appended to the journal, if the schema hasn't
+   * changed and the journal isn't too long. Otherwise a new snapshot and cache file are written.
+   *
+   * @param state
+   *          The new state.
+   */
+  private synchronized void persist(CacheState state)
+  {
+    try
+    {
+      if (binaryFile == null)
+      {
+        throw new SenderException("Keine Cache-Datei vorhanden.");
+      }
+      if (persisted == null || !persisted.getSchema().equals(state.getSchema())
+          || !binaryFile.append(persisted, state, MAX_JOURNAL_RECORDS))
+      {
+        LOGGER.debug("Speichere Cache nach {}.", cacheFile);
+        writeConfToFile(cacheFile, createCacheData(state));
+        binaryFile.writeSnapshot(state);
+      }
+      persisted = state;
+    } catch (IOException | SenderException e)
+    {
+      LOGGER.error("Cache konnte nicht gespeichert werden.", e);
+    }
+  }
+
+  /**
+   * Persists the state in the background. When the JVM exits, the state is persisted
+   * synchronously.
+   *
+   * @param state
+   *          The new state.
+   */
+  void save(CacheState state)
+  {
+    try
+    {
+      WRITER.execute(() -> persist(state));
+    } catch (RejectedExecutionException e)
+    {
+      // the JVM exits, the pending changes have to be written first
+      awaitWriter();
+      persist(state);
+    }
+  }
+
+  /**
+   * Waits until all changes are written.
+   */
+  void flush()
+  {
+    try
+    {
+      WRITER.submit(() -> {}).get();
+    } catch (RejectedExecutionException e)
+    {
+      awaitWriter();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e)
+    {
+      LOGGER.error("", e);
+    }
+  }
+
+  /**
+   * Writes the pending changes of all caches. Later changes are written synchronously.
+   */
+  private static void shutdown()
+  {
+    WRITER.shutdown();
+    awaitWriter();
+  }
+
+  private static void awaitWriter()
+  {
+    try
+    {
+      if (!WRITER.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS))
+      {
+        LOGGER.error("Cache konnte nicht rechtzeitig gespeichert werden.");
+      }
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @Override
   public void updateContent(EventObject event)
   {
     try
     {
-      LOGGER.debug("Speichere Cache nach {}.", cacheFile);
       SenderService service = (SenderService) event.Source;
-      ConfigThingy conf = createCacheData(service.getSchema(), service.selectedSender,
-          service.getSenderListSorted(Sender.NACHNAME));
-      writeConfToFile(conf);
+      save(createCacheState(service.getSchema(), service.selectedSender,
+          service.getSenderListSorted(Sender.NACHNAME)));
     } catch (Exception e)
     {
       LOGGER.error("Cache konnte nicht gespeichert werden.", e);
@@ -362,7 +555,7 @@ public class FileCache implements SenderCache
   @Override
   public void disposing(EventObject event)
   {
-    // nothing to do
+    flush();
   }
 
 }
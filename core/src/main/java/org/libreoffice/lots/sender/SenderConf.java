@@ -23,6 +23,7 @@
 package org.libreoffice.lots.sender;
 
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Description of a sender in the cache.
@@ -64,4 +65,26 @@ public class SenderConf
   {
     return overriddenValues;
   }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(key, cachedValues, overriddenValues);
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    if (this == obj)
+    {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass())
+    {
+      return false;
+    }
+    SenderConf other = (SenderConf) obj;
+    return Objects.equals(key, other.key) && Objects.equals(cachedValues, other.cachedValues)
+        && Objects.equals(overriddenValues, other.overriddenValues);
+  }
 }
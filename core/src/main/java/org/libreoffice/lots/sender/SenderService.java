@@ -27,11 +27,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -42,7 +45,6 @@ import org.slf4j.LoggerFactory;
 
 import com.sun.star.lang.EventObject;
 import com.sun.star.uno.UnoRuntime;
-import com.sun.star.uno.XInterface;
 
 import org.libreoffice.ext.unohelper.common.UNO;
 import org.libreoffice.lots.WollMuxFiles;
@@ -59,8 +61,11 @@ import org.libreoffice.lots.db.Datasources;
 import org.libreoffice.lots.db.DummyDatasourceWithMessagebox;
 import org.libreoffice.lots.db.QueryPart;
 import org.libreoffice.lots.db.QueryResults;
+import org.libreoffice.lots.db.SimpleDataset;
 import org.libreoffice.lots.dialog.DialogLibrary;
 import org.libreoffice.lots.dialog.InfoDialog;
+import org.libreoffice.lots.event.WollMuxEventHandler;
+import org.libreoffice.lots.event.handlers.OnNotifyPALChangeListener;
 import org.libreoffice.lots.func.FunctionFactory;
 import org.libreoffice.lots.func.FunctionLibrary;
 import de.muenchen.allg.itd51.wollmux.interfaces.XPALChangeEventListener;
@@ -80,6 +85,20 @@ public class SenderService implements XPALProvider
 
   public static final String OVERRIDE_FRAG_DB_COLUMN = "OVERRIDE_FRAG_DB_COLUMN";
 
+  /**
+   * Maximum number of keys requested from the data source at once.
+   */
+  static final int KEY_CHUNK_SIZE = 100;
+
+  /**
+   * Updates the senders from the data source.
+   */
+  private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "Sender-refresh");
+    t.setDaemon(true);
+    return t;
+  });
+
   private static SenderService instance;
 
   /**
@@ -90,7 +109,8 @@ public class SenderService implements XPALProvider
   protected SenderCache cache;
 
   /**
-   * Contains all registered {@code SenderBox} objects.
+   * Contains all registered {@code SenderBox} objects. The listeners are notified from the UNO
+   * threads and by WollMux events.
    */
   private List<XPALChangeEventListener> registeredPALChangeListener;
 
@@ -109,14 +129,21 @@ public class SenderService implements XPALProvider
    * database, but whose key was no longer found in it and therefore
    * could not be updated.
    */
-  protected List<Sender> lostDatasets = new ArrayList<>(0);
+  protected volatile List<Sender> lostDatasets = new ArrayList<>(0);
 
   /**
    * List of all LOSDJDatasets.
    * The list must be ordered so that datasets with the same key
    * can be identified by their position in the list.
+   * The list is never modified, changes replace the whole list.
    */
-  protected List<Sender> data = new ArrayList<>();
+  protected volatile List<Sender> data = new ArrayList<>();
+
+  /**
+   * Completes as soon as the senders from the cache have been updated with the data of the
+   * {@link #mainDatasource} and {@link #lostDatasets} is known.
+   */
+  CompletableFuture<Void> refresh;
 
   protected String overrideFragDbSpalte;
 
@@ -181,7 +208,7 @@ public class SenderService implements XPALProvider
   SenderService(Datasource mainDatasource, ColumnTransformer columnTransformer,
       SenderCache cache, String overrideFragDbSpalte) throws SenderException
   {
-    registeredPALChangeListener = new ArrayList<>();
+    registeredPALChangeListener = new CopyOnWriteArrayList<>();
     this.columnTransformer = columnTransformer;
     this.cache = cache;
     if (mainDatasource == null)
@@ -193,56 +220,201 @@ public class SenderService implements XPALProvider
     init(cache);
     selectFromCache(cache);
     addPALChangeEventListener(cache);
+    refresh = refreshFromDatasource(cache);
   }
 
+  /**
+   * Shows the senders with their cached values.
+   */
   private void init(SenderCache cache) throws SenderException
+  {
+    Set<String> removedColumns = new HashSet<>(cache.getSchema());
+    removedColumns.removeAll(getSchema());
+    List<Sender> cachedSender = new ArrayList<>();
+    for (SenderConf senderConf : cache.getData())
+    {
+      Sender sender = new Sender(senderConf.getKey(),
+          new SimpleDataset(senderConf.getKey(), senderConf.getCachedValues()),
+          new HashMap<>(senderConf.getOverriddenValues()));
+      removedColumns.forEach(sender::drop);
+      cachedSender.add(sender);
+    }
+    updateSenderList(cachedSender);
+  }
+
+  /**
+   * Updates the senders of the cache from the {@link #mainDatasource} in the background. The
+   * sender list is replaced at once. If it has been changed in the meantime, the values of the
+   * database are merged into the changed list by key. The listeners are notified by an
+   * {@link OnNotifyPALChangeListener} event.
+   *
+   * @return Completes after the update.
+   */
+  private CompletableFuture<Void> refreshFromDatasource(SenderCache cache)
   {
     List<String> cachedSchema = cache.getSchema();
+    List<SenderConf> senderConfs = cache.getData();
+    List<Sender> cachedSender = data;
+    return CompletableFuture.supplyAsync(() -> fetchDatasets(senderConfs), REFRESHER)
+        .thenAccept(datasets -> {
+          try
+          {
+            List<Sender> newSender = createSender(cachedSchema, senderConfs, datasets);
+            if (!replaceSenderList(cachedSender, newSender, false))
+            {
+              LOGGER.debug("Sender list was changed during the update from the database");
+              List<Sender> current;
+              do
+              {
+                current = data;
+              } while (!replaceSenderList(current, mergeSender(current, datasets), false));
+            }
+            notifyRefresh();
+          } catch (SenderException e)
+          {
+            LOGGER.error("", e);
+          }
+        }).exceptionally(e -> {
+          LOGGER.error("The sender list could not be updated from the database", e);
+          return null;
+        });
+  }
+
+  /**
+   * Notifies the listeners after a refresh like all other WollMux events. Until the events are
+   * accepted the listeners are notified directly.
+   */
+  private void notifyRefresh()
+  {
+    if (WollMuxEventHandler.getInstance().isAcceptingEvents())
+    {
+      new OnNotifyPALChangeListener(this).emit();
+    } else
+    {
+      notifyListener();
+    }
+  }
+
+  /**
+   * Requests the data sets of the cached senders from the {@link #mainDatasource} with as few
+   * calls as possible.
+   *
+   * @param senderConfs
+   *          The cached senders.
+   * @return Mapping from key to data set. Keys without data set are missing.
+   */
+  private Map<String, Dataset> fetchDatasets(List<SenderConf> senderConfs)
+  {
+    List<String> keys = new ArrayList<>(new LinkedHashSet<>(
+        senderConfs.stream().map(SenderConf::getKey).collect(Collectors.toList())));
+    Map<String, Dataset> datasets = new HashMap<>();
+    for (int i = 0; i < keys.size(); i += KEY_CHUNK_SIZE)
+    {
+      QueryResults res = mainDatasource
+          .getDatasetsByKey(keys.subList(i, Math.min(i + KEY_CHUNK_SIZE, keys.size())));
+      for (Dataset ds : res)
+      {
+        datasets.putIfAbsent(ds.getKey(), ds);
+      }
+    }
+    return datasets;
+  }
+
+  /**
+   * Merges the current data of the {@link #mainDatasource} into a sender list, which has been
+   * changed during the update. Senders with a database entry get the new data set of their key,
+   * their overridden values are kept. All other senders are kept as they are.
+   *
+   * @param senderList
+   *          The changed sender list.
+   * @param datasets
+   *          The data sets by key.
+   * @return The merged sender list.
+   */
+  private static List<Sender> mergeSender(List<Sender> senderList, Map<String, Dataset> datasets)
+  {
+    List<Sender> merged = new ArrayList<>(senderList.size());
+    for (Sender sender : senderList)
+    {
+      Dataset base = datasets.get(sender.getKey());
+      if (base != null && sender.isFromDatabase())
+      {
+        merged.add(new Sender(sender.getKey(), base, new HashMap<>(sender.getOverridenValues())));
+      } else
+      {
+        merged.add(sender);
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Creates the senders of the cache with the current data of the {@link #mainDatasource}.
+   *
+   * @param cachedSchema
+   *          The schema of the cache.
+   * @param senderConfs
+   *          The cached senders.
+   * @param datasets
+   *          The data sets by key.
+   * @return The senders.
+   */
+  private List<Sender> createSender(List<String> cachedSchema, List<SenderConf> senderConfs,
+      Map<String, Dataset> datasets)
+  {
     Set<String> newColumns = new HashSet<>(getSchema());
     newColumns.removeAll(cachedSchema);
-
     Set<String> removedColumns = new HashSet<>(cachedSchema);
     removedColumns.removeAll(getSchema());
+
     List<Sender> newSender = new ArrayList<>();
-    for (SenderConf senderConf : cache.getData())
+    List<Sender> lost = new ArrayList<>();
+    for (SenderConf senderConf : senderConfs)
     {
       Sender sender;
-      QueryResults res = mainDatasource.getDatasetsByKey(List.of(senderConf.getKey()));
-      if (!res.isEmpty())
+      Dataset base = datasets.get(senderConf.getKey());
+      if (base != null)
       {
-        Dataset base = res.iterator().next();
-        sender = new Sender(senderConf.getKey(), base, senderConf.getOverriddenValues());
+        sender = new Sender(senderConf.getKey(), base, new HashMap<>(senderConf.getOverriddenValues()));
       } else
       {
-        sender = new Sender(senderConf.getKey(), null, senderConf.getOverriddenValues());
+        sender = new Sender(senderConf.getKey(), null, new HashMap<>(senderConf.getOverriddenValues()));
         for (String newColumn : newColumns)
         {
-          sender.overrideValue(newColumn, "");
+          try
+          {
+            sender.overrideValue(newColumn, "");
+          } catch (SenderException e)
+          {
+            LOGGER.trace("", e);
+          }
         }
         if (!senderConf.getCachedValues().isEmpty())
         {
-          lostDatasets.add(sender);
+          lost.add(sender);
         }
       }
       removedColumns.forEach(sender::drop);
       newSender.add(sender);
     }
+    lostDatasets = lost;
 
-    String lostKeys = lostDatasets.stream().map(Sender::getKey).collect(Collectors.joining(", "));
+    String lostKeys = lost.stream().map(Sender::getKey).collect(Collectors.joining(", "));
     if (!lostKeys.isEmpty())
       LOGGER.info("The records with the following keys could not be updated from the database: {}",
           lostKeys);
-    updateSenderList(newSender);
+    return newSender;
   }
 
   private void selectFromCache(SenderCache cache) throws SenderException
   {
     String selectKey = cache.getSelectedKey();
     int selectIndex = cache.getSelectedSameKeyIndex();
-    selectByKeyAndIndex(selectKey, selectIndex);
+    selectByKeyAndIndex(selectKey, selectIndex, true);
   }
 
-  private void selectByKeyAndIndex(String selectKey, int selectIndex) throws SenderException
+  private void selectByKeyAndIndex(String selectKey, int selectIndex, boolean notify)
+      throws SenderException
   {
     Sender selected = null;
     Map<String, Integer> keys = new HashMap<>();
@@ -259,7 +431,13 @@ public class SenderService implements XPALProvider
     {
       selected = data.get(0);
     }
-    select(selected);
+    if (notify)
+    {
+      select(selected);
+    } else
+    {
+      setSelected(selected);
+    }
   }
 
   /**
@@ -370,16 +548,13 @@ public class SenderService implements XPALProvider
   public void removePALChangeEventListener(XPALChangeEventListener listener)
   {
     LOGGER.trace("PersoenlicheAbsenderliste::removePALChangeEventListener()");
-    Iterator<XPALChangeEventListener> i = registeredPALChangeListener.iterator();
-    while (i.hasNext())
-    {
-      XInterface l = UNO.XInterface(i.next());
-      if (UnoRuntime.areSame(l, listener))
-        i.remove();
-    }
+    registeredPALChangeListener.removeIf(l -> UnoRuntime.areSame(UNO.XInterface(l), listener));
   }
 
-  void notifyListener()
+  /**
+   * Notify all listeners about a change of the sender list or the selected sender.
+   */
+  public void notifyListener()
   {
     EventObject event = new EventObject();
     event.Source = this;
@@ -525,7 +700,8 @@ public class SenderService implements XPALProvider
   }
 
   /**
-   * Get list of senders which can't be found in the database anymore.
+   * Get list of senders which can't be found in the database anymore. The list is empty until
+   * {@link #refresh} has completed.
    *
    * @return List of senders in format {@code <oid> <name> <surname>}.
    */
@@ -553,30 +729,61 @@ public class SenderService implements XPALProvider
 
   private void updateSenderList(List<Sender> newSenderList) throws SenderException
   {
-    if (selectedSender != null)
+    replaceSenderList(null, newSenderList, true);
+  }
+
+  /**
+   * Replaces the sender list in one step and keeps the selection.
+   *
+   * @param expected
+   *          If not null, the list is only replaced if it's still this list.
+   * @param newSenderList
+   *          The new sender list.
+   * @param notify
+   *          If true, the listeners are notified once.
+   * @return True if the list was replaced.
+   * @throws SenderException
+   *           The selection couldn't be restored.
+   */
+  private boolean replaceSenderList(List<Sender> expected, List<Sender> newSenderList,
+      boolean notify) throws SenderException
+  {
+    synchronized (this)
     {
-      int index = -1;
-      Map<String, Integer> keys = new HashMap<>();
-      for (Sender sender : data)
+      if (expected != null && data != expected)
+      {
+        return false;
+      }
+      Sender selection = selectedSender;
+      if (selection != null)
       {
-        int i = keys.compute(sender.getKey(), (k, v) -> v == null ? 0 : v++);
-        if (sender.equals(selectedSender))
+        int index = -1;
+        Map<String, Integer> keys = new HashMap<>();
+        for (Sender sender : data)
         {
-          index = i;
-          break;
+          int i = keys.compute(sender.getKey(), (k, v) -> v == null ? 0 : v + 1);
+          if (sender.equals(selection))
+          {
+            index = i;
+            break;
+          }
         }
-      }
-      data = newSenderList;
-      selectByKeyAndIndex(selectedSender.getKey(), index);
-    } else
-    {
-      data = newSenderList;
-      if (!newSenderList.isEmpty())
+        data = newSenderList;
+        selectByKeyAndIndex(selection.getKey(), index, false);
+      } else
       {
-        select(newSenderList.get(0));
+        data = newSenderList;
+        if (!newSenderList.isEmpty())
+        {
+          setSelected(newSenderList.get(0));
+        }
       }
     }
-    notifyListener();
+    if (notify)
+    {
+      notifyListener();
+    }
+    return true;
   }
 
   /**
@@ -623,6 +830,12 @@ public class SenderService implements XPALProvider
    *           The sender is not in the list of senders.
    */
   public void select(Sender sender) throws SenderException
+  {
+    setSelected(sender);
+    notifyListener();
+  }
+
+  private synchronized void setSelected(Sender sender) throws SenderException
   {
     if (sender != null && !data.contains(sender))
     {
@@ -637,7 +850,6 @@ public class SenderService implements XPALProvider
     {
       this.selectedSender.setSelected(true);
     }
-    notifyListener();
   }
 
   /**
@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+
+public class ConfServerClientTest
+{
+
+  private ClientAndServer mockServer;
+  private String serverURI;
+
+  @BeforeEach
+  public void startServer()
+  {
+    mockServer = ClientAndServer.startClientAndServer();
+    serverURI = String.format("http://localhost:%d/", mockServer.getLocalPort());
+  }
+
+  @AfterEach
+  public void stopServer()
+  {
+    mockServer.stop();
+  }
+
+  @Test
+  public void notModified(@TempDir File cacheDir) throws Exception
+  {
+    mockServer.when(HttpRequest.request().withMethod("POST").withHeader("If-None-Match", "\"v1\""))
+        .respond(HttpResponse.response().withStatusCode(304));
+    mockServer.when(HttpRequest.request().withMethod("POST"))
+        .respond(HttpResponse.response().withStatusCode(200).withHeader("ETag", "\"v1\"")
+            .withBody("DEFAULT_CONTEXT \"v1\""));
+
+    ConfServerClient client = new ConfServerClient(cacheDir, serverURI, "test.user");
+    assertNull(client.getCachedConf());
+    assertEquals("DEFAULT_CONTEXT \"v1\"", client.fetch());
+    assertEquals("DEFAULT_CONTEXT \"v1\"", client.getCachedConf());
+
+    assertEquals("DEFAULT_CONTEXT \"v1\"", client.fetch());
+    assertEquals(Optional.empty(), client.revalidate().get(5, TimeUnit.SECONDS));
+    mockServer.verify(HttpRequest.request().withHeader("If-None-Match", "\"v1\""),
+        VerificationTimes.exactly(2));
+
+    assertNull(new ConfServerClient(cacheDir, serverURI, "other.user").getCachedConf());
+  }
+
+  @Test
+  public void modified(@TempDir File cacheDir) throws Exception
+  {
+    mockServer.when(HttpRequest.request().withMethod("POST"))
+        .respond(HttpResponse.response().withStatusCode(200)
+            .withHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT")
+            .withBody("DEFAULT_CONTEXT \"v2\""));
+
+    ConfServerClient client = new ConfServerClient(cacheDir, serverURI, "test.user");
+    client.fetch();
+    assertEquals(Optional.of("DEFAULT_CONTEXT \"v2\""),
+        client.revalidate().get(5, TimeUnit.SECONDS));
+    mockServer.verify(
+        HttpRequest.request().withHeader("If-Modified-Since", "Wed, 21 Oct 2015 07:28:00 GMT"),
+        VerificationTimes.once());
+  }
+
+  @Test
+  public void timeout(@TempDir File cacheDir) throws Exception
+  {
+    mockServer.when(HttpRequest.request().withMethod("POST"), Times.once())
+        .respond(HttpResponse.response().withStatusCode(200).withHeader("ETag", "\"v1\"")
+            .withBody("DEFAULT_CONTEXT \"v1\""));
+    mockServer.when(HttpRequest.request().withMethod("POST"))
+        .respond(HttpResponse.response().withStatusCode(200).withBody("DEFAULT_CONTEXT \"v2\"")
+            .withDelay(TimeUnit.SECONDS, 3));
+
+    ConfServerClient client = new ConfServerClient(cacheDir, serverURI, "test.user",
+        Duration.ofSeconds(1));
+    client.fetch();
+    assertThrows(HttpTimeoutException.class, client::fetch);
+    assertFalse(client.revalidate().get(5, TimeUnit.SECONDS).isPresent());
+    assertEquals("DEFAULT_CONTEXT \"v1\"", client.getCachedConf());
+  }
+
+  @Test
+  public void serverError(@TempDir File cacheDir) throws Exception
+  {
+    mockServer.when(HttpRequest.request().withMethod("POST"))
+        .respond(HttpResponse.response().withStatusCode(500).withBody("error"));
+
+    ConfServerClient client = new ConfServerClient(cacheDir, serverURI, "test.user");
+    assertThrows(IOException.class, client::fetch);
+    assertNull(client.getCachedConf());
+  }
+}
@@ -27,10 +27,12 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.libreoffice.lots.WollMuxFiles;
 import org.libreoffice.lots.config.ConfigThingy;
 import org.mockserver.client.MockServerClient;
@@ -44,6 +46,12 @@ import org.mockserver.verify.VerificationTimes;
 public class WollMuxFilesTest
 {
 
+  @TempDir
+  File confDir;
+
+  @TempDir
+  File cacheDir;
+
   private ClientAndServer mockServer;
   private int port;
 
@@ -63,7 +71,7 @@ public class WollMuxFilesTest
   @Test
   public void validFileWithServerPara() throws Exception
   {
-    File file = File.createTempFile("wollmuxTest", ".conf");
+    File file = new File(confDir, "lots.conf");
     try (MockServerClient client = new MockServerClient("localhost", port);
 	BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
     {
@@ -76,7 +84,7 @@ public class WollMuxFilesTest
               .withHeader(new Header("Content-Type", "application/json; charset=utf-8"))
               .withBody("DEFAULT_CONTEXT \"test_server\""));
 
-      ConfigThingy test = WollMuxFiles.parseWollMuxConf(file);
+      ConfigThingy test = WollMuxFiles.parseWollMuxConf(file, cacheDir);
       assertEquals("test_server", test.getString("DEFAULT_CONTEXT", null),
           "Got wrong DEFAULT_CONTEXT");
     }
@@ -85,7 +93,7 @@ public class WollMuxFilesTest
   @Test
   public void validFileWithUserPara() throws Exception
   {
-    File file = File.createTempFile("wollmuxTest", ".conf");
+    File file = new File(confDir, "lots.conf");
     try (MockServerClient client = new MockServerClient("localhost", port);
 	BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
     {
@@ -100,23 +108,83 @@ public class WollMuxFilesTest
               .withHeader(new Header("Content-Type", "application/json; charset=utf-8"))
               .withBody("DEFAULT_CONTEXT \"test_server_user\""));
 
-      ConfigThingy test = WollMuxFiles.parseWollMuxConf(file);
+      ConfigThingy test = WollMuxFiles.parseWollMuxConf(file, cacheDir);
       assertEquals("test_server_user", test.getString("DEFAULT_CONTEXT", null),
           "Got wrong DEFAULT_CONTEXT");
     }
   }
 
+  @Test
+  public void storedConfIsRevalidatedBeforeUse() throws Exception
+  {
+    File file = new File(confDir, "lots.conf");
+    try (MockServerClient client = new MockServerClient("localhost", port);
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
+    {
+      writer.write(String.format("CONF_SERVER \"http://localhost:%d/\"", port));
+      writer.newLine();
+      writer.write("USERNAME \"revalidation.user\"");
+      writer.flush();
+      client.when(HttpRequest.request().withMethod("POST"))
+          .respond(HttpResponse.response().withStatusCode(200)
+              .withHeader(new Header("ETag", "\"v1\""))
+              .withBody("DEFAULT_CONTEXT \"v1\""));
+      assertEquals("v1",
+          WollMuxFiles.parseWollMuxConf(file, cacheDir).getString("DEFAULT_CONTEXT", null));
+
+      client.reset();
+      client.when(HttpRequest.request().withMethod("POST"))
+          .respond(HttpResponse.response().withStatusCode(200)
+              .withHeader(new Header("ETag", "\"v2\""))
+              .withBody("DEFAULT_CONTEXT \"v2\""));
+      assertEquals("v2",
+          WollMuxFiles.parseWollMuxConf(file, cacheDir).getString("DEFAULT_CONTEXT", null),
+          "Stored configuration not revalidated before use");
+    }
+  }
+
+  @Test
+  public void storedConfIsUsedIfRevalidationTakesTooLong() throws Exception
+  {
+    File file = new File(confDir, "lots.conf");
+    try (MockServerClient client = new MockServerClient("localhost", port);
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
+    {
+      writer.write(String.format("CONF_SERVER \"http://localhost:%d/\"", port));
+      writer.newLine();
+      writer.write("USERNAME \"slow.user\"");
+      writer.newLine();
+      writer.write("CONF_REVALIDATION_WAIT \"100\"");
+      writer.flush();
+      client.when(HttpRequest.request().withMethod("POST"))
+          .respond(HttpResponse.response().withStatusCode(200)
+              .withHeader(new Header("ETag", "\"v1\""))
+              .withBody("DEFAULT_CONTEXT \"v1\""));
+      assertEquals("v1",
+          WollMuxFiles.parseWollMuxConf(file, cacheDir).getString("DEFAULT_CONTEXT", null));
+
+      client.reset();
+      client.when(HttpRequest.request().withMethod("POST"))
+          .respond(HttpResponse.response().withStatusCode(200)
+              .withHeader(new Header("ETag", "\"v2\""))
+              .withBody("DEFAULT_CONTEXT \"v2\"").withDelay(TimeUnit.SECONDS, 2));
+      assertEquals("v1",
+          WollMuxFiles.parseWollMuxConf(file, cacheDir).getString("DEFAULT_CONTEXT", null),
+          "Start waited longer than CONF_REVALIDATION_WAIT");
+    }
+  }
+
   @Test
   public void doNothingWithOutServerPara() throws Exception
   {
-    File file = File.createTempFile("wollmuxTest", ".conf");
+    File file = new File(confDir, "lots.conf");
     try (MockServerClient client = new MockServerClient("localhost", port);
         BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
     {
       writer.write("DEFAULT_CONTEXT \"default_server\"");
       writer.flush();
       client.verify(HttpRequest.request().withMethod("POST"), VerificationTimes.exactly(0));
-      ConfigThingy test = WollMuxFiles.parseWollMuxConf(file);
+      ConfigThingy test = WollMuxFiles.parseWollMuxConf(file, cacheDir);
       assertEquals("default_server", test.getString("DEFAULT_CONTEXT", null),
           "Got wrong DEFAULT_CONTEXT");
     }
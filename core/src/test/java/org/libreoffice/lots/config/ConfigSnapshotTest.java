@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.config;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigSnapshotTest
+{
+
+  @Test
+  public void testSnapshot(@TempDir Path dir) throws Exception
+  {
+    Path main = dir.resolve("main.conf");
+    Path include = dir.resolve("include.conf");
+    Files.writeString(main, "A 'a'\n%include 'include.conf'\nB(C 'c' D('%u00e4' 'x'))",
+        StandardCharsets.UTF_8);
+    Files.writeString(include, "I 'included'", StandardCharsets.UTF_8);
+    URL url = main.toUri().toURL();
+    File snapshot = dir.resolve("snapshot").toFile();
+
+    assertNull(ConfigSnapshot.load("", url, snapshot));
+    ConfigThingy parsed = ConfigSnapshot.parse("", url, snapshot);
+    assertTrue(snapshot.isFile());
+
+    ConfigThingy loaded = ConfigSnapshot.load("", url, snapshot);
+    assertNotNull(loaded);
+    assertEquals(parsed.stringRepresentation(), loaded.stringRepresentation());
+    assertEquals("ä", loaded.get("D").getFirstChild().toString());
+    assertNull(ConfigSnapshot.load("", dir.resolve("other.conf").toUri().toURL(), snapshot));
+
+    Files.writeString(include, "I 'changed'", StandardCharsets.UTF_8);
+    include.toFile().setLastModified(include.toFile().lastModified() + 2000);
+    assertNull(ConfigSnapshot.load("", url, snapshot));
+    assertEquals("changed", ConfigSnapshot.parse("", url, snapshot).getString("I"));
+    assertEquals("changed", ConfigSnapshot.load("", url, snapshot).getString("I"));
+
+    // only touched, content is the same
+    include.toFile().setLastModified(include.toFile().lastModified() + 2000);
+    byte[] before = Files.readAllBytes(snapshot.toPath());
+    assertNotNull(ConfigSnapshot.load("", url, snapshot));
+    byte[] after = Files.readAllBytes(snapshot.toPath());
+    assertFalse(Arrays.equals(before, after), "modification time not updated");
+    assertNotNull(ConfigSnapshot.load("", url, snapshot));
+    assertArrayEquals(after, Files.readAllBytes(snapshot.toPath()));
+  }
+
+  @Test
+  public void testChangeWhileParsing(@TempDir Path dir) throws Exception
+  {
+    Path main = dir.resolve("main.conf");
+    Files.writeString(main, "A 'old'", StandardCharsets.UTF_8);
+    URL url = main.toUri().toURL();
+    File snapshot = dir.resolve("snapshot").toFile();
+
+    List<ConfigSource> sources = new ArrayList<>();
+    ConfigThingy conf = new ConfigThingy("");
+    conf.childrenFromSource(ConfigSource.read(url), sources);
+    // the file changes after it has been parsed but before the snapshot is written
+    Files.writeString(main, "A 'new'", StandardCharsets.UTF_8);
+    main.toFile().setLastModified(main.toFile().lastModified() + 2000);
+    ConfigSnapshot.write(snapshot, url, conf, sources);
+
+    assertNull(ConfigSnapshot.load("", url, snapshot));
+    assertEquals("new", ConfigSnapshot.parse("", url, snapshot).getString("A"));
+  }
+}
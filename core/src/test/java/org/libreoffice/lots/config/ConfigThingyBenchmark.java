@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the regex based tokenizer, which was used by {@link ConfigThingy} before, with the
+ * current parser on a synthetic configuration of several MB.
+ *
+ * The benchmark isn't run by surefire. Start it with {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConfigThingyBenchmark
+{
+  private static final Pattern WHITESPACE = Pattern.compile("^(\\p{Space}|\\u00A0|,|;|\\uFEFF)+");
+  private static final Pattern KEY = Pattern.compile("^([a-zA-Z_][a-zA-Z_0-9]*)");
+
+  /**
+   * Number of entries per line. Long lines show the quadratic behavior of the old tokenizer.
+   */
+  @Param({ "1", "200" })
+  private int entriesPerLine;
+
+  private String conf;
+
+  @Setup
+  public void createConf()
+  {
+    StringBuilder buffy = new StringBuilder();
+    int entry = 0;
+    while (buffy.length() < 4 * 1024 * 1024)
+    {
+      buffy.append("Section").append(entry).append("(\n");
+      for (int i = 0; i < entriesPerLine; ++i, ++entry)
+      {
+        buffy.append("(TYPE \"textfield\" ID 'field").append(entry)
+            .append("' LABEL \"Label %u00e4 ''quoted'' %n\") ");
+      }
+      buffy.append("\n) # end of section\n");
+    }
+    conf = buffy.toString();
+  }
+
+  @Benchmark
+  public ConfigThingy parse() throws IOException, SyntaxErrorException
+  {
+    return new ConfigThingy("bench", null, new StringReader(conf));
+  }
+
+  /**
+   * Only the token recognition of the old tokenizer, without escape handling and building the
+   * tree.
+   */
+  @Benchmark
+  public int legacyTokenize() throws IOException
+  {
+    int count = 0;
+    BufferedReader in = new BufferedReader(new StringReader(conf));
+    String line;
+    while (null != (line = in.readLine()))
+    {
+      while (line.length() > 0)
+      {
+        Matcher wsm = WHITESPACE.matcher(line);
+        if (wsm.find())
+        {
+          line = line.substring(wsm.end());
+          if (line.length() == 0)
+          {
+            continue;
+          }
+        }
+        int tokenLength;
+        Matcher m = KEY.matcher(line);
+        if (m.find())
+        {
+          tokenLength = m.end();
+          m.group(1);
+        } else if (line.charAt(0) == '"' || line.charAt(0) == '\'')
+        {
+          char quote = line.charAt(0);
+          int idx = 1;
+          while (true)
+          {
+            idx = line.indexOf(quote, idx) + 1;
+            if (idx >= line.length() || line.charAt(idx) != quote)
+            {
+              break;
+            }
+            ++idx;
+          }
+          tokenLength = idx;
+          line.substring(1, tokenLength - 1);
+        } else if (line.startsWith("#"))
+        {
+          tokenLength = line.length();
+        } else
+        {
+          tokenLength = 1;
+        }
+        ++count;
+        line = line.substring(tokenLength);
+      }
+    }
+    return count;
+  }
+
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(ConfigThingyBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
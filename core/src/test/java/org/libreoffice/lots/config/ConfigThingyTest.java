@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigThingyTest
+{
+
+  @Test
+  public void testParse() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("root",
+        "A 'X''Y' B \"X%nY\"\r\nC(\"1\", '2'; \"%u00e4%%\") # comment\n\u00A0\uFEFFD((E 'e'))");
+    assertEquals(4, conf.count());
+    assertEquals("X'Y", conf.getString("A"));
+    assertEquals("X\nY", conf.getString("B"));
+    assertEquals("12ä%", conf.getString("C"));
+    assertEquals("e", conf.getString("E"));
+    assertEquals("", conf.get("D").getFirstChild().getName());
+  }
+
+  @Test
+  public void testSyntaxErrors()
+  {
+    SyntaxErrorException ex = assertThrows(SyntaxErrorException.class,
+        () -> new ConfigThingy("root", "A 'a'\n  B 1 'b'"));
+    assertEquals("null: syntax error in line 2 at char 5, text in error location: \"1 'b'\"",
+        ex.getMessage());
+
+    ex = assertThrows(SyntaxErrorException.class, () -> new ConfigThingy("root", "A '%u00g1'"));
+    assertTrue(ex.getCause() instanceof IllegalArgumentException);
+
+    ex = assertThrows(SyntaxErrorException.class, () -> new ConfigThingy("root", "A 'unclosed"));
+    assertEquals("null: syntax error in line 1 at char 3, text in error location: \"'unclosed\"",
+        ex.getMessage());
+
+    ex = assertThrows(SyntaxErrorException.class, () -> new ConfigThingy("root", "A(\n'a'"));
+    assertEquals("null: 1 closing brackets are missing", ex.getMessage());
+  }
+
+  @Test
+  public void testQueryIndex() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("root",
+        "A(B 'b1' C(B 'b2' B 'b3')) D(C(B 'b4')) Daten(X 'x' Y 'y')");
+    conf.enableQueryIndex();
+    assertEquals("b1", conf.getString("B"));
+    assertEquals(3, conf.query("B", 3, 3).count());
+    assertEquals(2, conf.queryByChild("B", 3, 3).count());
+    assertEquals("b2b3", conf.get("A").get("C").toString());
+    assertEquals("x", conf.get("Data").getString("X"));
+    assertThrows(NodeNotFoundException.class, () -> conf.get("B", 1));
+
+    ConfigThingy c = conf.get("D").get("C");
+    assertEquals("b4", c.getString("B"));
+    c.add("B").add("b5");
+    assertEquals(2, c.query("B").count());
+    assertEquals(4, conf.query("B", 3, 3).count());
+    conf.get("A").setName("E");
+    assertEquals(0, conf.query("A").count());
+    assertEquals("b1b2b3", conf.getString("E"));
+  }
+
+  @Test
+  public void testInclude(@TempDir Path dir) throws Exception
+  {
+    Files.createDirectory(dir.resolve("sub"));
+    Files.writeString(dir.resolve("main.conf"),
+        "A 'a'\n%include 'sub/b.conf'\nX(\n %include \"c.conf\" )\n%include 'sub/b.conf'",
+        StandardCharsets.UTF_8);
+    Files.writeString(dir.resolve("sub/b.conf"), "B 'b' %include '../c.conf'",
+        StandardCharsets.UTF_8);
+    Files.writeString(dir.resolve("c.conf"), "C 'c'", StandardCharsets.UTF_8);
+    ConfigThingy conf = new ConfigThingy("root", dir.resolve("main.conf").toUri().toURL());
+    StringBuilder content = new StringBuilder();
+    for (ConfigThingy child : conf)
+    {
+      content.append(child.getName()).append(child.toString());
+    }
+    assertEquals("AaBbCcXcBbCc", content.toString());
+
+    Files.writeString(dir.resolve("error.conf"), "C 'c' %include 'missing.conf' %include 'c.conf'",
+        StandardCharsets.UTF_8);
+    IOException ex = assertThrows(IOException.class,
+        () -> new ConfigThingy("root", dir.resolve("error.conf").toUri().toURL()));
+    assertEquals(dir.resolve("error.conf").toUri().toURL() + " in line 1 at char 16: %include failed: ",
+        ex.getMessage());
+  }
+}
@@ -0,0 +1,298 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.libreoffice.lots.db.mock.MockDataset;
+
+public class BatchJoinTest
+{
+
+  @Test
+  public void testJoin() throws Exception
+  {
+    List<Dataset> datasets = new ArrayList<>();
+    List<Dataset> others = new ArrayList<>();
+    for (int i = 0; i < 250; i++)
+    {
+      datasets.add(new MockDataset("ds" + i, Map.of("join", "Value" + i)));
+      others.add(new MockDataset("other" + i, Map.of("join2", "value" + i)));
+    }
+    others.add(new MockDataset("other", Map.of("join2", "VALUE0")));
+    CountingDatasource other = new CountingDatasource(others);
+
+    List<List<Dataset>> joined = BatchJoin.join(datasets, new String[] { "join" }, other,
+        new String[] { "join2" });
+    assertEquals(250, joined.size());
+    assertEquals(2, joined.get(0).size());
+    assertEquals("other0", joined.get(0).get(0).getKey());
+    assertEquals("other", joined.get(0).get(1).getKey());
+    assertEquals(1, joined.get(249).size());
+    assertEquals("other249", joined.get(249).get(0).getKey());
+    assertEquals(0, other.findCount);
+    assertEquals(3, other.findAnyCount);
+  }
+
+  @Test
+  public void testJoinFallback() throws Exception
+  {
+    List<Dataset> datasets = List.of(new MockDataset("ds1", Map.of("join", "value*")),
+        new MockDataset("ds2", Map.of("join", "")), new MockDataset("ds3", Map.of("join", "value1")),
+        new MockDataset("ds4", Map.of("join", "VALUE1")), new MockDataset("ds5", Map.of()));
+    CountingDatasource other = new CountingDatasource(
+        List.of(new MockDataset("other1", Map.of("join2", "value1")),
+            new MockDataset("other2", Map.of("join2", "value2"))));
+
+    List<List<Dataset>> joined = BatchJoin.join(datasets, new String[] { "join" }, other,
+        new String[] { "join2" });
+    assertEquals(List.of(2, 2, 1, 1, 0),
+        joined.stream().map(List::size).collect(Collectors.toList()));
+    assertEquals(3, other.findCount);
+    assertEquals(1, other.findAnyCount);
+  }
+
+  @Test
+  public void testJoinWithOtherMatchingSemantics() throws Exception
+  {
+    List<Dataset> datasets = List.of(new MockDataset("ds1", Map.of("join", "value1")),
+        new MockDataset("ds2", Map.of("join", "value2")),
+        new MockDataset("ds3", Map.of("join", "value3")));
+    MultiValuedDatasource other = new MultiValuedDatasource(
+        List.of(new MockDataset("other1", Map.of("join2", "value1")),
+            new MockDataset("other12", Map.of("join2", "value1;value2"))));
+
+    List<List<Dataset>> joined = BatchJoin.join(datasets, new String[] { "join" }, other,
+        new String[] { "join2" });
+    assertEquals(List.of(List.of("other1", "other12"), List.of("other12"), List.of()),
+        joined.stream().map(l -> l.stream().map(Dataset::getKey).collect(Collectors.toList()))
+            .collect(Collectors.toList()));
+    assertEquals(1, other.findAnyCount);
+    assertEquals(3, other.findCount);
+  }
+
+  @Test
+  public void testSearchWithoutMatchIsTrusted() throws Exception
+  {
+    List<Dataset> datasets = new ArrayList<>();
+    List<Dataset> others = new ArrayList<>();
+    for (int i = 0; i < 250; i++)
+    {
+      datasets.add(new MockDataset("ds" + i, Map.of("join", "value" + i)));
+      if (i % 10 == 0)
+      {
+        others.add(new MockDataset("other" + i, Map.of("join2", "value" + i)));
+      }
+    }
+    CountingDatasource other = new CountingDatasource(others);
+
+    List<List<Dataset>> joined = BatchJoin.join(datasets, new String[] { "join" }, other,
+        new String[] { "join2" });
+    assertEquals(1, joined.get(0).size());
+    assertEquals(0, joined.get(1).size());
+    assertEquals(1, joined.get(240).size());
+    assertEquals(0, other.findCount);
+    assertEquals(3, other.findAnyCount);
+  }
+
+  @Test
+  public void testUnassignedResultRepeatsSearchesWithoutMatch() throws Exception
+  {
+    List<Dataset> datasets = List.of(new MockDataset("ds1", Map.of("join", "value1")),
+        new MockDataset("ds2", Map.of("join", "value2")),
+        new MockDataset("ds3", Map.of("join", "value3")));
+    IgnoringHyphenDatasource other = new IgnoringHyphenDatasource(
+        List.of(new MockDataset("other1", Map.of("join2", "value-1")),
+            new MockDataset("other2", Map.of("join2", "value2"))));
+
+    List<List<Dataset>> joined = BatchJoin.join(datasets, new String[] { "join" }, other,
+        new String[] { "join2" });
+    assertEquals(List.of(List.of("other1"), List.of("other2"), List.of()),
+        joined.stream().map(l -> l.stream().map(Dataset::getKey).collect(Collectors.toList()))
+            .collect(Collectors.toList()));
+    assertEquals(1, other.findAnyCount);
+    assertEquals(2, other.findCount);
+  }
+
+  private static class CountingDatasource extends RAMDatasource
+  {
+    private int findCount = 0;
+    private int findAnyCount = 0;
+
+    public CountingDatasource(List<Dataset> data)
+    {
+      super("other", List.of("join2"), data);
+    }
+
+    @Override
+    public QueryResults find(List<QueryPart> query)
+    {
+      findCount++;
+      return super.find(query);
+    }
+
+    @Override
+    public QueryResults findAny(List<List<QueryPart>> queries)
+    {
+      findAnyCount++;
+      List<Dataset> results = new ArrayList<>();
+      for (List<QueryPart> query : queries)
+      {
+        for (Dataset ds : super.find(query))
+        {
+          results.add(ds);
+        }
+      }
+      return new QueryResultsList(results);
+    }
+  }
+
+  /**
+   * Matches each of the values of join2 separated by ';' like a multi-valued attribute.
+   */
+  private static class MultiValuedDatasource extends RAMDatasource
+  {
+    private int findCount = 0;
+    private int findAnyCount = 0;
+
+    public MultiValuedDatasource(List<Dataset> data)
+    {
+      super("other", List.of("join2"), data);
+    }
+
+    @Override
+    public QueryResults find(List<QueryPart> query)
+    {
+      findCount++;
+      return new QueryResultsList(matching(query));
+    }
+
+    @Override
+    public QueryResults findAny(List<List<QueryPart>> queries)
+    {
+      findAnyCount++;
+      List<Dataset> results = new ArrayList<>();
+      for (List<QueryPart> query : queries)
+      {
+        results.addAll(matching(query));
+      }
+      return new QueryResultsList(results);
+    }
+
+    @Override
+    public boolean matchesByEquality()
+    {
+      return false;
+    }
+
+    private List<Dataset> matching(List<QueryPart> query)
+    {
+      List<Dataset> results = new ArrayList<>();
+      for (Dataset ds : getContents())
+      {
+        boolean matches = true;
+        for (QueryPart part : query)
+        {
+          try
+          {
+            matches &= Arrays.stream(ds.get(part.getColumnName()).split(";"))
+                .anyMatch(v -> v.equalsIgnoreCase(part.getSearchString()));
+          } catch (ColumnNotFoundException e)
+          {
+            matches = false;
+          }
+        }
+        if (matches)
+        {
+          results.add(ds);
+        }
+      }
+      return results;
+    }
+  }
+
+  /**
+   * Matches equal values ignoring case and '-' like a database with another collation.
+   */
+  private static class IgnoringHyphenDatasource extends RAMDatasource
+  {
+    private int findCount = 0;
+    private int findAnyCount = 0;
+
+    public IgnoringHyphenDatasource(List<Dataset> data)
+    {
+      super("other", List.of("join2"), data);
+    }
+
+    @Override
+    public QueryResults find(List<QueryPart> query)
+    {
+      findCount++;
+      return new QueryResultsList(matching(query));
+    }
+
+    @Override
+    public QueryResults findAny(List<List<QueryPart>> queries)
+    {
+      findAnyCount++;
+      List<Dataset> results = new ArrayList<>();
+      for (List<QueryPart> query : queries)
+      {
+        results.addAll(matching(query));
+      }
+      return new QueryResultsList(results);
+    }
+
+    private List<Dataset> matching(List<QueryPart> query)
+    {
+      List<Dataset> results = new ArrayList<>();
+      for (Dataset ds : getContents())
+      {
+        boolean matches = true;
+        for (QueryPart part : query)
+        {
+          try
+          {
+            matches &= ds.get(part.getColumnName()).replace("-", "")
+                .equalsIgnoreCase(part.getSearchString());
+          } catch (ColumnNotFoundException e)
+          {
+            matches = false;
+          }
+        }
+        if (matches)
+        {
+          results.add(ds);
+        }
+      }
+      return results;
+    }
+  }
+}
@@ -0,0 +1,250 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.libreoffice.lots.config.ConfigThingy;
+import org.libreoffice.lots.config.ConfigurationErrorException;
+import org.libreoffice.lots.db.mock.MockDataset;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class CacheDatasourceTest
+{
+
+  @TempDir
+  File spillDir;
+
+  private CountingDatasource source;
+
+  private Map<String, Datasource> nameToDatasource;
+
+  @BeforeEach
+  public void setUp()
+  {
+    List<Dataset> datasets = new ArrayList<>();
+    for (int i = 0; i < 5; i++)
+    {
+      datasets.add(new MockDataset("ds" + i, Map.of("column", "value" + i, "column2", "x")));
+    }
+    source = new CountingDatasource(datasets);
+    nameToDatasource = Map.of("mock", source);
+  }
+
+  @Test
+  public void testFind() throws Exception
+  {
+    CacheDatasource ds = create("");
+    assertEquals("cache", ds.getName());
+    assertEquals(source.getSchema(), ds.getSchema());
+    QueryResults results = ds.find(List.of(new QueryPart("column", "value1"), new QueryPart("column2", "x")));
+    assertEquals(1, results.size());
+    results = ds.find(List.of(new QueryPart("column2", "x"), new QueryPart("column", "value1")));
+    assertEquals(1, results.size());
+    assertEquals("ds1", results.iterator().next().getKey());
+    assertEquals(1, source.findCount);
+    assertEquals(1, ds.getFindCacheStats().hitCount());
+    assertEquals(1, ds.getFindCacheStats().missCount());
+
+    assertEquals(0, ds.find(List.of(new QueryPart("column", "unknown"))).size());
+    assertEquals(0, ds.find(List.of(new QueryPart("column", "unknown"))).size());
+    assertEquals(3, source.findCount);
+    assertEquals(0, ds.find(List.of()).size());
+    assertEquals(4, source.findCount);
+  }
+
+  @Test
+  public void testNegativeCache() throws Exception
+  {
+    CacheDatasource ds = create("NEGATIVE_TTL \"60000\"");
+    assertEquals(0, ds.find(List.of(new QueryPart("column", "unknown"))).size());
+    assertEquals(0, ds.find(List.of(new QueryPart("column", "unknown"))).size());
+    assertEquals(1, source.findCount);
+    assertEquals(0, ds.getDatasetsByKey(List.of("unknown")).size());
+    assertEquals(0, ds.getDatasetsByKey(List.of("unknown")).size());
+    assertEquals(1, source.keyCount);
+    assertEquals(2, ds.getNegativeHits());
+  }
+
+  @Test
+  public void testGetDatasetsByKey() throws Exception
+  {
+    CacheDatasource ds = create("");
+    assertEquals(2, ds.getDatasetsByKey(List.of("ds1", "ds2")).size());
+    QueryResults results = ds.getDatasetsByKey(List.of("ds2", "ds3", "ds1"));
+    assertEquals(3, results.size());
+    List<String> keys = new ArrayList<>();
+    results.forEach(d -> keys.add(d.getKey()));
+    assertEquals(List.of("ds2", "ds3", "ds1"), keys);
+    assertEquals(2, source.keyCount);
+    assertEquals(List.of("ds3"), source.lastKeys);
+    assertEquals(2, ds.getKeyCacheStats().hitCount());
+    assertEquals(1, ds.getDatasetsByKey(List.of("ds3")).size());
+    assertEquals(2, source.keyCount);
+  }
+
+  @Test
+  public void testFindAny() throws Exception
+  {
+    CacheDatasource ds = create("");
+    ds.find(List.of(new QueryPart("column", "value1")));
+    QueryResults results = ds.findAny(List.of(List.of(new QueryPart("column", "value1")),
+        List.of(new QueryPart("column", "value2"))));
+    assertEquals(2, results.size());
+    assertEquals(1, source.findAnyCount);
+    assertEquals(List.of(List.of(new QueryPart("column", "value2")).toString()),
+        List.of(source.lastQueries.get(0).toString()));
+  }
+
+  @Test
+  public void testSpill() throws Exception
+  {
+    CacheDatasource ds = create("SIZE \"1\" SPILL \"true\"");
+    ds.find(List.of(new QueryPart("column", "value1")));
+    ds.find(List.of(new QueryPart("column", "value2")));
+    assertEquals(2, source.findCount);
+    QueryResults results = ds.find(List.of(new QueryPart("column", "value1")));
+    assertEquals(1, results.size());
+    Dataset dataset = results.iterator().next();
+    assertEquals("ds1", dataset.getKey());
+    assertEquals("value1", dataset.get("column"));
+    assertEquals("x", dataset.get("column2"));
+    assertEquals(2, source.findCount);
+    assertEquals(1, ds.getSpillHits());
+    assertTrue(ds.getStatistics().contains("1 spill hits"));
+
+    // spilled and fetched datasets have the same class, so they can be merged by a search
+    Dataset fetched = ds.find(List.of(new QueryPart("column", "value3"))).iterator().next();
+    assertEquals(fetched.getClass(), dataset.getClass());
+
+    File[] dirs = spillDir.listFiles();
+    assertEquals(1, dirs.length);
+    assertEquals(DatasetSpill.digest("cache"), dirs[0].getName());
+    File[] files = dirs[0].listFiles();
+    assertTrue(files.length > 0);
+    for (File file : files)
+    {
+      String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+      assertFalse(content.contains("value"), "spill file isn't encrypted");
+    }
+
+    // the files of the former data source are deleted
+    CacheDatasource other = create("SIZE \"1\" SPILL \"true\"");
+    assertEquals(0, dirs[0].listFiles().length);
+    assertEquals(1, other.find(List.of(new QueryPart("column", "value1"))).size());
+    assertEquals(4, source.findCount);
+  }
+
+  @Test
+  public void testSpillBudget() throws Exception
+  {
+    CacheDatasource ds = create("SIZE \"1\" SPILL \"true\" SPILL_SIZE \"1\"");
+    ds.find(List.of(new QueryPart("column", "value1")));
+    ds.find(List.of(new QueryPart("column", "value2")));
+    assertEquals(0, spillDir.listFiles()[0].listFiles().length);
+    ds.find(List.of(new QueryPart("column", "value1")));
+    assertEquals(0, ds.getSpillHits());
+    assertEquals(3, source.findCount);
+  }
+
+  @Test
+  public void testGetContentsIsCopied() throws Exception
+  {
+    CacheDatasource ds = create("");
+    Dataset dataset = ds.getContents().iterator().next();
+    assertEquals(SimpleDataset.class, dataset.getClass());
+    assertEquals("value0", dataset.get("column"));
+  }
+
+  @Test
+  public void testInvalidConfig() throws Exception
+  {
+    assertThrows(ConfigurationErrorException.class, () -> new CacheDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\""), spillDir, MoreExecutors.directExecutor()));
+    assertThrows(ConfigurationErrorException.class, () -> new CacheDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\" SOURCE \"unknown\""), spillDir, MoreExecutors.directExecutor()));
+    assertThrows(ConfigurationErrorException.class, () -> create("SIZE \"-1\""));
+    assertThrows(ConfigurationErrorException.class, () -> create("TTL \"0\""));
+    assertThrows(ConfigurationErrorException.class, () -> create("SPILL \"maybe\""));
+    assertThrows(ConfigurationErrorException.class, () -> create("SPILL_SIZE \"-1\""));
+  }
+
+  private CacheDatasource create(String conf) throws Exception
+  {
+    return new CacheDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\" SOURCE \"mock\" " + conf), spillDir,
+        MoreExecutors.directExecutor());
+  }
+
+  private static class CountingDatasource extends RAMDatasource
+  {
+    private int findCount = 0;
+    private int findAnyCount = 0;
+    private int keyCount = 0;
+    private List<List<QueryPart>> lastQueries;
+    private Collection<String> lastKeys;
+
+    public CountingDatasource(List<Dataset> data)
+    {
+      super("mock", List.of("column", "column2"), data);
+    }
+
+    @Override
+    public QueryResults find(List<QueryPart> query)
+    {
+      findCount++;
+      return super.find(query);
+    }
+
+    @Override
+    public QueryResults findAny(List<List<QueryPart>> queries)
+    {
+      findAnyCount++;
+      lastQueries = queries;
+      return super.findAny(queries);
+    }
+
+    @Override
+    public QueryResults getDatasetsByKey(Collection<String> keys)
+    {
+      keyCount++;
+      lastKeys = new ArrayList<>(keys);
+      return super.getDatasetsByKey(keys);
+    }
+  }
+}
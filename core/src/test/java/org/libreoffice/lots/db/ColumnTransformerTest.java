@@ -111,4 +111,28 @@ public class ColumnTransformerTest
     ColumnTransformer transformer = new ColumnTransformer(map);
     assertEquals("value", transformer.get("trafo", new MockDataset()));
   }
+
+  @Test
+  public void testColumnTransformerMemoization() throws Exception
+  {
+    int[] count = { 0 };
+    Map<String, Function> map = new HashMap<>();
+    map.put("trafo", new StringLiteralFunction("transformed")
+    {
+      @Override
+      public String getResult(Values parameters)
+      {
+        count[0]++;
+        return super.getResult(parameters);
+      }
+    });
+    ColumnTransformer transformer = new ColumnTransformer(map);
+    Dataset dsTransformed = transformer.transform(new MockDataset());
+    assertEquals("transformed", dsTransformed.get("trafo"));
+    assertEquals("transformed", dsTransformed.get("trafo"));
+    assertEquals("value", dsTransformed.get("column"));
+    assertEquals(1, count[0]);
+    assertEquals("transformed", transformer.transform(new MockDataset()).get("trafo"));
+    assertEquals(2, count[0]);
+  }
 }
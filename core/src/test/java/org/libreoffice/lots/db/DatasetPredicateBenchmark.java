@@ -0,0 +1,130 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link RAMDatasource#find(List)} with the regex based predicate, which was used by
+ * {@link DatasetPredicate} before, on a data source with 100.000 datasets. find is measured with
+ * and without the columnar index.
+ *
+ * The benchmark isn't run by surefire. Start it with {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatasetPredicateBenchmark
+{
+  private static final String[] NAMES = { "Müller", "Meier", "Schmidt", "Schneider", "Fischer",
+      "Weber", "Wagner", "Becker", "Schulz", "Hoffmann" };
+
+  @Param({ "Meier17", "Mei*", "*er17", "*eier1*", "M*er*7" })
+  private String searchString;
+
+  @Param({ "false", "true" })
+  private boolean columnarIndex;
+
+  private RAMDatasource datasource;
+
+  private List<QueryPart> query;
+
+  @Setup
+  public void createDatasource()
+  {
+    List<Dataset> data = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++)
+    {
+      data.add(new SimpleDataset("key" + i, Map.of("Nachname", NAMES[i % NAMES.length] + i,
+          "Vorname", "Vorname" + i, "Mail", "user" + i + "@example.org")));
+    }
+    datasource = new RAMDatasource("bench", List.of("Nachname", "Vorname", "Mail"), data,
+        columnarIndex);
+    query = List.of(new QueryPart("Nachname", searchString));
+  }
+
+  @Benchmark
+  public QueryResults find()
+  {
+    return datasource.find(query);
+  }
+
+  /**
+   * Filters all datasets with a regex, which is compiled for each dataset.
+   */
+  @Benchmark
+  public long legacyFind()
+  {
+    Predicate<Dataset> pred = query.stream().map(part -> {
+      Predicate<Dataset> p = (Dataset ds) -> {
+        try
+        {
+          return Pattern.compile(part.getSearchString().replace("*", "").toLowerCase())
+              .matcher(ds.get(part.getColumnName()).toLowerCase()).find();
+        } catch (ColumnNotFoundException ex)
+        {
+          return false;
+        }
+      };
+      return p;
+    }).reduce(DatasetPredicate.matchAll, Predicate::and);
+    long count = 0;
+    for (Dataset ds : datasource.getContents())
+    {
+      if (pred.test(ds))
+      {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(DatasetPredicateBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -87,6 +87,24 @@ public class DatasetPredicateTest
         "Given datasets have a wrong match count with given QueryParts:");
   }
 
+  @Test
+  public void makePredicateWildcards() throws Exception
+  {
+    Dataset ds = new SimpleDataset("Test", Map.of("Vorname", "Sheldon Lee"));
+    for (String match : List.of("sheldon lee", "Shel*", "*LEE", "*don*", "S*n*e", "*e*e*", "*", ""))
+    {
+      assertTrue(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", match))).test(ds),
+          match);
+    }
+    for (String noMatch : List.of("Sheldon", "Lee*", "*Shel", "*Leonard*", "S*x*e", "Sheldon*Lee*e",
+        "Sheldon.*", "Sheldon Lee*Lee"))
+    {
+      assertFalse(
+          DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", noMatch))).test(ds),
+          noMatch);
+    }
+  }
+
   @Test
   public void unknwonColumn()
   {
@@ -64,6 +64,28 @@ public class FunkyDatasourceTest
     assertEquals("neu_value2", results.iterator().next().get("column2"));
   }
 
+  @Test
+  public void testFindPseudoColumn() throws Exception
+  {
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock",
+        new MockDatasource("mock", List.of("column", "other"),
+            List.of(new MockDataset("ds", Map.of("column", "value", "other", "a")),
+                new MockDataset("ds2", Map.of("column", "value2", "other", "a")),
+                new MockDataset("ds3", Map.of("column", "value2", "other", "b")))));
+    Datasource ds = new FunkyDatasource(nameToDatasource, new ConfigThingy("",
+        "NAME \"funky\" SOURCE \"mock\" ColumnTransformation(column2(CAT(\"neu_\" VALUE(\"column\"))))"));
+
+    QueryResults results = ds.find(List.of(new QueryPart("column2", "neu_value2")));
+    assertEquals(2, results.size());
+    results = ds.find(List.of(new QueryPart("column2", "NEU_value*"), new QueryPart("other", "a")));
+    assertEquals(2, results.size());
+    results = ds.find(List.of(new QueryPart("column2", "neu_value2"), new QueryPart("other", "b")));
+    assertEquals(1, results.size());
+    assertEquals("ds3", results.iterator().next().getKey());
+    assertEquals(0, ds.find(List.of(new QueryPart("column2", "value2"))).size());
+  }
+
   @Test
   public void testInvalidFunkyDatasource() throws Exception
   {
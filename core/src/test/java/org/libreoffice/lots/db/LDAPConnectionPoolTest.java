@@ -0,0 +1,201 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.libreoffice.lots.config.ConfigThingy;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+
+public class LDAPConnectionPoolTest
+{
+  private static final String BASE_DN = "dc=myorg,dc=com";
+
+  private InMemoryDirectoryServer server;
+
+  private String url;
+
+  /**
+   * Number of connections opened to the server.
+   */
+  private AtomicInteger connections = new AtomicInteger();
+
+  @BeforeEach
+  public void setup() throws Exception
+  {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0))
+    {
+      port = socket.getLocalPort();
+    }
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+    config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("test", port));
+    config.setAccessLogHandler(new Handler()
+    {
+      @Override
+      public void publish(LogRecord record)
+      {
+        String message = record.getMessage();
+        if (message.startsWith("CONNECT ") || message.contains("] CONNECT "))
+        {
+          connections.incrementAndGet();
+        }
+      }
+
+      @Override
+      public void flush()
+      {
+        // nothing to flush
+      }
+
+      @Override
+      public void close()
+      {
+        // nothing to close
+      }
+    });
+    server = new InMemoryDirectoryServer(config);
+    server.add("dn: " + BASE_DN, "objectClass: domain", "objectClass: top", "dc: myorg");
+    server.add("dn: ou=Users," + BASE_DN, "objectClass: organizationalUnit", "objectClass: top",
+        "ou: Users");
+    for (int i = 0; i < 50; i++)
+    {
+      server.add("dn: cn=Test" + i + " Ldap,ou=Users," + BASE_DN, "objectClass: person",
+          "objectClass: top", "cn: Test" + i + " Ldap", "sn: Ldap" + i);
+    }
+    server.startListening();
+    url = "ldap://localhost:" + port;
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    server.shutDown(true);
+  }
+
+  private LDAPConnectionPool createPool(int maxSize, long idleTimeout)
+  {
+    Properties properties = new Properties();
+    properties.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+    properties.put(Context.PROVIDER_URL, url);
+    return new LDAPConnectionPool(properties, maxSize, idleTimeout, 100);
+  }
+
+  @Test
+  public void testReuse() throws Exception
+  {
+    LDAPConnectionPool pool = createPool(2, 60000);
+    DirContext ctx = pool.borrow();
+    pool.release(ctx);
+    assertEquals(1, pool.getIdleCount());
+    assertSame(ctx, pool.borrow());
+    DirContext ctx2 = pool.borrow();
+    assertNotSame(ctx, ctx2);
+    assertThrows(ServiceUnavailableException.class, pool::borrow);
+    pool.release(ctx);
+    pool.release(ctx2);
+    assertEquals(2, pool.getIdleCount());
+    assertEquals(2, connections.get());
+  }
+
+  @Test
+  public void testIdleEviction() throws Exception
+  {
+    LDAPConnectionPool pool = createPool(2, 50);
+    pool.release(pool.borrow());
+    assertEquals(1, pool.getIdleCount());
+    long deadline = System.currentTimeMillis() + 10000;
+    while (pool.getIdleCount() > 0 && System.currentTimeMillis() < deadline)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void testClose() throws Exception
+  {
+    LDAPConnectionPool pool = createPool(2, 60000);
+    DirContext ctx = pool.borrow();
+    DirContext ctx2 = pool.borrow();
+    pool.release(ctx);
+    pool.close();
+    assertEquals(0, pool.getIdleCount());
+    pool.release(ctx2);
+    assertEquals(0, pool.getIdleCount());
+    assertThrows(ServiceUnavailableException.class, pool::borrow);
+  }
+
+  @Test
+  public void testBrokenConnection() throws Exception
+  {
+    LDAPConnectionPool pool = createPool(1, 60000);
+    DirContext ctx = pool.borrow();
+    pool.failed(ctx, new CommunicationException());
+    pool.release(ctx);
+    assertSame(ctx, pool.borrow(), "A working connection should be reused");
+
+    server.shutDown(true);
+    server.startListening();
+    pool.failed(ctx, new CommunicationException());
+    pool.release(ctx);
+    DirContext ctx2 = pool.borrow();
+    assertNotSame(ctx, ctx2, "A broken connection shouldn't be reused");
+    ctx2.getAttributes("", new String[] { "1.1" });
+    pool.release(ctx2);
+  }
+
+  @Test
+  public void testDatasourceUsesOneConnection() throws Exception
+  {
+    Datasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url
+        + "\" BASE_DN \"" + BASE_DN + "\" OBJECT_CLASS \"person\" POOL_SIZE \"2\""
+        + " Columns ((DB_COLUMN \"column\" PATH \"0:sn\") (DB_COLUMN \"column2\" PATH \"-1:ou\"))"
+        + " Schluessel (\"column\")"), null);
+    assertEquals(50, ds.find(List.of(new QueryPart("column", "Ldap*"))).size());
+    assertEquals(50, ds.find(List.of(new QueryPart("column2", "Users"))).size());
+    assertEquals(1, ds.getDatasetsByKey(List.of("(&(sn=Ldap7))==%§%==")).size());
+    assertEquals(1, connections.get());
+  }
+}
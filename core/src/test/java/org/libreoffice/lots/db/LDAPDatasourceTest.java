@@ -32,6 +32,7 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.libreoffice.lots.config.ConfigThingy;
+import org.libreoffice.lots.config.ConfigurationErrorException;
 import org.libreoffice.lots.db.ColumnNotFoundException;
 import org.libreoffice.lots.db.Dataset;
 import org.libreoffice.lots.db.Datasource;
@@ -123,4 +124,36 @@ public class LDAPDatasourceTest
     assertEquals(1, results.size());
   }
 
+  @Test
+  public void testAttributeCache() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    LDAPDatasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url
+        + "\" BASE_DN \"" + BASE_DN
+        + "\" OBJECT_CLASS \"person\" Columns ((DB_COLUMN \"column\" PATH \"0:sn\") (DB_COLUMN \"column2\" PATH \"-1:ou\")) Schluessel (\"column\")"
+        + " ATTRIBUTE_CACHE_TTL \"60000\""),
+        null);
+    assertEquals("Users", ds.find(List.of(new QueryPart("column", "Ldap"))).iterator().next().get("column2"));
+    assertEquals(1, ds.getAttributeCacheStats().missCount());
+    assertEquals(0, ds.getAttributeCacheStats().hitCount());
+    assertEquals("Users", ds.find(List.of(new QueryPart("column", "Ldap"))).iterator().next().get("column2"));
+    assertEquals(1, ds.getAttributeCacheStats().missCount());
+    assertEquals(1, ds.getAttributeCacheStats().hitCount());
+
+    ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+        + BASE_DN
+        + "\" OBJECT_CLASS \"person\" Columns ((DB_COLUMN \"column\" PATH \"0:sn\") (DB_COLUMN \"column2\" PATH \"-1:ou\")) Schluessel (\"column\")"
+        + " ATTRIBUTE_CACHE_SIZE \"0\""),
+        null);
+    ds.find(List.of(new QueryPart("column", "Ldap")));
+    ds.find(List.of(new QueryPart("column", "Ldap")));
+    assertEquals(0, ds.getAttributeCacheStats().hitCount());
+
+    assertThrows(ConfigurationErrorException.class, () -> new LDAPDatasource(null, new ConfigThingy("",
+        "NAME \"ldap\" URL \"" + url + "\" BASE_DN \"" + BASE_DN
+            + "\" OBJECT_CLASS \"person\" Columns ((DB_COLUMN \"column\" PATH \"0:sn\")) Schluessel (\"column\")"
+            + " ATTRIBUTE_CACHE_TTL \"0\""),
+        null));
+  }
+
 }
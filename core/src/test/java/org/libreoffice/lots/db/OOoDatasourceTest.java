@@ -30,6 +30,7 @@ import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.libreoffice.lots.config.ConfigThingy;
+import org.libreoffice.lots.config.ConfigurationErrorException;
 import org.libreoffice.lots.db.ColumnNotFoundException;
 import org.libreoffice.lots.db.Dataset;
 import org.libreoffice.lots.db.Datasource;
@@ -62,4 +63,20 @@ public class OOoDatasourceTest extends OfficeTest
     assertEquals(5, results.size());
   }
 
+  @Test
+  public void testMaxRows() throws Exception
+  {
+    Datasource ds = new OOoDatasource(null, new ConfigThingy("",
+        "NAME \"ooo\" SOURCE \"Bibliography\" TABLE \"biblio\" Schluessel (\"Identifier\") MAX_ROWS \"3\""));
+    assertEquals(3, ds.getContents().size());
+    assertEquals(3, ds.find(List.of(new QueryPart("Author", "Gris, Myriam"))).size());
+    assertEquals(1, ds.getDatasetsByKey(List.of("Identifier#ARJ00#")).size());
+    // the cached row set is executed again with new parameters
+    assertEquals(3, ds.find(List.of(new QueryPart("Author", "Gris, Myriam"))).size());
+    assertEquals(0, ds.find(List.of(new QueryPart("Author", "unknown"))).size());
+
+    assertThrows(ConfigurationErrorException.class, () -> new OOoDatasource(null, new ConfigThingy("",
+        "NAME \"ooo\" SOURCE \"Bibliography\" TABLE \"biblio\" Schluessel (\"Identifier\") MAX_ROWS \"-1\"")));
+  }
+
 }
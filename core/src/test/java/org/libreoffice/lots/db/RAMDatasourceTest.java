@@ -26,7 +26,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 import org.libreoffice.lots.db.Datasource;
@@ -50,6 +52,8 @@ public class RAMDatasourceTest
     results = ds.getDatasetsByKey(List.of("ds", "ds2"));
     assertEquals(1, results.size());
     results = ds.find(List.of(new QueryPart("column", "value")));
+    assertEquals(1, results.size());
+    results = ds.find(List.of(new QueryPart("column", "value*")));
     assertEquals(2, results.size());
     results = ds.find(List.of());
     assertEquals(0, results.size());
@@ -57,6 +61,47 @@ public class RAMDatasourceTest
     assertEquals(0, results.size());
   }
 
+  @Test
+  public void testColumnarIndex()
+  {
+    String[] names = { "Müller", "Meier", "Mayer", "Schmidt", "Maier-Müller", "" };
+    List<Dataset> data = new ArrayList<>();
+    for (int i = 0; i < 200; i++)
+    {
+      data.add(new SimpleDataset("key" + (i % 150),
+          Map.of("Name", names[i % names.length] + (i % 7 == 0 ? "" : i), "Ort", "Ort" + (i % 3))));
+    }
+    data.add(new MockDataset());
+    List<String> schema = List.of("Name", "Ort", "column");
+    Datasource scan = new RAMDatasource("scan", schema, data);
+    Datasource index = new RAMDatasource("index", schema, data, true);
+
+    List<List<QueryPart>> queries = List.of(List.of(new QueryPart("Name", "meier")),
+        List.of(new QueryPart("Name", "Mei*")), List.of(new QueryPart("Name", "*ÜLLER*")),
+        List.of(new QueryPart("Name", "*er1*")), List.of(new QueryPart("Name", "*1")),
+        List.of(new QueryPart("Name", "M*r*9")), List.of(new QueryPart("Name", "*")),
+        List.of(new QueryPart("Name", "")), List.of(new QueryPart("Name", "*ll*")),
+        List.of(new QueryPart("Name", "Ma*"), new QueryPart("Ort", "*2")),
+        List.of(new QueryPart("column", "value")), List.of(new QueryPart("unknown", "*")));
+    for (List<QueryPart> query : queries)
+    {
+      assertEquals(keys(scan.find(query)), keys(index.find(query)), query.toString());
+    }
+    assertEquals(6, index.find(List.of(new QueryPart("Name", "Meier*"), new QueryPart("Ort", "Ort1"),
+        new QueryPart("Name", "*9"))).size());
+
+    List<String> keys = List.of("key1", "key140", "key199", "ds");
+    assertEquals(keys(scan.getDatasetsByKey(keys)), keys(index.getDatasetsByKey(keys)));
+    assertEquals(4, index.getDatasetsByKey(keys).size());
+  }
+
+  private static List<String> keys(QueryResults results)
+  {
+    List<String> keys = new ArrayList<>();
+    results.forEach(ds -> keys.add(ds.getKey()));
+    return keys;
+  }
+
   @Test
   public void testUninitialized()
   {
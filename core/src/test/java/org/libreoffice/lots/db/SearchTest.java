@@ -24,7 +24,9 @@ package org.libreoffice.lots.db;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -78,4 +80,40 @@ public class SearchTest
     results = Search.search("value", strategy, datasources);
     assertEquals(2, results.size());
   }
+
+  @Test
+  public void testPartialResults() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy.parse(
+        new ConfigThingy("", "SearchStrategy(slow (column \"${suchanfrage1}\") fast (column \"${suchanfrage1}\"))"));
+    Datasource slow = new MockDatasource("slow", List.of("column"),
+        List.of(new MockDataset("ds", "column", "value"), new MockDataset("ds2", "column", "value")))
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        try
+        {
+          Thread.sleep(200);
+        } catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        return super.find(query);
+      }
+    };
+    Datasource fast = new MockDatasource("fast", List.of("column"),
+        List.of(new MockDataset("ds", "column", "value")));
+    Map<String, Datasource> datasources = Map.of("slow", slow, "fast", fast);
+
+    List<Integer> partialSizes = new ArrayList<>();
+    QueryResults results = Search.search("value", strategy, datasources,
+        partial -> partialSizes.add(partial.size()));
+    assertEquals(List.of(1, 2), partialSizes);
+    assertEquals(2, results.size());
+    assertEquals("ds", results.iterator().next().getKey());
+
+    assertThrows(IllegalArgumentException.class,
+        () -> Search.search("value", strategy, Map.of("slow", slow)));
+  }
 }
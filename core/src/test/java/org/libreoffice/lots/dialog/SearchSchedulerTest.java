@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.dialog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class SearchSchedulerTest
+{
+
+  @Test
+  public void testDebounce() throws Exception
+  {
+    SearchScheduler scheduler = new SearchScheduler(100);
+    AtomicInteger executions = new AtomicInteger();
+    List<String> results = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(1);
+    for (int i = 0; i < 3; i++)
+    {
+      String query = "query" + i;
+      scheduler.<String> schedule(partial -> {
+        executions.incrementAndGet();
+        return query;
+      }, r -> {
+        results.add(r);
+        done.countDown();
+      });
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    Thread.sleep(200);
+    assertEquals(1, executions.get());
+    assertEquals(List.of("query2"), results);
+  }
+
+  @Test
+  public void testCancelSuperseded() throws Exception
+  {
+    SearchScheduler scheduler = new SearchScheduler(0);
+    List<String> results = new CopyOnWriteArrayList<>();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    scheduler.<String> schedule(partial -> {
+      partial.accept("partial");
+      started.countDown();
+      try
+      {
+        Thread.sleep(10000);
+      } catch (InterruptedException e)
+      {
+        interrupted.countDown();
+      }
+      return "old";
+    }, results::add);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    CountDownLatch done = new CountDownLatch(1);
+    scheduler.<String> schedule(partial -> "new", r -> {
+      results.add(r);
+      done.countDown();
+    });
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    assertEquals(List.of("partial", "new"), results);
+
+    scheduler.cancel();
+  }
+}
@@ -0,0 +1,270 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.form.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.libreoffice.lots.config.ConfigThingy;
+import org.libreoffice.lots.dialog.DialogLibrary;
+import org.libreoffice.lots.document.TextDocumentController;
+import org.libreoffice.lots.form.config.FormConfig;
+import org.libreoffice.lots.form.sidebar.FormSidebarController;
+import org.libreoffice.lots.func.Function;
+import org.libreoffice.lots.func.FunctionLibrary;
+import org.libreoffice.lots.func.Values;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+public class FormModelTest
+{
+
+  private FunctionLibrary funcLib;
+
+  private TextDocumentController documentController;
+
+  private FormSidebarController sidebarController;
+
+  @BeforeEach
+  public void setUp()
+  {
+    funcLib = new FunctionLibrary();
+    documentController = mock(TextDocumentController.class);
+    sidebarController = mock(FormSidebarController.class);
+  }
+
+  @Test
+  public void testAutofillsAreComputedOnceInDependencyOrder() throws Exception
+  {
+    Function fb = mockFunction("fb", "A");
+    Function fc = mockFunction("fc", "A", "B");
+    Function fd = mockFunction("fd", "B", "C");
+    // the controls are described in reverse order of their dependencies
+    FormModel model = createModel(autofill("D", "fd") + autofill("C", "fc") + control("A")
+        + autofill("B", "fb"), null);
+    clearInvocations(fb, fc, fd);
+
+    model.setValue("A", "1");
+
+    InOrder order = inOrder(fb, fc, fd);
+    order.verify(fb).getResult(any());
+    order.verify(fc).getResult(any());
+    order.verify(fd).getResult(any());
+    verify(fb, times(1)).getResult(any());
+    verify(fc, times(1)).getResult(any());
+    verify(fd, times(1)).getResult(any());
+    assertEquals("fb(1)", model.getValue("B"));
+    assertEquals("fc(1,fb(1))", model.getValue("C"));
+    assertEquals("fd(fb(1),fc(1,fb(1)))", model.getValue("D"));
+  }
+
+  @Test
+  public void testUnchangedAutofillStopsPropagation() throws Exception
+  {
+    Function fb = mock(Function.class);
+    when(fb.parameters()).thenReturn(new String[] { "A" });
+    when(fb.getResult(any())).thenReturn("constant");
+    funcLib.add("fb", fb);
+    Function fc = mockFunction("fc", "B");
+    FormModel model = createModel(control("A") + autofill("B", "fb") + autofill("C", "fc"), null);
+    clearInvocations(fb, fc);
+
+    model.setValue("A", "1");
+
+    verify(fb, times(1)).getResult(any());
+    verify(fc, never()).getResult(any());
+    assertEquals("fc(constant)", model.getValue("C"));
+  }
+
+  @Test
+  public void testPlausiIsCheckedOncePerEdit() throws Exception
+  {
+    Function fb = mockFunction("fb", "A");
+    Function plausi = mock(Function.class);
+    when(plausi.parameters()).thenReturn(new String[] { "A", "B" });
+    when(plausi.getBoolean(any())).thenAnswer(
+        invocation -> "fb(1)".equals(invocation.<Values> getArgument(0).getString("B")));
+    funcLib.add("plausi", plausi);
+    FormModel model = createModel(control("A") + autofill("B", "fb")
+        + "(TYPE \"textfield\" ID \"P\" PLAUSI(BIND(FUNCTION \"plausi\")))", null);
+    assertFalse(model.getStatus("P"));
+    clearInvocations(fb, plausi);
+
+    model.setValue("A", "1");
+
+    verify(plausi, times(1)).getBoolean(any());
+    assertTrue(model.getStatus("P"));
+  }
+
+  @Test
+  public void testUnchangedValueComputesNothing() throws Exception
+  {
+    Function fb = mockFunction("fb", "A");
+    FormModel model = createModel(control("A") + autofill("B", "fb"), null);
+    model.setValue("A", "1");
+    clearInvocations(fb);
+
+    model.setValue("A", "1");
+
+    verify(fb, never()).getResult(any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testEditIsPassedOnOnce() throws Exception
+  {
+    mockFunction("fb", "A");
+    FormModel model = createModel(control("A") + autofill("B", "fb") + grouped("C", "G") + grouped("X", "H"),
+        "G(STRCMP(VALUE \"A\" \"show\")) GB(STRCMP(VALUE \"B\" \"fb(show)\")) H(STRCMP(VALUE \"X\" \"show\"))");
+    clearInvocations(documentController, sidebarController);
+
+    model.setValue("A", "show");
+
+    ArgumentCaptor<Map<String, String>> values = ArgumentCaptor.forClass(Map.class);
+    ArgumentCaptor<Collection<String>> groups = ArgumentCaptor.forClass(Collection.class);
+    verify(sidebarController, times(1)).applyFormUpdate(values.capture(), any(), groups.capture());
+    assertEquals(Map.of("A", "show", "B", "fb(show)"), values.getValue());
+    assertEquals(Set.of("G", "GB"), new HashSet<>(groups.getValue()));
+
+    ArgumentCaptor<Map<String, String>> documentValues = ArgumentCaptor.forClass(Map.class);
+    ArgumentCaptor<Map<String, Boolean>> visibilities = ArgumentCaptor.forClass(Map.class);
+    verify(documentController, times(1)).setValuesChanged(documentValues.capture());
+    verify(documentController, times(1)).setVisibilitiesChanged(visibilities.capture());
+    verify(documentController, never()).setValueChanged(anyString(), anyString());
+    assertEquals(values.getValue(), documentValues.getValue());
+    assertEquals(Map.of("G", true, "GB", true), visibilities.getValue());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testEditPassesOnlyDependingGroups() throws Exception
+  {
+    FormModel model = createModel(control("A") + grouped("C", "G") + grouped("X", "H"),
+        "G(STRCMP(VALUE \"A\" \"show\")) H(STRCMP(VALUE \"X\" \"show\"))");
+    clearInvocations(documentController, sidebarController);
+
+    model.setValue("X", "show");
+
+    ArgumentCaptor<Collection<String>> groups = ArgumentCaptor.forClass(Collection.class);
+    verify(sidebarController, times(1)).applyFormUpdate(any(), any(), groups.capture());
+    assertEquals(Set.of("H"), new HashSet<>(groups.getValue()));
+    ArgumentCaptor<Map<String, Boolean>> visibilities = ArgumentCaptor.forClass(Map.class);
+    verify(documentController, times(1)).setVisibilitiesChanged(visibilities.capture());
+    assertEquals(Map.of("H", true), visibilities.getValue());
+    assertTrue(model.getGroup("H").isVisible());
+    assertFalse(model.getGroup("G").isVisible());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testVisibilityUpdateIsPassedOnOnce() throws Exception
+  {
+    FormModel model = createModel(control("A") + grouped("C", "G") + grouped("X", "H"),
+        "G(STRCMP(VALUE \"A\" \"show\")) H(STRCMP(VALUE \"X\" \"show\"))");
+    clearInvocations(documentController, sidebarController);
+
+    model.updateFormControlsVisibility();
+
+    ArgumentCaptor<Collection<String>> groups = ArgumentCaptor.forClass(Collection.class);
+    verify(sidebarController, times(1)).visibilityChanged(groups.capture());
+    verify(sidebarController, never()).visibilityChanged(anyString());
+    assertEquals(Set.of("G", "H"), new HashSet<>(groups.getValue()));
+  }
+
+  /**
+   * Creates a model of a form with one tab.
+   *
+   * @param controls
+   *          The description of the controls.
+   * @param visibilities
+   *          The description of the visibility groups, may be null.
+   * @return The model.
+   */
+  private FormModel createModel(String controls, String visibilities) throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("Form", "TITLE \"title\"");
+    conf.addChild(new ConfigThingy("Fenster", "Tab(InputFields(" + controls + "))"));
+    if (visibilities != null)
+    {
+      conf.addChild(new ConfigThingy("Sichtbarkeit", visibilities));
+    }
+    FormModel model = new FormModel(new FormConfig(conf, null), new HashMap<>(), funcLib,
+        new DialogLibrary(), new HashMap<>(), documentController);
+    model.setFormSidebarController(sidebarController);
+    return model;
+  }
+
+  /**
+   * A function of the library, which returns its name and the values of its parameters, e.g.
+   * "name(a,b)".
+   */
+  private Function mockFunction(String name, String... parameters)
+  {
+    Function func = mock(Function.class);
+    when(func.parameters()).thenReturn(parameters);
+    when(func.getResult(any())).thenAnswer(invocation -> {
+      Values values = invocation.getArgument(0);
+      StringBuilder result = new StringBuilder(name).append('(');
+      for (int i = 0; i < parameters.length; i++)
+      {
+        result.append(i > 0 ? "," : "").append(values.getString(parameters[i]));
+      }
+      return result.append(')').toString();
+    });
+    funcLib.add(name, func);
+    return func;
+  }
+
+  private static String control(String id)
+  {
+    return "(TYPE \"textfield\" ID \"" + id + "\")";
+  }
+
+  private static String grouped(String id, String group)
+  {
+    return "(TYPE \"textfield\" ID \"" + id + "\" GROUPS \"" + group + "\")";
+  }
+
+  private static String autofill(String id, String function)
+  {
+    return "(TYPE \"textfield\" ID \"" + id + "\" AUTOFILL(BIND(FUNCTION \"" + function + "\")))";
+  }
+}
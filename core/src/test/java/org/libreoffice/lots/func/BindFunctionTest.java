@@ -30,6 +30,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.libreoffice.lots.config.ConfigThingy;
@@ -81,4 +82,32 @@ public class BindFunctionTest
         new ConfigThingy("", "SET(\"test\")"), funcLib, dialogLib, context));
   }
 
+  @Test
+  public void testBoundParameterIsEvaluatedOnce() throws Exception
+  {
+    FunctionLibrary funcLib = new FunctionLibrary();
+    DialogLibrary dialogLib = new DialogLibrary();
+    HashMap<Object, Object> context = new HashMap<>();
+
+    Function cat = new CatFunction(List.of(new ValueFunction("test"), new StringLiteralFunction("-"),
+        new ValueFunction("test"), new StringLiteralFunction("-"), new ValueFunction("test")));
+    Function f = new BindFunction(cat, new ConfigThingy("", "SET(\"test\" VALUE(\"test2\"))"), funcLib,
+        dialogLib, context);
+    int[] reads = { 0 };
+    Values.SimpleMap values = new Values.SimpleMap()
+    {
+      @Override
+      public String getString(String id)
+      {
+        reads[0]++;
+        return super.getString(id);
+      }
+    };
+    values.put("test2", "a");
+    assertEquals("a-a-a", f.getResult(values));
+    assertEquals(1, reads[0]);
+    assertEquals("a-a-a", f.getResult(values));
+    assertEquals(2, reads[0]);
+  }
+
 }
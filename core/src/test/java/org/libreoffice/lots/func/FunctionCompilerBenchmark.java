@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.func;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.libreoffice.lots.config.ConfigThingy;
+import org.libreoffice.lots.dialog.DialogLibrary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the interpreted functions with the functions compiled by {@link FunctionCompiler}.
+ * The functions are the ones used by the function tests, combined like in typical form
+ * descriptions.
+ *
+ * The benchmark isn't run by surefire. Start it with {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FunctionCompilerBenchmark
+{
+  private static final Map<String, String> FUNCTIONS = Map.of(
+      "sum", "SUM(VALUE \"a\" VALUE \"b\" \"1\" \"2\")",
+      "nested", "SUM(PRODUCT(VALUE \"a\" VALUE \"b\") MINUS(DIFF(VALUE \"a\" \"5\" \"2\")) ABS(\"-1\"))",
+      "divide", "DIVIDE(SUM(VALUE \"a\" VALUE \"b\") BY(VALUE \"b\") MIN \"2\" MAX \"4\")",
+      "numcmp", "AND(GT(VALUE \"a\" \"5\" \"2\") LE(SUM(VALUE \"a\" VALUE \"b\") \"100\") "
+          + "NUMCMP(VALUE \"a\" VALUE \"a\" MARGIN \"0\"))",
+      "if", "IF(GE(VALUE \"a\" \"5\") THEN(CAT(\"ABC\" VALUE \"b\")) ELSE(LENGTH(\"aaaaa\")))",
+      "strings", "OR(ISERROR(VALUE \"c\") NOT(STRCMP(VALUE \"a\" \"test\")) ISERRORSTRING(VALUE \"b\"))");
+
+  @Param({ "sum", "nested", "divide", "numcmp", "if", "strings" })
+  private String function;
+
+  @Param({ "false", "true" })
+  private boolean compiled;
+
+  private Function f;
+
+  private Values.SimpleMap values;
+
+  @Setup
+  public void parse()
+  {
+    Map<Object, Object> context = new HashMap<>();
+    f = FunctionFactory.parseChildren(new ConfigThingy("", FUNCTIONS.get(function)),
+        new FunctionLibrary(), new DialogLibrary(), context);
+    if (compiled)
+    {
+      f = FunctionCompiler.compile(f);
+    }
+    values = new Values.SimpleMap();
+    values.put("a", "7");
+    values.put("b", "3");
+  }
+
+  @Benchmark
+  public String getResult()
+  {
+    return f.getResult(values);
+  }
+
+  @Benchmark
+  public boolean getBoolean()
+  {
+    return f.getBoolean(values);
+  }
+
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(FunctionCompilerBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.func;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.libreoffice.lots.config.ConfigThingy;
+import org.libreoffice.lots.dialog.DialogLibrary;
+
+public class FunctionCompilerTest
+{
+
+  private static final String[] FUNCTIONS = {
+      "\"abc\"",
+      "VALUE \"a\"",
+      "SUM(\"1\" \"2\")",
+      "SUM(VALUE \"a\" VALUE \"b\" \"0.5\")",
+      "SUM(SUM(VALUE \"a\" \"1\") PRODUCT(VALUE \"b\" VALUE \"b\") MINUS(VALUE \"a\"))",
+      "DIFF(VALUE \"a\" ABS(VALUE \"b\") SIGN(VALUE \"c\"))",
+      "PRODUCT(\"2\" \"3\" DIFF(\"10\" \"4\"))",
+      "DIVIDE(VALUE \"a\" BY(VALUE \"b\") MIN \"2\" MAX \"5\")",
+      "DIVIDE(SUM(VALUE \"a\" \"1\") BY \"3\" MAX \"4\")",
+      "SUM(DIVIDE(VALUE \"a\" BY \"3\" MAX \"4\") \"1\")",
+      "DIVIDE(\"10\" MIN \"3\")",
+      "NUMCMP(VALUE \"a\" VALUE \"b\" MARGIN(VALUE \"c\"))",
+      "GT(VALUE \"a\" SUM(VALUE \"b\" \"1\"))",
+      "LE(VALUE \"a\" \"3\" VALUE \"c\")",
+      "LT(VALUE \"a\" VALUE \"b\")",
+      "GE(VALUE \"a\" VALUE \"b\")",
+      "IF(GT(VALUE \"a\" \"1\") THEN(SUM(VALUE \"a\" VALUE \"b\")) ELSE(CAT(VALUE \"c\" \"x\")))",
+      "IF(VALUE \"c\" THEN(VALUE \"a\") ELSE(VALUE \"b\"))",
+      "SUM(IF(VALUE \"c\" THEN(VALUE \"a\") ELSE \"7\") \"1\")",
+      "CAT(VALUE \"a\" \"-\" VALUE \"b\")",
+      "LENGTH(VALUE \"a\" VALUE \"c\")",
+      "AND(VALUE \"c\" NOT(VALUE \"a\"))",
+      "OR(VALUE \"c\" STRCMP(VALUE \"a\" VALUE \"b\"))",
+      "STRCMP(VALUE \"a\" \"2\" VALUE \"b\")",
+      "ISERROR(SUM(VALUE \"a\" VALUE \"b\"))",
+      "ISERRORSTRING(VALUE \"c\")",
+      "MATCH(VALUE \"a\" \"[0-9]+\")",
+      "REPLACE(VALUE \"a\" \"1\" \"x\")",
+      "SUM(\"1\" LENGTH(REPLACE(VALUE \"c\" \"e\" \"\")))",
+      "CAT(SUM(\"1\" \"2\") DIVIDE(\"1\" BY \"8\" MAX \"3\"))",
+      "SUM(\"abc\" VALUE \"a\")" };
+
+  private static final String[] INPUTS = { null, "", "0", "1", "2", "-3", "1.5", "1,5", "0.25",
+      "0,25", "100.000", "1e3", "abc", "true", "TRUE", "false", FunctionLibrary.ERROR };
+
+  @Test
+  public void compiledEqualsInterpreted() throws Exception
+  {
+    for (Locale locale : new Locale[] { Locale.US, Locale.GERMANY })
+    {
+      Locale defaultLocale = Locale.getDefault();
+      Locale.setDefault(locale);
+      try
+      {
+        compareAll();
+      } finally
+      {
+        Locale.setDefault(defaultLocale);
+      }
+    }
+  }
+
+  private void compareAll()
+  {
+    List<Values> values = new ArrayList<>();
+    values.add(new Values.None());
+    for (String a : INPUTS)
+    {
+      for (String b : INPUTS)
+      {
+        for (String c : new String[] { null, "true", "0.1", "0,1", "e" })
+        {
+          Values.SimpleMap map = new Values.SimpleMap();
+          map.put("a", a);
+          map.put("b", b);
+          map.put("c", c);
+          values.add(map);
+        }
+      }
+    }
+
+    for (String conf : FUNCTIONS)
+    {
+      Function function = parse(conf);
+      Function compiled = FunctionCompiler.compile(function);
+      assertArrayEquals(function.parameters(), compiled.parameters(), conf);
+      for (Values v : values)
+      {
+        String expected = function.getResult(v);
+        String actual = compiled.getResult(v);
+        assertEquals(expected, actual, conf);
+        if (expected == FunctionLibrary.ERROR)
+        {
+          assertSame(expected, actual, conf);
+        }
+        assertEquals(function.getBoolean(v), compiled.getBoolean(v), conf);
+      }
+    }
+  }
+
+  @Test
+  public void compileTwice() throws Exception
+  {
+    Function compiled = FunctionCompiler.compile(parse("SUM(\"1\" \"2\")"));
+    assertSame(compiled, FunctionCompiler.compile(compiled));
+    assertEquals("3", compiled.getResult(null));
+    assertNull(FunctionCompiler.compile(null));
+  }
+
+  private static Function parse(String conf)
+  {
+    try
+    {
+      Map<Object, Object> context = new HashMap<>();
+      return FunctionFactory.parseChildren(new ConfigThingy("", conf), new FunctionLibrary(),
+          new DialogLibrary(), context);
+    } catch (Exception e)
+    {
+      throw new IllegalArgumentException(conf, e);
+    }
+  }
+}
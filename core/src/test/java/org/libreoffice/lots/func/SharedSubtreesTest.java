@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.func;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.libreoffice.lots.config.ConfigThingy;
+import org.libreoffice.lots.dialog.DialogLibrary;
+
+public class SharedSubtreesTest
+{
+
+  @Test
+  public void testSharedSubtrees() throws Exception
+  {
+    Map<Object, Object> context = new HashMap<>();
+    FunctionLibrary lib = FunctionFactory.parseFunctions(
+        new ConfigThingy("Functions",
+            "Functions(f1(SUM(VALUE \"a\" \"1\")) f2(CAT(SUM(VALUE \"a\" \"1\") \"x\")) "
+                + "f3(CAT(SUM(VALUE \"a\" \"2\") \"x\")) f4(BIND(FUNCTION \"f1\")) f5(BIND(FUNCTION \"f1\")))"),
+        new DialogLibrary(), context, null);
+    Function f1 = lib.get("f1");
+    Function f2 = lib.get("f2");
+    assertSame(f1, ((MultiFunction) f2).subFunction.iterator().next());
+    assertNotSame(f1, ((MultiFunction) lib.get("f3")).subFunction.iterator().next());
+    assertNotSame(lib.get("f4"), lib.get("f5"));
+
+    Values.SimpleMap values = new Values.SimpleMap();
+    values.put("a", "1");
+    assertEquals("2", f1.getResult(values));
+    assertEquals("2x", f2.getResult(values));
+    assertEquals("3x", lib.get("f3").getResult(values));
+    values.put("a", "5");
+    assertEquals("6x", f2.getResult(values));
+    assertEquals("6", f1.getResult(values));
+
+    Map<String, Function> trafos = FunctionFactory.parseTrafos(
+        new ConfigThingy("Trafos", "TRAFOS(t1(CAT(VALUE \"a\" \"x\")) t2(CAT(VALUE \"a\" \"x\")))"), "TRAFOS",
+        new FunctionLibrary(), new DialogLibrary(), context);
+    assertSame(trafos.get("t1"), trafos.get("t2"));
+    assertNotSame(FunctionFactory.parseChildren(new ConfigThingy("", "CAT(VALUE \"a\" \"x\")"),
+        new FunctionLibrary(), new DialogLibrary(), context), trafos.get("t1"));
+  }
+
+  @Test
+  public void testSharingIsExplicit() throws Exception
+  {
+    Map<Object, Object> context = new HashMap<>();
+    StringBuilder nested = new StringBuilder("\"x\"");
+    for (int i = 0; i < 200; i++)
+    {
+      nested.insert(0, "CAT(").append(")");
+    }
+    ConfigThingy conf = new ConfigThingy("", "f1(" + nested + ") f2(" + nested + ") f3(CAT(\"y\"))");
+    SharedSubtrees shared = new SharedSubtrees(conf);
+    ConfigThingy f1 = conf.getFirstChild().getFirstChild();
+    ConfigThingy f2 = conf.get("f2").getFirstChild();
+    ConfigThingy f3 = conf.getLastChild().getFirstChild();
+    Function func = FunctionFactory.parse(f1, new FunctionLibrary(), new DialogLibrary(), context, shared);
+    assertSame(func, FunctionFactory.parse(f2, new FunctionLibrary(), new DialogLibrary(), context, shared));
+    assertNotSame(func, FunctionFactory.parse(f2, new FunctionLibrary(), new DialogLibrary(), context, null));
+    assertNotSame(FunctionFactory.parse(f3, new FunctionLibrary(), new DialogLibrary(), context, shared),
+        FunctionFactory.parse(f3, new FunctionLibrary(), new DialogLibrary(), context, shared));
+    assertEquals("x", func.getResult(new Values.None()));
+  }
+
+  @Test
+  public void testSharedFunctionIsEvaluatedOncePerChange() throws Exception
+  {
+    int[] calls = { 0 };
+    Function f = new SharedSubtrees.SharedFunction(new ValueFunction("a")
+    {
+      @Override
+      public String getResult(Values parameters)
+      {
+        calls[0]++;
+        return super.getResult(parameters);
+      }
+    });
+    Values.SimpleMap values = new Values.SimpleMap();
+    assertEquals(FunctionLibrary.ERROR, f.getResult(values));
+    assertEquals(FunctionLibrary.ERROR, f.getResult(values));
+    assertEquals(1, calls[0]);
+    values.put("a", "1");
+    assertEquals("1", f.getResult(values));
+    assertEquals("1", f.getResult(values));
+    assertEquals(2, calls[0]);
+    values.put("a", "2");
+    assertEquals("2", f.getResult(values));
+    assertEquals(3, calls[0]);
+    Collection<String> dialogs = new ArrayList<>();
+    f.getFunctionDialogReferences(dialogs);
+    assertEquals(0, dialogs.size());
+  }
+}
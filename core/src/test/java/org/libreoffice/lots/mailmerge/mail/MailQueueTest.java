@@ -0,0 +1,259 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.mailmerge.mail;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class MailQueueTest
+{
+
+  private static Message createMessage(String to) throws MessagingException
+  {
+    MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+    message.setFrom(new InternetAddress("sender@example.org"));
+    message.setRecipient(Message.RecipientType.TO, new InternetAddress(to));
+    message.setSubject("Test");
+    message.setText("Test");
+    message.saveChanges();
+    return message;
+  }
+
+  @Test
+  public void testRetry() throws Exception
+  {
+    AtomicInteger calls = new AtomicInteger();
+    MailQueue.MessageTransport transport = message -> {
+      if (calls.incrementAndGet() < 3)
+      {
+        throw new MessagingException("temporary failure");
+      }
+    };
+    try (MailQueue queue = new MailQueue(transport, 1, 1, 3, 1))
+    {
+      queue.submit("a@example.org", null);
+      List<MailQueue.Delivery> deliveries = queue.awaitDeliveries();
+      assertEquals(1, deliveries.size());
+      assertEquals(MailQueue.Status.SENT, deliveries.get(0).getStatus());
+      assertEquals(3, deliveries.get(0).getAttempts());
+    }
+
+    calls.set(-10);
+    try (MailQueue queue = new MailQueue(transport, 1, 1, 3, 1))
+    {
+      MailQueue.Delivery delivery = queue.submit("a@example.org", null);
+      queue.awaitDeliveries();
+      assertEquals(MailQueue.Status.FAILED, delivery.getStatus());
+      assertEquals(3, delivery.getAttempts());
+      assertEquals("temporary failure", delivery.getError());
+    }
+  }
+
+  @Test
+  public void testRejectedRecipient() throws Exception
+  {
+    MailQueue.MessageTransport transport = message -> {
+      throw new SendFailedException("unknown recipient");
+    };
+    try (MailQueue queue = new MailQueue(transport, 2, 2, 3, 1))
+    {
+      queue.submit("a@example.org", null);
+      queue.submit("b@example.org", null);
+      List<MailQueue.Delivery> deliveries = queue.awaitDeliveries();
+      assertEquals(2, deliveries.size());
+      assertEquals("a@example.org", deliveries.get(0).getRecipient());
+      assertEquals("b@example.org", deliveries.get(1).getRecipient());
+      for (MailQueue.Delivery delivery : deliveries)
+      {
+        assertEquals(MailQueue.Status.FAILED, delivery.getStatus());
+        assertEquals(1, delivery.getAttempts());
+      }
+    }
+  }
+
+  @Test
+  public void testCancel() throws Exception
+  {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    MailQueue.MessageTransport transport = message -> {
+      calls.incrementAndGet();
+      sending.countDown();
+      Uninterruptibles.awaitUninterruptibly(release);
+    };
+    try (MailQueue queue = new MailQueue(transport, 1, 2, 3, 1))
+    {
+      queue.submit("a@example.org", null);
+      queue.submit("b@example.org", null);
+      queue.submit("c@example.org", null);
+      sending.await();
+      queue.cancel();
+      release.countDown();
+      List<MailQueue.Delivery> deliveries = queue.awaitDeliveries();
+      assertEquals(3, deliveries.size());
+      assertEquals(MailQueue.Status.SENT, deliveries.get(0).getStatus());
+      assertEquals(MailQueue.Status.PENDING, deliveries.get(1).getStatus());
+      assertEquals(MailQueue.Status.PENDING, deliveries.get(2).getStatus());
+    }
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testSmtpConnectionReuse() throws Exception
+  {
+    try (SmtpStandIn server = new SmtpStandIn())
+    {
+      MailServerSettings settings = new MailServerSettings();
+      settings.setMailserver("localhost");
+      settings.setMailserverport(Integer.toString(server.getPort()));
+      try (MailQueue queue = new MailQueue(settings))
+      {
+        for (int i = 0; i < 10; i++)
+        {
+          queue.submit("r" + i + "@example.org", createMessage("r" + i + "@example.org"));
+        }
+        for (MailQueue.Delivery delivery : queue.awaitDeliveries())
+        {
+          assertEquals(MailQueue.Status.SENT, delivery.getStatus(), delivery.getError());
+        }
+      }
+      assertEquals(10, server.messages.get());
+      assertTrue(server.connections.get() <= 2, "Too many connections: " + server.connections.get());
+    }
+  }
+
+  /**
+   * A minimal SMTP server, which accepts every mail.
+   */
+  private static class SmtpStandIn implements AutoCloseable
+  {
+    private final ServerSocket socket;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final AtomicInteger messages = new AtomicInteger();
+
+    SmtpStandIn() throws IOException
+    {
+      socket = new ServerSocket(0);
+      Thread acceptor = new Thread(() -> {
+        while (!socket.isClosed())
+        {
+          try
+          {
+            Socket client = socket.accept();
+            connections.incrementAndGet();
+            Thread handler = new Thread(() -> handle(client));
+            handler.setDaemon(true);
+            handler.start();
+          } catch (IOException e)
+          {
+            // closed
+          }
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    int getPort()
+    {
+      return socket.getLocalPort();
+    }
+
+    private void handle(Socket client)
+    {
+      try (client;
+          BufferedReader in = new BufferedReader(
+              new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+          PrintWriter out = new PrintWriter(client.getOutputStream(), true, StandardCharsets.US_ASCII))
+      {
+        out.print("220 localhost\r\n");
+        out.flush();
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+          String command = line.length() < 4 ? line : line.substring(0, 4).toUpperCase();
+          switch (command)
+          {
+          case "EHLO":
+          case "HELO":
+            out.print("250 localhost\r\n");
+            break;
+          case "DATA":
+            out.print("354 go ahead\r\n");
+            out.flush();
+            while ((line = in.readLine()) != null && !".".equals(line))
+            {
+              // ignore the content
+            }
+            messages.incrementAndGet();
+            out.print("250 ok\r\n");
+            break;
+          case "QUIT":
+            out.print("221 bye\r\n");
+            out.flush();
+            return;
+          default:
+            out.print("250 ok\r\n");
+            break;
+          }
+          out.flush();
+        }
+      } catch (IOException e)
+      {
+        // connection closed
+      }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      socket.close();
+    }
+  }
+}
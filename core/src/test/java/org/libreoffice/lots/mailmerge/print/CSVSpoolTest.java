@@ -0,0 +1,72 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.mailmerge.print;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CSVSpoolTest
+{
+
+  @TempDir
+  File tmpDir;
+
+  @Test
+  public void testWriteCSV() throws Exception
+  {
+    File csv = new File(tmpDir, "data.csv");
+    CSVSpool spool = new CSVSpool(csv);
+    spool.addRecord(Map.of("b", "1", "a", "say \"hi\""));
+    Map<String, String> record = new HashMap<>();
+    record.put("c", "line\nbreak");
+    record.put("a", null);
+    spool.addRecord(record);
+    spool.addRecord(Map.of());
+    assertEquals(3, spool.getSize());
+    spool.writeCSV();
+
+    assertEquals(List.of("\"a\",\"b\",\"c\"", "\"say \"\"hi\"\"\",\"1\",\"\"", "\"\",\"\",\"line",
+        "break\"", "\"\",\"\",\"\""), Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8));
+    assertFalse(new File(tmpDir, "data.csv.spool").exists());
+  }
+
+  @Test
+  public void testEmpty() throws Exception
+  {
+    File csv = new File(tmpDir, "data.csv");
+    CSVSpool spool = new CSVSpool(csv);
+    assertEquals(0, spool.getSize());
+    spool.writeCSV();
+    assertEquals(List.of(""), Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München and LibreOffice contributors
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package org.libreoffice.lots.print;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.libreoffice.lots.document.TextDocumentController;
+import org.libreoffice.lots.func.print.PrintFunction;
+import org.mockito.InOrder;
+
+import de.muenchen.allg.itd51.wollmux.interfaces.XPrintModel;
+
+public class PrintModelsTest
+{
+
+  @Test
+  public void testWorkerPrintModel() throws Exception
+  {
+    XPrintModel primary = PrintModels.createPrintModel(null);
+    primary.setPropertyValue("shared", "primary");
+    primary.setPropertyValue("local", "primary");
+    XPrintModel secondary = new SecondaryPrintModel((PrimaryPrintModel) primary, 0);
+
+    assertNull(PrintModels.createWorkerPrintModel(primary, null, Map.of()));
+    XPrintModel worker = PrintModels.createWorkerPrintModel(secondary, null, Map.of("local", "worker"));
+
+    assertEquals("primary", worker.getPropertyValue("shared"));
+    assertEquals("worker", worker.getPropertyValue("local"));
+    assertTrue(worker.getPropertySetInfo().hasPropertyByName("shared"));
+
+    worker.setPropertyValue("local", "changed");
+    worker.setPropertyValue("new", "worker");
+    assertEquals("primary", primary.getPropertyValue("local"));
+    assertEquals("changed", worker.getPropertyValue("local"));
+    assertEquals("worker", primary.getPropertyValue("new"));
+
+    assertFalse(primary.isCanceled());
+    worker.cancel();
+    assertTrue(primary.isCanceled());
+    assertTrue(worker.isCanceled());
+  }
+
+  @Test
+  public void testFormValuesAreFlushedBeforeEachPrintFunction() throws Exception
+  {
+    TextDocumentController documentController = mock(TextDocumentController.class);
+    Runnable store = mock(Runnable.class);
+    PrimaryPrintModel pmod = (PrimaryPrintModel) PrintModels.createPrintModel(documentController);
+    verify(documentController, times(1)).flushFormFieldValues();
+    // like a mail merge, which sets the values of two records and calls the next function for each
+    pmod.addPrintFunction(new PrintFunction("records", 10)
+    {
+      @Override
+      public void print(XPrintModel printModel)
+      {
+        printModel.printWithProps();
+        printModel.printWithProps();
+      }
+    });
+    pmod.addPrintFunction(new PrintFunction("store", 20)
+    {
+      @Override
+      public void print(XPrintModel printModel)
+      {
+        store.run();
+      }
+    });
+
+    pmod.printWithProps();
+
+    InOrder order = inOrder(documentController, store);
+    order.verify(documentController, times(3)).flushFormFieldValues();
+    order.verify(store).run();
+    order.verify(documentController).flushFormFieldValues();
+    order.verify(store).run();
+  }
+}
@@ -23,6 +23,7 @@
 package org.libreoffice.lots.sender;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -34,12 +35,15 @@ import java.io.Reader;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.libreoffice.lots.config.ConfigThingy;
 import org.libreoffice.lots.db.mock.MockDataset;
 import org.libreoffice.lots.sender.FileCache;
@@ -51,6 +55,9 @@ public class FileCacheTest
 {
   private URL file = FileCacheTest.class.getResource("cache.conf");
 
+  @TempDir
+  File tmpDir;
+
   @Test
   public void testSchema() throws URISyntaxException
   {
@@ -120,6 +127,115 @@ public class FileCacheTest
     assertThrows(SenderException.class, () -> cache.createCacheData(null, null, Collections.emptyList()));
   }
 
+  @Test
+  public void testBinaryCache() throws Exception
+  {
+    File cacheFile = new File(tmpDir, "cache.conf");
+    Files.copy(Paths.get(file.toURI()), cacheFile.toPath());
+    File snapshot = new File(tmpDir, "cache.conf.bin");
+    File journal = new File(tmpDir, "cache.conf.journal");
+    FileCache cache = new FileCache(cacheFile, null);
+    assertFalse(snapshot.exists());
+
+    Sender sender1 = new Sender(null, new MockDataset("ds", Map.of("column", "value1", "column2", "value2")),
+        Map.of("column2", "override2"));
+    Sender sender2 = new Sender("ds2", null, Map.of("column", "new"));
+    List<Sender> pal = List.of(sender1, sender2);
+    cache.save(cache.createCacheState(cache.getSchema(), sender1, pal));
+    cache.flush();
+    assertTrue(snapshot.isFile());
+    assertFalse(journal.exists());
+
+    cache.save(cache.createCacheState(cache.getSchema(), sender2, pal));
+    cache.save(cache.createCacheState(cache.getSchema(), sender2, List.of(sender2)));
+    cache.flush();
+    assertTrue(journal.isFile());
+
+    FileCache reloaded = new FileCache(cacheFile, null);
+    assertEquals(List.of("column", "column2"), reloaded.getSchema());
+    assertEquals("ds2", reloaded.getSelectedKey());
+    assertEquals(0, reloaded.getSelectedSameKeyIndex());
+    assertEquals(1, reloaded.getData().size());
+    assertEquals(new SenderConf("ds2", Map.of(), Map.of("column", "new")), reloaded.getData().get(0));
+
+    // a partially written record is ignored
+    Files.write(journal.toPath(), new byte[] { 0, 0, 0, 42, 1 }, StandardOpenOption.APPEND);
+    reloaded = new FileCache(cacheFile, null);
+    assertEquals("ds2", reloaded.getSelectedKey());
+    assertEquals(1, reloaded.getData().size());
+
+    // the text file is used if it is newer
+    assertTrue(cacheFile.setLastModified(snapshot.lastModified() + 10000));
+    reloaded = new FileCache(cacheFile, null);
+    assertEquals("ds", reloaded.getSelectedKey());
+    assertEquals(2, reloaded.getData().size());
+  }
+
+  @Test
+  public void testCompaction() throws Exception
+  {
+    File cacheFile = new File(tmpDir, "cache.conf");
+    File journal = new File(tmpDir, "cache.conf.journal");
+    FileCache cache = new FileCache(cacheFile, null);
+    Sender sender1 = new Sender("ds1", null, Map.of("column", "1"));
+    Sender sender2 = new Sender("ds2", null, Map.of("column", "2"));
+    List<Sender> pal = List.of(sender1, sender2);
+    for (int i = 0; i <= FileCache.MAX_JOURNAL_RECORDS + 1; i++)
+    {
+      cache.save(cache.createCacheState(List.of("column"), i % 2 == 0 ? sender1 : sender2, pal));
+    }
+    cache.flush();
+    assertFalse(journal.exists());
+    assertTrue(cacheFile.isFile());
+    FileCache reloaded = new FileCache(cacheFile, null);
+    assertEquals("ds2", reloaded.getSelectedKey());
+    assertEquals(2, reloaded.getData().size());
+  }
+
+  @Test
+  public void testJournalDiffByKey() throws Exception
+  {
+    BinaryCacheFile binaryFile = new BinaryCacheFile(new File(tmpDir, "cache.bin"),
+        new File(tmpDir, "cache.journal"));
+    List<String> schema = List.of("column");
+    SenderConf a = new SenderConf("a", Map.of(), Map.of("column", "a"));
+    SenderConf b = new SenderConf("b", Map.of(), Map.of("column", "b"));
+    SenderConf c = new SenderConf("c", Map.of(), Map.of("column", "c"));
+    SenderConf d = new SenderConf("d", Map.of(), Map.of("column", "d"));
+    CacheState state = new CacheState(schema, List.of(b, c, d), "b", 0);
+    binaryFile.writeSnapshot(state);
+
+    // insert at the front
+    CacheState next = new CacheState(schema, List.of(a, b, c, d), "b", 0);
+    assertTrue(binaryFile.append(state, next, FileCache.MAX_JOURNAL_RECORDS));
+    assertEquals(1, binaryFile.getJournalRecords());
+
+    // remove in the middle
+    state = next;
+    next = new CacheState(schema, List.of(a, c, d), "b", 0);
+    assertTrue(binaryFile.append(state, next, FileCache.MAX_JOURNAL_RECORDS));
+    assertEquals(2, binaryFile.getJournalRecords());
+
+    // change and move a sender
+    state = next;
+    SenderConf changed = new SenderConf("a", Map.of(), Map.of("column", "z"));
+    next = new CacheState(schema, List.of(c, d, changed), "b", 0);
+    assertTrue(binaryFile.append(state, next, FileCache.MAX_JOURNAL_RECORDS));
+    assertEquals(4, binaryFile.getJournalRecords());
+
+    // same key twice
+    state = next;
+    next = new CacheState(schema, List.of(c, c, d, changed), "c", 1);
+    assertTrue(binaryFile.append(state, next, FileCache.MAX_JOURNAL_RECORDS));
+    assertEquals(6, binaryFile.getJournalRecords());
+
+    CacheState reloaded = new BinaryCacheFile(new File(tmpDir, "cache.bin"),
+        new File(tmpDir, "cache.journal")).read();
+    assertEquals(List.of(c, c, d, changed), reloaded.getData());
+    assertEquals("c", reloaded.getSelectedKey());
+    assertEquals(1, reloaded.getSelectedSameKeyIndex());
+  }
+
   @Test
   public void testFileNotFound() throws Exception
   {
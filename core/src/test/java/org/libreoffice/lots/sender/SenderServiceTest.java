@@ -30,9 +30,14 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -42,6 +47,7 @@ import org.libreoffice.lots.db.ColumnNotFoundException;
 import org.libreoffice.lots.db.ColumnTransformer;
 import org.libreoffice.lots.db.Dataset;
 import org.libreoffice.lots.db.Datasource;
+import org.libreoffice.lots.db.QueryResults;
 import org.libreoffice.lots.db.mock.MockDataset;
 import org.libreoffice.lots.db.mock.MockDatasource;
 import org.libreoffice.lots.func.StringLiteralFunction;
@@ -65,6 +71,90 @@ public class SenderServiceTest
     Datasource ds = new MockDatasource("mock", List.of("column", "column2"), List.of(first, second));
     cache = new MockCache();
     service = new SenderService(ds, null, cache, "column");
+    service.refresh.join();
+  }
+
+  @Test
+  public void testRefreshFromDatasource() throws Exception
+  {
+    CountDownLatch latch = new CountDownLatch(1);
+    List<Collection<String>> requests = new ArrayList<>();
+    List<String> threads = new ArrayList<>();
+    Datasource ds = new MockDatasource("mock", List.of("column", "column2"), List.of(first, second))
+    {
+      @Override
+      public QueryResults getDatasetsByKey(Collection<String> keys)
+      {
+        requests.add(new ArrayList<>(keys));
+        threads.add(Thread.currentThread().getName());
+        try
+        {
+          latch.await();
+        } catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        return super.getDatasetsByKey(keys);
+      }
+    };
+    MockCache mockCache = new MockCache();
+    SenderService refreshed = new SenderService(ds, null, mockCache, "column");
+    assertEquals("value1", refreshed.getCurrentSenderValue("column"));
+    assertEquals("", refreshed.getCurrentSenderValue("column2"));
+    assertEquals("lost1", refreshed.data.get(1).get("column"));
+    assertFalse(mockCache.isSaved());
+    // lost senders are only known after the refresh
+    assertTrue(refreshed.getLostDatasetDisplayStrings().isEmpty());
+    CompletableFuture<List<String>> lost = refreshed.refresh
+        .thenApply(v -> refreshed.getLostDatasetDisplayStrings());
+
+    latch.countDown();
+    assertEquals(List.of(", "), lost.join());
+    assertEquals(List.of(List.of("ds", "lost")), requests);
+    assertEquals(List.of("Sender-refresh"), threads);
+    assertEquals("value2", refreshed.getCurrentSenderValue("column2"));
+    assertEquals("ds", refreshed.selectedSender.getKey());
+    assertNull(refreshed.data.get(1).get("column"));
+    assertEquals(List.of(", "), refreshed.getLostDatasetDisplayStrings());
+    assertTrue(mockCache.isSaved());
+  }
+
+  @Test
+  public void testRefreshMergesChangedList() throws Exception
+  {
+    CountDownLatch latch = new CountDownLatch(1);
+    Datasource ds = new MockDatasource("mock", List.of("column", "column2"), List.of(first, second))
+    {
+      @Override
+      public QueryResults getDatasetsByKey(Collection<String> keys)
+      {
+        try
+        {
+          latch.await();
+        } catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        return super.getDatasetsByKey(keys);
+      }
+    };
+    MockCache mockCache = new MockCache();
+    SenderService refreshed = new SenderService(ds, null, mockCache, "column");
+
+    // the list is edited during the refresh
+    List<Sender> edited = new ArrayList<>(refreshed.data);
+    edited.remove(1);
+    edited.add(new Sender(new HashMap<>(Map.of("column", "new"))));
+    refreshed.data = edited;
+
+    latch.countDown();
+    refreshed.refresh.join();
+    assertEquals(2, refreshed.data.size());
+    assertEquals("value2", refreshed.data.get(0).get("column2"));
+    assertEquals("ds", refreshed.selectedSender.getKey());
+    assertEquals("value2", refreshed.getCurrentSenderValue("column2"));
+    assertEquals("new", refreshed.data.get(1).get("column"));
+    assertTrue(mockCache.isSaved());
   }
 
   @Test